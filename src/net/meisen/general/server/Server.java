@@ -13,6 +13,7 @@ import net.meisen.general.server.api.IServerSettings;
 import net.meisen.general.server.api.IServerSettingsManager;
 import net.meisen.general.server.api.impl.exceptions.BaseListenerException;
 import net.meisen.general.server.exceptions.ServerInitializeException;
+import net.meisen.general.server.listener.utility.ParallelTasks;
 import net.meisen.general.server.settings.listener.ListenerFactory;
 import net.meisen.general.server.settings.pojos.Connector;
 
@@ -311,24 +312,42 @@ public class Server {
 		} else {
 
 			synchronized (serverThread) {
+
+				// close the listeners in parallel
+				final List<Runnable> closings = new ArrayList<Runnable>();
 				for (final IListener listener : listeners) {
+					closings.add(new Runnable() {
 
-					// log
-					if (LOG.isDebugEnabled()) {
-						LOG.debug("Closing listener '" + listener.toString()
-								+ "'...");
-					}
+						@Override
+						public void run() {
 
-					// if a listener cannot shutdown we still should try to
-					// shutdown the others correctly
-					try {
-						listener.close();
-					} catch (final RuntimeException e) {
-						if (LOG.isErrorEnabled()) {
-							LOG.error("Error while closing the listener '"
-									+ listener.toString() + "'", e);
+							// log
+							if (LOG.isDebugEnabled()) {
+								LOG.debug("Closing listener '"
+										+ listener.toString() + "'...");
+							}
+
+							// if a listener cannot shutdown we still should
+							// try to shutdown the others correctly
+							try {
+								listener.close();
+							} catch (final RuntimeException e) {
+								if (LOG.isErrorEnabled()) {
+									LOG.error(
+											"Error while closing the listener '"
+													+ listener.toString()
+													+ "'", e);
+								}
+							}
 						}
-					}
+					});
+				}
+
+				// wait for all the listeners to be closed
+				if (!ParallelTasks.runAll("ServerShutdownThread", closings)
+						&& LOG.isWarnEnabled()) {
+					LOG.warn("Interrupted while waiting for the listeners "
+							+ "to be closed.");
 				}
 
 				// reset the listeners
@@ -0,0 +1,23 @@
+package net.meisen.general.server.api;
+
+import java.io.IOException;
+
+/**
+ * An <code>ILineSink</code> which is able to force the written lines to the
+ * storage, i.e. to make them durable.
+ * 
+ * @author pmeisen
+ * 
+ */
+public interface IDurableLineSink extends ILineSink {
+
+	/**
+	 * Forces all the lines written so far to the storage. The method may be
+	 * called concurrently to {@link #write(String)}, the lines written during
+	 * the call might be forced as well.
+	 * 
+	 * @throws IOException
+	 *             if the lines cannot be forced
+	 */
+	public void sync() throws IOException;
+}
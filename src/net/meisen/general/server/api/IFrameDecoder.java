@@ -0,0 +1,66 @@
+package net.meisen.general.server.api;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The first stage of a codec-pipeline, which splits the data received on a
+ * connection into frames. An instance is created per connection, i.e. the
+ * implementation can keep the state of the connection (e.g. a partially
+ * received terminator).
+ * 
+ * @author pmeisen
+ * 
+ * @see IMessageDecoder
+ * 
+ */
+public interface IFrameDecoder {
+
+	/**
+	 * Decodes the next frame of the data buffered, i.e. between the position
+	 * and the limit of <code>buffered</code>. If a complete frame is
+	 * available, the position is moved behind the frame and the payload of
+	 * the frame is returned. Otherwise the position is not modified and
+	 * <code>null</code> is returned. The returned payload shares the content
+	 * of <code>buffered</code> and might be reused by the decoder, i.e. it is
+	 * only valid until the next call of the decoder.
+	 * 
+	 * @param buffered
+	 *            the data buffered
+	 * 
+	 * @return the payload of the next frame or <code>null</code> if no
+	 *         complete frame is buffered
+	 * 
+	 * @throws IOException
+	 *             if the data is invalid, e.g. the frame is too large
+	 */
+	public ByteBuffer decode(final ByteBuffer buffered) throws IOException;
+
+	/**
+	 * Decodes the data left when the end of the stream is reached, i.e. the
+	 * data which doesn't form a complete frame (see
+	 * {@link #decode(ByteBuffer)}).
+	 * 
+	 * @param buffered
+	 *            the data buffered
+	 * 
+	 * @return the payload of the last frame or <code>null</code> if no data is
+	 *         left
+	 * 
+	 * @throws IOException
+	 *             if the data left isn't a valid frame
+	 */
+	public ByteBuffer decodeLast(final ByteBuffer buffered) throws IOException;
+
+	/**
+	 * Checks if the frame returned by the last call of the decoder is only a
+	 * part of a frame, i.e. if the next frame returned is the next part of the
+	 * same frame. A decoder returns parts instead of failing, if a frame
+	 * exceeds the maximal size and the frame can be handled in parts (e.g. a
+	 * line exceeding the maximal line-length).
+	 * 
+	 * @return <code>true</code> if the last frame returned is a part of a
+	 *         frame, otherwise <code>false</code>
+	 */
+	public boolean isPartial();
+}
@@ -0,0 +1,46 @@
+package net.meisen.general.server.api;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * A target the <code>OutputListener</code> writes the received lines to. The
+ * lines are written by the threads of the connections, i.e. an
+ * implementation must be thread-safe unless it's only used by another sink
+ * serializing the calls (e.g. by the <code>AsyncSink</code>).
+ * 
+ * @author pmeisen
+ * 
+ */
+public interface ILineSink extends Flushable, Closeable {
+
+	/**
+	 * Writes the specified line, the line-separator is appended by the sink.
+	 * 
+	 * @param line
+	 *            the line to be written (without any terminator)
+	 * 
+	 * @throws IOException
+	 *             if the line cannot be written
+	 */
+	public void write(final String line) throws IOException;
+
+	/**
+	 * Flushes the lines written so far to the underlying target.
+	 * 
+	 * @throws IOException
+	 *             if the lines cannot be flushed
+	 */
+	@Override
+	public void flush() throws IOException;
+
+	/**
+	 * Flushes and closes the sink, afterwards no further lines are accepted.
+	 * 
+	 * @throws IOException
+	 *             if the sink cannot be closed
+	 */
+	@Override
+	public void close() throws IOException;
+}
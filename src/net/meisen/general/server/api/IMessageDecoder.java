@@ -0,0 +1,31 @@
+package net.meisen.general.server.api;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The second stage of a codec-pipeline, which decodes the payload of a frame
+ * into the message passed to the <code>IMessageHandler</code>. The same
+ * instance is used for all the connections of a listener.
+ * 
+ * @author pmeisen
+ * 
+ * @see IFrameDecoder
+ * @see IMessageHandler
+ * 
+ */
+public interface IMessageDecoder {
+
+	/**
+	 * Decodes the payload of a frame.
+	 * 
+	 * @param frame
+	 *            the payload of the frame, only valid during the call
+	 * 
+	 * @return the decoded message
+	 * 
+	 * @throws IOException
+	 *             if the payload cannot be decoded
+	 */
+	public Object decode(final ByteBuffer frame) throws IOException;
+}
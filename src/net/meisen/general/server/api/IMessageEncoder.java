@@ -0,0 +1,31 @@
+package net.meisen.general.server.api;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The last stage of a codec-pipeline, which encodes the answer of the
+ * <code>IMessageHandler</code> into the bytes written to the connection, i.e.
+ * including the framing (e.g. the terminator of a line). The same instance is
+ * used for all the connections of a listener.
+ * 
+ * @author pmeisen
+ * 
+ * @see IMessageHandler
+ * 
+ */
+public interface IMessageEncoder {
+
+	/**
+	 * Encodes the specified answer.
+	 * 
+	 * @param answer
+	 *            the answer to be encoded, might be <code>null</code>
+	 * 
+	 * @return the bytes to be written
+	 * 
+	 * @throws IOException
+	 *             if the answer cannot be encoded
+	 */
+	public ByteBuffer encode(final Object answer) throws IOException;
+}
@@ -0,0 +1,27 @@
+package net.meisen.general.server.api;
+
+/**
+ * The third stage of a codec-pipeline, which handles a decoded message and
+ * returns the answer passed to the <code>IMessageEncoder</code>. The same
+ * instance is used for all the connections of a listener, i.e. the
+ * implementation must be thread-safe.
+ * 
+ * @author pmeisen
+ * 
+ * @see IMessageDecoder
+ * @see IMessageEncoder
+ * 
+ */
+public interface IMessageHandler {
+
+	/**
+	 * Handles the specified message.
+	 * 
+	 * @param message
+	 *            the decoded message, <code>null</code> if the end of the
+	 *            stream was reached (the answer is not written in that case)
+	 * 
+	 * @return the answer of the message
+	 */
+	public Object handle(final Object message);
+}
@@ -1,20 +1,51 @@
 package net.meisen.general.server.api.impl;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.net.BindException;
+import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 import net.meisen.general.genmisc.exceptions.registry.IExceptionRegistry;
 import net.meisen.general.sbconfigurator.api.IConfiguration;
 import net.meisen.general.server.api.IListener;
 import net.meisen.general.server.api.impl.exceptions.BaseListenerException;
+import net.meisen.general.server.listener.codec.CodecSettings;
 import net.meisen.general.server.listener.utility.AcceptListenerThread;
-import net.meisen.general.server.listener.utility.StringWorkerThread;
+import net.meisen.general.server.listener.utility.AdmissionControl;
+import net.meisen.general.server.listener.utility.AdmissionControl.AdmissionPolicy;
+import net.meisen.general.server.listener.utility.BufferPool;
+import net.meisen.general.server.listener.utility.Framing;
+import net.meisen.general.server.listener.utility.SelectorListenerThread;
+import net.meisen.general.server.listener.utility.VirtualWorkerDispatcher;
+import net.meisen.general.server.listener.utility.IdleReaper;
+import net.meisen.general.server.listener.utility.LineFramer;
+import net.meisen.general.server.listener.utility.OversizePolicy;
+import net.meisen.general.server.listener.utility.ParallelTasks;
+import net.meisen.general.server.listener.utility.PooledWorkerDispatcher.RejectionPolicy;
+import net.meisen.general.server.listener.utility.RateLimiter;
+import net.meisen.general.server.listener.utility.RateMeter;
+import net.meisen.general.server.listener.utility.ServerSocketOpener;
+import net.meisen.general.server.listener.utility.WorkerMode;
+import net.meisen.general.server.listener.utility.WorkerSettings;
 import net.meisen.general.server.listener.utility.WorkerThread;
 import net.meisen.general.server.settings.pojos.Connector;
+import net.meisen.general.server.settings.pojos.Extension;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,12 +65,22 @@ public abstract class BaseListener implements IListener {
 	private final static Logger LOG = LoggerFactory
 			.getLogger(BaseListener.class);
 
+	private final static long REQUEST_KEEP_ALIVE = 60000;
+
 	@Autowired(required = false)
 	@Qualifier(IConfiguration.coreExceptionRegistryId)
 	private IExceptionRegistry exceptionRegistry;
 
 	private int port = -1;
-	private AcceptListenerThread listenerThread;
+	private WorkerSettings workerSettings = new WorkerSettings();
+	private AdmissionControl admissionControl = new AdmissionControl();
+	private IdleReaper idleReaper = null;
+	private RateLimiter rateLimiter = null;
+	private CodecSettings codecSettings = null;
+	private CodecSettings framingSettings = null;
+	private BufferPool bufferPool = BufferPool.getShared();
+	private ExecutorService requestExecutor = null;
+	private List<AcceptListenerThread> listenerThreads;
 
 	@Override
 	public void initialize(final Connector c) {
@@ -56,13 +97,399 @@ public abstract class BaseListener implements IListener {
 
 		// set the values
 		this.port = specPort;
+
+		// check if a special worker is defined
+		final Extension worker = c.getExtension("worker");
+		if (worker != null) {
+			this.workerSettings = createWorkerSettings(c, worker);
+		}
+
+		// check if the connections are limited
+		final Extension admission = c.getExtension("admission");
+		if (admission != null) {
+			this.admissionControl = createAdmissionControl(c, admission);
+		}
+
+		// check if the rates are limited
+		final Extension ratelimit = c.getExtension("ratelimit");
+		if (ratelimit != null) {
+			this.rateLimiter = createRateLimiter(c, ratelimit);
+		}
+
+		// check if a codec-pipeline is defined
+		final Extension codec = c.getExtension("codec");
+		if (codec != null) {
+			this.codecSettings = createCodecSettings(c, codec);
+		}
+
+		// express the framing of the workers by the stages of a pipeline
+		this.framingSettings = getWorkerSettings().createCodecSettings();
+
+		// check if the buffers are pooled differently
+		final Extension buffers = c.getExtension("buffers");
+		if (buffers != null) {
+			this.bufferPool = createBufferPool(c, buffers);
+		}
+	}
+
+	/**
+	 * Creates the <code>WorkerSettings</code> defined by the
+	 * <code>worker</code> extension of the <code>Connector</code>.
+	 * 
+	 * @param c
+	 *            the <code>Connector</code> the settings are created for
+	 * @param worker
+	 *            the <code>worker</code> extension
+	 * 
+	 * @return the created <code>WorkerSettings</code>
+	 */
+	protected WorkerSettings createWorkerSettings(final Connector c,
+			final Extension worker) {
+		final WorkerSettings settings = new WorkerSettings();
+
+		// get the mode
+		final String mode = worker.<String> getProperty("mode");
+		if (mode != null) {
+			final WorkerMode specMode = WorkerMode.find(mode);
+			if (specMode == null) {
+				getExceptionRegistry().throwException(
+						BaseListenerException.class, 1005, mode,
+						Arrays.asList(WorkerMode.values()));
+			}
+			settings.setMode(specMode);
+		}
+		if (WorkerMode.VIRTUAL.equals(settings.getMode())
+				&& !VirtualWorkerDispatcher.isSupported()) {
+			getExceptionRegistry().throwException(BaseListenerException.class,
+					1008, c.toString(), System.getProperty("java.version"));
+		}
+
+		// get the framing
+		final String framing = worker.<String> getProperty("framing");
+		if (framing != null) {
+			final Framing specFraming = Framing.find(framing);
+			if (specFraming == null) {
+				getExceptionRegistry().throwException(
+						BaseListenerException.class, 1013, framing,
+						Arrays.asList(Framing.values()));
+			}
+			settings.setFraming(specFraming);
+		}
+
+		// get the handling of oversized lines
+		final String oversize = worker.<String> getProperty("oversize");
+		if (oversize != null) {
+			final OversizePolicy specPolicy = OversizePolicy.find(oversize);
+			if (specPolicy == null) {
+				getExceptionRegistry().throwException(
+						BaseListenerException.class, 1017, oversize,
+						Arrays.asList(OversizePolicy.values()));
+			}
+			settings.setOversizePolicy(specPolicy);
+		}
+		settings.setOversizeMessage(worker.getStringProperty(
+				"oversizeMessage", settings.getOversizeMessage()));
+
+		// get the settings of the pool
+		try {
+			settings.setPoolCoreSize(worker.getIntProperty("core",
+					settings.getPoolCoreSize()));
+			settings.setPoolMaxSize(worker.getIntProperty("max",
+					settings.getPoolMaxSize()));
+			settings.setPoolQueueSize(worker.getIntProperty("queue",
+					settings.getPoolQueueSize()));
+			settings.setPoolKeepAlive(worker.getLongProperty("keepAlive",
+					settings.getPoolKeepAlive()));
+			settings.setShutdownTimeout(worker.getLongProperty(
+					"shutdownTimeout", settings.getShutdownTimeout()));
+			settings.setAcceptors(worker.getIntProperty("acceptors",
+					settings.getAcceptors()));
+			settings.setIdleTimeout(worker.getLongProperty("idleTimeout",
+					settings.getIdleTimeout()));
+			settings.setReadTimeout(worker.getLongProperty("readTimeout",
+					settings.getReadTimeout()));
+			settings.setPipelineLimit(worker.getIntProperty("pipelineLimit",
+					settings.getPipelineLimit()));
+			settings.setMaxInFlight(worker.getIntProperty("maxInFlight",
+					settings.getMaxInFlight()));
+			settings.setRequestThreads(worker.getIntProperty(
+					"requestThreads", settings.getRequestThreads()));
+			settings.setMaxFrameSize(worker.getIntProperty("maxFrameSize",
+					settings.getMaxFrameSize()));
+			settings.setMaxLineLength(worker.getIntProperty("maxLineLength",
+					settings.getMaxLineLength()));
+			settings.setCompressionLevel(worker.getIntProperty(
+					"compressionLevel", settings.getCompressionLevel()));
+		} catch (final NumberFormatException e) {
+			getExceptionRegistry().throwException(BaseListenerException.class,
+					1006, e, "worker", c.toString());
+		}
+		settings.setPipelined(worker.getBooleanProperty("pipelined",
+				settings.isPipelined()));
+		settings.setAsync(worker.getBooleanProperty("async", settings.isAsync()));
+		settings.setPooled(worker.getBooleanProperty("pooled",
+				settings.isPooled()));
+		settings.setCompression(worker.getBooleanProperty("compression",
+				settings.isCompression()));
+		final String charset = worker.<String> getProperty("charset");
+		if (charset != null) {
+			try {
+				settings.setCharset(Charset.forName(charset));
+			} catch (final IllegalArgumentException e) {
+				getExceptionRegistry().throwException(
+						BaseListenerException.class, 1012, e, charset,
+						c.toString());
+			}
+		}
+		final String rejection = worker.<String> getProperty("rejection");
+		if (rejection != null) {
+			final RejectionPolicy specPolicy = RejectionPolicy.find(rejection);
+			if (specPolicy == null) {
+				getExceptionRegistry().throwException(
+						BaseListenerException.class, 1019, rejection,
+						Arrays.asList(RejectionPolicy.values()));
+			}
+			settings.setPoolRejectionPolicy(specPolicy);
+		}
+
+		// validate the settings
+		if (!settings.isValid()) {
+			getExceptionRegistry().throwException(BaseListenerException.class,
+					1007, settings.toString(), c.toString());
+		}
+
+		return settings;
+	}
+
+	/**
+	 * Creates the <code>AdmissionControl</code> defined by the
+	 * <code>admission</code> extension of the <code>Connector</code>.
+	 * 
+	 * @param c
+	 *            the <code>Connector</code> the control is created for
+	 * @param admission
+	 *            the <code>admission</code> extension
+	 * 
+	 * @return the created <code>AdmissionControl</code>
+	 */
+	protected AdmissionControl createAdmissionControl(final Connector c,
+			final Extension admission) {
+		final AdmissionControl control = new AdmissionControl();
+
+		// get the policy
+		final String policy = admission.<String> getProperty("policy");
+		if (policy != null) {
+			final AdmissionPolicy specPolicy = AdmissionPolicy.find(policy);
+			if (specPolicy == null) {
+				getExceptionRegistry().throwException(
+						BaseListenerException.class, 1009, policy,
+						Arrays.asList(AdmissionPolicy.values()));
+			}
+			control.setPolicy(specPolicy);
+		}
+
+		// get the limits
+		try {
+			control.setMaxConnections(admission.getIntProperty(
+					"maxConnections", control.getMaxConnections()));
+			control.setMaxPending(admission.getIntProperty("maxPending",
+					control.getMaxPending()));
+			control.setPauseInterval(admission.getLongProperty(
+					"pauseInterval", control.getPauseInterval()));
+		} catch (final NumberFormatException e) {
+			getExceptionRegistry().throwException(BaseListenerException.class,
+					1006, e, "admission", c.toString());
+		}
+		control.setMessage(admission.getStringProperty("message",
+				control.getMessage()));
+
+		// validate the settings
+		if (!control.isValid()) {
+			getExceptionRegistry().throwException(BaseListenerException.class,
+					1010, control.toString(), c.toString());
+		}
+
+		return control;
+	}
+
+	/**
+	 * Creates the <code>RateLimiter</code> defined by the
+	 * <code>ratelimit</code> extension of the <code>Connector</code>.
+	 * 
+	 * @param c
+	 *            the <code>Connector</code> the limiter is created for
+	 * @param ratelimit
+	 *            the <code>ratelimit</code> extension
+	 * 
+	 * @return the created <code>RateLimiter</code>
+	 */
+	protected RateLimiter createRateLimiter(final Connector c,
+			final Extension ratelimit) {
+		final RateLimiter limiter = new RateLimiter();
+
+		// get the rates
+		try {
+			limiter.setConnectionRate(ratelimit.getIntProperty(
+					"connectionRate", limiter.getConnectionRate()));
+			limiter.setConnectionBurst(ratelimit.getIntProperty(
+					"connectionBurst", 0));
+			limiter.setLineRate(ratelimit.getIntProperty("lineRate",
+					limiter.getLineRate()));
+			limiter.setLineBurst(ratelimit.getIntProperty("lineBurst", 0));
+			limiter.setMaxAddresses(ratelimit.getIntProperty("maxAddresses",
+					limiter.getMaxAddresses()));
+		} catch (final NumberFormatException e) {
+			getExceptionRegistry().throwException(BaseListenerException.class,
+					1006, e, "ratelimit", c.toString());
+		}
+		limiter.setMessage(ratelimit.getStringProperty("message",
+				limiter.getMessage()));
+
+		// validate the settings
+		if (!limiter.isValid()) {
+			getExceptionRegistry().throwException(BaseListenerException.class,
+					1011, limiter.toString(), c.toString());
+		}
+
+		return limiter;
+	}
+
+	/**
+	 * Creates the <code>CodecSettings</code> defined by the
+	 * <code>codec</code> extension of the <code>Connector</code>.
+	 * 
+	 * @param c
+	 *            the <code>Connector</code> the settings are created for
+	 * @param codec
+	 *            the <code>codec</code> extension
+	 * 
+	 * @return the created <code>CodecSettings</code>
+	 */
+	protected CodecSettings createCodecSettings(final Connector c,
+			final Extension codec) {
+		final CodecSettings settings = new CodecSettings();
+		settings.setCharset(getWorkerSettings().getCharset());
+		settings.setMaxFrameSize(getWorkerSettings().getMaxFrameSize());
+
+		// get the stages
+		final String frameDecoder = codec.getStringProperty("frameDecoder",
+				null);
+		if (frameDecoder != null) {
+			settings.setFrameDecoderClass(CodecSettings
+					.findFrameDecoder(frameDecoder));
+			if (settings.getFrameDecoderClass() == null) {
+				getExceptionRegistry().throwException(
+						BaseListenerException.class, 1014, frameDecoder,
+						"frameDecoder", c.toString());
+			}
+		}
+		final String messageDecoder = codec.getStringProperty(
+				"messageDecoder", null);
+		if (messageDecoder != null) {
+			settings.setMessageDecoderClass(CodecSettings
+					.findMessageDecoder(messageDecoder));
+			if (settings.getMessageDecoderClass() == null) {
+				getExceptionRegistry().throwException(
+						BaseListenerException.class, 1014, messageDecoder,
+						"messageDecoder", c.toString());
+			}
+		}
+		final String encoder = codec.getStringProperty("encoder", null);
+		if (encoder != null) {
+			settings.setEncoderClass(CodecSettings.findEncoder(encoder));
+			if (settings.getEncoderClass() == null) {
+				getExceptionRegistry().throwException(
+						BaseListenerException.class, 1014, encoder, "encoder",
+						c.toString());
+			}
+		}
+		final String handler = codec.getStringProperty("handler", null);
+		if (handler != null) {
+			settings.setHandlerClass(CodecSettings.findHandler(handler));
+			if (settings.getHandlerClass() == null) {
+				getExceptionRegistry().throwException(
+						BaseListenerException.class, 1014, handler, "handler",
+						c.toString());
+			}
+		}
+
+		// get the size of the frames
+		try {
+			settings.setMaxFrameSize(codec.getIntProperty("maxFrameSize",
+					settings.getMaxFrameSize()));
+		} catch (final NumberFormatException e) {
+			getExceptionRegistry().throwException(BaseListenerException.class,
+					1006, e, "codec", c.toString());
+		}
+
+		// the answers of a pipeline are written synchronously
+		if (getWorkerSettings().isAsync()) {
+			getExceptionRegistry().throwException(BaseListenerException.class,
+					1016, c.toString());
+		}
+
+		// create the shared stages
+		try {
+			settings.initialize();
+		} catch (final IllegalArgumentException e) {
+			getExceptionRegistry().throwException(BaseListenerException.class,
+					1015, e, settings.toString(), c.toString());
+		}
+
+		return settings;
+	}
+
+	/**
+	 * Creates the <code>BufferPool</code> defined by the <code>buffers</code>
+	 * extension of the <code>Connector</code>. By default the connections
+	 * borrow their buffers from the shared pool, i.e. the extension is only
+	 * needed to disable pooling (<code>enabled="false"</code>) or to use an
+	 * own pool with other limits.
+	 * 
+	 * @param c
+	 *            the <code>Connector</code> the pool is created for
+	 * @param buffers
+	 *            the <code>buffers</code> extension
+	 * 
+	 * @return the created <code>BufferPool</code>, <code>null</code> if
+	 *         pooling is disabled
+	 */
+	protected BufferPool createBufferPool(final Connector c,
+			final Extension buffers) {
+		if (!buffers.getBooleanProperty("enabled", true)) {
+			return null;
+		}
+
+		final String minSize = buffers.getStringProperty("minSize", null);
+		final String maxSize = buffers.getStringProperty("maxSize", null);
+		final String maxMemory = buffers.getStringProperty("maxMemory", null);
+		if (minSize == null && maxSize == null && maxMemory == null) {
+			return BufferPool.getShared();
+		}
+
+		BufferPool pool = null;
+		try {
+			pool = new BufferPool(false, buffers.getIntProperty("minSize",
+					BufferPool.DEFAULT_MIN_SIZE), buffers.getIntProperty(
+					"maxSize", BufferPool.DEFAULT_MAX_SIZE),
+					buffers.getLongProperty("maxMemory",
+							BufferPool.DEFAULT_MAX_MEMORY));
+		} catch (final NumberFormatException e) {
+			getExceptionRegistry().throwException(BaseListenerException.class,
+					1006, e, "buffers", c.toString());
+		} catch (final IllegalArgumentException e) {
+			getExceptionRegistry().throwException(BaseListenerException.class,
+					1018, e, c.toString());
+		}
+
+		return pool;
 	}
 
 	@Override
 	public void open() {
 
 		// check if we have a running thread
-		if (listenerThread != null) {
+		if (listenerThreads != null) {
 			getExceptionRegistry().throwException(BaseListenerException.class,
 					1003, toString());
 		}
@@ -72,35 +499,171 @@ public abstract class BaseListener implements IListener {
 			LOG.trace("Opening '" + toString() + "...");
 		}
 
-		// start the new thread
+		// one reaper watches the connections of all acceptors
+		idleReaper = getWorkerSettings().createIdleReaper();
+
+		// the tagged requests of all connections share one executor
+		if (Framing.TAGGED.equals(getWorkerSettings().getFraming())) {
+			requestExecutor = createRequestExecutor();
+		}
+
+		// create the new threads
+		final int acceptors = getWorkerSettings().getAcceptors();
+		final List<AcceptListenerThread> threads = new ArrayList<AcceptListenerThread>();
 		try {
-			listenerThread = createAcceptListenerThread();
+			threads.addAll(createAcceptListenerThreads(acceptors));
 		} catch (final BindException e) {
+			releaseShared();
 			getExceptionRegistry().throwException(BaseListenerException.class,
 					1002, e, getPort());
 		} catch (final IOException e) {
+			releaseShared();
 			getExceptionRegistry().throwException(BaseListenerException.class,
 					1001, e, getPort());
+		} catch (final RuntimeException e) {
+			releaseShared();
+			throw e;
 		}
 
-		// run the thread
-		listenerThread.setDaemon(false);
-		listenerThread.start();
+		for (int i = 0; i < threads.size(); i++) {
+			final AcceptListenerThread listenerThread = threads.get(i);
+
+			// define how the workers are executed
+			listenerThread.setWorkerDispatcher(getWorkerSettings()
+					.createDispatcher(
+							acceptors == 1 ? toString() : toString() + "-" + i));
+			listenerThread.setShutdownTimeout(getWorkerSettings()
+					.getShutdownTimeout());
+			listenerThread.setAdmissionControl(getAdmissionControl());
+			listenerThread.setIdleReaper(idleReaper);
+			listenerThread.setRateLimiter(getRateLimiter());
+			listenerThread.setCharset(getWorkerSettings().getCharset());
+
+			// run the thread
+			listenerThread.setDaemon(false);
+			listenerThread.start();
+		}
+
+		listenerThreads = threads;
+	}
+
+	/**
+	 * Creates the specified amount of <code>AcceptListenerThread</code>
+	 * instances accepting the connections of the port. If supported, each
+	 * instance uses its own <code>Socket</code> bound with
+	 * <code>SO_REUSEPORT</code>, so that the operating system spreads the
+	 * connections among them. Otherwise all instances share one
+	 * <code>Socket</code>.
+	 * 
+	 * @param acceptors
+	 *            the amount of instances to be created
+	 * 
+	 * @return the created instances
+	 * 
+	 * @throws IOException
+	 *             if one of the <code>AcceptListenerThread</code> cannot be
+	 *             created, e.g. opened
+	 * 
+	 * @see #createAcceptListenerThread()
+	 * @see #createAcceptListenerThread(ServerSocket)
+	 */
+	protected List<AcceptListenerThread> createAcceptListenerThreads(
+			final int acceptors) throws IOException {
+		if (acceptors == 1) {
+			return Collections.singletonList(createAcceptListenerThread());
+		}
+
+		final boolean reusePort = ServerSocketOpener.isReusePortSupported();
+		final boolean blocking = !WorkerMode.SELECTOR.equals(getWorkerMode());
+		if (LOG.isInfoEnabled()) {
+			LOG.info("Opening " + acceptors + " acceptors on port "
+					+ getPort() + (reusePort ? " using SO_REUSEPORT" : "")
+					+ "...");
+		}
+
+		final List<AcceptListenerThread> threads = new ArrayList<AcceptListenerThread>();
+		ServerSocket sharedSocket = null;
+		try {
+			for (int i = 0; i < acceptors; i++) {
+				final ServerSocket serverSocket;
+				if (reusePort) {
+					serverSocket = ServerSocketOpener.open(getPort(), blocking,
+							true);
+				} else if (sharedSocket == null) {
+					sharedSocket = ServerSocketOpener.open(getPort(),
+							blocking, false);
+					serverSocket = sharedSocket;
+				} else {
+					serverSocket = sharedSocket;
+				}
+
+				threads.add(createAcceptListenerThread(serverSocket));
+			}
+		} catch (final IOException e) {
+
+			// release the already opened ones
+			for (final AcceptListenerThread thread : threads) {
+				thread.close(0);
+			}
+			if (sharedSocket != null) {
+				sharedSocket.close();
+			}
+
+			throw e;
+		}
+
+		return threads;
 	}
 
 	/**
 	 * Creates the instance of the <code>AcceptListenerThread</code>, i.e. the
-	 * one which is used to accept request on a <code>Socket</code>.
+	 * one which is used to accept request on a <code>Socket</code>. Which
+	 * implementation is created depends on the <code>WorkerMode</code> of the
+	 * listener.
 	 * 
 	 * @return the <code>AcceptListenerThread</code> used to accept requests
 	 * 
 	 * @throws IOException
 	 *             if the <code>AcceptListenerThread</code> cannot be created,
 	 *             e.g. opened
+	 * 
+	 * @see #getWorkerMode()
 	 */
 	protected AcceptListenerThread createAcceptListenerThread()
 			throws IOException {
-		return new AcceptListenerThread(getPort()) {
+		if (WorkerMode.SELECTOR.equals(getWorkerMode())) {
+			return createAcceptListenerThread(ServerSocketOpener.open(
+					getPort(), false, false));
+		} else {
+			return createAcceptListenerThread(new ServerSocket(getPort()));
+		}
+	}
+
+	/**
+	 * Creates an instance of the <code>AcceptListenerThread</code>, which
+	 * accepts the requests of the specified, already bound
+	 * <code>serverSocket</code>. The method is used if several acceptors are
+	 * defined, the <code>serverSocket</code> is non-blocking if the
+	 * <code>WorkerMode</code> is {@link WorkerMode#SELECTOR}.
+	 * 
+	 * @param serverSocket
+	 *            the bound <code>ServerSocket</code> to accept the requests
+	 *            from
+	 * 
+	 * @return the <code>AcceptListenerThread</code> used to accept requests
+	 * 
+	 * @throws IOException
+	 *             if the <code>AcceptListenerThread</code> cannot be created
+	 * 
+	 * @see #createAcceptListenerThreads(int)
+	 */
+	protected AcceptListenerThread createAcceptListenerThread(
+			final ServerSocket serverSocket) throws IOException {
+		if (WorkerMode.SELECTOR.equals(getWorkerMode())) {
+			return createSelectorListenerThread(serverSocket);
+		}
+
+		return new AcceptListenerThread(serverSocket) {
 
 			@Override
 			protected Thread createWorkerThread(final Socket socket) {
@@ -109,6 +672,82 @@ public abstract class BaseListener implements IListener {
 		};
 	}
 
+	/**
+	 * Creates a <code>SelectorListenerThread</code> which accepts the requests
+	 * of the specified, already bound and non-blocking
+	 * <code>serverSocket</code> and delegates the handling to
+	 * <code>this</code>. The thread is configured using
+	 * {@link #configure(SelectorListenerThread)}.
+	 * 
+	 * @param serverSocket
+	 *            the bound, non-blocking <code>ServerSocket</code> to accept
+	 *            the requests from
+	 * 
+	 * @return the created <code>SelectorListenerThread</code>
+	 * 
+	 * @throws IOException
+	 *             if the <code>Selector</code> cannot be created
+	 */
+	protected SelectorListenerThread createSelectorListenerThread(
+			final ServerSocket serverSocket) throws IOException {
+		final SelectorListenerThread thread = new SelectorListenerThread(
+				serverSocket) {
+
+			@Override
+			protected String handleInput(final String input) {
+				return BaseListener.this.handleInput(input);
+			}
+
+			@Override
+			protected CompletionStage<String> handleInputAsync(
+					final String input) {
+				return BaseListener.this.dispatchInput(input);
+			}
+
+			@Override
+			protected ByteBuffer handleFrame(final ByteBuffer frame) {
+				return BaseListener.this.handleFrame(frame);
+			}
+
+			@Override
+			protected Object handleMessage(final Object message) {
+				return BaseListener.this.handleMessage(message);
+			}
+
+			@Override
+			protected String handleChunk(final String chunk, final boolean last) {
+				return BaseListener.this.handleChunk(chunk, last);
+			}
+		};
+		configure(thread);
+
+		return thread;
+	}
+
+	/**
+	 * Applies the <code>WorkerSettings</code> to the specified
+	 * <code>SelectorListenerThread</code>.
+	 * 
+	 * @param thread
+	 *            the <code>SelectorListenerThread</code> to be configured
+	 */
+	protected void configure(final SelectorListenerThread thread) {
+		final WorkerSettings settings = getWorkerSettings();
+
+		thread.setCharset(settings.getCharset());
+		thread.setFraming(settings.getFraming());
+		thread.setMaxFrameSize(settings.getMaxFrameSize());
+		thread.setPooled(settings.isPooled());
+		thread.setMaxLineLength(settings.getMaxLineLength());
+		thread.setOversizePolicy(settings.getOversizePolicy());
+		thread.setOversizeMessage(settings.getOversizeMessage());
+		thread.setCodec(getCodecSettings());
+		thread.setBufferPool(getBufferPool());
+		if (settings.isAsync() || Framing.TAGGED.equals(settings.getFraming())) {
+			thread.setMaxInFlight(settings.getMaxInFlight());
+		}
+	}
+
 	/**
 	 * Creates a <code>WorkerThread</code> which handles requests. This method
 	 * is only called, if the<code>{@link #createAcceptListenerThread()}</code>
@@ -122,45 +761,13 @@ public abstract class BaseListener implements IListener {
 	 *         <code>Socket</code> when started
 	 */
 	protected Thread createWorkerThread(final Socket socket) {
-		return new StringWorkerThread(socket) {
-
-			@Override
-			public void run() {
-				try {
-					final BufferedReader in = createSocketReader();
-					final PrintWriter out = createSocketWriter();
-
-					while (!out.checkError()) {
-						final String input = in.readLine();
-						final String output = BaseListener.this
-								.handleInput(input);
-
-						// write the answer
-						if (output == null) {
-							out.println("");
-						} else {
-							out.println(output);
-						}
-					}
-				} catch (final SocketException e) {
-					// generally ignore the socket is just closed
-					if (LOG.isTraceEnabled()) {
-						LOG.trace("Caught SocketException and ignored it.", e);
-					}
-				} catch (final IOException e) {
-					getExceptionRegistry().throwException(
-							BaseListenerException.class, 1004, e, getPort());
-				} finally {
-					close();
-				}
-			}
-		};
+		return new DefaultWorkerThread(this, socket);
 	}
 
 	/**
 	 * Method used to handle a specific input. This method is only called if the
-	 * default <code>WorkerThread</code> is used. Otherwise the call might not
-	 * be done.
+	 * default <code>WorkerThread</code> or the <code>SelectorListenerThread</code>
+	 * is used. Otherwise the call might not be done.
 	 * 
 	 * @param input
 	 *            the input retrieved on the <code>Socket</code>
@@ -171,6 +778,218 @@ public abstract class BaseListener implements IListener {
 		return "";
 	}
 
+	/**
+	 * Method used to handle a line as bytes, i.e. without decoding the
+	 * request into a <code>String</code>. This method is called for each line
+	 * by the default <code>WorkerThread</code> (unless the requests are
+	 * handled asynchronously, tagged, length-prefixed or by a codec-pipeline).
+	 * The answer can be written into the passed <code>output</code> buffer,
+	 * which has to be flipped and returned afterwards. It's also possible to
+	 * return any other buffer (e.g. the <code>input</code> to echo the line),
+	 * the remaining bytes of the returned buffer are written as line. A
+	 * handler using the passed buffers doesn't allocate anything per request.
+	 * The default implementation decodes the line using the
+	 * <code>Charset</code> of the <code>WorkerSettings</code> and passes it to
+	 * {@link #handleInput(String)}.
+	 * 
+	 * @param input
+	 *            a read-only view of the line (without any terminator),
+	 *            <code>null</code> if the end of the stream was reached; the
+	 *            view is only valid during the call
+	 * @param output
+	 *            an empty buffer (backed by an array) to write the answer to;
+	 *            the buffer is only valid during the call
+	 * 
+	 * @return the answer (without any terminator), <code>null</code> to reply
+	 *         with an empty line
+	 */
+	protected ByteBuffer handleBytes(final ByteBuffer input,
+			final ByteBuffer output) {
+		final Charset charset = getWorkerSettings().getCharset();
+		final String answer = handleInput(input == null ? null : LineFramer
+				.decode(input, charset));
+
+		return answer == null ? null : charset.encode(answer);
+	}
+
+	/**
+	 * Method used to handle the chunks of a line exceeding the maximal
+	 * line-length, if the <code>worker</code> extension defines
+	 * <code>oversize="stream"</code>. The chunks of a line are passed in
+	 * order, the answer returned for the last chunk answers the line. The
+	 * default implementation ignores the chunks and answers with the
+	 * <code>oversizeMessage</code>.
+	 * 
+	 * @param chunk
+	 *            the chunk of the line, at most <code>maxLineLength</code>
+	 *            bytes
+	 * @param last
+	 *            <code>true</code> if the chunk is the last one of the line,
+	 *            otherwise <code>false</code>
+	 * 
+	 * @return the message to reply, only used for the last chunk
+	 * 
+	 * @see OversizePolicy#STREAM
+	 */
+	protected String handleChunk(final String chunk, final boolean last) {
+		return last ? getWorkerSettings().getOversizeMessage() : null;
+	}
+
+	/**
+	 * Method used to handle a specific input asynchronously, if the
+	 * <code>worker</code> extension defines <code>async="true"</code> or
+	 * <code>framing="tagged"</code>. The answers are written in the order of
+	 * the requests (unless tagged), even if the returned stages complete in
+	 * another order. The method should not block, i.e.
+	 * long running work should be done by another thread completing the
+	 * returned stage. The default implementation completes the answer of
+	 * {@link #handleInput(String)} directly.
+	 * 
+	 * @param input
+	 *            the input retrieved on the <code>Socket</code>
+	 * 
+	 * @return the stage completing with the message to reply
+	 * 
+	 * @see WorkerSettings#getMaxInFlight()
+	 */
+	protected CompletionStage<String> handleInputAsync(final String input) {
+		return CompletableFuture.completedFuture(handleInput(input));
+	}
+
+	/**
+	 * Dispatches the specified input to {@link #handleInputAsync(String)}. If
+	 * the <code>worker</code> extension defines <code>framing="tagged"</code>,
+	 * the input is handled by the request-executor of the
+	 * <code>Listener</code>, i.e. several requests of a connection are
+	 * handled concurrently even if {@link #handleInput(String)} blocks.
+	 * Otherwise {@link #handleInputAsync(String)} is called directly.
+	 * 
+	 * @param input
+	 *            the input retrieved on the <code>Socket</code>
+	 * 
+	 * @return the stage completing with the message to reply
+	 * 
+	 * @see Framing#TAGGED
+	 */
+	protected CompletionStage<String> dispatchInput(final String input) {
+		final ExecutorService executor = requestExecutor;
+		if (executor == null) {
+			return handleInputAsync(input);
+		}
+
+		final CompletableFuture<String> result = new CompletableFuture<String>();
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						handleInputAsync(input).whenComplete(
+								new BiConsumer<String, Throwable>() {
+
+									@Override
+									public void accept(final String value,
+											final Throwable t) {
+										if (t == null) {
+											result.complete(value);
+										} else {
+											result.completeExceptionally(t);
+										}
+									}
+								});
+					} catch (final RuntimeException e) {
+						result.completeExceptionally(e);
+					}
+				}
+			});
+		} catch (final RejectedExecutionException e) {
+			result.completeExceptionally(e);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates the <code>ExecutorService</code> handling the requests of the
+	 * {@link Framing#TAGGED} framing. The default implementation uses at most
+	 * <code>requestThreads</code> threads (ending when idle), further
+	 * requests are queued. The amount of queued requests of a connection is
+	 * limited by <code>maxInFlight</code>.
+	 * 
+	 * @return the created <code>ExecutorService</code>
+	 * 
+	 * @see WorkerSettings#getRequestThreads()
+	 */
+	protected ExecutorService createRequestExecutor() {
+		final String name = toString() + "-request";
+		final AtomicInteger counter = new AtomicInteger(0);
+		final int threads = getWorkerSettings().getRequestThreads();
+
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+				threads, REQUEST_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread t = new Thread(r, name + "-"
+								+ counter.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+
+		return executor;
+	}
+
+	/**
+	 * Method used to handle a message decoded by the codec-pipeline, if the
+	 * <code>codec</code> extension does not define a <code>handler</code>.
+	 * The default implementation passes a <code>ByteBuffer</code> to
+	 * {@link #handleFrame(ByteBuffer)} and any other message (as
+	 * <code>String</code>) to {@link #handleInput(String)}.
+	 * 
+	 * @param message
+	 *            the decoded message, <code>null</code> if the end of the
+	 *            stream was reached
+	 * 
+	 * @return the answer to be encoded
+	 * 
+	 * @see CodecSettings
+	 */
+	protected Object handleMessage(final Object message) {
+		if (message instanceof ByteBuffer) {
+			return handleFrame((ByteBuffer) message);
+		} else {
+			return handleInput(message == null ? null : message.toString());
+		}
+	}
+
+	/**
+	 * Method used to handle a frame, if the <code>worker</code> extension
+	 * defines <code>framing="length"</code>. If the frames are
+	 * <code>pooled</code>, the passed frame is only valid during the call.
+	 * The default implementation decodes the frame using the
+	 * <code>Charset</code> of the <code>WorkerSettings</code> and passes it to
+	 * {@link #handleInput(String)}.
+	 * 
+	 * @param frame
+	 *            the payload of the frame, <code>null</code> if the end of the
+	 *            stream was reached
+	 * 
+	 * @return the payload of the frame to reply, <code>null</code> to reply
+	 *         with an empty frame
+	 * 
+	 * @see Framing#LENGTH
+	 */
+	protected ByteBuffer handleFrame(final ByteBuffer frame) {
+		final Charset charset = getWorkerSettings().getCharset();
+		final String output = handleInput(frame == null ? null : charset
+				.decode(frame.duplicate()).toString());
+
+		return output == null ? null : charset.encode(output);
+	}
+
 	/**
 	 * Gets the <code>ExceptionRegistry</code> used by the
 	 * <code>BaseListener</code>.
@@ -190,27 +1009,205 @@ public abstract class BaseListener implements IListener {
 		return port;
 	}
 
+	/**
+	 * Gets the <code>WorkerMode</code> used by the <code>Listener</code> to
+	 * handle the accepted connections.
+	 * 
+	 * @return the <code>WorkerMode</code> used by the <code>Listener</code>
+	 */
+	public WorkerMode getWorkerMode() {
+		return workerSettings.getMode();
+	}
+
+	/**
+	 * Gets the <code>WorkerSettings</code> used by the <code>Listener</code>
+	 * to handle the accepted connections.
+	 * 
+	 * @return the <code>WorkerSettings</code> used by the
+	 *         <code>Listener</code>
+	 */
+	public WorkerSettings getWorkerSettings() {
+		return workerSettings;
+	}
+
+	/**
+	 * Gets the <code>AdmissionControl</code> which limits the connections
+	 * accepted by the <code>Listener</code>, i.e. also provides the counters
+	 * of accepted, rejected and paused connections.
+	 * 
+	 * @return the <code>AdmissionControl</code> used by the
+	 *         <code>Listener</code>
+	 */
+	public AdmissionControl getAdmissionControl() {
+		return admissionControl;
+	}
+
+	/**
+	 * Gets the <code>IdleReaper</code> which closes the idle connections of
+	 * the <code>Listener</code>, i.e. also provides the counters of the closed
+	 * connections.
+	 * 
+	 * @return the <code>IdleReaper</code> used by the <code>Listener</code>,
+	 *         <code>null</code> if no timeout is defined or the
+	 *         <code>Listener</code> was never opened
+	 */
+	public IdleReaper getIdleReaper() {
+		return idleReaper;
+	}
+
+	/**
+	 * Gets the <code>RateLimiter</code> which limits the connections per
+	 * remote address and the lines per connection of the
+	 * <code>Listener</code>, i.e. also provides the counters of the rejected
+	 * connections and lines.
+	 * 
+	 * @return the <code>RateLimiter</code> used by the <code>Listener</code>,
+	 *         <code>null</code> if no rate is limited
+	 */
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * Gets the <code>CodecSettings</code> defining the codec-pipeline of each
+	 * connection of the <code>Listener</code>.
+	 * 
+	 * @return the <code>CodecSettings</code> used by the
+	 *         <code>Listener</code>, <code>null</code> if no pipeline is
+	 *         defined
+	 */
+	public CodecSettings getCodecSettings() {
+		return codecSettings;
+	}
+
+	/**
+	 * Gets the <code>CodecSettings</code> expressing the <code>Framing</code>
+	 * of the <code>WorkerSettings</code>, i.e. the stages splitting the data
+	 * of a connection into frames if no codec-pipeline is defined.
+	 * 
+	 * @return the <code>CodecSettings</code> of the <code>Framing</code>
+	 * 
+	 * @see WorkerSettings#createCodecSettings()
+	 */
+	public CodecSettings getFramingSettings() {
+		return framingSettings;
+	}
+
+	/**
+	 * Gets the <code>BufferPool</code> the connections of the
+	 * <code>Listener</code> borrow their buffers from, i.e. also provides the
+	 * usage and leak counters of the pool.
+	 * 
+	 * @return the <code>BufferPool</code> used by the <code>Listener</code>,
+	 *         <code>null</code> if pooling is disabled
+	 */
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * Gets the <code>RateMeter</code> of the accepted connections of each
+	 * acceptor, an empty list is returned if the <code>Listener</code> is not
+	 * opened.
+	 * 
+	 * @return the <code>RateMeter</code> of each acceptor
+	 * 
+	 * @see WorkerSettings#getAcceptors()
+	 */
+	public List<RateMeter> getAcceptRates() {
+		final List<AcceptListenerThread> threads = listenerThreads;
+		final List<RateMeter> rates = new ArrayList<RateMeter>();
+
+		if (threads != null) {
+			for (final AcceptListenerThread thread : threads) {
+				rates.add(thread.getAcceptRate());
+			}
+		}
+
+		return rates;
+	}
+
 	@Override
 	public void close() {
-		if (listenerThread != null && !listenerThread.isClosed()) {
+		if (listenerThreads != null && !isClosed()) {
 			if (LOG.isTraceEnabled()) {
 				LOG.trace("Closing '" + toString() + "'...");
 			}
 
-			// mark it to be interrupted and then forget about it
-			listenerThread.close();
-			listenerThread = null;
+			// mark them to be interrupted and then forget about them
+			if (listenerThreads.size() == 1) {
+				listenerThreads.get(0).close();
+			} else {
+				closeInParallel(listenerThreads);
+			}
+			listenerThreads = null;
+
+			releaseShared();
 		}
 	}
 
 	/**
-	 * Checks if the <code>listenerThread</code>, i.e. the thread connections
-	 * are accepted with, is closed.
+	 * Releases the resources shared by the acceptors, i.e. the
+	 * <code>IdleReaper</code> and the executor of the tagged requests.
+	 */
+	protected void releaseShared() {
+		if (idleReaper != null) {
+			idleReaper.close();
+			idleReaper = null;
+		}
+		if (requestExecutor != null) {
+			requestExecutor.shutdown();
+			requestExecutor = null;
+		}
+	}
+
+	/**
+	 * Closes the specified <code>threads</code> in parallel, i.e. the workers
+	 * of the different acceptors are given the shutdown-timeout at the same
+	 * time.
+	 * 
+	 * @param threads
+	 *            the threads to be closed
+	 */
+	protected void closeInParallel(final List<AcceptListenerThread> threads) {
+		final List<Runnable> closings = new ArrayList<Runnable>();
+		for (final AcceptListenerThread listenerThread : threads) {
+			closings.add(new Runnable() {
+
+				@Override
+				public void run() {
+					listenerThread.close();
+				}
+			});
+		}
+
+		// wait for all of them
+		if (!ParallelTasks.runAll("Closing-" + toString(), closings)
+				&& LOG.isWarnEnabled()) {
+			LOG.warn("Interrupted while waiting for the acceptors of '"
+					+ toString() + "' to be closed.");
+		}
+	}
+
+	/**
+	 * Checks if the <code>listenerThreads</code>, i.e. the threads connections
+	 * are accepted with, are closed.
 	 * 
 	 * @return <code>true</code> if no request are handled anymore, otherwise
 	 *         <code>false</code>
 	 */
 	public boolean isClosed() {
-		return listenerThread == null || listenerThread.isClosed();
+		final List<AcceptListenerThread> threads = listenerThreads;
+		if (threads == null) {
+			return true;
+		}
+
+		for (final AcceptListenerThread thread : threads) {
+			if (!thread.isClosed()) {
+				return false;
+			}
+		}
+
+		return true;
 	}
 }
@@ -0,0 +1,603 @@
+package net.meisen.general.server.api.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
+
+import net.meisen.general.server.api.IMessageHandler;
+import net.meisen.general.server.api.impl.exceptions.BaseListenerException;
+import net.meisen.general.server.listener.codec.CodecPipeline;
+import net.meisen.general.server.listener.codec.CodecSettings;
+import net.meisen.general.server.listener.utility.BufferPool;
+import net.meisen.general.server.listener.utility.FrameTooLargeException;
+import net.meisen.general.server.listener.utility.Framing;
+import net.meisen.general.server.listener.utility.IdleReaper;
+import net.meisen.general.server.listener.utility.LineFramer;
+import net.meisen.general.server.listener.utility.OrderedReplies;
+import net.meisen.general.server.listener.utility.OversizePolicy;
+import net.meisen.general.server.listener.utility.RequestTags;
+import net.meisen.general.server.listener.utility.StringWorkerThread;
+import net.meisen.general.server.listener.utility.WorkerSettings;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The default <code>WorkerThread</code> of a <code>BaseListener</code>. The
+ * data received is split into frames by the <code>CodecPipeline</code> of the
+ * connection, i.e. by the stages of the <code>codec</code> extension or, if
+ * none is defined, by the stages expressing the <code>Framing</code> of the
+ * <code>WorkerSettings</code> (see {@link BaseListener#getFramingSettings()}).
+ * Each frame is dispatched depending on the settings:
+ * <ul>
+ * <li>the frames of a codec-pipeline or of the {@link Framing#LENGTH} framing
+ * are handled and encoded by the pipeline,</li>
+ * <li>the lines are passed to {@link BaseListener#handleBytes(ByteBuffer,
+ * ByteBuffer)} and the answers are written without any intermediate copy,
+ * or</li>
+ * <li>the lines are handled asynchronously (if <code>async</code> or
+ * {@link Framing#TAGGED}) and the answers are written by the thread
+ * completing them.</li>
+ * </ul>
+ * The parts of a line exceeding the <code>maxLineLength</code> are handled
+ * according to the {@link OversizePolicy}.
+ *
+ * @author pmeisen
+ *
+ */
+public class DefaultWorkerThread extends StringWorkerThread {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(DefaultWorkerThread.class);
+
+	/**
+	 * The size of the buffer the data is read into.
+	 */
+	public final static int READ_BUFFER_SIZE = 8192;
+
+	private final BaseListener listener;
+	private final WorkerSettings settings;
+	private final boolean usePipeline;
+	private final boolean async;
+	private final boolean tagged;
+	private final int flushLimit;
+	private final byte[] separator;
+
+	private CodecPipeline pipeline = null;
+	private OrderedReplies replies = null;
+	private OutputStream out = null;
+	private byte[] readBuffer = null;
+	private ByteBuffer reply = null;
+	private ByteBuffer viewed = null;
+	private ByteBuffer view = null;
+
+	private boolean oversized = false;
+	private boolean streaming = false;
+	private String rejection = null;
+	private String oversizedTag = null;
+	private long oversizedLength = 0;
+
+	/**
+	 * Creates a worker handling the requests of the specified
+	 * <code>Socket</code> for the specified <code>BaseListener</code>.
+	 *
+	 * @param listener
+	 *            the <code>BaseListener</code> handling the requests
+	 * @param socket
+	 *            the <code>Socket</code> to handle the requests of
+	 */
+	public DefaultWorkerThread(final BaseListener listener,
+			final Socket socket) {
+		super(socket);
+
+		this.listener = listener;
+		this.settings = listener.getWorkerSettings();
+		this.usePipeline = listener.getCodecSettings() != null
+				|| Framing.LENGTH.equals(settings.getFraming());
+		this.tagged = !usePipeline
+				&& Framing.TAGGED.equals(settings.getFraming());
+		this.async = !usePipeline && (tagged || settings.isAsync());
+
+		// the answers of a codec-pipeline are flushed per read
+		if (settings.isPipelined()) {
+			this.flushLimit = settings.getPipelineLimit();
+		} else {
+			this.flushLimit = listener.getCodecSettings() == null ? 1
+					: Integer.MAX_VALUE;
+		}
+		this.separator = System.getProperty("line.separator").getBytes(
+				settings.getCharset());
+
+		setCharset(settings.getCharset());
+		setMaxLineLength(settings.getMaxLineLength());
+		setBufferPool(listener.getBufferPool());
+		setCompression(settings.isCompression());
+		setCompressionLevel(settings.getCompressionLevel());
+	}
+
+	@Override
+	public void run() {
+		try {
+			final InputStream in = createSocketInputStream();
+			out = createSocketOutputStream();
+			pipeline = createPipeline();
+			replies = async ? createReplies() : null;
+
+			while (receive(in)) {
+				handleFrames();
+			}
+			handleEnd();
+		} catch (final InterruptedException e) {
+			// the worker is closed
+		} catch (final FrameTooLargeException e) {
+			if (LOG.isWarnEnabled()) {
+				LOG.warn("Closing the connection of "
+						+ getSocket().getRemoteSocketAddress() + ", "
+						+ e.getMessage());
+			}
+		} catch (final SocketException e) {
+			// generally ignore the socket is just closed
+			if (LOG.isTraceEnabled()) {
+				LOG.trace("Caught SocketException and ignored it.", e);
+			}
+		} catch (final ClosedChannelException e) {
+			// the socket of a channel (e.g. SO_REUSEPORT) is closed
+			if (LOG.isTraceEnabled()) {
+				LOG.trace("Caught ClosedChannelException and ignored it.", e);
+			}
+		} catch (final EOFException e) {
+			// the stream ended within a frame
+			if (LOG.isTraceEnabled()) {
+				LOG.trace("Caught EOFException and ignored it.", e);
+			}
+		} catch (final IOException e) {
+			listener.getExceptionRegistry().throwException(
+					BaseListenerException.class, 1004, e, listener.getPort());
+		} finally {
+			releaseReply();
+			if (pipeline != null) {
+				pipeline.release();
+			}
+			close();
+		}
+	}
+
+	/**
+	 * Creates the <code>CodecPipeline</code> of the connection. The messages
+	 * of a codec-pipeline are passed to
+	 * {@link BaseListener#handleMessage(Object)} (if no handler is defined),
+	 * the frames of the built-in framings to
+	 * {@link BaseListener#handleFrame(ByteBuffer)}. A message exceeding the
+	 * line-rate is answered with the message of the <code>RateLimiter</code>.
+	 *
+	 * @return the created <code>CodecPipeline</code>
+	 */
+	protected CodecPipeline createPipeline() {
+		final CodecSettings codec = listener.getCodecSettings();
+
+		final IMessageHandler handler;
+		if (codec == null) {
+			handler = new IMessageHandler() {
+
+				@Override
+				public Object handle(final Object message) {
+					return listener.handleFrame((ByteBuffer) message);
+				}
+			};
+		} else {
+			handler = codec.getHandler(new IMessageHandler() {
+
+				@Override
+				public Object handle(final Object message) {
+					return listener.handleMessage(message);
+				}
+			});
+		}
+
+		final CodecSettings stages = codec == null ? listener
+				.getFramingSettings() : codec;
+		return stages.createPipeline(new IMessageHandler() {
+
+			@Override
+			public Object handle(final Object message) {
+				if (message == null || acquireLine()) {
+					return handler.handle(message);
+				} else {
+					return getRateLimiter().getMessage();
+				}
+			}
+		}, getBufferPool());
+	}
+
+	/**
+	 * Creates the <code>OrderedReplies</code> of an asynchronous connection,
+	 * which writes the completed answers as lines and closes the worker if
+	 * they cannot be written.
+	 *
+	 * @return the created <code>OrderedReplies</code>
+	 */
+	protected OrderedReplies createReplies() {
+		return new OrderedReplies(settings.getMaxInFlight(), tagged) {
+
+			@Override
+			protected void completed() {
+
+				// poll and write atomically to keep the order
+				synchronized (this) {
+					try {
+						for (final String output : poll()) {
+							writeLine(encode(output));
+						}
+						out.flush();
+					} catch (final IOException e) {
+						if (LOG.isTraceEnabled()) {
+							LOG.trace("Closing the worker, the answers "
+									+ "cannot be written.", e);
+						}
+						DefaultWorkerThread.this.close();
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Reads the data available (waiting for at least one byte) and passes it
+	 * to the <code>CodecPipeline</code>. If a <code>BufferPool</code> is used,
+	 * the read buffer is only borrowed after the first byte is received.
+	 *
+	 * @param in
+	 *            the <code>InputStream</code> to read from
+	 *
+	 * @return <code>false</code> if the end of the stream is reached,
+	 *         otherwise <code>true</code>
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	protected boolean receive(final InputStream in) throws IOException {
+		final BufferPool pool = getBufferPool();
+		if (pool == null) {
+			if (readBuffer == null) {
+				readBuffer = new byte[READ_BUFFER_SIZE];
+			}
+
+			final int read = in.read(readBuffer);
+			if (read < 0) {
+				return false;
+			}
+			pipeline.receive(readBuffer, 0, read);
+
+			return true;
+		}
+
+		// wait for data without holding any buffer
+		final int b = in.read();
+		if (b < 0) {
+			return false;
+		}
+		final ByteBuffer lease = pool.acquire(READ_BUFFER_SIZE);
+		try {
+			final byte[] data = lease.array();
+			data[0] = (byte) b;
+			final int available = Math.min(in.available(),
+					READ_BUFFER_SIZE - 1);
+			final int read = available > 0 ? in.read(data, 1, available) : 0;
+			pipeline.receive(data, 0, 1 + Math.max(read, 0));
+		} finally {
+			pool.release(lease);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Handles all the complete frames buffered by the
+	 * <code>CodecPipeline</code>. The answers are flushed after at most
+	 * <code>pipelineLimit</code> frames (if pipelined, otherwise after each
+	 * line or frame) and after the last frame.
+	 *
+	 * @throws IOException
+	 *             if a frame cannot be handled or answered
+	 * @throws InterruptedException
+	 *             if the worker is closed while waiting for the capacity of
+	 *             the in-flight requests
+	 */
+	protected void handleFrames() throws IOException, InterruptedException {
+		final IdleReaper.Watch watch = getWatch();
+
+		int handled = 0;
+		int unflushed = 0;
+		ByteBuffer frame;
+		while ((frame = pipeline.nextFrame()) != null) {
+			if (watch != null && handled == 0) {
+				watch.processing();
+			}
+
+			handle(frame, pipeline.isPartial());
+			handled++;
+
+			if (replies != null) {
+				replies.awaitCapacity();
+			} else if (++unflushed == flushLimit) {
+				flush();
+				unflushed = 0;
+			}
+		}
+		if (unflushed > 0) {
+			flush();
+		}
+
+		if (watch != null && handled > 0) {
+			watch.handled(pipeline.hasBuffered());
+		}
+	}
+
+	/**
+	 * Handles the data left when the end of the stream is reached and informs
+	 * the <code>BaseListener</code> about the end of the stream, i.e. passes
+	 * <code>null</code> to the handler. The pending answers of asynchronous
+	 * requests are written prior to closing.
+	 *
+	 * @throws IOException
+	 *             if the data left cannot be handled or answered
+	 * @throws InterruptedException
+	 *             if the worker is closed while waiting for the pending
+	 *             answers
+	 */
+	protected void handleEnd() throws IOException, InterruptedException {
+		final ByteBuffer last = pipeline.lastFrame();
+		if (last != null) {
+			handle(last, false);
+		} else if (oversized) {
+			handleOversized(ByteBuffer.allocate(0), false);
+		}
+
+		if (usePipeline) {
+
+			// the end of the stream is passed, but not answered
+			pipeline.end();
+		} else if (tagged) {
+
+			// the answers of the end of the stream are not tagged
+			replies.awaitEmpty();
+			listener.handleInput(null);
+		} else if (async) {
+			replies.add(null, listener.handleInputAsync(null));
+			replies.awaitEmpty();
+		} else {
+			writeLine(listener.handleBytes(null, reply()));
+		}
+		flush();
+	}
+
+	/**
+	 * Handles the specified frame, i.e. passes it to the
+	 * <code>CodecPipeline</code> or the <code>BaseListener</code>.
+	 *
+	 * @param frame
+	 *            the frame to be handled, only valid during the call
+	 * @param partial
+	 *            <code>true</code> if the frame is a part of a line
+	 *            exceeding the <code>maxLineLength</code>
+	 *
+	 * @throws IOException
+	 *             if the frame cannot be handled or answered
+	 */
+	protected void handle(final ByteBuffer frame, final boolean partial)
+			throws IOException {
+		if (partial || oversized) {
+			handleOversized(frame, partial);
+		} else if (usePipeline) {
+			write(pipeline.handle(frame));
+		} else if (!async) {
+			if (acquireLine()) {
+				writeLine(listener.handleBytes(readOnly(frame), reply()));
+			} else {
+				writeLine(encode(getRateLimiter().getMessage()));
+			}
+		} else {
+			final String input = LineFramer.decode(frame, getCharset());
+			final String tag = tagged ? RequestTags.getTag(input) : null;
+
+			if (!acquireLine()) {
+				replies.add(tag, CompletableFuture
+						.completedFuture(getRateLimiter().getMessage()));
+			} else if (tagged) {
+				replies.add(tag,
+						listener.dispatchInput(RequestTags.getPayload(input)));
+			} else {
+				replies.add(tag, listener.handleInputAsync(input));
+			}
+		}
+	}
+
+	/**
+	 * Handles a part of a line exceeding the <code>maxLineLength</code> by
+	 * applying the <code>OversizePolicy</code>, i.e. the parts are skipped or
+	 * streamed to {@link BaseListener#handleChunk(String, boolean)}. The line
+	 * is answered with its last part.
+	 *
+	 * @param part
+	 *            the part of the line
+	 * @param partial
+	 *            <code>false</code> if the part is the last one of the line
+	 *
+	 * @throws IOException
+	 *             if the line cannot be answered
+	 */
+	protected void handleOversized(final ByteBuffer part,
+			final boolean partial) throws IOException {
+		if (!oversized) {
+			oversized = true;
+			oversizedLength = 0;
+			oversizedTag = tagged ? RequestTags.getTag(LineFramer.decode(part,
+					getCharset())) : null;
+
+			if (!acquireLine()) {
+				streaming = false;
+				rejection = getRateLimiter().getMessage();
+			} else {
+				streaming = OversizePolicy.STREAM.equals(settings
+						.getOversizePolicy());
+				rejection = settings.getOversizeMessage();
+			}
+		}
+		oversizedLength += part.remaining();
+
+		String answer = null;
+		if (streaming) {
+			answer = listener.handleChunk(
+					LineFramer.decode(part, getCharset()), !partial);
+		}
+		if (partial) {
+			return;
+		}
+		oversized = false;
+
+		if (!streaming) {
+			answer = rejection;
+
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Rejected a line of " + oversizedLength
+						+ " bytes received from "
+						+ getSocket().getRemoteSocketAddress() + ".");
+			}
+		}
+
+		if (async) {
+			replies.add(oversizedTag, CompletableFuture.completedFuture(answer));
+		} else {
+			writeLine(encode(answer));
+		}
+	}
+
+	/**
+	 * Gets a read-only view of the specified frame, the view is reused and
+	 * only valid until the next frame is handled.
+	 *
+	 * @param frame
+	 *            the frame to get the view for
+	 *
+	 * @return the read-only view of the frame
+	 */
+	protected ByteBuffer readOnly(final ByteBuffer frame) {
+		if (view == null || viewed != frame) {
+			viewed = frame;
+			view = frame.asReadOnlyBuffer();
+		}
+		view.limit(frame.limit());
+		view.position(frame.position());
+
+		return view;
+	}
+
+	/**
+	 * Gets the cleared reply-buffer passed to
+	 * {@link BaseListener#handleBytes(ByteBuffer, ByteBuffer)}. If a
+	 * <code>BufferPool</code> is used, the buffer is borrowed until the
+	 * answers are flushed.
+	 *
+	 * @return the cleared reply-buffer
+	 */
+	protected ByteBuffer reply() {
+		if (reply == null) {
+			final BufferPool pool = getBufferPool();
+			reply = pool == null ? ByteBuffer.allocate(OUTPUT_BUFFER_SIZE)
+					: pool.acquire(OUTPUT_BUFFER_SIZE);
+		}
+		reply.clear();
+
+		return reply;
+	}
+
+	/**
+	 * Releases the reply-buffer, if borrowed from the <code>BufferPool</code>.
+	 */
+	protected void releaseReply() {
+		final BufferPool pool = getBufferPool();
+		if (pool != null && reply != null) {
+			pool.release(reply);
+			reply = null;
+		}
+	}
+
+	/**
+	 * Encodes the specified answer using the <code>Charset</code> of the
+	 * worker.
+	 *
+	 * @param output
+	 *            the answer to be encoded, can be <code>null</code>
+	 *
+	 * @return the encoded answer, <code>null</code> if the answer is
+	 *         <code>null</code>
+	 */
+	protected ByteBuffer encode(final String output) {
+		return output == null ? null : getCharset().encode(output);
+	}
+
+	/**
+	 * Writes the remaining bytes of the specified answer followed by the
+	 * line-separator.
+	 *
+	 * @param output
+	 *            the answer to be written, <code>null</code> to write an
+	 *            empty line
+	 *
+	 * @throws IOException
+	 *             if the answer cannot be written
+	 */
+	protected void writeLine(final ByteBuffer output) throws IOException {
+		write(output);
+		out.write(separator);
+	}
+
+	/**
+	 * Writes the remaining bytes of the specified answer. A buffer not backed
+	 * by an array (e.g. a read-only view of the request) is copied using the
+	 * array of the reply-buffer.
+	 *
+	 * @param output
+	 *            the answer to be written, <code>null</code> to write nothing
+	 *
+	 * @throws IOException
+	 *             if the answer cannot be written
+	 */
+	protected void write(final ByteBuffer output) throws IOException {
+		if (output == null) {
+			return;
+		} else if (output.hasArray()) {
+			out.write(output.array(), output.arrayOffset() + output.position(),
+					output.remaining());
+			return;
+		}
+
+		final byte[] copy = reply().array();
+		final ByteBuffer data = output.duplicate();
+		while (data.hasRemaining()) {
+			final int length = Math.min(copy.length, data.remaining());
+			data.get(copy, 0, length);
+			out.write(copy, 0, length);
+		}
+	}
+
+	/**
+	 * Flushes the written answers, the reply-buffer is released afterwards.
+	 * The answers of asynchronous requests are flushed by the thread
+	 * completing them.
+	 *
+	 * @throws IOException
+	 *             if the answers cannot be flushed
+	 */
+	protected void flush() throws IOException {
+		if (replies == null) {
+			out.flush();
+			releaseReply();
+		}
+	}
+}
@@ -2,17 +2,32 @@ package net.meisen.general.server.control;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
 
 import net.meisen.general.server.control.messages.ShutdownMessage;
+import net.meisen.general.server.listener.utility.Compression;
+import net.meisen.general.server.listener.utility.RequestTags;
 
 /**
  * The implementation to control a <code>Server</code> from an application. The
  * <code>ServerController</code> can e.g. send a shut-down message to the
- * server.
+ * server.<br/>
+ * <br/>
+ * If the <code>ServerController</code> is <code>multiplexed</code>, the
+ * messages sent by {@link #sendMessages(String...)} are prefixed by a
+ * request-id and written without waiting for the answers, i.e. the server
+ * (using the <code>tagged</code> framing) handles them concurrently and the
+ * answers are matched by their request-id, regardless of the order they
+ * arrive in. At most <code>maxInFlight</code> messages are unanswered at
+ * any time, so that neither side blocks writing while the other one waits
+ * for its answers.
  * 
  * @author pmeisen
  * 
@@ -36,6 +51,10 @@ public class ServerController {
 	private final int port;
 	private final String host;
 
+	private boolean multiplexed = false;
+	private boolean compressed = false;
+	private int maxInFlight = 16;
+
 	/**
 	 * The default constructor which specifies which host and port should be
 	 * controlled.
@@ -67,11 +86,10 @@ public class ServerController {
 	 */
 	public String sendMessage(final String msg) {
 		try {
-			final Socket socket = new Socket(host, port);
-			final PrintWriter out = new PrintWriter(socket.getOutputStream(),
-					true);
+			final Channel channel = open();
+			final PrintWriter out = new PrintWriter(channel.out, true);
 			final BufferedReader in = new BufferedReader(new InputStreamReader(
-					socket.getInputStream()));
+					channel.in));
 
 			// send the message
 			out.println(msg);
@@ -80,7 +98,7 @@ public class ServerController {
 			final String answer = in.readLine();
 
 			// close the Socket
-			socket.close();
+			channel.socket.close();
 
 			return answer;
 		} catch (final UnknownHostException e) {
@@ -91,6 +109,194 @@ public class ServerController {
 		}
 	}
 
+	/**
+	 * Sends the specified messages using a single connection. If the
+	 * <code>ServerController</code> is <code>multiplexed</code>, the
+	 * messages are sent within a window of <code>maxInFlight</code>
+	 * unanswered messages and the answers are read in the order the server
+	 * completes them. Otherwise each message is sent after the answer
+	 * of the previous one is received.
+	 * 
+	 * @param msgs
+	 *            the messages to be send
+	 * 
+	 * @return the replies of the server in the order of the messages
+	 */
+	public List<String> sendMessages(final String... msgs) {
+		final String[] answers = new String[msgs.length];
+
+		try {
+			final Channel channel = open();
+			try {
+				final PrintWriter out = new PrintWriter(channel.out, false);
+				final BufferedReader in = new BufferedReader(
+						new InputStreamReader(channel.in));
+
+				if (multiplexed) {
+					int sent = 0;
+					for (int i = 0; i < msgs.length; i++) {
+
+						// fill the window, the index is used as request-id
+						if (sent < msgs.length && sent - i < maxInFlight) {
+							do {
+								out.println(RequestTags.tag(
+										String.valueOf(sent), msgs[sent]));
+								sent++;
+							} while (sent < msgs.length
+									&& sent - i < maxInFlight);
+							out.flush();
+						}
+
+						// the answers arrive in any order
+						final String answer = in.readLine();
+						if (answer == null) {
+							throw new ServerControllerException(
+									"The connection was closed prior to "
+											+ "receiving all answers.");
+						}
+
+						final int pos = parseTag(RequestTags.getTag(answer),
+								msgs.length);
+						if (pos < 0 || answers[pos] != null) {
+							throw new ServerControllerException(
+									"Received an unexpected answer '" + answer
+											+ "'.");
+						}
+						answers[pos] = RequestTags.getPayload(answer);
+					}
+				} else {
+					for (int i = 0; i < msgs.length; i++) {
+						out.println(msgs[i]);
+						out.flush();
+						answers[i] = in.readLine();
+					}
+				}
+			} finally {
+				channel.socket.close();
+			}
+		} catch (final UnknownHostException e) {
+			throw new ServerControllerException("Unable to connect to server.",
+					e);
+		} catch (final IOException e) {
+			throw new ServerControllerException("Unable to write to socket.", e);
+		}
+
+		return Arrays.asList(answers);
+	}
+
+	/**
+	 * Opens a connection to the server and, if enabled, requests the
+	 * compression of the connection.
+	 * 
+	 * @return the opened connection
+	 * 
+	 * @throws IOException
+	 *             if the connection cannot be opened
+	 */
+	protected Channel open() throws IOException {
+		final Socket socket = new Socket(host, port);
+		try {
+			if (compressed
+					&& Compression.request(socket.getInputStream(),
+							socket.getOutputStream())) {
+				return new Channel(socket, Compression.inflate(socket
+						.getInputStream()), Compression.deflate(
+						socket.getOutputStream(), -1));
+			} else {
+				return new Channel(socket, socket.getInputStream(),
+						socket.getOutputStream());
+			}
+		} catch (final IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	private static int parseTag(final String tag, final int size) {
+		try {
+			final int pos = Integer.parseInt(tag);
+			return pos < size ? pos : -1;
+		} catch (final NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Checks if the messages sent by {@link #sendMessages(String...)} are
+	 * multiplexed, i.e. tagged by a request-id and sent at once.
+	 * 
+	 * @return <code>true</code> if the messages are multiplexed, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isMultiplexed() {
+		return multiplexed;
+	}
+
+	/**
+	 * Defines if the messages sent by {@link #sendMessages(String...)} are
+	 * multiplexed, i.e. tagged by a request-id and sent at once. The server
+	 * must use the <code>tagged</code> framing.
+	 * 
+	 * @param multiplexed
+	 *            <code>true</code> if the messages should be multiplexed,
+	 *            otherwise <code>false</code>
+	 */
+	public void setMultiplexed(final boolean multiplexed) {
+		this.multiplexed = multiplexed;
+	}
+
+	/**
+	 * Gets the maximal amount of multiplexed messages sent without having
+	 * received their answers.
+	 * 
+	 * @return the maximal amount of unanswered messages
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * Sets the maximal amount of multiplexed messages sent without having
+	 * received their answers. The value must not exceed the
+	 * <code>maxInFlight</code> of the server, which stops reading when as
+	 * many requests are unanswered.
+	 * 
+	 * @param maxInFlight
+	 *            the maximal amount of unanswered messages
+	 */
+	public void setMaxInFlight(final int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException(
+					"The maxInFlight must be at least 1.");
+		}
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Checks if the compression of the connections is requested.
+	 * 
+	 * @return <code>true</code> if the compression is requested, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * Defines if the compression of the connections is requested. A server
+	 * not enabling the compression declines the request and the connection
+	 * is used uncompressed.
+	 * 
+	 * @param compressed
+	 *            <code>true</code> if the compression should be requested,
+	 *            otherwise <code>false</code>
+	 * 
+	 * @see Compression
+	 */
+	public void setCompressed(final boolean compressed) {
+		this.compressed = compressed;
+	}
+
 	/**
 	 * Parses the arguments passed to the main-method.
 	 * 
@@ -168,6 +374,25 @@ public class ServerController {
 		}
 	}
 
+	/**
+	 * The streams of a connection to the server.
+	 * 
+	 * @author pmeisen
+	 * 
+	 */
+	protected static class Channel {
+		private final Socket socket;
+		private final InputStream in;
+		private final OutputStream out;
+
+		private Channel(final Socket socket, final InputStream in,
+				final OutputStream out) {
+			this.socket = socket;
+			this.in = in;
+			this.out = out;
+		}
+	}
+
 	/**
 	 * Main method to control the server using arguments.
 	 * 
@@ -1,25 +1,54 @@
 package net.meisen.general.server.listener;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
-import net.meisen.general.genmisc.exceptions.registry.IExceptionRegistry;
 import net.meisen.general.genmisc.types.Classes;
 import net.meisen.general.sbconfigurator.api.IConfiguration;
+import net.meisen.general.server.api.ILineSink;
 import net.meisen.general.server.api.impl.BaseListener;
 import net.meisen.general.server.exceptions.OutputListenerException;
+import net.meisen.general.server.listener.output.GroupCommitSink;
+import net.meisen.general.server.listener.output.AsyncSink;
+import net.meisen.general.server.listener.output.IngestJournal;
+import net.meisen.general.server.listener.output.MappedFileSink;
+import net.meisen.general.server.listener.output.OutputSettings;
+import net.meisen.general.server.listener.output.OverflowPolicy;
 import net.meisen.general.server.settings.pojos.Connector;
 import net.meisen.general.server.settings.pojos.Extension;
 
 /**
- * Listener which sends the
+ * Listener which sends the received lines to a <code>PrintStream</code>. By
+ * default each line is written by the thread of the connection, the
+ * <code>async</code> extension lets a single writer-thread write the lines in
+ * batches instead. The <code>output</code> extension can also define a file
+ * the lines are appended to (see {@link OutputSettings}). With the
+ * <code>durable</code> extension the answer of a line is held until the line
+ * is forced to the file by a group commit. The <code>journal</code> extension
+ * appends the accepted lines to an {@link IngestJournal}, which can be
+ * replayed (see {@link #replay(long)}). If the output is durable, the
+ * segments of the journal only containing committed lines are released. The
+ * lines written to an indexed file can be streamed by time (see
+ * {@link #stream(long, long, ILineSink)}).
  * 
  * @author pmeisen
  * 
  */
 public class OutputListener extends BaseListener {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(OutputListener.class);
 
 	/**
 	 * The name of this <code>Listener</code> used when defined it, instead of the
@@ -28,10 +57,10 @@ public class OutputListener extends BaseListener {
 	public static final String NAME = "OUTPUT";
 
 	private PrintStream out = System.out;
-
-	@Autowired
-	@Qualifier(IConfiguration.coreExceptionRegistryId)
-	private IExceptionRegistry exceptionRegistry;
+	private OutputSettings outputSettings = new OutputSettings();
+	private volatile ILineSink sink = null;
+	private volatile IngestJournal journal = null;
+	private final SortedSet<Long> uncommitted = new TreeSet<Long>();
 
 	@Autowired
 	@Qualifier("coreConfiguration")
@@ -55,28 +84,400 @@ public class OutputListener extends BaseListener {
 				try {
 					setPrintStream((PrintStream) clazz.newInstance());
 				} catch (final Exception e) {
-					exceptionRegistry.throwException(OutputListenerException.class, 1000,
+					getExceptionRegistry().throwException(
+							OutputListenerException.class, 1000,
 							e, clazz.getName());
 				}
 			} else {
-				exceptionRegistry.throwException(OutputListenerException.class, 1001,
-						value);
+				getExceptionRegistry().throwException(
+						OutputListenerException.class, 1001, value);
 			}
 		} else if ((value = output.<String> getProperty("ref")) != null) {
 
 			// get the defined module
 			final Object instance = configuration.getModule(value);
 			if (instance == null || instance instanceof PrintStream == false) {
-				exceptionRegistry.throwException(OutputListenerException.class, 1002,
-						value);
+				getExceptionRegistry().throwException(
+						OutputListenerException.class, 1002, value);
 			} else {
 				setPrintStream((PrintStream) instance);
 			}
 		}
+
+		// check if the output is written to a file or asynchronously
+		final Extension async = c.getExtension("async");
+		final Extension durable = c.getExtension("durable");
+		final Extension journal = c.getExtension("journal");
+		if (async != null || durable != null || journal != null
+				|| (output != null && output.<String> getProperty("file") != null)) {
+			outputSettings = createOutputSettings(c, output, async, durable,
+					journal);
+		}
+	}
+
+	/**
+	 * Creates the <code>OutputSettings</code> defined by the
+	 * <code>output</code>, the <code>async</code>, the <code>durable</code>
+	 * and the <code>journal</code> extension of the <code>Connector</code>.
+	 * 
+	 * @param c
+	 *          the <code>Connector</code> the settings are created for
+	 * @param output
+	 *          the <code>output</code> extension, can be <code>null</code>
+	 * @param async
+	 *          the <code>async</code> extension, can be <code>null</code>
+	 * @param durable
+	 *          the <code>durable</code> extension, can be <code>null</code>
+	 * @param journal
+	 *          the <code>journal</code> extension, can be <code>null</code>
+	 * 
+	 * @return the created <code>OutputSettings</code>
+	 */
+	protected OutputSettings createOutputSettings(final Connector c,
+			final Extension output, final Extension async,
+			final Extension durable, final Extension journal) {
+		final OutputSettings settings = new OutputSettings();
+		settings.setCharset(getWorkerSettings().getCharset());
+
+		// get the file
+		final String file = output == null ? null : output
+				.<String> getProperty("file");
+		if (file != null) {
+			settings.setFile(new File(file));
+			settings.setIndex(output.getBooleanProperty("index", false));
+			try {
+				settings.setSegmentSize(output.getLongProperty("segmentSize",
+						settings.getSegmentSize()));
+				settings.setRolloverInterval(output.getLongProperty(
+						"rolloverInterval", settings.getRolloverInterval()));
+				settings.setIndexResolution(output.getLongProperty(
+						"indexResolution", settings.getIndexResolution()));
+				settings.setIndexInterval(output.getLongProperty(
+						"indexInterval", settings.getIndexInterval()));
+			} catch (final NumberFormatException e) {
+				getExceptionRegistry().throwException(
+						OutputListenerException.class, 1003,
+						e, "output", c.toString());
+			}
+		}
+
+		// get the journal
+		final String journalFile = journal == null ? null : journal
+				.<String> getProperty("file");
+		if (journalFile != null) {
+			settings.setJournal(new File(journalFile));
+			try {
+				settings.setJournalSegmentSize(journal.getLongProperty(
+						"segmentSize", settings.getJournalSegmentSize()));
+			} catch (final NumberFormatException e) {
+				getExceptionRegistry().throwException(
+						OutputListenerException.class, 1003,
+						e, "journal", c.toString());
+			}
+
+			final String failureMessage = journal
+					.<String> getProperty("failureMessage");
+			if (failureMessage != null) {
+				settings.setFailureMessage(failureMessage);
+			}
+		}
+
+		// get the group commit
+		if (durable != null) {
+			settings.setDurable(durable.getBooleanProperty("enabled", true));
+			try {
+				settings.setCommitInterval(durable.getLongProperty(
+						"commitInterval", settings.getCommitInterval()));
+				settings.setMaxBatch(durable.getIntProperty("maxBatch",
+						settings.getMaxBatch()));
+			} catch (final NumberFormatException e) {
+				getExceptionRegistry().throwException(
+						OutputListenerException.class, 1003,
+						e, "durable", c.toString());
+			}
+
+			final String failureMessage = durable
+					.<String> getProperty("failureMessage");
+			if (failureMessage != null) {
+				settings.setFailureMessage(failureMessage);
+			}
+		}
+
+		// validate the settings without any asynchronous writing
+		if (async == null) {
+			if (!settings.isValid()) {
+				getExceptionRegistry().throwException(
+						OutputListenerException.class, 1005,
+						settings.toString(), c.toString());
+			}
+			return settings;
+		}
+		settings.setAsync(async.getBooleanProperty("enabled", true));
+
+		// get the policy
+		final String overflow = async.<String> getProperty("overflow");
+		if (overflow != null) {
+			final OverflowPolicy policy = OverflowPolicy.find(overflow);
+			if (policy == null) {
+				getExceptionRegistry().throwException(
+						OutputListenerException.class, 1004,
+						overflow, Arrays.asList(OverflowPolicy.values()));
+			}
+			settings.setOverflowPolicy(policy);
+		}
+
+		// get the spill file
+		final String spillFile = async.<String> getProperty("spillFile");
+		if (spillFile != null) {
+			settings.setSpillFile(new File(spillFile));
+		}
+
+		// get the sizes
+		try {
+			settings.setCapacity(async.getIntProperty("capacity",
+					settings.getCapacity()));
+			settings.setBatchSize(async.getIntProperty("batchSize",
+					settings.getBatchSize()));
+			settings.setFlushInterval(async.getLongProperty("flushInterval",
+					settings.getFlushInterval()));
+			settings.setSpillSegmentSize(async.getLongProperty(
+					"spillSegmentSize", settings.getSpillSegmentSize()));
+		} catch (final NumberFormatException e) {
+			getExceptionRegistry().throwException(
+					OutputListenerException.class, 1003,
+					e, "async", c.toString());
+		}
+
+		// validate the settings
+		if (settings.isSpillFileConflicting()) {
+			getExceptionRegistry().throwException(
+					OutputListenerException.class, 1007,
+					settings.getSpillFile(), c.toString());
+		} else if (!settings.isValid()) {
+			getExceptionRegistry().throwException(
+					OutputListenerException.class, 1005,
+					settings.toString(), c.toString());
+		}
+
+		return settings;
+	}
+
+	@Override
+	public void open() {
+		if (journal == null) {
+			try {
+				journal = outputSettings.createJournal();
+			} catch (final IOException e) {
+				getExceptionRegistry().throwException(
+						OutputListenerException.class, 1006, e,
+						outputSettings.getJournal(), toString());
+			}
+		}
+		if (sink == null) {
+			try {
+				sink = outputSettings.createSink(outputSettings
+						.createTarget(out));
+			} catch (final IOException e) {
+				closeJournal();
+				getExceptionRegistry().throwException(
+						OutputListenerException.class, 1006, e,
+						outputSettings.getFile(), toString());
+			} catch (final RuntimeException e) {
+				closeJournal();
+				throw e;
+			}
+		}
+
+		super.open();
+	}
+
+	@Override
+	public void close() {
+		super.close();
+
+		final ILineSink current = sink;
+		sink = null;
+		if (current != null) {
+			try {
+				current.close();
+			} catch (final IOException e) {
+				if (LOG.isErrorEnabled()) {
+					LOG.error("Failed to close the output of '" + toString()
+							+ "'.", e);
+				}
+			}
+		}
+
+		closeJournal();
+	}
+
+	/**
+	 * Closes the journal, a failure is logged only.
+	 */
+	protected void closeJournal() {
+		final IngestJournal currentJournal = journal;
+		journal = null;
+		if (currentJournal != null) {
+			try {
+				currentJournal.close();
+			} catch (final IOException e) {
+				if (LOG.isErrorEnabled()) {
+					LOG.error("Failed to close the journal of '" + toString()
+							+ "'.", e);
+				}
+			}
+		}
+		synchronized (uncommitted) {
+			uncommitted.clear();
+		}
+	}
+
+	/**
+	 * Re-delivers the lines of the journal with a sequence-number of at least
+	 * <code>from</code> to the sink of the listener, e.g. to deliver the lines
+	 * lost by a failed output after a restart.
+	 * 
+	 * @param from
+	 *          the sequence-number of the first line to be re-delivered
+	 * 
+	 * @return the sequence-number of the last re-delivered line,
+	 *         <code>-1</code> if no line was re-delivered
+	 * 
+	 * @throws IOException
+	 *           if the journal cannot be read or the sink fails
+	 */
+	public long replay(final long from) throws IOException {
+		final IngestJournal currentJournal = journal;
+		final ILineSink current = sink;
+		if (currentJournal == null || current == null) {
+			throw new IOException("The listener '" + toString()
+					+ "' isn't opened or doesn't have any journal.");
+		}
+
+		return currentJournal.replay(from, current);
+	}
+
+	/**
+	 * Streams the lines written to the indexed file between the two
+	 * timestamps (both inclusive) to the specified sink, e.g. to investigate
+	 * the lines received within a time window.
+	 * 
+	 * @param from
+	 *          the time (in milliseconds) the first line was written
+	 * @param to
+	 *          the time (in milliseconds) the last line was written
+	 * @param target
+	 *          the sink to stream the lines to
+	 * 
+	 * @return the amount of streamed lines
+	 * 
+	 * @throws IOException
+	 *           if the listener isn't opened or doesn't write to an indexed
+	 *           file, or if the file cannot be read
+	 * 
+	 * @see MappedFileSink#stream(long, long, ILineSink)
+	 */
+	public long stream(final long from, final long to, final ILineSink target)
+			throws IOException {
+		ILineSink current = sink;
+		if (current instanceof AsyncSink) {
+			current = ((AsyncSink) current).getTarget();
+		} else if (current instanceof GroupCommitSink) {
+			current = ((GroupCommitSink) current).getTarget();
+		}
+
+		if (current instanceof MappedFileSink == false) {
+			throw new IOException("The listener '" + toString()
+					+ "' isn't opened or doesn't write to any file.");
+		}
+
+		return ((MappedFileSink) current).stream(from, to, target);
+	}
+
+	/**
+	 * Gets the journal the accepted lines are appended to.
+	 * 
+	 * @return the journal, <code>null</code> if the listener isn't opened or
+	 *         doesn't have any journal
+	 */
+	public IngestJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Appends the specified line to the journal, if there is one. If the
+	 * output is durable, the line is tracked until it's committed (see
+	 * {@link #committed(long)}).
+	 * 
+	 * @param input
+	 *          the accepted line
+	 * 
+	 * @return the sequence-number of the journaled line, <code>0</code> if
+	 *         there is no journal, <code>-1</code> if the line cannot be
+	 *         journaled
+	 */
+	protected long journal(final String input) {
+		final IngestJournal current = journal;
+		if (current == null) {
+			return 0;
+		}
+
+		try {
+			if (!outputSettings.isDurable()) {
+				return current.append(input);
+			}
+
+			// the uncommitted lines are appended in order
+			synchronized (uncommitted) {
+				final long sequence = current.append(input);
+				uncommitted.add(sequence);
+				return sequence;
+			}
+		} catch (final IOException e) {
+			if (LOG.isErrorEnabled()) {
+				LOG.error("Failed to journal a line of '" + toString() + "'.", e);
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Marks the journaled line as committed by the durable output and
+	 * releases the segments of the journal, which only contain committed
+	 * lines. A line failing to commit is never marked, i.e. its segment is
+	 * kept to be replayed.
+	 * 
+	 * @param sequence
+	 *          the sequence-number of the committed line, <code>0</code> if
+	 *          the line wasn't journaled
+	 */
+	protected void committed(final long sequence) {
+		final IngestJournal current = journal;
+		if (sequence < 1 || current == null) {
+			return;
+		}
+
+		// the first line not committed yet
+		final long first;
+		synchronized (uncommitted) {
+			uncommitted.remove(sequence);
+			first = uncommitted.isEmpty() ? current.getNextSequence()
+					: uncommitted.first();
+		}
+
+		try {
+			current.release(first);
+		} catch (final IOException e) {
+			if (LOG.isWarnEnabled()) {
+				LOG.warn("Failed to release the journal of '" + toString()
+						+ "'.", e);
+			}
+		}
 	}
 
 	/**
 	 * Defines the <code>PrintStream</code> to write the received messages to.
+	 * The stream must be set prior to opening the listener.
 	 * 
 	 * @param out
 	 *          the <code>PrintStream</code> to write the received messages to
@@ -85,15 +486,103 @@ public class OutputListener extends BaseListener {
 		this.out = out;
 	}
 
+	/**
+	 * Gets the <code>OutputSettings</code> of the listener.
+	 * 
+	 * @return the <code>OutputSettings</code>
+	 */
+	public OutputSettings getOutputSettings() {
+		return outputSettings;
+	}
+
+	/**
+	 * Gets the sink the received lines are written to.
+	 * 
+	 * @return the sink the received lines are written to, <code>null</code>
+	 *         if the listener isn't opened
+	 */
+	public ILineSink getSink() {
+		return sink;
+	}
+
 	@Override
 	protected String handleInput(final String input) {
-		if (input != null) {
+		if (input == null) {
+			return "";
+		}
+		final long sequence = journal(input);
+		if (sequence < 0) {
+			return outputSettings.getFailureMessage();
+		}
+
+		final ILineSink current = sink;
+		if (current == null) {
 			out.println(input);
+		} else {
+			try {
+				current.write(input);
+				if (outputSettings.isDurable()) {
+					committed(sequence);
+				}
+			} catch (final IOException e) {
+				if (LOG.isErrorEnabled()) {
+					LOG.error("Failed to write a line to the output of '"
+							+ toString() + "'.", e);
+				}
+
+				if (outputSettings.isDurable()) {
+					return outputSettings.getFailureMessage();
+				}
+			}
 		}
 
 		return "";
 	}
 
+	/**
+	 * Handles the input asynchronously if the output is durable, i.e. the
+	 * returned stage completes when the line is committed and the thread of
+	 * the connection can read the next lines meanwhile. Otherwise the input is
+	 * handled by {@link #handleInput(String)}.
+	 */
+	@Override
+	protected CompletionStage<String> handleInputAsync(final String input) {
+		final ILineSink current = sink;
+		if (input == null || current instanceof GroupCommitSink == false) {
+			return super.handleInputAsync(input);
+		}
+
+		final CompletableFuture<Void> commit;
+		final long sequence = journal(input);
+		if (sequence < 0) {
+			return CompletableFuture.completedFuture(outputSettings
+					.getFailureMessage());
+		}
+		try {
+			commit = ((GroupCommitSink) current).append(input);
+		} catch (final IOException e) {
+			if (LOG.isErrorEnabled()) {
+				LOG.error("Failed to write a line to the output of '" + toString()
+						+ "'.", e);
+			}
+			return CompletableFuture.completedFuture(outputSettings
+					.getFailureMessage());
+		}
+
+		return commit.handle(new BiFunction<Void, Throwable, String>() {
+
+			@Override
+			public String apply(final Void result, final Throwable t) {
+				if (t != null) {
+					return outputSettings.getFailureMessage();
+				}
+
+				committed(sequence);
+				return "";
+			}
+		});
+	}
+
 	@Override
 	public String toString() {
 		return NAME + (getPort() == -1 ? "" : " (" + getPort() + ")");
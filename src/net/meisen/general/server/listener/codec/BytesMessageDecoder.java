@@ -0,0 +1,47 @@
+package net.meisen.general.server.listener.codec;
+
+import java.nio.ByteBuffer;
+
+import net.meisen.general.server.api.IMessageDecoder;
+
+/**
+ * An <code>IMessageDecoder</code> passing the frames as read-only
+ * <code>ByteBuffer</code> instances, i.e. the message is only valid while it
+ * is handled. If the codec isn't pooled (see {@link CodecSettings#isPooled()}),
+ * a copy of each frame is passed instead, which can be kept by the handler.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class BytesMessageDecoder implements IMessageDecoder {
+	private final boolean pooled;
+
+	/**
+	 * Creates a decoder passing read-only views of the frames.
+	 */
+	public BytesMessageDecoder() {
+		this.pooled = true;
+	}
+
+	/**
+	 * Creates a decoder using the settings of the codec.
+	 * 
+	 * @param settings
+	 *            the settings of the codec
+	 */
+	public BytesMessageDecoder(final CodecSettings settings) {
+		this.pooled = settings.isPooled();
+	}
+
+	@Override
+	public Object decode(final ByteBuffer frame) {
+		if (pooled) {
+			return frame.asReadOnlyBuffer();
+		}
+
+		final ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+		copy.put(frame.duplicate()).flip();
+
+		return copy;
+	}
+}
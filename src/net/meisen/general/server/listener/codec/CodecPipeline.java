@@ -0,0 +1,239 @@
+package net.meisen.general.server.listener.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import net.meisen.general.server.api.IFrameDecoder;
+import net.meisen.general.server.api.IMessageDecoder;
+import net.meisen.general.server.api.IMessageEncoder;
+import net.meisen.general.server.api.IMessageHandler;
+import net.meisen.general.server.listener.utility.BufferPool;
+
+/**
+ * The codec-pipeline of a single connection, i.e. the chain of
+ * <code>IFrameDecoder</code>, <code>IMessageDecoder</code>,
+ * <code>IMessageHandler</code> and <code>IMessageEncoder</code>. The data
+ * received is passed to {@link #receive(byte[], int, int)}, afterwards the
+ * answers of all the complete frames are retrieved using {@link #next()}. The
+ * pipeline does not perform any I/O, i.e. it is used the same way by a
+ * blocking worker and by a selector-loop.<br/>
+ * <br/>
+ * A worker handling some frames itself (e.g. the parts of a line exceeding
+ * the maximal length) retrieves the frames using {@link #nextFrame()} and
+ * passes the others to {@link #handle(ByteBuffer)}. If a
+ * <code>BufferPool</code> is used, the buffer is only borrowed while data is
+ * buffered, i.e. an idle connection doesn't hold any buffer.
+ * 
+ * @author pmeisen
+ * 
+ * @see CodecSettings#createPipeline(IMessageHandler)
+ * 
+ */
+public class CodecPipeline {
+	private final static int INITIAL_BUFFER_SIZE = 1024;
+
+	private final IFrameDecoder frameDecoder;
+	private final IMessageDecoder messageDecoder;
+	private final IMessageHandler handler;
+	private final IMessageEncoder encoder;
+	private final BufferPool pool;
+
+	private ByteBuffer buffered;
+
+	/**
+	 * Creates a pipeline using the specified stages.
+	 * 
+	 * @param frameDecoder
+	 *            the <code>IFrameDecoder</code> of the connection
+	 * @param messageDecoder
+	 *            the <code>IMessageDecoder</code> to be used
+	 * @param handler
+	 *            the <code>IMessageHandler</code> to be used
+	 * @param encoder
+	 *            the <code>IMessageEncoder</code> to be used
+	 */
+	public CodecPipeline(final IFrameDecoder frameDecoder,
+			final IMessageDecoder messageDecoder,
+			final IMessageHandler handler, final IMessageEncoder encoder) {
+		this(frameDecoder, messageDecoder, handler, encoder, null);
+	}
+
+	/**
+	 * Creates a pipeline using the specified stages, which borrows its buffer
+	 * from the specified <code>BufferPool</code>.
+	 * 
+	 * @param frameDecoder
+	 *            the <code>IFrameDecoder</code> of the connection
+	 * @param messageDecoder
+	 *            the <code>IMessageDecoder</code> to be used
+	 * @param handler
+	 *            the <code>IMessageHandler</code> to be used
+	 * @param encoder
+	 *            the <code>IMessageEncoder</code> to be used
+	 * @param pool
+	 *            the <code>BufferPool</code> to borrow the buffer from,
+	 *            <code>null</code> to allocate an own buffer
+	 */
+	public CodecPipeline(final IFrameDecoder frameDecoder,
+			final IMessageDecoder messageDecoder,
+			final IMessageHandler handler, final IMessageEncoder encoder,
+			final BufferPool pool) {
+		if (frameDecoder == null || messageDecoder == null || handler == null
+				|| encoder == null) {
+			throw new NullPointerException("The stages cannot be null.");
+		}
+
+		this.frameDecoder = frameDecoder;
+		this.messageDecoder = messageDecoder;
+		this.handler = handler;
+		this.encoder = encoder;
+		this.pool = pool;
+
+		this.buffered = null;
+	}
+
+	/**
+	 * Adds the received data to the data buffered.
+	 * 
+	 * @param data
+	 *            the array containing the received data
+	 * @param offset
+	 *            the offset of the received data
+	 * @param length
+	 *            the amount of bytes received
+	 */
+	public void receive(final byte[] data, final int offset, final int length) {
+		if (buffered == null) {
+			buffered = allocate(Math.max(INITIAL_BUFFER_SIZE, length));
+		} else if (buffered.capacity() - buffered.remaining() < length) {
+			final int size = Math.max(buffered.capacity() << 1,
+					buffered.remaining() + length);
+			final ByteBuffer grown = allocate(size);
+			grown.put(buffered);
+			release();
+			buffered = grown;
+		} else {
+			buffered.compact();
+		}
+
+		buffered.put(data, offset, length);
+		buffered.flip();
+	}
+
+	/**
+	 * Decodes and handles the next complete frame buffered.
+	 * 
+	 * @return the encoded answer of the next frame or <code>null</code> if no
+	 *         complete frame is buffered
+	 * 
+	 * @throws IOException
+	 *             if a stage fails, e.g. if the frame is too large
+	 */
+	public ByteBuffer next() throws IOException {
+		final ByteBuffer frame = nextFrame();
+		return frame == null ? null : handle(frame);
+	}
+
+	/**
+	 * Decodes the next complete frame buffered, without handling it. The
+	 * frame is only valid until the pipeline is used again. A borrowed buffer
+	 * is released, if no data is buffered anymore.
+	 * 
+	 * @return the next frame or <code>null</code> if no complete frame is
+	 *         buffered
+	 * 
+	 * @throws IOException
+	 *             if the frame cannot be decoded, e.g. if the frame is too
+	 *             large
+	 */
+	public ByteBuffer nextFrame() throws IOException {
+		if (buffered == null) {
+			return null;
+		} else if (!buffered.hasRemaining()) {
+			if (pool != null) {
+				release();
+			}
+			return null;
+		}
+
+		return frameDecoder.decode(buffered);
+	}
+
+	/**
+	 * Decodes the data left when the end of the stream is reached, see
+	 * {@link IFrameDecoder#decodeLast(ByteBuffer)}.
+	 * 
+	 * @return the last frame or <code>null</code> if no data is left
+	 * 
+	 * @throws IOException
+	 *             if the data left isn't a valid frame
+	 */
+	public ByteBuffer lastFrame() throws IOException {
+		return buffered == null ? null : frameDecoder.decodeLast(buffered);
+	}
+
+	/**
+	 * Checks if the frame returned by the last call of {@link #nextFrame()} is
+	 * only a part of a frame, see {@link IFrameDecoder#isPartial()}.
+	 * 
+	 * @return <code>true</code> if the last frame is a part of a frame,
+	 *         otherwise <code>false</code>
+	 */
+	public boolean isPartial() {
+		return frameDecoder.isPartial();
+	}
+
+	/**
+	 * Decodes, handles and encodes the specified frame.
+	 * 
+	 * @param frame
+	 *            the frame to be handled
+	 * 
+	 * @return the encoded answer
+	 * 
+	 * @throws IOException
+	 *             if a stage fails
+	 */
+	public ByteBuffer handle(final ByteBuffer frame) throws IOException {
+		final Object message = messageDecoder.decode(frame);
+		return encoder.encode(handler.handle(message));
+	}
+
+	/**
+	 * Informs the <code>IMessageHandler</code> that the end of the stream is
+	 * reached, i.e. passes <code>null</code>.
+	 */
+	public void end() {
+		handler.handle(null);
+	}
+
+	/**
+	 * Checks if data of an incomplete frame is buffered.
+	 * 
+	 * @return <code>true</code> if data is buffered, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean hasBuffered() {
+		return buffered != null && buffered.hasRemaining();
+	}
+
+	/**
+	 * Releases the buffer, i.e. discards the buffered data. The pipeline must
+	 * be released when the connection is closed, if a <code>BufferPool</code>
+	 * is used.
+	 */
+	public void release() {
+		if (pool != null) {
+			pool.release(buffered);
+		}
+		buffered = null;
+	}
+
+	private ByteBuffer allocate(final int size) {
+		final ByteBuffer buffer = pool == null ? ByteBuffer.allocate(size)
+				: pool.acquire(size);
+		buffer.clear();
+
+		return buffer;
+	}
+}
@@ -0,0 +1,479 @@
+package net.meisen.general.server.listener.codec;
+
+import java.lang.reflect.Constructor;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.meisen.general.server.api.IFrameDecoder;
+import net.meisen.general.server.api.IMessageDecoder;
+import net.meisen.general.server.api.IMessageEncoder;
+import net.meisen.general.server.api.IMessageHandler;
+import net.meisen.general.server.listener.utility.BufferPool;
+import net.meisen.general.server.listener.utility.FrameReader;
+import net.meisen.general.server.listener.utility.Framing;
+
+/**
+ * The settings of the codec-pipeline of a listener, i.e. the stages used to
+ * decode, handle and encode the requests. The stages are defined per
+ * <code>Connector</code> using the <code>codec</code> extension, e.g.:
+ *
+ * <pre>
+ * &lt;ed:extension&gt;
+ *   &lt;codec frameDecoder="length" messageDecoder="bytes" encoder="length" handler="my.package.MyHandler" maxFrameSize="1048576" /&gt;
+ * &lt;/ed:extension&gt;
+ * </pre>
+ *
+ * Each stage is specified by an alias of a built-in implementation (e.g.
+ * <code>line</code>, <code>length</code>, <code>string</code> or
+ * <code>bytes</code>) or by the name of a class. A class must provide a
+ * constructor accepting the <code>CodecSettings</code> or a default
+ * constructor. If no handler is specified, the listener itself handles the
+ * messages. Without any stage specified, the pipeline reads and writes lines
+ * of text, i.e. behaves like the default worker. The built-in
+ * <code>Framing</code> of the workers is expressed by the same stages, see
+ * {@link #forFraming(Framing, Charset, int, boolean)}.
+ *
+ * @author pmeisen
+ *
+ * @see CodecPipeline
+ */
+public class CodecSettings {
+	private final static Map<String, Class<? extends IFrameDecoder>> FRAME_DECODERS = new HashMap<String, Class<? extends IFrameDecoder>>();
+	private final static Map<String, Class<? extends IMessageDecoder>> MESSAGE_DECODERS = new HashMap<String, Class<? extends IMessageDecoder>>();
+	private final static Map<String, Class<? extends IMessageEncoder>> ENCODERS = new HashMap<String, Class<? extends IMessageEncoder>>();
+	static {
+		FRAME_DECODERS.put("line", LineFrameDecoder.class);
+		FRAME_DECODERS.put("length", LengthFrameDecoder.class);
+		MESSAGE_DECODERS.put("string", StringMessageDecoder.class);
+		MESSAGE_DECODERS.put("bytes", BytesMessageDecoder.class);
+		ENCODERS.put("line", LineMessageEncoder.class);
+		ENCODERS.put("length", LengthMessageEncoder.class);
+	}
+
+	private Class<? extends IFrameDecoder> frameDecoderClass = LineFrameDecoder.class;
+	private Class<? extends IMessageDecoder> messageDecoderClass = StringMessageDecoder.class;
+	private Class<? extends IMessageEncoder> encoderClass = LineMessageEncoder.class;
+	private Class<? extends IMessageHandler> handlerClass = null;
+	private Charset charset = Charset.defaultCharset();
+	private int maxFrameSize = FrameReader.DEFAULT_MAX_FRAME_SIZE;
+	private boolean partialFrames = false;
+	private boolean pooled = true;
+
+	private IMessageDecoder messageDecoder = null;
+	private IMessageEncoder encoder = null;
+	private IMessageHandler handler = null;
+
+	/**
+	 * Creates the settings expressing the built-in <code>Framing</code> of
+	 * the workers by the stages of a codec-pipeline, i.e. lines (returned in
+	 * parts if exceeding the maximal length) or length-prefixed frames passed
+	 * as <code>ByteBuffer</code>.
+	 *
+	 * @param framing
+	 *            the <code>Framing</code> to be expressed
+	 * @param charset
+	 *            the <code>Charset</code> of the lines
+	 * @param maxLength
+	 *            the maximal length of a line or frame in bytes,
+	 *            <code>0</code> if the length of a line is not limited
+	 * @param pooled
+	 *            <code>true</code> if the frames can be passed as views of
+	 *            the reused buffer, <code>false</code> to pass copies
+	 *
+	 * @return the initialized settings
+	 */
+	public static CodecSettings forFraming(final Framing framing,
+			final Charset charset, final int maxLength, final boolean pooled) {
+		final CodecSettings settings = new CodecSettings();
+		settings.setCharset(charset);
+		settings.setPooled(pooled);
+
+		if (Framing.LENGTH.equals(framing)) {
+			settings.setFrameDecoderClass(LengthFrameDecoder.class);
+			settings.setMessageDecoderClass(BytesMessageDecoder.class);
+			settings.setEncoderClass(LengthMessageEncoder.class);
+			settings.setMaxFrameSize(maxLength);
+		} else {
+			settings.setMaxFrameSize(maxLength == 0 ? Integer.MAX_VALUE
+					: maxLength);
+			settings.setPartialFrames(true);
+		}
+		settings.initialize();
+
+		return settings;
+	}
+
+	/**
+	 * Creates the stages shared by all the connections. The method should be
+	 * called after all settings are defined, so that invalid stages are
+	 * detected prior to the first connection.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a stage cannot be created
+	 */
+	public void initialize() throws IllegalArgumentException {
+		messageDecoder = create(messageDecoderClass);
+		encoder = create(encoderClass);
+		handler = handlerClass == null ? null : create(handlerClass);
+
+		// make sure the decoder can be created
+		createFrameDecoder();
+	}
+
+	/**
+	 * Creates the pipeline of a new connection.
+	 *
+	 * @param defaultHandler
+	 *            the <code>IMessageHandler</code> used if none is defined by
+	 *            the settings, see {@link #getHandler(IMessageHandler)}
+	 *
+	 * @return the created <code>CodecPipeline</code>
+	 */
+	public CodecPipeline createPipeline(final IMessageHandler defaultHandler) {
+		return createPipeline(defaultHandler, null);
+	}
+
+	/**
+	 * Creates the pipeline of a new connection, which borrows its buffer from
+	 * the specified <code>BufferPool</code>.
+	 *
+	 * @param defaultHandler
+	 *            the <code>IMessageHandler</code> used if none is defined by
+	 *            the settings, see {@link #getHandler(IMessageHandler)}
+	 * @param pool
+	 *            the <code>BufferPool</code> to borrow the buffer from,
+	 *            <code>null</code> to allocate an own buffer
+	 *
+	 * @return the created <code>CodecPipeline</code>
+	 */
+	public CodecPipeline createPipeline(final IMessageHandler defaultHandler,
+			final BufferPool pool) {
+		if (messageDecoder == null) {
+			initialize();
+		}
+
+		return new CodecPipeline(createFrameDecoder(), messageDecoder,
+				getHandler(defaultHandler), encoder, pool);
+	}
+
+	/**
+	 * Creates a new instance of the <code>IFrameDecoder</code>, which is
+	 * done for each connection.
+	 *
+	 * @return the created <code>IFrameDecoder</code>
+	 */
+	public IFrameDecoder createFrameDecoder() {
+		return create(frameDecoderClass);
+	}
+
+	/**
+	 * Gets the <code>IMessageHandler</code> defined by the settings.
+	 *
+	 * @param defaultHandler
+	 *            the <code>IMessageHandler</code> to be returned if none is
+	 *            defined
+	 *
+	 * @return the <code>IMessageHandler</code> to be used
+	 */
+	public IMessageHandler getHandler(final IMessageHandler defaultHandler) {
+		if (handlerClass == null) {
+			return defaultHandler;
+		} else if (handler == null) {
+			initialize();
+		}
+
+		return handler;
+	}
+
+	/**
+	 * Creates an instance of the specified stage, using the constructor
+	 * accepting the <code>CodecSettings</code> or the default constructor.
+	 *
+	 * @param clazz
+	 *            the class of the stage
+	 *
+	 * @return the created instance
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the instance cannot be created
+	 */
+	protected <T> T create(final Class<T> clazz)
+			throws IllegalArgumentException {
+		try {
+			try {
+				final Constructor<T> constructor = clazz
+						.getConstructor(CodecSettings.class);
+				return constructor.newInstance(this);
+			} catch (final NoSuchMethodException e) {
+				return clazz.getConstructor().newInstance();
+			}
+		} catch (final Exception e) {
+			throw new IllegalArgumentException("The stage '" + clazz.getName()
+					+ "' cannot be created.", e);
+		}
+	}
+
+	/**
+	 * Determines the class of the <code>IFrameDecoder</code> specified by the
+	 * passed <code>value</code>, i.e. an alias or the name of a class.
+	 *
+	 * @param value
+	 *            the value to determine the class for
+	 *
+	 * @return the class or <code>null</code> if the value does not specify an
+	 *         <code>IFrameDecoder</code>
+	 */
+	public static Class<? extends IFrameDecoder> findFrameDecoder(
+			final String value) {
+		return find(value, FRAME_DECODERS, IFrameDecoder.class);
+	}
+
+	/**
+	 * Determines the class of the <code>IMessageDecoder</code> specified by
+	 * the passed <code>value</code>, i.e. an alias or the name of a class.
+	 *
+	 * @param value
+	 *            the value to determine the class for
+	 *
+	 * @return the class or <code>null</code> if the value does not specify an
+	 *         <code>IMessageDecoder</code>
+	 */
+	public static Class<? extends IMessageDecoder> findMessageDecoder(
+			final String value) {
+		return find(value, MESSAGE_DECODERS, IMessageDecoder.class);
+	}
+
+	/**
+	 * Determines the class of the <code>IMessageEncoder</code> specified by
+	 * the passed <code>value</code>, i.e. an alias or the name of a class.
+	 *
+	 * @param value
+	 *            the value to determine the class for
+	 *
+	 * @return the class or <code>null</code> if the value does not specify an
+	 *         <code>IMessageEncoder</code>
+	 */
+	public static Class<? extends IMessageEncoder> findEncoder(
+			final String value) {
+		return find(value, ENCODERS, IMessageEncoder.class);
+	}
+
+	/**
+	 * Determines the class of the <code>IMessageHandler</code> specified by
+	 * the passed <code>value</code>, i.e. the name of a class.
+	 *
+	 * @param value
+	 *            the value to determine the class for
+	 *
+	 * @return the class or <code>null</code> if the value does not specify an
+	 *         <code>IMessageHandler</code>
+	 */
+	public static Class<? extends IMessageHandler> findHandler(
+			final String value) {
+		return find(value,
+				Collections.<String, Class<? extends IMessageHandler>> emptyMap(),
+				IMessageHandler.class);
+	}
+
+	private static <T> Class<? extends T> find(final String value,
+			final Map<String, Class<? extends T>> aliases, final Class<T> type) {
+		if (value == null) {
+			return null;
+		}
+
+		final String name = value.trim();
+		final Class<? extends T> alias = aliases.get(name.toLowerCase());
+		if (alias != null) {
+			return alias;
+		}
+
+		try {
+			final Class<?> clazz = Class.forName(name);
+			return type.isAssignableFrom(clazz) ? clazz.asSubclass(type)
+					: null;
+		} catch (final ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Sets the class of the <code>IFrameDecoder</code>.
+	 *
+	 * @param frameDecoderClass
+	 *            the class of the <code>IFrameDecoder</code>
+	 */
+	public void setFrameDecoderClass(
+			final Class<? extends IFrameDecoder> frameDecoderClass) {
+		this.frameDecoderClass = frameDecoderClass;
+	}
+
+	/**
+	 * Gets the class of the <code>IFrameDecoder</code>.
+	 *
+	 * @return the class of the <code>IFrameDecoder</code>
+	 */
+	public Class<? extends IFrameDecoder> getFrameDecoderClass() {
+		return frameDecoderClass;
+	}
+
+	/**
+	 * Sets the class of the <code>IMessageDecoder</code>.
+	 *
+	 * @param messageDecoderClass
+	 *            the class of the <code>IMessageDecoder</code>
+	 */
+	public void setMessageDecoderClass(
+			final Class<? extends IMessageDecoder> messageDecoderClass) {
+		this.messageDecoderClass = messageDecoderClass;
+	}
+
+	/**
+	 * Gets the class of the <code>IMessageDecoder</code>.
+	 *
+	 * @return the class of the <code>IMessageDecoder</code>
+	 */
+	public Class<? extends IMessageDecoder> getMessageDecoderClass() {
+		return messageDecoderClass;
+	}
+
+	/**
+	 * Sets the class of the <code>IMessageEncoder</code>.
+	 *
+	 * @param encoderClass
+	 *            the class of the <code>IMessageEncoder</code>
+	 */
+	public void setEncoderClass(
+			final Class<? extends IMessageEncoder> encoderClass) {
+		this.encoderClass = encoderClass;
+	}
+
+	/**
+	 * Gets the class of the <code>IMessageEncoder</code>.
+	 *
+	 * @return the class of the <code>IMessageEncoder</code>
+	 */
+	public Class<? extends IMessageEncoder> getEncoderClass() {
+		return encoderClass;
+	}
+
+	/**
+	 * Sets the class of the <code>IMessageHandler</code>.
+	 *
+	 * @param handlerClass
+	 *            the class of the <code>IMessageHandler</code>,
+	 *            <code>null</code> to let the listener handle the messages
+	 */
+	public void setHandlerClass(
+			final Class<? extends IMessageHandler> handlerClass) {
+		this.handlerClass = handlerClass;
+	}
+
+	/**
+	 * Gets the class of the <code>IMessageHandler</code>.
+	 *
+	 * @return the class of the <code>IMessageHandler</code>,
+	 *         <code>null</code> if the listener handles the messages
+	 */
+	public Class<? extends IMessageHandler> getHandlerClass() {
+		return handlerClass;
+	}
+
+	/**
+	 * Gets the <code>Charset</code> used by the stages encoding or decoding
+	 * strings.
+	 *
+	 * @return the <code>Charset</code> to be used
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Sets the <code>Charset</code> used by the stages encoding or decoding
+	 * strings.
+	 *
+	 * @param charset
+	 *            the <code>Charset</code> to be used
+	 */
+	public void setCharset(final Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Gets the maximal size of a frame.
+	 *
+	 * @return the maximal size of a frame in bytes
+	 */
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+
+	/**
+	 * Sets the maximal size of a frame.
+	 *
+	 * @param maxFrameSize
+	 *            the maximal size of a frame in bytes
+	 */
+	public void setMaxFrameSize(final int maxFrameSize) {
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	/**
+	 * Checks if a frame exceeding the maximal size is returned in parts by the
+	 * <code>IFrameDecoder</code> (if supported), instead of failing.
+	 *
+	 * @return <code>true</code> if the frames are returned in parts,
+	 *         otherwise <code>false</code>
+	 *
+	 * @see IFrameDecoder#isPartial()
+	 */
+	public boolean isPartialFrames() {
+		return partialFrames;
+	}
+
+	/**
+	 * Defines if a frame exceeding the maximal size is returned in parts by
+	 * the <code>IFrameDecoder</code> (if supported), instead of failing.
+	 *
+	 * @param partialFrames
+	 *            <code>true</code> if the frames should be returned in parts,
+	 *            otherwise <code>false</code>
+	 */
+	public void setPartialFrames(final boolean partialFrames) {
+		this.partialFrames = partialFrames;
+	}
+
+	/**
+	 * Checks if the binary messages are passed as views of the buffer of the
+	 * connection, i.e. are only valid while handled.
+	 *
+	 * @return <code>true</code> if views are passed, <code>false</code> if
+	 *         copies are passed
+	 */
+	public boolean isPooled() {
+		return pooled;
+	}
+
+	/**
+	 * Defines if the binary messages are passed as views of the buffer of the
+	 * connection, i.e. are only valid while handled.
+	 *
+	 * @param pooled
+	 *            <code>true</code> if views should be passed,
+	 *            <code>false</code> to pass copies
+	 */
+	public void setPooled(final boolean pooled) {
+		this.pooled = pooled;
+	}
+
+	@Override
+	public String toString() {
+		return frameDecoderClass.getSimpleName() + " > "
+				+ messageDecoderClass.getSimpleName() + " > "
+				+ (handlerClass == null ? "listener" : handlerClass
+						.getSimpleName()) + " > "
+				+ encoderClass.getSimpleName();
+	}
+}
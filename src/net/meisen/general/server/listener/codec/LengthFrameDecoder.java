@@ -0,0 +1,77 @@
+package net.meisen.general.server.listener.codec;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+
+import net.meisen.general.server.api.IFrameDecoder;
+import net.meisen.general.server.listener.utility.FrameReader;
+import net.meisen.general.server.listener.utility.FrameTooLargeException;
+
+/**
+ * An <code>IFrameDecoder</code> splitting the data into frames prefixed by
+ * their length (four bytes in big-endian order).
+ * 
+ * @author pmeisen
+ * 
+ * @see FrameReader
+ */
+public class LengthFrameDecoder implements IFrameDecoder {
+	private final int maxFrameSize;
+
+	private ByteBuffer viewed = null;
+	private ByteBuffer view = null;
+
+	/**
+	 * Creates a decoder using the settings of the codec.
+	 * 
+	 * @param settings
+	 *            the settings of the codec
+	 */
+	public LengthFrameDecoder(final CodecSettings settings) {
+		this.maxFrameSize = settings.getMaxFrameSize();
+	}
+
+	@Override
+	public ByteBuffer decode(final ByteBuffer buffered)
+			throws FrameTooLargeException {
+		if (buffered.remaining() < FrameReader.HEADER_SIZE) {
+			return null;
+		}
+
+		final int start = buffered.position();
+		final int length = buffered.getInt(start);
+		if (length < 0 || length > maxFrameSize) {
+			throw new FrameTooLargeException(length & 0xFFFFFFFFL,
+					maxFrameSize);
+		} else if (buffered.remaining() - FrameReader.HEADER_SIZE < length) {
+			return null;
+		}
+
+		final int from = start + FrameReader.HEADER_SIZE;
+		buffered.position(from + length);
+
+		if (view == null || viewed != buffered) {
+			viewed = buffered;
+			view = buffered.duplicate();
+		}
+		view.limit(from + length);
+		view.position(from);
+
+		return view;
+	}
+
+	@Override
+	public ByteBuffer decodeLast(final ByteBuffer buffered)
+			throws EOFException {
+		if (buffered.hasRemaining()) {
+			throw new EOFException("The stream ended within a frame.");
+		}
+
+		return null;
+	}
+
+	@Override
+	public boolean isPartial() {
+		return false;
+	}
+}
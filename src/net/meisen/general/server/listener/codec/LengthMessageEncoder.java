@@ -0,0 +1,48 @@
+package net.meisen.general.server.listener.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import net.meisen.general.server.api.IMessageEncoder;
+import net.meisen.general.server.listener.utility.FrameReader;
+
+/**
+ * An <code>IMessageEncoder</code> writing the answers as frames prefixed by
+ * their length (four bytes in big-endian order). A <code>ByteBuffer</code> is
+ * written as is, any other answer is encoded as <code>String</code> using the
+ * <code>Charset</code> of the codec (<code>null</code> as empty frame).
+ * 
+ * @author pmeisen
+ * 
+ */
+public class LengthMessageEncoder implements IMessageEncoder {
+	private final Charset charset;
+
+	/**
+	 * Creates an encoder using the settings of the codec.
+	 * 
+	 * @param settings
+	 *            the settings of the codec
+	 */
+	public LengthMessageEncoder(final CodecSettings settings) {
+		this.charset = settings.getCharset();
+	}
+
+	@Override
+	public ByteBuffer encode(final Object answer) {
+		final ByteBuffer payload;
+		if (answer == null) {
+			payload = ByteBuffer.allocate(0);
+		} else if (answer instanceof ByteBuffer) {
+			payload = ((ByteBuffer) answer).duplicate();
+		} else {
+			payload = charset.encode(answer.toString());
+		}
+
+		final ByteBuffer frame = ByteBuffer.allocate(FrameReader.HEADER_SIZE
+				+ payload.remaining());
+		frame.putInt(payload.remaining()).put(payload).flip();
+
+		return frame;
+	}
+}
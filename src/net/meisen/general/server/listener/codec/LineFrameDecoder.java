@@ -0,0 +1,185 @@
+package net.meisen.general.server.listener.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import net.meisen.general.server.api.IFrameDecoder;
+import net.meisen.general.server.listener.utility.FrameTooLargeException;
+import net.meisen.general.server.listener.utility.LineFramer;
+
+/**
+ * An <code>IFrameDecoder</code> splitting the data into lines, using the same
+ * terminators as {@link java.io.BufferedReader#readLine()} (i.e.
+ * <code>\n</code>, <code>\r</code> or <code>\r\n</code>). The terminator is
+ * only searched within the maximal frame-size, i.e. a line exceeding it is
+ * detected without buffering the line. If partial frames are enabled (see
+ * {@link CodecSettings#isPartialFrames()}), such a line is returned in parts
+ * of at most the maximal frame-size, otherwise a
+ * <code>FrameTooLargeException</code> is thrown.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class LineFrameDecoder implements IFrameDecoder {
+	private final int maxFrameSize;
+	private final Charset charset;
+	private final boolean partialFrames;
+
+	private boolean skipLF = false;
+	private boolean partial = false;
+	private int scanned = 0;
+	private ByteBuffer viewed = null;
+	private ByteBuffer view = null;
+
+	/**
+	 * Creates a decoder using the settings of the codec.
+	 * 
+	 * @param settings
+	 *            the settings of the codec
+	 */
+	public LineFrameDecoder(final CodecSettings settings) {
+		this(settings.getMaxFrameSize(), settings.getCharset(), settings
+				.isPartialFrames());
+	}
+
+	/**
+	 * Creates a decoder using the specified settings.
+	 * 
+	 * @param maxFrameSize
+	 *            the maximal length of a line in bytes
+	 * @param charset
+	 *            the <code>Charset</code> of the lines, used to not split a
+	 *            character between two parts of a line
+	 * @param partialFrames
+	 *            <code>true</code> to return a line exceeding the
+	 *            <code>maxFrameSize</code> in parts, <code>false</code> to
+	 *            fail
+	 */
+	public LineFrameDecoder(final int maxFrameSize, final Charset charset,
+			final boolean partialFrames) {
+		if (maxFrameSize <= 0) {
+			throw new IllegalArgumentException(
+					"The maxFrameSize must be positive.");
+		} else if (charset == null) {
+			throw new NullPointerException("The charset cannot be null.");
+		}
+
+		this.maxFrameSize = maxFrameSize;
+		this.charset = charset;
+		this.partialFrames = partialFrames;
+	}
+
+	@Override
+	public ByteBuffer decode(final ByteBuffer buffered)
+			throws FrameTooLargeException {
+		partial = false;
+
+		final int start = skipLF(buffered);
+		final int end = buffered.limit();
+
+		// continue the scan where the last one stopped
+		final int limit = (int) Math.min(end, start + (long) maxFrameSize + 1);
+		for (int pos = start + scanned; pos < limit; pos++) {
+			final byte b = buffered.get(pos);
+
+			if (b == '\n' || b == '\r') {
+				int next = pos + 1;
+				if (b == '\r') {
+					if (next < end) {
+						if (buffered.get(next) == '\n') {
+							next++;
+						}
+					} else {
+						skipLF = true;
+					}
+				}
+				buffered.position(next);
+				scanned = 0;
+
+				return view(buffered, start, pos);
+			}
+		}
+
+		if (limit - start <= maxFrameSize) {
+			scanned = limit - start;
+			return null;
+		} else if (partialFrames) {
+
+			// return the allowed part of the line
+			final int length = LineFramer.chunkLength(buffered, start,
+					maxFrameSize, charset);
+			buffered.position(start + length);
+			scanned = limit - start - length;
+			partial = true;
+
+			return view(buffered, start, start + length);
+		} else {
+			throw new FrameTooLargeException(end - start, maxFrameSize);
+		}
+	}
+
+	@Override
+	public ByteBuffer decodeLast(final ByteBuffer buffered) {
+		partial = false;
+		scanned = 0;
+
+		final int start = skipLF(buffered);
+		final int end = buffered.limit();
+		if (start == end) {
+			return null;
+		}
+		buffered.position(end);
+
+		return view(buffered, start, end);
+	}
+
+	@Override
+	public boolean isPartial() {
+		return partial;
+	}
+
+	/**
+	 * Removes the <code>\n</code> of a <code>\r\n</code> split between two
+	 * reads.
+	 * 
+	 * @param buffered
+	 *            the data buffered
+	 * 
+	 * @return the position of the next line
+	 */
+	protected int skipLF(final ByteBuffer buffered) {
+		int start = buffered.position();
+		if (skipLF && start < buffered.limit()) {
+			skipLF = false;
+			if (buffered.get(start) == '\n') {
+				buffered.position(++start);
+			}
+		}
+
+		return start;
+	}
+
+	/**
+	 * Gets the reused view of the specified bytes of the buffered data.
+	 * 
+	 * @param buffered
+	 *            the data buffered
+	 * @param from
+	 *            the position of the first byte
+	 * @param to
+	 *            the position behind the last byte
+	 * 
+	 * @return the view of the bytes
+	 */
+	protected ByteBuffer view(final ByteBuffer buffered, final int from,
+			final int to) {
+		if (view == null || viewed != buffered) {
+			viewed = buffered;
+			view = buffered.duplicate();
+		}
+		view.limit(to);
+		view.position(from);
+
+		return view;
+	}
+}
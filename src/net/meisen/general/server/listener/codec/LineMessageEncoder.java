@@ -0,0 +1,49 @@
+package net.meisen.general.server.listener.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+import net.meisen.general.server.api.IMessageEncoder;
+
+/**
+ * An <code>IMessageEncoder</code> writing the answers as lines, i.e. followed
+ * by the line-separator. A <code>ByteBuffer</code> is written as is, any other
+ * answer is encoded as <code>String</code> using the <code>Charset</code> of
+ * the codec (<code>null</code> as empty line).
+ * 
+ * @author pmeisen
+ * 
+ */
+public class LineMessageEncoder implements IMessageEncoder {
+	private final Charset charset;
+	private final String lineSeparator;
+	private final byte[] encodedLineSeparator;
+
+	/**
+	 * Creates an encoder using the settings of the codec.
+	 * 
+	 * @param settings
+	 *            the settings of the codec
+	 */
+	public LineMessageEncoder(final CodecSettings settings) {
+		this.charset = settings.getCharset();
+		this.lineSeparator = System.getProperty("line.separator");
+		this.encodedLineSeparator = lineSeparator.getBytes(charset);
+	}
+
+	@Override
+	public ByteBuffer encode(final Object answer) {
+		if (answer instanceof ByteBuffer) {
+			final ByteBuffer payload = (ByteBuffer) answer;
+			final ByteBuffer line = ByteBuffer.allocate(payload.remaining()
+					+ encodedLineSeparator.length);
+			line.put(payload.duplicate()).put(encodedLineSeparator).flip();
+
+			return line;
+		} else {
+			final String value = answer == null ? "" : answer.toString();
+			return charset.encode(CharBuffer.wrap(value + lineSeparator));
+		}
+	}
+}
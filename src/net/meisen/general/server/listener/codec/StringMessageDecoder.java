@@ -0,0 +1,41 @@
+package net.meisen.general.server.listener.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import net.meisen.general.server.api.IMessageDecoder;
+import net.meisen.general.server.listener.utility.LineFramer;
+
+/**
+ * An <code>IMessageDecoder</code> decoding the frames into
+ * <code>String</code> instances using the <code>Charset</code> of the codec.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class StringMessageDecoder implements IMessageDecoder {
+	private final Charset charset;
+	private final boolean asciiCompatible;
+
+	/**
+	 * Creates a decoder using the settings of the codec.
+	 * 
+	 * @param settings
+	 *            the settings of the codec
+	 */
+	public StringMessageDecoder(final CodecSettings settings) {
+		this.charset = settings.getCharset();
+		this.asciiCompatible = LineFramer.isAsciiCompatible(charset);
+	}
+
+	@Override
+	public Object decode(final ByteBuffer frame) {
+		if (frame.hasArray()) {
+			return LineFramer.decode(frame.array(), frame.arrayOffset()
+					+ frame.position(), frame.remaining(), charset,
+					asciiCompatible);
+		} else {
+			return charset.decode(frame.duplicate()).toString();
+		}
+	}
+}
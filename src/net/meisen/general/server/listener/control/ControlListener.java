@@ -4,12 +4,18 @@ import java.net.Socket;
 
 import net.meisen.general.server.api.IControlMessagesManager;
 import net.meisen.general.server.api.impl.BaseListener;
+import net.meisen.general.server.listener.utility.Framing;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
 /**
- * Listener to control the server, e.g. shutdown.
+ * Listener to control the server, e.g. shutdown. If the <code>worker</code>
+ * extension defines <code>framing="tagged"</code>, the commands are handled
+ * by the default worker of the <code>BaseListener</code>, i.e. the commands
+ * of a connection are executed concurrently and answered with their
+ * request-id, otherwise a <code>HandleCommandsThread</code> answers them one
+ * after another.
  * 
  * @author pmeisen
  * 
@@ -28,7 +34,47 @@ public class ControlListener extends BaseListener {
 
 	@Override
 	protected Thread createWorkerThread(final Socket socket) {
-		return new HandleCommandsThread(socket, controlMessagesManager);
+		if (Framing.TAGGED.equals(getWorkerSettings().getFraming())) {
+			return super.createWorkerThread(socket);
+		}
+
+		final HandleCommandsThread thread = new HandleCommandsThread(socket,
+				controlMessagesManager);
+		thread.setMaxLineLength(getWorkerSettings().getMaxLineLength());
+		thread.setBufferPool(getBufferPool());
+		thread.setCompression(getWorkerSettings().isCompression());
+		thread.setCompressionLevel(getWorkerSettings().getCompressionLevel());
+
+		return thread;
+	}
+
+	@Override
+	protected String handleInput(final String input) {
+		return HandleCommandsThread.handleMessage(controlMessagesManager, input);
+	}
+
+	/**
+	 * Gets the <code>ControlMessagesManager</code> used to handle the
+	 * commands.
+	 * 
+	 * @return the <code>ControlMessagesManager</code> used to handle the
+	 *         commands
+	 */
+	public IControlMessagesManager getControlMessagesManager() {
+		return controlMessagesManager;
+	}
+
+	/**
+	 * Sets the <code>ControlMessagesManager</code> used to handle the
+	 * commands, which is normally injected.
+	 * 
+	 * @param controlMessagesManager
+	 *            the <code>ControlMessagesManager</code> used to handle the
+	 *            commands
+	 */
+	public void setControlMessagesManager(
+			final IControlMessagesManager controlMessagesManager) {
+		this.controlMessagesManager = controlMessagesManager;
 	}
 
 	@Override
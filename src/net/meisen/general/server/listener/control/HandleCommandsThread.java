@@ -1,19 +1,21 @@
 package net.meisen.general.server.listener.control;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.Socket;
 
 import net.meisen.general.server.api.IControlMessage;
 import net.meisen.general.server.api.IControlMessagesManager;
+import net.meisen.general.server.listener.utility.LineFramer;
 import net.meisen.general.server.listener.utility.StringWorkerThread;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Handle the commands retrieved on the <code>Socket</code>.
+ * Handle the commands retrieved on the <code>Socket</code>. A command
+ * exceeding the <code>maxLineLength</code> is skipped without buffering it
+ * and answered like a <code>null</code> message.
  * 
  * @author pmeisen
  * 
@@ -53,51 +55,25 @@ public class HandleCommandsThread extends StringWorkerThread {
 		// make sure we have an input
 		if (input != null) {
 			try {
-				final BufferedReader in = createSocketReader();
+				final LineFramer in = createSocketFramer();
 				final PrintWriter out = createSocketWriter();
 
 				while (!out.checkError()) {
-
-					final String msg = in.readLine();
-					final IControlMessage answerMsg;
-					if (msg == null) {
-						if (LOG.isTraceEnabled()) {
-							LOG.trace("Received a NULL message.");
-						}
-
-						answerMsg = controlMessagesManager
-								.determineMessage("NLRCVD");
-					} else {
-						final IControlMessage rcvMsg = controlMessagesManager
-								.determineMessage(msg);
-
-						if (LOG.isDebugEnabled()) {
-							LOG.debug("Received message '" + msg
-									+ "', which was translated to '" + rcvMsg
-									+ "'");
+					String msg = in.readLine();
+
+					// ignore a command exceeding the length
+					if (in.isPartial()) {
+						final long skipped = in.skipLine();
+						if (LOG.isWarnEnabled()) {
+							LOG.warn("Ignoring a command of more than "
+									+ (in.getMaxLineLength() + skipped)
+									+ " bytes.");
 						}
-
-						// execute the message
-						if (rcvMsg != null) {
-							try {
-								rcvMsg.execute();
-							} catch (final Exception e) {
-								// we cannot allow that the execution kills
-								// anything
-								if (LOG.isErrorEnabled()) {
-									LOG.error("Execution of ControlMessage '"
-											+ msg + "' failed.", e);
-								}
-							}
-						}
-
-						// send the message that data was retrieved
-						answerMsg = controlMessagesManager
-								.determineMessage("RCVD");
+						msg = null;
 					}
 
 					// write the answer
-					out.println(answerMsg.getMessageIdentifier());
+					out.println(handleMessage(controlMessagesManager, msg));
 				}
 			} catch (final IOException e) {
 				if (LOG.isWarnEnabled()) {
@@ -112,4 +88,55 @@ public class HandleCommandsThread extends StringWorkerThread {
 			LOG.trace("Ending the connection thread...");
 		}
 	}
+
+	/**
+	 * Handles the specified message, i.e. translates it to an
+	 * <code>IControlMessage</code>, executes it and determines the answer to be
+	 * send.
+	 * 
+	 * @param controlMessagesManager
+	 *            the <code>ControlMessagesManager</code> to be used
+	 * @param msg
+	 *            the received message, can be <code>null</code>
+	 * 
+	 * @return the identifier of the answer to be send
+	 */
+	public static String handleMessage(
+			final IControlMessagesManager controlMessagesManager,
+			final String msg) {
+		final IControlMessage answerMsg;
+		if (msg == null) {
+			if (LOG.isTraceEnabled()) {
+				LOG.trace("Received a NULL message.");
+			}
+
+			answerMsg = controlMessagesManager.determineMessage("NLRCVD");
+		} else {
+			final IControlMessage rcvMsg = controlMessagesManager
+					.determineMessage(msg);
+
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Received message '" + msg
+						+ "', which was translated to '" + rcvMsg + "'");
+			}
+
+			// execute the message
+			if (rcvMsg != null) {
+				try {
+					rcvMsg.execute();
+				} catch (final Exception e) {
+					// we cannot allow that the execution kills anything
+					if (LOG.isErrorEnabled()) {
+						LOG.error("Execution of ControlMessage '" + msg
+								+ "' failed.", e);
+					}
+				}
+			}
+
+			// send the message that data was retrieved
+			answerMsg = controlMessagesManager.determineMessage("RCVD");
+		}
+
+		return answerMsg.getMessageIdentifier();
+	}
 }
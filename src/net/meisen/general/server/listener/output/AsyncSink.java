@@ -0,0 +1,599 @@
+package net.meisen.general.server.listener.output;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import net.meisen.general.server.api.ILineSink;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An <code>ILineSink</code> decoupling the threads writing the lines from
+ * another (slower) sink. The lines are published into a bounded
+ * {@link RingBuffer} and a single writer-thread passes them in batches (of at
+ * most <code>batchSize</code> lines) to the target. The target is flushed as
+ * soon as the writer has nothing more to write, but under load at the latest
+ * every <code>flushInterval</code> milliseconds, i.e. the flushes are not
+ * paid per line. If the ring-buffer is full, the {@link OverflowPolicy} is
+ * applied, {@link OverflowPolicy#SPILL} writes the lines to the disk using a
+ * {@link SpillQueue}, from where they are written (in order) as soon as the
+ * target catches up.<br/>
+ * <br/>
+ * The target is only used by the writer-thread, i.e. it doesn't have to be
+ * thread-safe. A batch (or flush) failing with any exception is logged and
+ * counted as failed, the writer-thread keeps on writing the next batches.
+ *
+ * @author pmeisen
+ *
+ */
+public class AsyncSink implements ILineSink {
+	private final static Logger LOG = LoggerFactory.getLogger(AsyncSink.class);
+
+	/**
+	 * The default capacity of the ring-buffer.
+	 */
+	public final static int DEFAULT_CAPACITY = 65536;
+	/**
+	 * The default maximal amount of lines written per batch.
+	 */
+	public final static int DEFAULT_BATCH_SIZE = 1024;
+	/**
+	 * The default maximal time (in milliseconds) between two flushes under
+	 * load.
+	 */
+	public final static long DEFAULT_FLUSH_INTERVAL = 100;
+
+	private final static long BLOCK_WAIT = TimeUnit.MICROSECONDS.toNanos(50);
+
+	private final ILineSink target;
+	private final RingBuffer ring;
+	private final int batchSize;
+	private final long flushInterval;
+	private final OverflowPolicy policy;
+
+	private final SpillQueue spill;
+	private final Thread writer;
+
+	private final LongAdder published = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder spilled = new LongAdder();
+	private final LongAdder blocked = new LongAdder();
+	private volatile long written = 0;
+	private volatile long failed = 0;
+	private volatile long batches = 0;
+	private volatile long flushes = 0;
+
+	private volatile boolean waiting = false;
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a sink with the default settings, blocking if the ring-buffer
+	 * is full.
+	 *
+	 * @param target
+	 *            the sink the lines are written to
+	 */
+	public AsyncSink(final ILineSink target) {
+		this(target, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE,
+				DEFAULT_FLUSH_INTERVAL, OverflowPolicy.BLOCK);
+	}
+
+	/**
+	 * Creates a sink and starts its writer-thread.
+	 *
+	 * @param target
+	 *            the sink the lines are written to
+	 * @param capacity
+	 *            the capacity of the ring-buffer (rounded up to the next
+	 *            power of two)
+	 * @param batchSize
+	 *            the maximal amount of lines written per batch
+	 * @param flushInterval
+	 *            the maximal time (in milliseconds) between two flushes
+	 *            under load, <code>0</code> to flush every batch
+	 * @param policy
+	 *            the <code>OverflowPolicy</code> applied if the ring-buffer
+	 *            is full
+	 */
+	public AsyncSink(final ILineSink target, final int capacity,
+			final int batchSize, final long flushInterval,
+			final OverflowPolicy policy) {
+		this(target, capacity, batchSize, flushInterval, policy,
+				OverflowPolicy.SPILL.equals(policy) ? new SpillQueue() : null);
+	}
+
+	/**
+	 * Creates a sink and starts its writer-thread.
+	 *
+	 * @param target
+	 *            the sink the lines are written to
+	 * @param capacity
+	 *            the capacity of the ring-buffer (rounded up to the next
+	 *            power of two)
+	 * @param batchSize
+	 *            the maximal amount of lines written per batch
+	 * @param flushInterval
+	 *            the maximal time (in milliseconds) between two flushes
+	 *            under load, <code>0</code> to flush every batch
+	 * @param policy
+	 *            the <code>OverflowPolicy</code> applied if the ring-buffer
+	 *            is full
+	 * @param spill
+	 *            the <code>SpillQueue</code> used by
+	 *            {@link OverflowPolicy#SPILL}, closed with the sink
+	 */
+	public AsyncSink(final ILineSink target, final int capacity,
+			final int batchSize, final long flushInterval,
+			final OverflowPolicy policy, final SpillQueue spill) {
+		if (target == null) {
+			throw new NullPointerException("The target cannot be null.");
+		} else if (policy == null) {
+			throw new NullPointerException("The policy cannot be null.");
+		} else if (batchSize < 1) {
+			throw new IllegalArgumentException(
+					"The batchSize must be positive.");
+		} else if (flushInterval < 0) {
+			throw new IllegalArgumentException(
+					"The flushInterval cannot be negative.");
+		} else if (OverflowPolicy.SPILL.equals(policy) && spill == null) {
+			throw new NullPointerException(
+					"The spill-queue cannot be null if spilling.");
+		}
+
+		this.target = target;
+		this.ring = new RingBuffer(capacity);
+		this.batchSize = batchSize;
+		this.flushInterval = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+		this.policy = policy;
+		this.spill = spill;
+
+		this.writer = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				runWriter();
+			}
+		}, "AsyncSink (" + target + ")");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	@Override
+	public void write(final String line) throws IOException {
+		if (closed) {
+			throw new IOException("The sink is closed.");
+		}
+
+		// keep the order as long as spilled lines are waiting
+		if (!isSpillEmpty() || !ring.offer(line)) {
+			if (OverflowPolicy.DROP.equals(policy)) {
+				dropped.increment();
+				return;
+			} else if (OverflowPolicy.SPILL.equals(policy)) {
+				spill.offer(line);
+				spilled.increment();
+			} else {
+				blocked.increment();
+				while (!ring.offer(line)) {
+					if (closed) {
+						throw new IOException("The sink is closed.");
+					}
+					checkWriter();
+					LockSupport.unpark(writer);
+					LockSupport.parkNanos(this, BLOCK_WAIT);
+				}
+			}
+		}
+		published.increment();
+
+		if (waiting) {
+			LockSupport.unpark(writer);
+		}
+	}
+
+	/**
+	 * Checks if the writer-thread is still running.
+	 *
+	 * @throws IOException
+	 *             if the writer-thread terminated, i.e. no published line is
+	 *             written anymore
+	 */
+	protected void checkWriter() throws IOException {
+		if (!writer.isAlive() && !closed) {
+			throw new IOException("The writer of the sink terminated.");
+		}
+	}
+
+	/**
+	 * The loop of the writer-thread, which writes the published lines until
+	 * the sink is closed.
+	 */
+	protected void runWriter() {
+		final String[] batch = new String[batchSize];
+
+		boolean dirty = false;
+		long lastFlush = System.nanoTime();
+		while (true) {
+			final int count = next(batch);
+			if (count > 0) {
+				writeBatch(batch, count);
+				dirty = true;
+			}
+
+			// flush if nothing is left or the interval is exceeded
+			final boolean empty = isEmpty();
+			if (dirty
+					&& (empty || System.nanoTime() - lastFlush >= flushInterval)) {
+				flushTarget();
+				dirty = false;
+				lastFlush = System.nanoTime();
+			}
+
+			if (empty) {
+				if (closed) {
+					break;
+				}
+
+				waiting = true;
+				if (isEmpty() && !closed) {
+					LockSupport.park(this);
+				}
+				waiting = false;
+			}
+		}
+	}
+
+	/**
+	 * Removes the next lines to be written, i.e. the lines of the ring-buffer
+	 * and afterwards the spilled lines.
+	 *
+	 * @param batch
+	 *            the array to fill with the lines
+	 *
+	 * @return the amount of lines removed
+	 */
+	protected int next(final String[] batch) {
+		int count = ring.drain(batch, batch.length);
+		if (count > 0) {
+			return count;
+		}
+
+		// the spilled lines are newer than the lines of the ring-buffer
+		if (isSpillEmpty()) {
+			return 0;
+		}
+		try {
+			return spill.drain(batch, batch.length);
+		} catch (final IOException e) {
+			final int lost = clearSpill();
+			failed += lost;
+			if (LOG.isErrorEnabled()) {
+				LOG.error("Failed to read the spilled lines, " + lost
+						+ " lines are lost.", e);
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * Removes all the spilled lines.
+	 *
+	 * @return the amount of removed lines
+	 */
+	protected int clearSpill() {
+		final int size = spill.size();
+		try {
+			return spill.clear();
+		} catch (final IOException e) {
+			if (LOG.isErrorEnabled()) {
+				LOG.error("Failed to clear '" + spill + "'.", e);
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * Checks if there are no spilled lines.
+	 *
+	 * @return <code>true</code> if there are no spilled lines, otherwise
+	 *         <code>false</code>
+	 */
+	protected boolean isSpillEmpty() {
+		return spill == null || spill.isEmpty();
+	}
+
+	/**
+	 * Writes the specified lines to the target.
+	 *
+	 * @param batch
+	 *            the lines to be written
+	 * @param count
+	 *            the amount of lines to be written
+	 */
+	protected void writeBatch(final String[] batch, final int count) {
+		int i = 0;
+		try {
+			for (; i < count; i++) {
+				target.write(batch[i]);
+			}
+		} catch (final IOException e) {
+			failed(count - i, e);
+		} catch (final RuntimeException e) {
+			failed(count - i, e);
+		} finally {
+			written += i;
+			batches++;
+			for (int k = 0; k < count; k++) {
+				batch[k] = null;
+			}
+		}
+	}
+
+	/**
+	 * Counts and logs the lines of a batch the target failed to write.
+	 *
+	 * @param lost
+	 *            the amount of lines not written
+	 * @param e
+	 *            the exception thrown by the target
+	 */
+	protected void failed(final int lost, final Exception e) {
+		failed += lost;
+		if (LOG.isErrorEnabled()) {
+			LOG.error("Failed to write " + lost + " lines to '" + target
+					+ "'.", e);
+		}
+	}
+
+	/**
+	 * Flushes the target.
+	 */
+	protected void flushTarget() {
+		try {
+			target.flush();
+			flushes++;
+		} catch (final IOException e) {
+			if (LOG.isErrorEnabled()) {
+				LOG.error("Failed to flush '" + target + "'.", e);
+			}
+		} catch (final RuntimeException e) {
+			if (LOG.isErrorEnabled()) {
+				LOG.error("Failed to flush '" + target + "'.", e);
+			}
+		}
+	}
+
+	/**
+	 * Checks if no line is waiting to be written.
+	 *
+	 * @return <code>true</code> if no line is waiting, otherwise
+	 *         <code>false</code>
+	 */
+	protected boolean isEmpty() {
+		return ring.isEmpty() && isSpillEmpty();
+	}
+
+	/**
+	 * Writes all the lines published so far and flushes the target. The
+	 * method does not wait for the writer-thread, i.e. the lines are flushed
+	 * asynchronously.
+	 *
+	 * @throws IOException
+	 *             if the writer-thread terminated
+	 */
+	@Override
+	public void flush() throws IOException {
+		checkWriter();
+		LockSupport.unpark(writer);
+	}
+
+	/**
+	 * Closes the sink, i.e. waits until the writer-thread wrote all the
+	 * published lines and closes the target afterwards.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while closing the sink.", e);
+		}
+
+		// write the lines of producers passing the check prior to closing
+		final String[] batch = new String[batchSize];
+		int count;
+		while ((count = next(batch)) > 0) {
+			writeBatch(batch, count);
+		}
+
+		try {
+			target.close();
+		} finally {
+			if (spill != null) {
+				spill.close();
+			}
+		}
+	}
+
+	/**
+	 * Gets the sink the lines are written to.
+	 *
+	 * @return the sink the lines are written to
+	 */
+	public ILineSink getTarget() {
+		return target;
+	}
+
+	/**
+	 * Gets the capacity of the ring-buffer.
+	 *
+	 * @return the capacity of the ring-buffer
+	 */
+	public int getCapacity() {
+		return ring.getCapacity();
+	}
+
+	/**
+	 * Gets the maximal amount of lines written per batch.
+	 *
+	 * @return the maximal amount of lines written per batch
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Gets the maximal time between two flushes under load.
+	 *
+	 * @return the maximal time between two flushes in milliseconds
+	 */
+	public long getFlushInterval() {
+		return TimeUnit.NANOSECONDS.toMillis(flushInterval);
+	}
+
+	/**
+	 * Gets the <code>OverflowPolicy</code> applied if the ring-buffer is
+	 * full.
+	 *
+	 * @return the <code>OverflowPolicy</code>
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Gets the amount of lines waiting to be written, i.e. the lines of the
+	 * ring-buffer and the spilled lines.
+	 *
+	 * @return the amount of lines waiting to be written
+	 */
+	public int getDepth() {
+		return ring.size() + (spill == null ? 0 : spill.size());
+	}
+
+	/**
+	 * Gets the <code>SpillQueue</code> used by {@link OverflowPolicy#SPILL}.
+	 *
+	 * @return the <code>SpillQueue</code>, <code>null</code> if the lines
+	 *         are not spilled
+	 */
+	public SpillQueue getSpillQueue() {
+		return spill;
+	}
+
+	/**
+	 * Gets the amount of bytes the spilled lines waiting to be written occupy
+	 * on the disk.
+	 *
+	 * @return the amount of bytes of the spilled lines waiting
+	 */
+	public long getSpillBytes() {
+		return spill == null ? 0 : spill.getBytes();
+	}
+
+	/**
+	 * Gets the amount of lines accepted (i.e. not dropped) by the sink.
+	 *
+	 * @return the amount of lines accepted
+	 */
+	public long getPublished() {
+		return published.sum();
+	}
+
+	/**
+	 * Gets the amount of lines written to the target.
+	 *
+	 * @return the amount of lines written
+	 */
+	public long getWritten() {
+		return written;
+	}
+
+	/**
+	 * Gets the amount of lines the target failed to write.
+	 *
+	 * @return the amount of lines failed to write
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Gets the amount of lines dropped because the ring-buffer was full, see
+	 * {@link OverflowPolicy#DROP}.
+	 *
+	 * @return the amount of lines dropped
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Gets the amount of lines spilled because the ring-buffer was full, see
+	 * {@link OverflowPolicy#SPILL}.
+	 *
+	 * @return the amount of lines spilled
+	 */
+	public long getSpilled() {
+		return spilled.sum();
+	}
+
+	/**
+	 * Gets the amount of lines, which had to wait for a free slot, see
+	 * {@link OverflowPolicy#BLOCK}.
+	 *
+	 * @return the amount of lines which had to wait
+	 */
+	public long getBlocked() {
+		return blocked.sum();
+	}
+
+	/**
+	 * Gets the amount of batches written.
+	 *
+	 * @return the amount of batches written
+	 */
+	public long getBatches() {
+		return batches;
+	}
+
+	/**
+	 * Gets the amount of flushes of the target.
+	 *
+	 * @return the amount of flushes
+	 */
+	public long getFlushes() {
+		return flushes;
+	}
+
+	/**
+	 * Checks if the sink is closed.
+	 *
+	 * @return <code>true</code> if the sink is closed, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public String toString() {
+		return "async (capacity: " + getCapacity() + ", batchSize: "
+				+ batchSize + ", flushInterval: " + getFlushInterval()
+				+ ", overflow: " + policy + ", published: " + getPublished()
+				+ ", written: " + written + ", dropped: " + getDropped()
+				+ ", spilled: " + getSpilled() + ", spillBytes: "
+				+ getSpillBytes() + ", blocked: " + getBlocked()
+				+ ") -> " + target;
+	}
+}
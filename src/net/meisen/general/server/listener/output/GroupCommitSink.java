@@ -0,0 +1,396 @@
+package net.meisen.general.server.listener.output;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.meisen.general.server.api.IDurableLineSink;
+import net.meisen.general.server.api.ILineSink;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An <code>ILineSink</code> making the lines durable using group commits.
+ * The lines of all the threads are written to the target as they arrive, a
+ * single committer-thread forces all the pending lines with one
+ * {@link IDurableLineSink#sync()} at the latest <code>commitInterval</code>
+ * milliseconds after the first pending line or as soon as
+ * <code>maxBatch</code> lines are pending. Each line is acknowledged (i.e.
+ * the stage returned by {@link #append(String)} completes or
+ * {@link #write(String)} returns) when the commit covering it is done.<br/>
+ * <br/>
+ * A thread writing several lines one after another waits for a commit per
+ * line, i.e. connections should use <code>async="true"</code> to get
+ * several of their lines into one commit. A failing commit (regardless of the
+ * exception) only fails the lines of its batch, the committer-thread keeps on
+ * committing the following ones.
+ *
+ * @author pmeisen
+ *
+ */
+public class GroupCommitSink implements ILineSink {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(GroupCommitSink.class);
+
+	/**
+	 * The default maximal time (in milliseconds) a line waits for the
+	 * commit.
+	 */
+	public final static long DEFAULT_COMMIT_INTERVAL = 5;
+	/**
+	 * The default amount of pending lines committed at once.
+	 */
+	public final static int DEFAULT_MAX_BATCH = 1024;
+
+	private final static long COMMITTER_CHECK = 1000;
+
+	private final IDurableLineSink target;
+	private final long commitInterval;
+	private final int maxBatch;
+	private final Thread committer;
+
+	private CompletableFuture<Void> batch = new CompletableFuture<Void>();
+	private int pending = 0;
+	private long firstPending = 0;
+	private boolean closed = false;
+
+	private volatile long commits = 0;
+	private volatile long committed = 0;
+	private volatile long failed = 0;
+	private volatile int largestBatch = 0;
+
+	/**
+	 * Creates a sink committing the lines written to the specified target.
+	 *
+	 * @param target
+	 *            the sink the lines are written to and forced
+	 * @param commitInterval
+	 *            the maximal time (in milliseconds) a line waits for the
+	 *            commit, <code>0</code> to commit as soon as possible
+	 * @param maxBatch
+	 *            the amount of pending lines committed without waiting for
+	 *            the interval
+	 */
+	public GroupCommitSink(final IDurableLineSink target,
+			final long commitInterval, final int maxBatch) {
+		if (target == null) {
+			throw new NullPointerException("The target cannot be null.");
+		} else if (commitInterval < 0) {
+			throw new IllegalArgumentException(
+					"The commitInterval cannot be negative.");
+		} else if (maxBatch < 1) {
+			throw new IllegalArgumentException(
+					"The maxBatch must be positive.");
+		}
+
+		this.target = target;
+		this.commitInterval = TimeUnit.MILLISECONDS.toNanos(commitInterval);
+		this.maxBatch = maxBatch;
+
+		this.committer = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				runCommitter();
+			}
+		}, "GroupCommitSink (" + target + ")");
+		this.committer.setDaemon(true);
+		this.committer.start();
+	}
+
+	/**
+	 * Writes the specified line and returns the stage completing when the
+	 * line is committed.
+	 *
+	 * @param line
+	 *            the line to be written
+	 *
+	 * @return the stage completing when the line is durable, the stage
+	 *         completes exceptionally if the commit failed
+	 *
+	 * @throws IOException
+	 *             if the line cannot be written
+	 */
+	public CompletableFuture<Void> append(final String line)
+			throws IOException {
+		synchronized (this) {
+			if (closed) {
+				throw new IOException("The sink is closed.");
+			} else if (!committer.isAlive()) {
+				throw new IOException("The committer of the sink terminated.");
+			}
+
+			// the lines are written in the order of their commits
+			target.write(line);
+			if (pending++ == 0) {
+				firstPending = System.nanoTime();
+				notifyAll();
+			} else if (pending == maxBatch) {
+				notifyAll();
+			}
+
+			return batch;
+		}
+	}
+
+	/**
+	 * Writes the specified line and waits until the line is committed. The
+	 * method fails if the committer-thread terminates without committing the
+	 * line.
+	 */
+	@Override
+	public void write(final String line) throws IOException {
+		final CompletableFuture<Void> commit = append(line);
+
+		while (true) {
+			try {
+				commit.get(COMMITTER_CHECK, TimeUnit.MILLISECONDS);
+				return;
+			} catch (final TimeoutException e) {
+				if (!committer.isAlive() && !commit.isDone()) {
+					throw new IOException(
+							"The committer of the sink terminated.");
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(
+						"Interrupted while waiting for the commit.", e);
+			} catch (final ExecutionException e) {
+				throw new IOException("The commit failed.", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * The loop of the committer-thread, which commits the pending lines until
+	 * the sink is closed.
+	 */
+	protected void runCommitter() {
+		try {
+			commitLoop();
+		} finally {
+
+			// never leave any writer waiting
+			synchronized (this) {
+				if (pending > 0) {
+					failed += pending;
+					pending = 0;
+					batch.completeExceptionally(new IOException(
+							"The committer of the sink terminated."));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Commits the pending lines until the sink is closed.
+	 */
+	protected void commitLoop() {
+		while (true) {
+			final CompletableFuture<Void> current;
+			final int count;
+
+			synchronized (this) {
+				try {
+					while (!closed && !isDue()) {
+						if (pending == 0) {
+							wait();
+						} else {
+							final long remaining = commitInterval
+									- (System.nanoTime() - firstPending);
+							TimeUnit.NANOSECONDS.timedWait(this,
+									Math.max(1, remaining));
+						}
+					}
+				} catch (final InterruptedException e) {
+					// commit the pending lines and stop
+					closed = true;
+				}
+
+				if (pending == 0) {
+					if (closed) {
+						return;
+					}
+					continue;
+				}
+
+				// the lines written from now on belong to the next commit
+				current = batch;
+				count = pending;
+				batch = new CompletableFuture<Void>();
+				pending = 0;
+			}
+
+			commit(current, count);
+		}
+	}
+
+	/**
+	 * Checks if the pending lines have to be committed. The method must be
+	 * called while holding the lock of the sink.
+	 *
+	 * @return <code>true</code> if the pending lines have to be committed,
+	 *         otherwise <code>false</code>
+	 */
+	protected boolean isDue() {
+		if (pending == 0) {
+			return false;
+		}
+
+		return pending >= maxBatch
+				|| System.nanoTime() - firstPending >= commitInterval;
+	}
+
+	/**
+	 * Forces the written lines and completes the stage of the lines.
+	 *
+	 * @param commit
+	 *            the stage of the committed lines
+	 * @param count
+	 *            the amount of committed lines
+	 */
+	protected void commit(final CompletableFuture<Void> commit,
+			final int count) {
+		try {
+			target.sync();
+
+			commits++;
+			committed += count;
+			largestBatch = Math.max(largestBatch, count);
+			commit.complete(null);
+		} catch (final IOException e) {
+			failed(commit, count, e);
+		} catch (final RuntimeException e) {
+			failed(commit, count, e);
+		}
+	}
+
+	/**
+	 * Fails the stage of the lines of a commit.
+	 *
+	 * @param commit
+	 *            the stage of the lines
+	 * @param count
+	 *            the amount of lines
+	 * @param e
+	 *            the exception of the commit
+	 */
+	protected void failed(final CompletableFuture<Void> commit,
+			final int count, final Exception e) {
+		failed += count;
+		if (LOG.isErrorEnabled()) {
+			LOG.error("Failed to commit " + count + " lines to '" + target
+					+ "'.", e);
+		}
+		commit.completeExceptionally(e);
+	}
+
+	/**
+	 * Commits all the pending lines without waiting for the interval.
+	 */
+	@Override
+	public void flush() throws IOException {
+		synchronized (this) {
+			if (pending > 0) {
+				firstPending = System.nanoTime() - commitInterval;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Closes the sink, i.e. commits the pending lines and closes the target.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			notifyAll();
+		}
+
+		try {
+			committer.join();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while closing the sink.", e);
+		}
+		target.close();
+	}
+
+	/**
+	 * Gets the sink the lines are written to.
+	 *
+	 * @return the sink the lines are written to
+	 */
+	public IDurableLineSink getTarget() {
+		return target;
+	}
+
+	/**
+	 * Gets the maximal time a line waits for the commit.
+	 *
+	 * @return the maximal time a line waits for the commit in milliseconds
+	 */
+	public long getCommitInterval() {
+		return TimeUnit.NANOSECONDS.toMillis(commitInterval);
+	}
+
+	/**
+	 * Gets the amount of pending lines committed without waiting for the
+	 * interval.
+	 *
+	 * @return the amount of pending lines committed at once
+	 */
+	public int getMaxBatch() {
+		return maxBatch;
+	}
+
+	/**
+	 * Gets the amount of commits done.
+	 *
+	 * @return the amount of commits
+	 */
+	public long getCommits() {
+		return commits;
+	}
+
+	/**
+	 * Gets the amount of lines committed.
+	 *
+	 * @return the amount of lines committed
+	 */
+	public long getCommitted() {
+		return committed;
+	}
+
+	/**
+	 * Gets the amount of lines of failed commits.
+	 *
+	 * @return the amount of lines of failed commits
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Gets the largest amount of lines committed at once.
+	 *
+	 * @return the largest amount of lines committed at once
+	 */
+	public int getLargestBatch() {
+		return largestBatch;
+	}
+
+	@Override
+	public String toString() {
+		return "durable (commitInterval: " + getCommitInterval()
+				+ ", maxBatch: " + maxBatch + ", commits: " + commits
+				+ ", committed: " + committed + ") -> " + target;
+	}
+}
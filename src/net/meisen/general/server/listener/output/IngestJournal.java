@@ -0,0 +1,498 @@
+package net.meisen.general.server.listener.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import net.meisen.general.server.api.IDurableLineSink;
+import net.meisen.general.server.api.ILineSink;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only journal of the accepted lines. Each line is appended as a
+ * record to the current segment file, a record consists of the length of the
+ * line (4 bytes), the sequence-number of the record (8 bytes), a CRC32 of the
+ * sequence-number and the line (4 bytes) and the encoded line. The
+ * sequence-numbers start with <code>1</code> and increase by one per record,
+ * a segment is rolled over if the next record would exceed the
+ * <code>segmentSize</code>.<br/>
+ * <br/>
+ * The segments are named like the ones of the {@link MappedFileSink}, e.g.
+ * <code>ingest.journal.000001</code>. When opened, the last segment is
+ * validated and an incomplete or invalid record at its end (i.e. the
+ * remainder of an interrupted write) is cut off, the sequence-numbers
+ * continue after the last valid record.<br/>
+ * <br/>
+ * The records are written to the file-system when appended, i.e. they
+ * survive the failure of the process. To survive the failure of the system
+ * the journal has to be forced using {@link #sync()}. The lines are
+ * re-delivered using {@link #replay(long, ILineSink)}, which streams the
+ * segments using a {@link JournalReader}.
+ *
+ * @author pmeisen
+ *
+ */
+public class IngestJournal implements IDurableLineSink {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(IngestJournal.class);
+
+	/**
+	 * The size of the header of a record, i.e. the length, the
+	 * sequence-number and the checksum.
+	 */
+	public final static int HEADER_SIZE = 16;
+	/**
+	 * The default size of a segment, i.e. <code>64 MB</code>.
+	 */
+	public final static long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+	private final File file;
+	private final long segmentSize;
+	private final Charset charset;
+	private final CharsetEncoder encoder;
+	private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+	private final CRC32 crc = new CRC32();
+
+	private ByteBuffer payload = ByteBuffer.allocate(1024);
+	private File segment = null;
+	private FileChannel channel = null;
+	private long segmentIndex = 0;
+	private long size = 0;
+	private volatile long nextSequence = 1;
+	private volatile long appended = 0;
+	private boolean releasable = true;
+	private boolean closed = false;
+
+	/**
+	 * Opens the journal of the specified file, i.e. validates the last
+	 * segment and continues after the last valid record.
+	 *
+	 * @param file
+	 *            the file the names of the segments are based on
+	 * @param segmentSize
+	 *            the size of a segment in bytes
+	 * @param charset
+	 *            the <code>Charset</code> used to encode the lines
+	 *
+	 * @throws IOException
+	 *             if the segments cannot be read
+	 */
+	public IngestJournal(final File file, final long segmentSize,
+			final Charset charset) throws IOException {
+		if (segmentSize < HEADER_SIZE) {
+			throw new IllegalArgumentException("The segmentSize must be at least "
+					+ HEADER_SIZE + ".");
+		}
+
+		this.file = file.getAbsoluteFile();
+		this.segmentSize = segmentSize;
+		this.charset = charset;
+		this.encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		recover();
+	}
+
+	/**
+	 * Validates the last segment, i.e. cuts off an invalid record at its end
+	 * and determines the next sequence-number. A last segment without any
+	 * valid record is removed.
+	 *
+	 * @throws IOException
+	 *             if the segments cannot be read
+	 */
+	protected void recover() throws IOException {
+		final List<File> segments = MappedFileSink.getSegments(file);
+
+		while (!segments.isEmpty()) {
+			final File last = segments.remove(segments.size() - 1);
+
+			final JournalReader reader = new JournalReader(
+					Collections.singletonList(last), 0, charset);
+			long lastSequence = -1;
+			try {
+				while (reader.next()) {
+					lastSequence = reader.getSequence();
+				}
+			} finally {
+				reader.close();
+			}
+
+			if (lastSequence == -1) {
+				if (LOG.isWarnEnabled()) {
+					LOG.warn("Removing the segment '" + last
+							+ "' without any valid record.");
+				}
+				if (!last.delete()) {
+					throw new IOException("The segment '" + last
+							+ "' cannot be removed.");
+				}
+				continue;
+			}
+
+			// continue writing after the last valid record
+			openSegment(last);
+			if (channel.size() > reader.getValidPosition()) {
+				if (LOG.isWarnEnabled()) {
+					LOG.warn("Cutting off " + (channel.size()
+							- reader.getValidPosition()) + " bytes of an "
+							+ "incomplete record of the segment '" + last
+							+ "'.");
+				}
+				channel.truncate(reader.getValidPosition());
+			}
+			size = reader.getValidPosition();
+			channel.position(size);
+			segmentIndex = MappedFileSink.getSequence(file, last);
+			nextSequence = lastSequence + 1;
+
+			return;
+		}
+	}
+
+	/**
+	 * Appends the specified line to the journal.
+	 *
+	 * @param line
+	 *            the line to be appended
+	 *
+	 * @return the sequence-number of the record of the line
+	 *
+	 * @throws IOException
+	 *             if the line cannot be appended
+	 */
+	public synchronized long append(final String line) throws IOException {
+		if (closed) {
+			throw new IOException("The journal is closed.");
+		}
+
+		encode(line);
+		final int length = payload.remaining();
+		if (channel == null
+				|| (size > 0 && size + HEADER_SIZE + length > segmentSize)) {
+			roll();
+		}
+
+		final long sequence = nextSequence;
+		header.clear();
+		header.putInt(length).putLong(sequence);
+		crc.reset();
+		crc.update(header.array(), 4, 8);
+		crc.update(payload.array(), 0, length);
+		header.putInt((int) crc.getValue());
+		header.flip();
+
+		final ByteBuffer[] record = new ByteBuffer[] { header, payload };
+		try {
+			while (header.hasRemaining() || payload.hasRemaining()) {
+				channel.write(record);
+			}
+		} catch (final IOException e) {
+
+			// remove the partially written record
+			try {
+				channel.truncate(size);
+				channel.position(size);
+			} catch (final IOException t) {
+				// ignore the journal is cut off when opened
+			}
+			throw e;
+		}
+
+		size += HEADER_SIZE + length;
+		nextSequence = sequence + 1;
+		appended++;
+
+		return sequence;
+	}
+
+	/**
+	 * Encodes the specified line into the <code>payload</code>, which is
+	 * enlarged if needed.
+	 *
+	 * @param line
+	 *            the line to be encoded
+	 */
+	protected void encode(final String line) {
+		final CharBuffer in = CharBuffer.wrap(line);
+
+		encoder.reset();
+		payload.clear();
+		while (true) {
+			CoderResult result = encoder.encode(in, payload, true);
+			if (result.isUnderflow()) {
+				result = encoder.flush(payload);
+			}
+			if (result.isUnderflow()) {
+				break;
+			}
+
+			// the payload is too small
+			final ByteBuffer larger = ByteBuffer
+					.allocate(payload.capacity() * 2);
+			payload.flip();
+			larger.put(payload);
+			payload = larger;
+		}
+		payload.flip();
+	}
+
+	/**
+	 * Rolls over to the next segment, the current segment is forced and
+	 * closed.
+	 *
+	 * @throws IOException
+	 *             if the next segment cannot be created
+	 */
+	protected void roll() throws IOException {
+		if (channel != null) {
+			channel.force(false);
+			channel.close();
+			channel = null;
+		}
+
+		segmentIndex++;
+		openSegment(MappedFileSink.getSegmentFile(file, segmentIndex));
+		size = 0;
+		releasable = true;
+	}
+
+	/**
+	 * Opens the specified segment for appending.
+	 *
+	 * @param segment
+	 *            the segment to be opened
+	 *
+	 * @throws IOException
+	 *             if the segment cannot be opened
+	 */
+	@SuppressWarnings("resource")
+	protected void openSegment(final File segment) throws IOException {
+		this.channel = new RandomAccessFile(segment, "rw").getChannel();
+		this.segment = segment;
+	}
+
+	/**
+	 * Appends the specified line to the journal.
+	 */
+	@Override
+	public void write(final String line) throws IOException {
+		append(line);
+	}
+
+	/**
+	 * The records are written when appended, i.e. there is nothing to be
+	 * flushed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		// nothing to do
+	}
+
+	/**
+	 * Forces the records appended so far to the storage.
+	 */
+	@Override
+	public void sync() throws IOException {
+		final FileChannel current;
+		synchronized (this) {
+			if (closed) {
+				throw new IOException("The journal is closed.");
+			}
+			current = channel;
+		}
+
+		if (current != null) {
+			try {
+				current.force(false);
+			} catch (final ClosedChannelException e) {
+				// the segment was forced when rolled over
+				synchronized (this) {
+					if (closed) {
+						throw e;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Re-delivers the lines of the records with a sequence-number of at least
+	 * <code>from</code> to the specified sink. The records are streamed, i.e.
+	 * the segments are not loaded into the heap.
+	 *
+	 * @param from
+	 *            the sequence-number of the first record to be re-delivered
+	 * @param sink
+	 *            the sink to re-deliver the lines to
+	 *
+	 * @return the sequence-number of the last re-delivered record,
+	 *         <code>-1</code> if no record was re-delivered
+	 *
+	 * @throws IOException
+	 *             if the journal cannot be read or the sink fails
+	 */
+	public long replay(final long from, final ILineSink sink)
+			throws IOException {
+		final JournalReader reader = createReader(from);
+
+		long last = -1;
+		try {
+			while (reader.next()) {
+				sink.write(reader.getLine());
+				last = reader.getSequence();
+			}
+		} finally {
+			reader.close();
+		}
+		sink.flush();
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Replayed the records from " + from + " to " + last
+					+ " of '" + file + "'.");
+		}
+
+		return last;
+	}
+
+	/**
+	 * Creates a reader of the records with a sequence-number of at least
+	 * <code>from</code>, which were appended so far.
+	 *
+	 * @param from
+	 *            the sequence-number of the first record to be read
+	 *
+	 * @return the created reader, which must be closed
+	 *
+	 * @throws IOException
+	 *             if the journal cannot be read
+	 */
+	public JournalReader createReader(final long from) throws IOException {
+		return new JournalReader(MappedFileSink.getSegments(file), from,
+				charset);
+	}
+
+	/**
+	 * Removes the segments, which only contain records with a
+	 * sequence-number less than the specified one. The current segment is
+	 * never removed. If all the segments prior to the current one are removed,
+	 * further calls return at once until the journal is rolled over, i.e. the
+	 * method can be called whenever lines become durable.
+	 *
+	 * @param sequence
+	 *            the sequence-number of the first record to be kept
+	 *
+	 * @return the amount of removed segments
+	 *
+	 * @throws IOException
+	 *             if a segment cannot be read or removed
+	 */
+	public synchronized int release(final long sequence) throws IOException {
+		if (!releasable) {
+			return 0;
+		}
+		final List<File> segments = MappedFileSink.getSegments(file);
+
+		int removed = 0;
+		for (int i = 0; i < segments.size() - 1; i++) {
+			final File candidate = segments.get(i);
+			final long next = JournalReader.readFirstSequence(segments
+					.get(i + 1));
+			if (next == -1 || next > sequence || candidate.equals(segment)) {
+				break;
+			} else if (!candidate.delete()) {
+				throw new IOException("The segment '" + candidate
+						+ "' cannot be removed.");
+			}
+			removed++;
+		}
+		releasable = removed < segments.size() - 1;
+
+		return removed;
+	}
+
+	/**
+	 * Gets the file the names of the segments are based on.
+	 *
+	 * @return the file of the journal
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the size of a segment.
+	 *
+	 * @return the size of a segment in bytes
+	 */
+	public long getSegmentSize() {
+		return segmentSize;
+	}
+
+	/**
+	 * Gets the segment currently appended to.
+	 *
+	 * @return the current segment, <code>null</code> if nothing was appended
+	 *         so far
+	 */
+	public synchronized File getCurrentSegment() {
+		return segment;
+	}
+
+	/**
+	 * Gets the sequence-number of the next record.
+	 *
+	 * @return the sequence-number of the next record
+	 */
+	public long getNextSequence() {
+		return nextSequence;
+	}
+
+	/**
+	 * Gets the amount of records appended since the journal was opened.
+	 *
+	 * @return the amount of records appended
+	 */
+	public long getAppended() {
+		return appended;
+	}
+
+	/**
+	 * Closes the journal, i.e. forces and closes the current segment.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		if (channel != null) {
+			try {
+				channel.force(false);
+			} finally {
+				channel.close();
+				channel = null;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "journal (" + file + ", segmentSize: " + segmentSize + ")";
+	}
+}
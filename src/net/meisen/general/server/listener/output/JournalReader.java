@@ -0,0 +1,332 @@
+package net.meisen.general.server.listener.output;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Reads the records of the segments of an {@link IngestJournal} one after
+ * another. The segments are streamed through a buffer of a fixed size, which
+ * is only enlarged for a record exceeding it, i.e. a segment is never loaded
+ * into the heap as a whole.<br/>
+ * <br/>
+ * A record failing its checksum or being incomplete at the end of the last
+ * segment is the remainder of an interrupted write and ends the reading (see
+ * {@link #isTruncated()}), within any other segment it's reported as
+ * corruption.
+ *
+ * @author pmeisen
+ *
+ */
+public class JournalReader implements Closeable {
+	/**
+	 * The default size of the buffer used to read the segments.
+	 */
+	public final static int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final List<File> segments;
+	private final long from;
+	private final Charset charset;
+	private final CRC32 crc = new CRC32();
+
+	private ByteBuffer buffer;
+	private int index = -1;
+	private FileChannel channel = null;
+	private long position = 0;
+	private long validPosition = 0;
+	private boolean truncated = false;
+
+	private long sequence = -1;
+	private int offset = 0;
+	private int length = 0;
+
+	/**
+	 * Creates a reader reading the records of the specified segments, which
+	 * have a sequence-number of at least <code>from</code>.
+	 *
+	 * @param segments
+	 *            the segments to be read, ordered as written
+	 * @param from
+	 *            the sequence-number of the first record to be read
+	 * @param charset
+	 *            the <code>Charset</code> used to decode the lines
+	 *
+	 * @throws IOException
+	 *             if a segment cannot be read
+	 */
+	public JournalReader(final List<File> segments, final long from,
+			final Charset charset) throws IOException {
+		this.segments = new ArrayList<File>(segments);
+		this.from = from;
+		this.charset = charset;
+		this.buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+		this.buffer.flip();
+
+		// skip the segments which start prior to the segment containing from
+		int start = 0;
+		for (int i = 1; i < this.segments.size(); i++) {
+			final long first = readFirstSequence(this.segments.get(i));
+			if (first == -1 || first > from) {
+				break;
+			}
+			start = i;
+		}
+		this.index = start - 1;
+	}
+
+	/**
+	 * Moves to the next record with a sequence-number of at least
+	 * <code>from</code>.
+	 *
+	 * @return <code>true</code> if there is another record, otherwise
+	 *         <code>false</code>
+	 *
+	 * @throws IOException
+	 *             if a segment cannot be read or is corrupted
+	 */
+	public boolean next() throws IOException {
+		while (true) {
+			if (channel == null && !openNext()) {
+				return false;
+			} else if (readRecord()) {
+				if (sequence >= from) {
+					return true;
+				}
+			} else if (index < segments.size() - 1 && truncated) {
+				throw new IOException("The segment '" + segments.get(index)
+						+ "' of the journal is corrupted at position "
+						+ validPosition + ".");
+			} else if (truncated) {
+				return false;
+			} else {
+				closeChannel();
+			}
+		}
+	}
+
+	/**
+	 * Reads the record at the current position of the current segment.
+	 *
+	 * @return <code>true</code> if a valid record was read,
+	 *         <code>false</code> if the segment ends or the record is
+	 *         invalid (see {@link #isTruncated()})
+	 *
+	 * @throws IOException
+	 *             if the segment cannot be read
+	 */
+	protected boolean readRecord() throws IOException {
+		if (!fill(IngestJournal.HEADER_SIZE)) {
+			truncated = buffer.hasRemaining();
+			return false;
+		}
+
+		final int start = buffer.position();
+		final int recordLength = buffer.getInt(start);
+		final long recordSequence = buffer.getLong(start + 4);
+		final int checksum = buffer.getInt(start + 12);
+		if (recordLength < 0
+				|| recordLength > channel.size() - position
+						+ buffer.remaining() - IngestJournal.HEADER_SIZE) {
+			truncated = true;
+			return false;
+		} else if (!fill(IngestJournal.HEADER_SIZE + recordLength)) {
+			truncated = true;
+			return false;
+		}
+
+		// the buffer may have been compacted by filling
+		final int record = buffer.position();
+		crc.reset();
+		crc.update(buffer.array(), record + 4, 8);
+		crc.update(buffer.array(), record + IngestJournal.HEADER_SIZE,
+				recordLength);
+		if ((int) crc.getValue() != checksum) {
+			truncated = true;
+			return false;
+		}
+
+		sequence = recordSequence;
+		offset = record + IngestJournal.HEADER_SIZE;
+		length = recordLength;
+		buffer.position(offset + length);
+		validPosition = position - buffer.remaining();
+
+		return true;
+	}
+
+	/**
+	 * Makes sure that the buffer contains at least the specified amount of
+	 * bytes, enlarging the buffer if needed.
+	 *
+	 * @param amount
+	 *            the amount of bytes needed
+	 *
+	 * @return <code>true</code> if the bytes are available,
+	 *         <code>false</code> if the segment ends prior
+	 *
+	 * @throws IOException
+	 *             if the segment cannot be read
+	 */
+	protected boolean fill(final int amount) throws IOException {
+		if (buffer.remaining() >= amount) {
+			return true;
+		}
+
+		if (buffer.capacity() < amount) {
+			final ByteBuffer larger = ByteBuffer.allocate(Math.max(amount,
+					buffer.capacity() * 2));
+			larger.put(buffer);
+			buffer = larger;
+		} else {
+			buffer.compact();
+		}
+
+		try {
+			while (buffer.position() < amount) {
+				final int read = channel.read(buffer);
+				if (read < 0) {
+					return false;
+				}
+				position += read;
+			}
+		} finally {
+			buffer.flip();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Opens the next segment.
+	 *
+	 * @return <code>true</code> if there is another segment, otherwise
+	 *         <code>false</code>
+	 *
+	 * @throws IOException
+	 *             if the segment cannot be opened
+	 */
+	@SuppressWarnings("resource")
+	protected boolean openNext() throws IOException {
+		if (index + 1 >= segments.size()) {
+			return false;
+		}
+
+		index++;
+		channel = new FileInputStream(segments.get(index)).getChannel();
+		buffer.clear();
+		buffer.flip();
+		position = 0;
+		validPosition = 0;
+		truncated = false;
+
+		return true;
+	}
+
+	/**
+	 * Closes the channel of the current segment.
+	 *
+	 * @throws IOException
+	 *             if the channel cannot be closed
+	 */
+	protected void closeChannel() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/**
+	 * Gets the sequence-number of the current record.
+	 *
+	 * @return the sequence-number of the current record
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Gets the line of the current record.
+	 *
+	 * @return the line of the current record
+	 */
+	public String getLine() {
+		return new String(buffer.array(), offset, length, charset);
+	}
+
+	/**
+	 * Gets the segment currently read.
+	 *
+	 * @return the segment currently read, <code>null</code> if no segment is
+	 *         read
+	 */
+	public File getSegment() {
+		return index < 0 || index >= segments.size() ? null : segments
+				.get(index);
+	}
+
+	/**
+	 * Gets the position within the current segment following the last valid
+	 * record.
+	 *
+	 * @return the position following the last valid record
+	 */
+	public long getValidPosition() {
+		return validPosition;
+	}
+
+	/**
+	 * Checks if the reading ended because of an incomplete or invalid record
+	 * at the end of the last segment.
+	 *
+	 * @return <code>true</code> if the last segment ends with an invalid
+	 *         record, otherwise <code>false</code>
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closeChannel();
+		index = segments.size();
+	}
+
+	/**
+	 * Reads the sequence-number of the first record of the specified
+	 * segment.
+	 *
+	 * @param segment
+	 *            the segment to read the first sequence-number from
+	 *
+	 * @return the sequence-number of the first record, <code>-1</code> if the
+	 *         segment doesn't contain a complete header
+	 *
+	 * @throws IOException
+	 *             if the segment cannot be read
+	 */
+	public static long readFirstSequence(final File segment)
+			throws IOException {
+		final FileInputStream in = new FileInputStream(segment);
+		try {
+			final ByteBuffer header = ByteBuffer
+					.allocate(IngestJournal.HEADER_SIZE);
+			final FileChannel channel = in.getChannel();
+			while (header.hasRemaining()) {
+				if (channel.read(header) < 0) {
+					return -1;
+				}
+			}
+
+			return header.getLong(4);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,980 @@
+package net.meisen.general.server.listener.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import net.meisen.general.server.api.IDurableLineSink;
+import net.meisen.general.server.api.ILineSink;
+import net.meisen.general.server.listener.utility.LineFramer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An <code>ILineSink</code> appending the lines to memory-mapped segment
+ * files. The lines are encoded directly into the mapped segment, i.e. there
+ * is no copy between the encoding and the file. A segment is rolled over if
+ * it's full (i.e. has <code>segmentSize</code> bytes) or if it's older than
+ * the <code>rolloverInterval</code>. The next segment is created, mapped and
+ * its pages are touched in the background (using the suffix
+ * <code>.pre</code> until used), so that a rollover doesn't wait for the
+ * file-system.<br/>
+ * <br/>
+ * The segments are named after the <code>file</code> followed by a
+ * sequence-number, e.g. <code>ingest.log.000001</code>. Segments already
+ * existing are kept, i.e. the sequence-numbers continue after a restart. A
+ * segment is truncated to its written length when rolled over or closed, the
+ * segment currently written ends with the not yet written (zeroed) bytes.
+ * After a crash the last segment is therefore trimmed to its last complete
+ * line when the sink is created, and the preallocated segments left behind
+ * are deleted.<br/>
+ * <br/>
+ * A segment is truncated and renamed while it's still mapped (there is no
+ * way to release a mapping explicitly), which isn't supported by Windows,
+ * i.e. the sink is limited to POSIX systems.<br/>
+ * <br/>
+ * The lines are made durable by {@link #sync()}, which forces the mapped
+ * segment to the storage. If <code>syncOnRollover</code> is enabled, a
+ * segment is forced prior to being rolled over as well, so that a
+ * <code>sync</code> covers all the lines written so far.<br/>
+ * <br/>
+ * If a {@link TimestampIndex} is set, the time each line is written is
+ * indexed, so that the lines written within a time window can be streamed
+ * (see {@link #stream(long, long, ILineSink)}) without scanning the
+ * segments.
+ *
+ * @author pmeisen
+ *
+ */
+public class MappedFileSink implements IDurableLineSink {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(MappedFileSink.class);
+
+	/**
+	 * The default size of a segment, i.e. <code>64 MB</code>.
+	 */
+	public final static long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+	private final static int PAGE_SIZE = 4096;
+	private final static int RECOVER_BUFFER_SIZE = 65536;
+	private final static String PREALLOCATED_SUFFIX = ".pre";
+
+	private final File file;
+	private final long segmentSize;
+	private final long rolloverInterval;
+	private final Charset charset;
+	private final CharsetEncoder encoder;
+	private final byte[] separator;
+	private final ExecutorService preallocator;
+
+	private Segment current;
+	private Future<Segment> next;
+	private long sequence;
+	private long rollovers = 0;
+	private long written = 0;
+	private boolean closed = false;
+	private volatile boolean syncOnRollover = false;
+	private TimestampIndex index = null;
+
+	/**
+	 * A mapped segment file.
+	 */
+	protected static class Segment {
+		private File file;
+		private final long sequence;
+		private final RandomAccessFile raf;
+		private final MappedByteBuffer buffer;
+		private long created = 0;
+		private boolean closed = false;
+
+		/**
+		 * Creates and maps the segment.
+		 *
+		 * @param file
+		 *            the file of the segment
+		 * @param sequence
+		 *            the sequence-number of the segment
+		 * @param size
+		 *            the size of the segment
+		 *
+		 * @throws IOException
+		 *             if the file cannot be created or mapped
+		 */
+		protected Segment(final File file, final long sequence,
+				final long size) throws IOException {
+			this.file = file;
+			this.sequence = sequence;
+			this.raf = new RandomAccessFile(file, "rw");
+			try {
+				this.raf.setLength(size);
+				this.buffer = raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+			} catch (final IOException e) {
+				raf.close();
+				throw e;
+			}
+		}
+
+		/**
+		 * Touches each page of the mapping, so that writing doesn't fault.
+		 */
+		protected void touch() {
+			final int size = buffer.capacity();
+			for (int i = 0; i < size; i += PAGE_SIZE) {
+				buffer.put(i, (byte) 0);
+			}
+		}
+
+		/**
+		 * Renames the preallocated file of the segment to the specified
+		 * file.
+		 *
+		 * @param target
+		 *            the final file of the segment
+		 *
+		 * @throws IOException
+		 *             if the file cannot be renamed
+		 */
+		protected void activate(final File target) throws IOException {
+			if (!file.renameTo(target)) {
+				throw new IOException("The segment '" + file
+						+ "' cannot be renamed to '" + target + "'.");
+			}
+			file = target;
+		}
+
+		/**
+		 * Gets the file of the segment.
+		 *
+		 * @return the file of the segment
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * Gets the sequence-number of the segment.
+		 *
+		 * @return the sequence-number of the segment
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * Gets the mapped buffer of the segment, the position marks the end
+		 * of the written data.
+		 *
+		 * @return the mapped buffer
+		 */
+		public MappedByteBuffer getBuffer() {
+			return buffer;
+		}
+
+		/**
+		 * Gets the <code>FileChannel</code> of the segment.
+		 *
+		 * @return the <code>FileChannel</code> of the segment
+		 */
+		public FileChannel getChannel() {
+			return raf.getChannel();
+		}
+
+		/**
+		 * Truncates the segment to the written data and closes it.
+		 *
+		 * @throws IOException
+		 *             if the segment cannot be truncated or closed
+		 */
+		protected synchronized void close() throws IOException {
+			closed = true;
+			try {
+				raf.getChannel().truncate(buffer.position());
+			} finally {
+				raf.close();
+			}
+		}
+
+		/**
+		 * Forces the written data of the segment to the storage, a closed
+		 * segment is not forced anymore.
+		 */
+		protected synchronized void force() {
+			if (!closed) {
+				buffer.force();
+			}
+		}
+
+		/**
+		 * Closes and deletes the segment, which must not contain any data.
+		 */
+		protected void discard() {
+			try {
+				raf.close();
+			} catch (final IOException e) {
+				// ignore
+			}
+			if (!file.delete() && LOG.isWarnEnabled()) {
+				LOG.warn("Unable to delete the unused segment '" + file
+						+ "'.");
+			}
+		}
+	}
+
+	/**
+	 * Creates a sink appending to segments of the specified
+	 * <code>file</code>.
+	 *
+	 * @param file
+	 *            the file to append the sequence-numbers of the segments to
+	 * @param segmentSize
+	 *            the size of a segment in bytes
+	 * @param rolloverInterval
+	 *            the maximal age of a segment in milliseconds,
+	 *            <code>0</code> to roll over only if the segment is full
+	 * @param charset
+	 *            the <code>Charset</code> used to encode the lines
+	 *
+	 * @throws IOException
+	 *             if the first segment cannot be created
+	 */
+	public MappedFileSink(final File file, final long segmentSize,
+			final long rolloverInterval, final Charset charset)
+			throws IOException {
+		if (file == null) {
+			throw new NullPointerException("The file cannot be null.");
+		} else if (charset == null) {
+			throw new NullPointerException("The charset cannot be null.");
+		} else if (segmentSize < PAGE_SIZE || segmentSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The segmentSize '"
+					+ segmentSize + "' is invalid.");
+		} else if (rolloverInterval < 0) {
+			throw new IllegalArgumentException(
+					"The rolloverInterval cannot be negative.");
+		} else if (!isSupported()) {
+			throw new IOException("The memory-mapped segments of '" + file
+					+ "' are not supported on '"
+					+ System.getProperty("os.name") + "'.");
+		}
+
+		final File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("The directory '" + dir
+					+ "' cannot be created.");
+		}
+
+		this.file = file.getAbsoluteFile();
+		this.segmentSize = segmentSize;
+		this.rolloverInterval = rolloverInterval;
+		this.charset = charset;
+		this.encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.separator = System.getProperty("line.separator").getBytes(
+				charset);
+
+		final String name = this.file.getName();
+		this.preallocator = Executors
+				.newSingleThreadExecutor(new ThreadFactory() {
+
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread t = new Thread(r, "MappedFileSink ("
+								+ name + ")");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+
+		// continue after the last existing segment
+		final List<File> segments = getSegments(this.file);
+		this.sequence = segments.isEmpty() ? 0 : getSequence(this.file,
+				segments.get(segments.size() - 1));
+		if (!segments.isEmpty()) {
+			recover(segments.get(segments.size() - 1), separator);
+		}
+		deletePreallocated(this.file);
+
+		this.current = createSegment(segmentSize);
+		this.current.created = System.currentTimeMillis();
+		this.next = preallocate();
+	}
+
+	@Override
+	public synchronized void write(final String line) throws IOException {
+		if (closed) {
+			throw new IOException("The sink is closed.");
+		}
+
+		// roll over aged segments
+		final long now = System.currentTimeMillis();
+		if (rolloverInterval > 0 && current.getBuffer().position() > 0
+				&& now - current.created >= rolloverInterval) {
+			roll(0);
+		}
+
+		final Segment segment = current;
+		final int start = segment.getBuffer().position();
+		if (!encode(line, current.getBuffer())) {
+
+			// a line larger than a segment gets its own (larger) segment
+			final ByteBuffer encoded = charset.encode(line);
+			final long size = encoded.remaining() + separator.length;
+			roll(size > segmentSize ? size : 0);
+			current.getBuffer().put(encoded).put(separator);
+		}
+		written++;
+
+		if (index != null) {
+			updateIndex(now, current.getSequence(), segment == current ? start
+					: 0);
+		}
+	}
+
+	/**
+	 * Adds the written line to the index, a failure is logged but doesn't
+	 * fail the line, which is written already.
+	 *
+	 * @param now
+	 *            the time the line was written
+	 * @param segment
+	 *            the sequence-number of the segment of the line
+	 * @param offset
+	 *            the offset of the line within the segment
+	 */
+	protected void updateIndex(final long now, final long segment,
+			final long offset) {
+		try {
+			index.update(now, segment, offset);
+		} catch (final IOException e) {
+			if (LOG.isErrorEnabled()) {
+				LOG.error("Failed to update the index '" + index + "'.", e);
+			}
+		}
+	}
+
+	/**
+	 * Encodes the line followed by the line-separator into the specified
+	 * buffer. If the line doesn't fit, the buffer is not modified.
+	 *
+	 * @param line
+	 *            the line to be encoded
+	 * @param buffer
+	 *            the buffer to encode the line into
+	 *
+	 * @return <code>true</code> if the line is encoded, <code>false</code> if
+	 *         the line doesn't fit into the buffer
+	 */
+	protected boolean encode(final String line, final ByteBuffer buffer) {
+		final int start = buffer.position();
+
+		encoder.reset();
+		CoderResult result = encoder.encode(CharBuffer.wrap(line), buffer,
+				true);
+		if (!result.isOverflow()) {
+			result = encoder.flush(buffer);
+		}
+
+		if (result.isOverflow() || buffer.remaining() < separator.length) {
+			buffer.position(start);
+			return false;
+		}
+		buffer.put(separator);
+
+		return true;
+	}
+
+	/**
+	 * Closes the current segment and continues with the next one.
+	 *
+	 * @param minSize
+	 *            the minimal size of the next segment, a segment exceeding
+	 *            the <code>segmentSize</code> is created synchronously
+	 *
+	 * @throws IOException
+	 *             if the next segment cannot be created
+	 */
+	protected void roll(final long minSize) throws IOException {
+		final Segment old = current;
+		if (syncOnRollover) {
+			old.force();
+		}
+
+		final Segment prepared;
+		try {
+			prepared = next.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while rolling over.", e);
+		} catch (final ExecutionException e) {
+			next = preallocate();
+			throw new IOException("The next segment cannot be created.",
+					e.getCause());
+		}
+
+		// keep the order of the sequence-numbers for larger segments
+		if (minSize > segmentSize) {
+			prepared.discard();
+			try {
+				current = createSegment(minSize);
+			} finally {
+				next = preallocate();
+			}
+		} else {
+			next = preallocate();
+			try {
+				prepared.activate(getSegmentFile(file, prepared.getSequence()));
+			} catch (final IOException e) {
+				prepared.discard();
+				throw e;
+			}
+			current = prepared;
+		}
+		current.created = System.currentTimeMillis();
+		rollovers++;
+
+		// an empty segment (e.g. followed by a large line) is not kept
+		if (old.getBuffer().position() == 0) {
+			old.discard();
+		} else {
+			old.close();
+			rolled(old);
+		}
+	}
+
+	/**
+	 * Method called after a segment is rolled over and closed. The default
+	 * implementation does nothing.
+	 *
+	 * @param segment
+	 *            the closed segment
+	 */
+	protected void rolled(final Segment segment) {
+		// nothing to do
+	}
+
+	/**
+	 * Creates the next segment in the background.
+	 *
+	 * @return the <code>Future</code> of the next segment
+	 */
+	protected Future<Segment> preallocate() {
+		final long size = segmentSize;
+
+		synchronized (this) {
+			final long seq = ++sequence;
+			return preallocator.submit(new Callable<Segment>() {
+
+				@Override
+				public Segment call() throws Exception {
+					final File segmentFile = getSegmentFile(file, seq);
+					final Segment segment = new Segment(new File(segmentFile
+							.getParentFile(), segmentFile.getName()
+							+ PREALLOCATED_SUFFIX), seq, size);
+					segment.touch();
+					return segment;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Creates the next segment synchronously.
+	 *
+	 * @param size
+	 *            the size of the segment
+	 *
+	 * @return the created segment
+	 *
+	 * @throws IOException
+	 *             if the segment cannot be created
+	 */
+	protected synchronized Segment createSegment(final long size)
+			throws IOException {
+		final long seq = ++sequence;
+		return new Segment(getSegmentFile(file, seq), seq, size);
+	}
+
+	/**
+	 * Forces the segment currently written to the storage. The segment is
+	 * forced without holding the lock of the sink, i.e. other threads can
+	 * continue writing.
+	 */
+	@Override
+	public void sync() throws IOException {
+		final Segment segment;
+		synchronized (this) {
+			if (closed) {
+				throw new IOException("The sink is closed.");
+			} else if (index != null) {
+				index.flush();
+			}
+			segment = current;
+		}
+
+		segment.force();
+	}
+
+	/**
+	 * Streams the lines written between the two timestamps (both inclusive)
+	 * to the specified sink using the index.
+	 *
+	 * @param from
+	 *            the time (in milliseconds) the first line was written
+	 * @param to
+	 *            the time (in milliseconds) the last line was written
+	 * @param target
+	 *            the sink to stream the lines to
+	 *
+	 * @return the amount of streamed lines
+	 *
+	 * @throws IOException
+	 *             if the sink doesn't have any index, the segments cannot be
+	 *             read or the target fails
+	 *
+	 * @see TimestampIndex#stream(File, long, long, Charset, ILineSink)
+	 */
+	public long stream(final long from, final long to, final ILineSink target)
+			throws IOException {
+		final TimestampIndex current = getIndex();
+		if (current == null) {
+			throw new IOException("The sink '" + toString()
+					+ "' doesn't have any index.");
+		}
+
+		return current.stream(file, from, to, charset, target);
+	}
+
+	/**
+	 * Flushing is not needed, the written lines are visible to other
+	 * processes through the page-cache. The method does not force the lines
+	 * to the storage.
+	 */
+	@Override
+	public void flush() throws IOException {
+		// nothing to do
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			if (current.getBuffer().position() == 0) {
+				current.discard();
+			} else {
+				current.close();
+			}
+		} finally {
+			closeIndex();
+			preallocator.shutdown();
+			try {
+				next.get().discard();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (final ExecutionException e) {
+				// nothing to discard
+			}
+		}
+	}
+
+	/**
+	 * Closes the index, a failure is logged only.
+	 */
+	protected void closeIndex() {
+		if (index == null) {
+			return;
+		}
+
+		try {
+			index.close();
+		} catch (final IOException e) {
+			if (LOG.isErrorEnabled()) {
+				LOG.error("Failed to close the index '" + index + "'.", e);
+			}
+		}
+	}
+
+	/**
+	 * Checks if a segment is forced to the storage prior to being rolled
+	 * over.
+	 *
+	 * @return <code>true</code> if a segment is forced prior to being rolled
+	 *         over, otherwise <code>false</code>
+	 */
+	public boolean isSyncOnRollover() {
+		return syncOnRollover;
+	}
+
+	/**
+	 * Defines if a segment is forced to the storage prior to being rolled
+	 * over, which is needed if the lines are made durable using
+	 * {@link #sync()}.
+	 *
+	 * @param syncOnRollover
+	 *            <code>true</code> if a segment should be forced prior to
+	 *            being rolled over, otherwise <code>false</code>
+	 */
+	public void setSyncOnRollover(final boolean syncOnRollover) {
+		this.syncOnRollover = syncOnRollover;
+	}
+
+	/**
+	 * Gets the index of the time the lines are written.
+	 *
+	 * @return the index, <code>null</code> if the lines are not indexed
+	 */
+	public synchronized TimestampIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Sets the index of the time the lines are written, the index is closed
+	 * with the sink. The lines can only be indexed if the <code>Charset</code>
+	 * of the sink is ASCII-compatible.
+	 *
+	 * @param index
+	 *            the index, <code>null</code> to not index the lines
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the <code>Charset</code> of the sink isn't
+	 *             ASCII-compatible
+	 *
+	 * @see LineFramer#isAsciiCompatible(Charset)
+	 */
+	public synchronized void setIndex(final TimestampIndex index) {
+		if (index != null && !LineFramer.isAsciiCompatible(charset)) {
+			throw new IllegalArgumentException("The charset '" + charset
+					+ "' cannot be indexed, it isn't ASCII-compatible.");
+		}
+		this.index = index;
+	}
+
+	/**
+	 * Gets the file the sequence-numbers of the segments are appended to.
+	 *
+	 * @return the file of the sink
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the size of a segment.
+	 *
+	 * @return the size of a segment in bytes
+	 */
+	public long getSegmentSize() {
+		return segmentSize;
+	}
+
+	/**
+	 * Gets the maximal age of a segment.
+	 *
+	 * @return the maximal age of a segment in milliseconds, <code>0</code> if
+	 *         the segments are only rolled over if full
+	 */
+	public long getRolloverInterval() {
+		return rolloverInterval;
+	}
+
+	/**
+	 * Gets the <code>Charset</code> used to encode the lines.
+	 *
+	 * @return the <code>Charset</code> used to encode the lines
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Gets the segment currently written.
+	 *
+	 * @return the segment currently written
+	 */
+	public synchronized Segment getCurrentSegment() {
+		return current;
+	}
+
+	/**
+	 * Gets the amount of rollovers.
+	 *
+	 * @return the amount of rollovers
+	 */
+	public synchronized long getRollovers() {
+		return rollovers;
+	}
+
+	/**
+	 * Gets the amount of lines written.
+	 *
+	 * @return the amount of lines written
+	 */
+	public synchronized long getWritten() {
+		return written;
+	}
+
+	/**
+	 * Checks if the memory-mapped segments are supported by the operating
+	 * system, i.e. if a mapped file can be truncated and renamed.
+	 *
+	 * @return <code>true</code> if the segments are supported, otherwise
+	 *         <code>false</code>
+	 */
+	public static boolean isSupported() {
+		final String os = System.getProperty("os.name", "");
+		return !os.toLowerCase().startsWith("windows");
+	}
+
+	/**
+	 * Trims a segment, which might not have been closed properly (e.g.
+	 * because of a crash), to its last complete line, i.e. the zeroed bytes
+	 * not written and an incomplete line are removed. A segment without any
+	 * complete line is deleted.
+	 *
+	 * @param segment
+	 *            the file of the segment
+	 * @param separator
+	 *            the encoded line-separator
+	 *
+	 * @return the length of the trimmed segment
+	 *
+	 * @throws IOException
+	 *             if the segment cannot be read or trimmed
+	 */
+	protected static long recover(final File segment, final byte[] separator)
+			throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+		final long length;
+		try {
+			final byte[] buffer = new byte[RECOVER_BUFFER_SIZE];
+
+			// skip the zeroed tail, the separator may end with zeros
+			long end = 0;
+			long pos = raf.length();
+			while (end == 0 && pos > 0) {
+				final int size = (int) Math.min(buffer.length, pos);
+				pos -= size;
+				raf.seek(pos);
+				raf.readFully(buffer, 0, size);
+				for (int i = size - 1; i >= 0; i--) {
+					if (buffer[i] != 0) {
+						end = pos + i + 1;
+						break;
+					}
+				}
+			}
+			end = Math.min(raf.length(), end + separator.length - 1);
+
+			// find the end of the last complete line
+			length = lastSeparator(raf, end, separator, buffer);
+			if (length < raf.length()) {
+				if (LOG.isWarnEnabled()) {
+					LOG.warn("Trimming the segment '" + segment + "' from "
+							+ raf.length() + " to " + length + " bytes.");
+				}
+				raf.setLength(length);
+			}
+		} finally {
+			raf.close();
+		}
+
+		if (length == 0 && !segment.delete() && LOG.isWarnEnabled()) {
+			LOG.warn("Unable to delete the empty segment '" + segment + "'.");
+		}
+
+		return length;
+	}
+
+	/**
+	 * Searches the last separator ending at or before the specified position.
+	 *
+	 * @param raf
+	 *            the file to search
+	 * @param end
+	 *            the position to search backwards from
+	 * @param separator
+	 *            the encoded line-separator
+	 * @param buffer
+	 *            the buffer used to read the file, must be larger than the
+	 *            separator
+	 *
+	 * @return the position following the last separator, <code>0</code> if
+	 *         there is no separator
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	protected static long lastSeparator(final RandomAccessFile raf,
+			final long end, final byte[] separator, final byte[] buffer)
+			throws IOException {
+		final int len = separator.length;
+
+		long pos = end;
+		while (pos >= len) {
+			final long start = Math.max(0, pos - buffer.length);
+			final int size = (int) (pos - start);
+			raf.seek(start);
+			raf.readFully(buffer, 0, size);
+
+			// check each separator ending within the read bytes
+			for (int e = size; e >= len; e--) {
+				int i = 0;
+				while (i < len && buffer[e - len + i] == separator[i]) {
+					i++;
+				}
+				if (i == len) {
+					return start + e;
+				}
+			}
+
+			// overlap the next bytes by a partial separator
+			if (start == 0) {
+				break;
+			}
+			pos = start + len - 1;
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Deletes the preallocated segments of the specified file, which are left
+	 * behind if the sink wasn't closed properly.
+	 *
+	 * @param file
+	 *            the file of the sink
+	 */
+	protected static void deletePreallocated(final File file) {
+		final File[] files = file.getParentFile().listFiles();
+		if (files == null) {
+			return;
+		}
+
+		for (final File candidate : files) {
+			final String name = candidate.getName();
+			if (!name.endsWith(PREALLOCATED_SUFFIX)) {
+				continue;
+			}
+
+			final File segment = new File(file.getParentFile(), name.substring(
+					0, name.length() - PREALLOCATED_SUFFIX.length()));
+			if (getSequence(file, segment) > 0 && !candidate.delete()
+					&& LOG.isWarnEnabled()) {
+				LOG.warn("Unable to delete the preallocated segment '"
+						+ candidate + "'.");
+			}
+		}
+	}
+
+	/**
+	 * Gets the file of the segment with the specified sequence-number.
+	 *
+	 * @param file
+	 *            the file of the sink
+	 * @param sequence
+	 *            the sequence-number of the segment
+	 *
+	 * @return the file of the segment
+	 */
+	public static File getSegmentFile(final File file, final long sequence) {
+		return new File(file.getAbsoluteFile().getParentFile(), String.format(
+				"%s.%06d", file.getName(), sequence));
+	}
+
+	/**
+	 * Gets the existing segments of the specified file ordered by their
+	 * sequence-numbers.
+	 *
+	 * @param file
+	 *            the file of the sink
+	 *
+	 * @return the existing segments
+	 */
+	public static List<File> getSegments(final File file) {
+		final File base = file.getAbsoluteFile();
+		final File[] files = base.getParentFile() == null ? null : base
+				.getParentFile().listFiles();
+		final List<File> segments = new ArrayList<File>();
+		if (files == null) {
+			return segments;
+		}
+
+		for (final File candidate : files) {
+			if (getSequence(base, candidate) > 0) {
+				segments.add(candidate);
+			}
+		}
+		Collections.sort(segments, new Comparator<File>() {
+
+			@Override
+			public int compare(final File f1, final File f2) {
+				final long s1 = getSequence(base, f1);
+				final long s2 = getSequence(base, f2);
+				return s1 < s2 ? -1 : s1 == s2 ? 0 : 1;
+			}
+		});
+
+		return segments;
+	}
+
+	/**
+	 * Gets the sequence-number of the specified segment.
+	 *
+	 * @param file
+	 *            the file of the sink
+	 * @param segment
+	 *            the file of the segment
+	 *
+	 * @return the sequence-number, <code>-1</code> if the file isn't a
+	 *         segment of the sink
+	 */
+	public static long getSequence(final File file, final File segment) {
+		final String prefix = file.getName() + ".";
+		final String name = segment.getName();
+		if (!name.startsWith(prefix) || name.length() == prefix.length()) {
+			return -1;
+		}
+
+		final String seq = name.substring(prefix.length());
+		for (int i = 0; i < seq.length(); i++) {
+			if (!Character.isDigit(seq.charAt(i))) {
+				return -1;
+			}
+		}
+
+		try {
+			return Long.parseLong(seq);
+		} catch (final NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "file (" + file + ", segmentSize: " + segmentSize
+				+ ", rolloverInterval: " + rolloverInterval + ")";
+	}
+}
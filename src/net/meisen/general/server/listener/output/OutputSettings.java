@@ -0,0 +1,665 @@
+package net.meisen.general.server.listener.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+
+import net.meisen.general.server.api.IDurableLineSink;
+import net.meisen.general.server.api.ILineSink;
+import net.meisen.general.server.listener.utility.LineFramer;
+
+/**
+ * The settings of the sink the <code>OutputListener</code> writes the
+ * received lines to. By default the lines are written directly to the
+ * <code>PrintStream</code> by the thread of the connection. Defining the
+ * <code>async</code> extension decouples the connections from the
+ * <code>PrintStream</code> using an {@link AsyncSink}, e.g.:
+ *
+ * <pre>
+ * &lt;ed:extension&gt;
+ *   &lt;async capacity="65536" batchSize="1024" flushInterval="100" overflow="block" /&gt;
+ * &lt;/ed:extension&gt;
+ * </pre>
+ *
+ * With <code>overflow="spill"</code> the lines not fitting into the
+ * ring-buffer are written to the segments of the <code>spillFile</code> (or
+ * of a temporary directory if not defined) until the output catches up. The
+ * <code>spillFile</code> must differ from the output-file and the journal,
+ * e.g.:
+ *
+ * <pre>
+ * &lt;ed:extension&gt;
+ *   &lt;async overflow="spill" spillFile="/var/tmp/ingest.spill" spillSegmentSize="67108864" /&gt;
+ * &lt;/ed:extension&gt;
+ * </pre>
+ *
+ * Instead of a <code>PrintStream</code> the <code>output</code> extension can
+ * define a <code>file</code>, the lines are appended to memory-mapped segments
+ * of the file (see {@link MappedFileSink}), e.g.:
+ *
+ * <pre>
+ * &lt;ed:extension&gt;
+ *   &lt;output file="/var/log/ingest/ingest.log" segmentSize="67108864" rolloverInterval="3600000" /&gt;
+ * &lt;/ed:extension&gt;
+ * </pre>
+ *
+ * Setting <code>index="true"</code> maintains a {@link TimestampIndex} of
+ * the file (e.g. <code>ingest.log.idx</code>), so that the lines written
+ * within a time window can be streamed without scanning the segments. The
+ * index needs an ASCII-compatible <code>charset</code> (e.g.
+ * <code>UTF-8</code>), e.g.:
+ *
+ * <pre>
+ * &lt;ed:extension&gt;
+ *   &lt;output file="/var/log/ingest/ingest.log" index="true" indexResolution="1000" indexInterval="1048576" /&gt;
+ * &lt;/ed:extension&gt;
+ * </pre>
+ *
+ * The <code>durable</code> extension holds the answer of a line until the
+ * line is forced to the file by a group commit (see {@link GroupCommitSink}),
+ * the durable mode needs a <code>file</code> and cannot be combined with the
+ * <code>async</code> extension, e.g.:
+ *
+ * <pre>
+ * &lt;ed:extension&gt;
+ *   &lt;durable commitInterval="5" maxBatch="1024" failureMessage="FAILED" /&gt;
+ * &lt;/ed:extension&gt;
+ * </pre>
+ *
+ * The <code>journal</code> extension appends each accepted line to an
+ * {@link IngestJournal} prior to writing it, so that the lines can be
+ * re-delivered if the output fails. A line which cannot be journaled is
+ * answered with the <code>failureMessage</code>, e.g.:
+ *
+ * <pre>
+ * &lt;ed:extension&gt;
+ *   &lt;journal file="/var/lib/ingest/ingest.journal" segmentSize="67108864" /&gt;
+ * &lt;/ed:extension&gt;
+ * </pre>
+ *
+ * @author pmeisen
+ *
+ * @see OverflowPolicy
+ */
+public class OutputSettings {
+	private boolean async = false;
+	private int capacity = AsyncSink.DEFAULT_CAPACITY;
+	private int batchSize = AsyncSink.DEFAULT_BATCH_SIZE;
+	private long flushInterval = AsyncSink.DEFAULT_FLUSH_INTERVAL;
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+	private File spillFile = null;
+	private long spillSegmentSize = SpillQueue.DEFAULT_SEGMENT_SIZE;
+
+	private File file = null;
+	private long segmentSize = MappedFileSink.DEFAULT_SEGMENT_SIZE;
+	private long rolloverInterval = 0;
+	private Charset charset = Charset.defaultCharset();
+	private boolean index = false;
+	private long indexResolution = TimestampIndex.DEFAULT_RESOLUTION;
+	private long indexInterval = TimestampIndex.DEFAULT_INTERVAL;
+
+	private boolean durable = false;
+	private long commitInterval = GroupCommitSink.DEFAULT_COMMIT_INTERVAL;
+	private int maxBatch = GroupCommitSink.DEFAULT_MAX_BATCH;
+	private String failureMessage = "FAILED";
+
+	private File journal = null;
+	private long journalSegmentSize = IngestJournal.DEFAULT_SEGMENT_SIZE;
+
+	/**
+	 * Checks if the lines are written asynchronously.
+	 *
+	 * @return <code>true</code> if the lines are written asynchronously,
+	 *         otherwise <code>false</code>
+	 */
+	public boolean isAsync() {
+		return async;
+	}
+
+	/**
+	 * Defines if the lines are written asynchronously.
+	 *
+	 * @param async
+	 *            <code>true</code> if the lines should be written
+	 *            asynchronously, otherwise <code>false</code>
+	 */
+	public void setAsync(final boolean async) {
+		this.async = async;
+	}
+
+	/**
+	 * Gets the capacity of the ring-buffer of the asynchronous sink.
+	 *
+	 * @return the capacity of the ring-buffer
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the capacity of the ring-buffer of the asynchronous sink, the
+	 * capacity is rounded up to the next power of two.
+	 *
+	 * @param capacity
+	 *            the capacity of the ring-buffer
+	 */
+	public void setCapacity(final int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Gets the maximal amount of lines written per batch.
+	 *
+	 * @return the maximal amount of lines written per batch
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the maximal amount of lines written per batch.
+	 *
+	 * @param batchSize
+	 *            the maximal amount of lines written per batch
+	 */
+	public void setBatchSize(final int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Gets the maximal time between two flushes under load.
+	 *
+	 * @return the maximal time between two flushes in milliseconds
+	 */
+	public long getFlushInterval() {
+		return flushInterval;
+	}
+
+	/**
+	 * Sets the maximal time between two flushes under load.
+	 *
+	 * @param flushInterval
+	 *            the maximal time between two flushes in milliseconds,
+	 *            <code>0</code> to flush every batch
+	 */
+	public void setFlushInterval(final long flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Gets the <code>OverflowPolicy</code> applied if the ring-buffer is
+	 * full.
+	 *
+	 * @return the <code>OverflowPolicy</code>
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * Sets the <code>OverflowPolicy</code> applied if the ring-buffer is
+	 * full.
+	 *
+	 * @param overflowPolicy
+	 *            the <code>OverflowPolicy</code>
+	 */
+	public void setOverflowPolicy(final OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Gets the file the names of the segments of the spilled lines are based
+	 * on.
+	 *
+	 * @return the file of the spilled lines, <code>null</code> if a temporary
+	 *         directory is used
+	 */
+	public File getSpillFile() {
+		return spillFile;
+	}
+
+	/**
+	 * Sets the file the names of the segments of the spilled lines are based
+	 * on.
+	 *
+	 * @param spillFile
+	 *            the file of the spilled lines, <code>null</code> to use a
+	 *            temporary directory
+	 */
+	public void setSpillFile(final File spillFile) {
+		this.spillFile = spillFile;
+	}
+
+	/**
+	 * Gets the size of a segment of the spilled lines.
+	 *
+	 * @return the size of a segment of the spilled lines in bytes
+	 */
+	public long getSpillSegmentSize() {
+		return spillSegmentSize;
+	}
+
+	/**
+	 * Sets the size of a segment of the spilled lines.
+	 *
+	 * @param spillSegmentSize
+	 *            the size of a segment of the spilled lines in bytes
+	 */
+	public void setSpillSegmentSize(final long spillSegmentSize) {
+		this.spillSegmentSize = spillSegmentSize;
+	}
+
+	/**
+	 * Gets the file the lines are written to.
+	 *
+	 * @return the file the lines are written to, <code>null</code> if the
+	 *         lines are written to the <code>PrintStream</code>
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Sets the file the lines are written to.
+	 *
+	 * @param file
+	 *            the file the lines are written to, <code>null</code> to
+	 *            write to the <code>PrintStream</code>
+	 */
+	public void setFile(final File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Gets the size of a segment of the file.
+	 *
+	 * @return the size of a segment in bytes
+	 */
+	public long getSegmentSize() {
+		return segmentSize;
+	}
+
+	/**
+	 * Sets the size of a segment of the file.
+	 *
+	 * @param segmentSize
+	 *            the size of a segment in bytes
+	 */
+	public void setSegmentSize(final long segmentSize) {
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Gets the maximal age of a segment of the file.
+	 *
+	 * @return the maximal age of a segment in milliseconds, <code>0</code> if
+	 *         a segment is only rolled over if full
+	 */
+	public long getRolloverInterval() {
+		return rolloverInterval;
+	}
+
+	/**
+	 * Sets the maximal age of a segment of the file.
+	 *
+	 * @param rolloverInterval
+	 *            the maximal age of a segment in milliseconds, <code>0</code>
+	 *            to roll over a segment only if full
+	 */
+	public void setRolloverInterval(final long rolloverInterval) {
+		this.rolloverInterval = rolloverInterval;
+	}
+
+	/**
+	 * Gets the <code>Charset</code> used to encode the lines written to the
+	 * file.
+	 *
+	 * @return the <code>Charset</code> used to encode the lines
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Sets the <code>Charset</code> used to encode the lines written to the
+	 * file.
+	 *
+	 * @param charset
+	 *            the <code>Charset</code> used to encode the lines
+	 */
+	public void setCharset(final Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Checks if the time the lines are written to the file is indexed.
+	 *
+	 * @return <code>true</code> if the time is indexed, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isIndex() {
+		return index;
+	}
+
+	/**
+	 * Defines if the time the lines are written to the file is indexed.
+	 *
+	 * @param index
+	 *            <code>true</code> if the time should be indexed, otherwise
+	 *            <code>false</code>
+	 */
+	public void setIndex(final boolean index) {
+		this.index = index;
+	}
+
+	/**
+	 * Gets the time after which another entry is added to the index.
+	 *
+	 * @return the resolution of the index in milliseconds
+	 */
+	public long getIndexResolution() {
+		return indexResolution;
+	}
+
+	/**
+	 * Sets the time after which another entry is added to the index.
+	 *
+	 * @param indexResolution
+	 *            the resolution of the index in milliseconds
+	 */
+	public void setIndexResolution(final long indexResolution) {
+		this.indexResolution = indexResolution;
+	}
+
+	/**
+	 * Gets the amount of bytes after which another entry is added to the
+	 * index.
+	 *
+	 * @return the interval of the index in bytes
+	 */
+	public long getIndexInterval() {
+		return indexInterval;
+	}
+
+	/**
+	 * Sets the amount of bytes after which another entry is added to the
+	 * index.
+	 *
+	 * @param indexInterval
+	 *            the interval of the index in bytes
+	 */
+	public void setIndexInterval(final long indexInterval) {
+		this.indexInterval = indexInterval;
+	}
+
+	/**
+	 * Checks if the answer of a line is held until the line is durable.
+	 *
+	 * @return <code>true</code> if the answers are held until the lines are
+	 *         durable, otherwise <code>false</code>
+	 */
+	public boolean isDurable() {
+		return durable;
+	}
+
+	/**
+	 * Defines if the answer of a line is held until the line is durable.
+	 *
+	 * @param durable
+	 *            <code>true</code> if the answers should be held until the
+	 *            lines are durable, otherwise <code>false</code>
+	 */
+	public void setDurable(final boolean durable) {
+		this.durable = durable;
+	}
+
+	/**
+	 * Gets the maximal time a line waits for the group commit.
+	 *
+	 * @return the maximal time a line waits for the commit in milliseconds
+	 */
+	public long getCommitInterval() {
+		return commitInterval;
+	}
+
+	/**
+	 * Sets the maximal time a line waits for the group commit.
+	 *
+	 * @param commitInterval
+	 *            the maximal time a line waits for the commit in
+	 *            milliseconds
+	 */
+	public void setCommitInterval(final long commitInterval) {
+		this.commitInterval = commitInterval;
+	}
+
+	/**
+	 * Gets the amount of pending lines committed without waiting for the
+	 * interval.
+	 *
+	 * @return the amount of pending lines committed at once
+	 */
+	public int getMaxBatch() {
+		return maxBatch;
+	}
+
+	/**
+	 * Sets the amount of pending lines committed without waiting for the
+	 * interval.
+	 *
+	 * @param maxBatch
+	 *            the amount of pending lines committed at once
+	 */
+	public void setMaxBatch(final int maxBatch) {
+		this.maxBatch = maxBatch;
+	}
+
+	/**
+	 * Gets the message answering a line, which could not be written.
+	 *
+	 * @return the message answering a line which could not be written
+	 */
+	public String getFailureMessage() {
+		return failureMessage;
+	}
+
+	/**
+	 * Sets the message answering a line, which could not be written.
+	 *
+	 * @param failureMessage
+	 *            the message answering a line which could not be written
+	 */
+	public void setFailureMessage(final String failureMessage) {
+		this.failureMessage = failureMessage;
+	}
+
+	/**
+	 * Gets the file of the journal the accepted lines are appended to.
+	 *
+	 * @return the file of the journal, <code>null</code> if no journal is
+	 *         used
+	 */
+	public File getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Sets the file of the journal the accepted lines are appended to.
+	 *
+	 * @param journal
+	 *            the file of the journal, <code>null</code> to not use any
+	 *            journal
+	 */
+	public void setJournal(final File journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Gets the size of a segment of the journal.
+	 *
+	 * @return the size of a segment of the journal in bytes
+	 */
+	public long getJournalSegmentSize() {
+		return journalSegmentSize;
+	}
+
+	/**
+	 * Sets the size of a segment of the journal.
+	 *
+	 * @param journalSegmentSize
+	 *            the size of a segment of the journal in bytes
+	 */
+	public void setJournalSegmentSize(final long journalSegmentSize) {
+		this.journalSegmentSize = journalSegmentSize;
+	}
+
+	/**
+	 * Checks if the <code>spillFile</code> is the <code>file</code> or the
+	 * <code>journal</code>, which isn't allowed.
+	 *
+	 * @return <code>true</code> if the <code>spillFile</code> conflicts with
+	 *         another file, otherwise <code>false</code>
+	 */
+	public boolean isSpillFileConflicting() {
+		if (spillFile == null) {
+			return false;
+		}
+
+		final File spill = spillFile.getAbsoluteFile();
+		return (file != null && spill.equals(file.getAbsoluteFile()))
+				|| (journal != null && spill.equals(journal.getAbsoluteFile()));
+	}
+
+	/**
+	 * Validates the settings.
+	 *
+	 * @return <code>true</code> if the settings are valid, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isValid() {
+		if (journal != null
+				&& (journalSegmentSize < 4096 || charset == null || journal
+						.getAbsoluteFile().equals(
+								file == null ? null : file.getAbsoluteFile()))) {
+			return false;
+		} else if (file != null
+				&& (segmentSize < 4096 || segmentSize > Integer.MAX_VALUE
+						|| rolloverInterval < 0 || charset == null)) {
+			return false;
+		} else if (index
+				&& (file == null || indexResolution < 1 || indexInterval < 1
+						|| !LineFramer.isAsciiCompatible(charset))) {
+			return false;
+		} else if (durable) {
+			return file != null && !async && commitInterval >= 0
+					&& maxBatch > 0;
+		} else if (!async) {
+			return true;
+		} else if (isSpillFileConflicting()) {
+			return false;
+		}
+
+		return capacity > 0 && capacity <= 1 << 30 && batchSize > 0
+				&& flushInterval >= 0 && overflowPolicy != null
+				&& spillSegmentSize >= 4096;
+	}
+
+	/**
+	 * Creates the sink writing the lines to the file or (if no file is
+	 * defined) to the specified <code>PrintStream</code>.
+	 *
+	 * @param out
+	 *            the <code>PrintStream</code> to write to, if no file is
+	 *            defined
+	 *
+	 * @return the created sink
+	 *
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	public ILineSink createTarget(final PrintStream out) throws IOException {
+		if (file == null) {
+			return new PrintStreamSink(out);
+		}
+
+		final MappedFileSink sink = new MappedFileSink(file, segmentSize,
+				rolloverInterval, charset);
+		if (index) {
+			try {
+				sink.setIndex(new TimestampIndex(TimestampIndex
+						.getIndexFile(file), indexResolution, indexInterval));
+			} catch (final IOException e) {
+				sink.close();
+				throw e;
+			}
+		}
+
+		return sink;
+	}
+
+	/**
+	 * Opens the journal defined by the settings.
+	 *
+	 * @return the opened journal, <code>null</code> if no journal is defined
+	 *
+	 * @throws IOException
+	 *             if the journal cannot be opened
+	 */
+	public IngestJournal createJournal() throws IOException {
+		if (journal == null) {
+			return null;
+		} else {
+			return new IngestJournal(journal, journalSegmentSize, charset);
+		}
+	}
+
+	/**
+	 * Creates the sink defined by the settings, which writes to the
+	 * specified <code>target</code>.
+	 *
+	 * @param target
+	 *            the sink created by {@link #createTarget(PrintStream)}
+	 *
+	 * @return the created sink
+	 */
+	public ILineSink createSink(final ILineSink target) {
+		if (durable) {
+			if (target instanceof MappedFileSink) {
+				((MappedFileSink) target).setSyncOnRollover(true);
+			}
+			return new GroupCommitSink((IDurableLineSink) target,
+					commitInterval, maxBatch);
+		} else if (async) {
+			final SpillQueue spill = OverflowPolicy.SPILL
+					.equals(overflowPolicy) ? new SpillQueue(spillFile,
+					spillSegmentSize) : null;
+			return new AsyncSink(target, capacity, batchSize, flushInterval,
+					overflowPolicy, spill);
+		} else {
+			return target;
+		}
+	}
+
+	@Override
+	public String toString() {
+		final String target = (file == null ? "" : " -> file (" + file
+				+ ", segmentSize: " + segmentSize + ", rolloverInterval: "
+				+ rolloverInterval + (index ? ", indexResolution: "
+				+ indexResolution + ", indexInterval: " + indexInterval : "")
+				+ ")")
+				+ (journal == null ? "" : " (journal: " + journal
+						+ ", segmentSize: " + journalSegmentSize + ")");
+
+		if (durable) {
+			return "durable (commitInterval: " + commitInterval
+					+ ", maxBatch: " + maxBatch + ")" + target;
+		} else if (async) {
+			return "async (capacity: " + capacity + ", batchSize: "
+					+ batchSize + ", flushInterval: " + flushInterval
+					+ ", overflow: " + overflowPolicy + ")" + target;
+		} else {
+			return "sync" + target;
+		}
+	}
+}
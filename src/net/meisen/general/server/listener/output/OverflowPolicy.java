@@ -0,0 +1,56 @@
+package net.meisen.general.server.listener.output;
+
+/**
+ * The policies applied by an <code>AsyncSink</code> to a line published while
+ * its ring-buffer is full. The policy is selected per <code>Connector</code>
+ * using the <code>async</code> extension, e.g.:
+ * 
+ * <pre>
+ * &lt;ed:extension&gt;
+ *   &lt;async capacity="65536" batchSize="1024" flushInterval="100" overflow="spill" /&gt;
+ * &lt;/ed:extension&gt;
+ * </pre>
+ * 
+ * @author pmeisen
+ * 
+ */
+public enum OverflowPolicy {
+	/**
+	 * The publishing thread waits until the writer freed a slot.
+	 */
+	BLOCK,
+	/**
+	 * The line is dropped, i.e. never written.
+	 */
+	DROP,
+	/**
+	 * The line is added to a {@link SpillQueue} on the local disk, which is
+	 * written (in order) after the lines of the ring-buffer. The publishing
+	 * thread never waits for the target.
+	 */
+	SPILL;
+
+	/**
+	 * Determines the <code>OverflowPolicy</code> specified by the passed
+	 * <code>value</code>. The value is compared case-insensitive.
+	 * 
+	 * @param value
+	 *            the value to determine the <code>OverflowPolicy</code> for
+	 * 
+	 * @return the <code>OverflowPolicy</code> or <code>null</code> if no
+	 *         policy is associated to the value
+	 */
+	public static OverflowPolicy find(final String value) {
+		if (value == null) {
+			return null;
+		}
+
+		for (final OverflowPolicy policy : OverflowPolicy.values()) {
+			if (policy.name().equalsIgnoreCase(value.trim())) {
+				return policy;
+			}
+		}
+
+		return null;
+	}
+}
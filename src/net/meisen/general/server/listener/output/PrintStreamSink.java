@@ -0,0 +1,64 @@
+package net.meisen.general.server.listener.output;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+import net.meisen.general.server.api.ILineSink;
+
+/**
+ * An <code>ILineSink</code> writing the lines to a <code>PrintStream</code>.
+ * The stream isn't owned by the sink, i.e. closing the sink just flushes the
+ * stream.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class PrintStreamSink implements ILineSink {
+	private final PrintStream out;
+
+	/**
+	 * Creates a sink writing to the specified <code>PrintStream</code>.
+	 * 
+	 * @param out
+	 *            the <code>PrintStream</code> to write to
+	 */
+	public PrintStreamSink(final PrintStream out) {
+		if (out == null) {
+			throw new NullPointerException("The out cannot be null.");
+		}
+
+		this.out = out;
+	}
+
+	/**
+	 * Gets the <code>PrintStream</code> written to.
+	 * 
+	 * @return the <code>PrintStream</code> written to
+	 */
+	public PrintStream getPrintStream() {
+		return out;
+	}
+
+	@Override
+	public void write(final String line) throws IOException {
+		out.println(line);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+		if (out.checkError()) {
+			throw new IOException("The PrintStream reported an error.");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+
+	@Override
+	public String toString() {
+		return "PrintStream";
+	}
+}
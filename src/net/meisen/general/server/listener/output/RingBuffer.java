@@ -0,0 +1,155 @@
+package net.meisen.general.server.listener.output;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded ring-buffer of lines with several producers and a single
+ * consumer. The producers claim a slot by incrementing the shared tail, i.e.
+ * publishing a line neither locks nor allocates. Each slot carries a
+ * sequence-number, which tells the producers if the slot is free and the
+ * consumer if the line of the slot is published.<br/>
+ * <br/>
+ * The methods {@link #poll()} and {@link #drain(String[], int)} must only be
+ * called by one thread at a time.
+ *
+ * @author pmeisen
+ *
+ */
+public class RingBuffer {
+	private final String[] slots;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong(0);
+
+	private volatile long head = 0;
+
+	/**
+	 * Creates a ring-buffer holding at least the specified amount of lines,
+	 * the capacity is rounded up to the next power of two.
+	 *
+	 * @param capacity
+	 *            the minimal capacity of the ring-buffer
+	 */
+	public RingBuffer(final int capacity) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("The capacity '" + capacity
+					+ "' is invalid.");
+		}
+
+		final int size = Integer.highestOneBit(capacity) == capacity ? capacity
+				: Integer.highestOneBit(capacity) << 1;
+		this.slots = new String[size];
+		this.sequences = new AtomicLongArray(size);
+		this.mask = size - 1;
+
+		// a slot is free if its sequence equals the tail claiming it
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Publishes the specified line, if a slot is free.
+	 *
+	 * @param line
+	 *            the line to be published
+	 *
+	 * @return <code>true</code> if the line is published, <code>false</code>
+	 *         if the ring-buffer is full
+	 */
+	public boolean offer(final String line) {
+		if (line == null) {
+			throw new NullPointerException("The line cannot be null.");
+		}
+
+		while (true) {
+			final long pos = tail.get();
+			final int index = (int) pos & mask;
+			final long diff = sequences.get(index) - pos;
+
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					slots[index] = line;
+					sequences.lazySet(index, pos + 1);
+					return true;
+				}
+			} else if (diff < 0) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Removes the oldest line.
+	 *
+	 * @return the oldest line, <code>null</code> if no line is published
+	 */
+	public String poll() {
+		final long pos = head;
+		final int index = (int) pos & mask;
+		if (sequences.get(index) != pos + 1) {
+			return null;
+		}
+
+		final String line = slots[index];
+		slots[index] = null;
+		sequences.lazySet(index, pos + slots.length);
+		head = pos + 1;
+
+		return line;
+	}
+
+	/**
+	 * Removes the oldest lines into the specified array.
+	 *
+	 * @param lines
+	 *            the array to fill with the removed lines
+	 * @param max
+	 *            the maximal amount of lines to be removed
+	 *
+	 * @return the amount of lines removed
+	 */
+	public int drain(final String[] lines, final int max) {
+		final int limit = Math.min(max, lines.length);
+
+		int count = 0;
+		String line;
+		while (count < limit && (line = poll()) != null) {
+			lines[count++] = line;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Checks if no line is published, i.e. if the next {@link #poll()}
+	 * returns <code>null</code>.
+	 *
+	 * @return <code>true</code> if no line is published, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isEmpty() {
+		final long pos = head;
+		return sequences.get((int) pos & mask) != pos + 1;
+	}
+
+	/**
+	 * Gets the amount of lines claimed but not removed yet.
+	 *
+	 * @return the amount of lines within the ring-buffer
+	 */
+	public int size() {
+		final long size = tail.get() - head;
+		return (int) Math.max(0, Math.min(size, slots.length));
+	}
+
+	/**
+	 * Gets the capacity of the ring-buffer.
+	 *
+	 * @return the capacity of the ring-buffer
+	 */
+	public int getCapacity() {
+		return slots.length;
+	}
+}
@@ -0,0 +1,558 @@
+package net.meisen.general.server.listener.output;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A queue of lines kept in segment files on the local disk. The lines are
+ * appended to the last segment (through a write-buffer) and removed in order
+ * from the first one, a segment is deleted as soon as all of its lines are
+ * removed. The queue is used by the {@link AsyncSink} to spill the lines not
+ * fitting into its ring-buffer, i.e. the heap used doesn't grow with the
+ * amount of spilled lines.<br/>
+ * <br/>
+ * The segments are named like the ones of the {@link MappedFileSink} using
+ * the file extended by {@link #SPILL_SUFFIX}, e.g.
+ * <code>ingest.log.spill.000001</code>, i.e. the segments of a sink writing
+ * to the same file are never touched. If no file is specified, the segments
+ * are created within a temporary directory, which is removed when the queue
+ * is closed. The queue is transient, i.e. segments of the queue existing when
+ * the queue is created are removed.
+ *
+ * @author pmeisen
+ *
+ */
+public class SpillQueue implements Closeable {
+	private final static Logger LOG = LoggerFactory.getLogger(SpillQueue.class);
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The default size of a segment, i.e. <code>64 MB</code>.
+	 */
+	public final static long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+	/**
+	 * The size of the write- and the read-buffer.
+	 */
+	public final static int BUFFER_SIZE = 64 * 1024;
+	/**
+	 * The suffix added to the file to determine the names of the segments.
+	 */
+	public final static String SPILL_SUFFIX = ".spill";
+
+	private final long segmentSize;
+	private final Deque<Segment> segments = new ArrayDeque<Segment>();
+	private final ByteBuffer writeBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	private File file;
+	private File tempDir = null;
+	private ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private long readPosition = 0;
+	private long segmentIndex = 0;
+	private boolean closed = false;
+
+	private volatile int size = 0;
+	private volatile long bytes = 0;
+	private volatile long spilledBytes = 0;
+
+	/**
+	 * A segment file of the queue.
+	 */
+	protected static class Segment {
+		private final File file;
+		private final RandomAccessFile raf;
+		private long size = 0;
+
+		/**
+		 * Creates the segment.
+		 *
+		 * @param file
+		 *            the file of the segment
+		 *
+		 * @throws IOException
+		 *             if the file cannot be created
+		 */
+		protected Segment(final File file) throws IOException {
+			this.file = file;
+			this.raf = new RandomAccessFile(file, "rw");
+			this.raf.setLength(0);
+		}
+
+		/**
+		 * Gets the <code>FileChannel</code> of the segment.
+		 *
+		 * @return the <code>FileChannel</code> of the segment
+		 */
+		protected FileChannel getChannel() {
+			return raf.getChannel();
+		}
+
+		/**
+		 * Closes and deletes the segment.
+		 *
+		 * @throws IOException
+		 *             if the segment cannot be deleted
+		 */
+		protected void delete() throws IOException {
+			raf.close();
+			if (!file.delete()) {
+				throw new IOException("The segment '" + file
+						+ "' cannot be deleted.");
+			}
+		}
+	}
+
+	/**
+	 * Creates a queue using a temporary directory for its segments.
+	 */
+	public SpillQueue() {
+		this(null, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Creates a queue, existing segments of the queue using the specified file
+	 * are removed.
+	 *
+	 * @param file
+	 *            the file the names of the segments are based on,
+	 *            <code>null</code> to use a temporary directory
+	 * @param segmentSize
+	 *            the size of a segment in bytes
+	 */
+	public SpillQueue(final File file, final long segmentSize) {
+		if (segmentSize < 4096) {
+			throw new IllegalArgumentException(
+					"The segmentSize must be at least 4096.");
+		}
+
+		this.file = file == null ? null : file.getAbsoluteFile();
+		this.segmentSize = segmentSize;
+		this.readBuffer.flip();
+
+		if (this.file != null) {
+			for (final File stale : getSegments(this.file)) {
+				if (LOG.isWarnEnabled()) {
+					LOG.warn("Removing the stale segment '" + stale + "'.");
+				}
+				if (!stale.delete() && LOG.isErrorEnabled()) {
+					LOG.error("The stale segment '" + stale
+							+ "' cannot be removed.");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the specified line to the end of the queue.
+	 *
+	 * @param line
+	 *            the line to be added
+	 *
+	 * @throws IOException
+	 *             if the line cannot be written to the disk
+	 */
+	public synchronized void offer(final String line) throws IOException {
+		if (closed) {
+			throw new IOException("The queue is closed.");
+		}
+
+		final byte[] data = line.getBytes(UTF8);
+		final int length = 4 + data.length;
+
+		// roll over if the record doesn't fit into the last segment
+		Segment last = segments.peekLast();
+		if (last == null || (getWriteSize(last) > 0
+				&& getWriteSize(last) + length > segmentSize)) {
+			flushWriteBuffer();
+			last = createSegment();
+		}
+
+		if (writeBuffer.remaining() < length) {
+			flushWriteBuffer();
+		}
+		if (writeBuffer.remaining() < length) {
+			final ByteBuffer record = ByteBuffer.allocate(length);
+			record.putInt(data.length).put(data).flip();
+			write(last, record);
+		} else {
+			writeBuffer.putInt(data.length).put(data);
+		}
+
+		size++;
+		bytes += length;
+		spilledBytes += length;
+	}
+
+	/**
+	 * Removes the first line of the queue.
+	 *
+	 * @return the first line, <code>null</code> if the queue is empty
+	 *
+	 * @throws IOException
+	 *             if the line cannot be read from the disk
+	 */
+	public synchronized String poll() throws IOException {
+		if (size == 0) {
+			return null;
+		}
+
+		Segment first = segments.peekFirst();
+		while (readBuffer.remaining() < 4 && readPosition >= first.size) {
+			if (first != segments.peekLast()) {
+				segments.pollFirst().delete();
+				first = segments.peekFirst();
+				readPosition = 0;
+				readBuffer.clear().flip();
+			} else if (writeBuffer.position() > 0) {
+
+				// the line is still within the write-buffer
+				flushWriteBuffer();
+			} else {
+				throw new IOException("The segment '" + first.file
+						+ "' ends unexpectedly.");
+			}
+		}
+
+		fill(first, 4);
+		final int length = readBuffer.getInt();
+		fill(first, length);
+		final String line = new String(readBuffer.array(),
+				readBuffer.position(), length, UTF8);
+		readBuffer.position(readBuffer.position() + length);
+
+		size--;
+		bytes -= 4 + length;
+		if (size == 0) {
+			reset();
+		}
+
+		return line;
+	}
+
+	/**
+	 * Removes the first lines of the queue.
+	 *
+	 * @param lines
+	 *            the array to fill with the lines
+	 * @param max
+	 *            the maximal amount of lines to be removed
+	 *
+	 * @return the amount of lines removed
+	 *
+	 * @throws IOException
+	 *             if the lines cannot be read from the disk
+	 */
+	public synchronized int drain(final String[] lines, final int max)
+			throws IOException {
+		final int limit = Math.min(max, lines.length);
+
+		int count = 0;
+		String line;
+		while (count < limit && (line = poll()) != null) {
+			lines[count++] = line;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Makes sure that the read-buffer contains at least the specified amount
+	 * of bytes of the specified segment.
+	 *
+	 * @param segment
+	 *            the segment to read from
+	 * @param amount
+	 *            the amount of bytes needed
+	 *
+	 * @throws IOException
+	 *             if the segment cannot be read
+	 */
+	protected void fill(final Segment segment, final int amount)
+			throws IOException {
+		if (readBuffer.remaining() >= amount) {
+			return;
+		}
+
+		if (readBuffer.capacity() < amount) {
+			final ByteBuffer larger = ByteBuffer.allocate(amount);
+			larger.put(readBuffer);
+			readBuffer = larger;
+		} else {
+			readBuffer.compact();
+		}
+
+		try {
+			while (readBuffer.position() < amount) {
+				if (readPosition >= segment.size
+						&& segment == segments.peekLast()) {
+					flushWriteBuffer();
+				}
+
+				final int read = segment.getChannel().read(readBuffer,
+						readPosition);
+				if (read < 0) {
+					throw new IOException("The segment '" + segment.file
+							+ "' ends unexpectedly.");
+				}
+				readPosition += read;
+			}
+		} finally {
+			readBuffer.flip();
+		}
+	}
+
+	/**
+	 * Writes the write-buffer to the last segment.
+	 *
+	 * @throws IOException
+	 *             if the segment cannot be written
+	 */
+	protected void flushWriteBuffer() throws IOException {
+		if (writeBuffer.position() == 0) {
+			return;
+		}
+
+		writeBuffer.flip();
+		try {
+			write(segments.peekLast(), writeBuffer);
+		} finally {
+			writeBuffer.clear();
+		}
+	}
+
+	/**
+	 * Writes the specified bytes to the end of the specified segment.
+	 *
+	 * @param segment
+	 *            the segment to write to
+	 * @param data
+	 *            the bytes to be written
+	 *
+	 * @throws IOException
+	 *             if the segment cannot be written
+	 */
+	protected void write(final Segment segment, final ByteBuffer data)
+			throws IOException {
+		while (data.hasRemaining()) {
+			segment.size += segment.getChannel().write(data, segment.size);
+		}
+	}
+
+	/**
+	 * Gets the amount of bytes written to the specified segment including
+	 * the bytes of the write-buffer.
+	 *
+	 * @param segment
+	 *            the last segment
+	 *
+	 * @return the amount of bytes written to the segment
+	 */
+	protected long getWriteSize(final Segment segment) {
+		return segment.size + writeBuffer.position();
+	}
+
+	/**
+	 * Creates the next segment and adds it to the end of the queue.
+	 *
+	 * @return the created segment
+	 *
+	 * @throws IOException
+	 *             if the segment cannot be created
+	 */
+	protected Segment createSegment() throws IOException {
+		if (file == null) {
+			tempDir = Files.createTempDirectory("spill").toFile();
+			file = new File(tempDir, "spill");
+		}
+
+		segmentIndex++;
+		final Segment segment = new Segment(getSegmentFile(file,
+				segmentIndex));
+		segments.addLast(segment);
+
+		return segment;
+	}
+
+	/**
+	 * Resets the empty queue, i.e. the first segment is truncated and all
+	 * other segments are deleted.
+	 *
+	 * @throws IOException
+	 *             if a segment cannot be truncated or deleted
+	 */
+	protected void reset() throws IOException {
+		while (segments.size() > 1) {
+			segments.pollLast().delete();
+		}
+
+		final Segment first = segments.peekFirst();
+		if (first != null) {
+			first.getChannel().truncate(0);
+			first.size = 0;
+		}
+		writeBuffer.clear();
+		readBuffer.clear().flip();
+		readPosition = 0;
+		bytes = 0;
+	}
+
+	/**
+	 * Removes all lines of the queue.
+	 *
+	 * @return the amount of removed lines
+	 *
+	 * @throws IOException
+	 *             if a segment cannot be truncated or deleted
+	 */
+	public synchronized int clear() throws IOException {
+		final int removed = size;
+		size = 0;
+		reset();
+
+		return removed;
+	}
+
+	/**
+	 * Checks if the queue is empty.
+	 *
+	 * @return <code>true</code> if the queue is empty, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Gets the amount of lines within the queue.
+	 *
+	 * @return the amount of lines within the queue
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the amount of bytes the lines within the queue occupy on the disk.
+	 *
+	 * @return the amount of bytes of the lines within the queue
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Gets the amount of bytes spilled since the queue was created.
+	 *
+	 * @return the amount of bytes spilled
+	 */
+	public long getSpilledBytes() {
+		return spilledBytes;
+	}
+
+	/**
+	 * Gets the file the names of the segments are based on.
+	 *
+	 * @return the file of the segments, <code>null</code> if a temporary
+	 *         directory is used and nothing was spilled so far
+	 */
+	public synchronized File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the amount of segments.
+	 *
+	 * @return the amount of segments
+	 */
+	public synchronized int getSegments() {
+		return segments.size();
+	}
+
+	/**
+	 * Closes the queue and deletes its segments, the lines still within the
+	 * queue are lost.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		if (size > 0 && LOG.isWarnEnabled()) {
+			LOG.warn("Closing the spill-queue with " + size + " lines.");
+		}
+		size = 0;
+		bytes = 0;
+
+		try {
+			while (!segments.isEmpty()) {
+				segments.pollFirst().delete();
+			}
+		} finally {
+			if (tempDir != null && !tempDir.delete() && LOG.isWarnEnabled()) {
+				LOG.warn("The directory '" + tempDir + "' cannot be removed.");
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "spill (" + (file == null ? "temporary" : file.toString())
+				+ ", segmentSize: " + segmentSize + ", size: " + size
+				+ ", bytes: " + bytes + ")";
+	}
+
+	/**
+	 * Gets the file of the segment of a queue with the specified
+	 * sequence-number.
+	 *
+	 * @param file
+	 *            the file of the queue
+	 * @param sequence
+	 *            the sequence-number of the segment
+	 *
+	 * @return the file of the segment
+	 */
+	public static File getSegmentFile(final File file, final long sequence) {
+		return MappedFileSink.getSegmentFile(getSpillBase(file), sequence);
+	}
+
+	/**
+	 * Gets the existing segments of a queue ordered by their
+	 * sequence-numbers, segments of a {@link MappedFileSink} writing to the
+	 * same file aren't included.
+	 *
+	 * @param file
+	 *            the file of the queue
+	 *
+	 * @return the existing segments
+	 */
+	public static List<File> getSegments(final File file) {
+		return MappedFileSink.getSegments(getSpillBase(file));
+	}
+
+	/**
+	 * Gets the file the names of the segments are based on, i.e. the
+	 * specified file extended by the {@link #SPILL_SUFFIX}.
+	 *
+	 * @param file
+	 *            the file of the queue
+	 *
+	 * @return the file the names of the segments are based on
+	 */
+	protected static File getSpillBase(final File file) {
+		return new File(file.getAbsolutePath() + SPILL_SUFFIX);
+	}
+}
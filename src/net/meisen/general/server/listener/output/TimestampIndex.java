@@ -0,0 +1,694 @@
+package net.meisen.general.server.listener.output;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import net.meisen.general.server.api.ILineSink;
+import net.meisen.general.server.listener.utility.LineFramer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A sparse index of the segments written by a {@link MappedFileSink}, which
+ * maps the time a line was written to its segment and offset. An entry is
+ * added for the first line of each segment, for the first line written at
+ * least <code>resolution</code> milliseconds after the last entry and for
+ * the first line written at least <code>interval</code> bytes after the last
+ * entry. The entries are appended to a side file (e.g.
+ * <code>ingest.log.idx</code>) with a fixed size each, so that an entry is
+ * found by a binary search on the file, i.e. using a few reads instead of
+ * scanning the segments.<br/>
+ * <br/>
+ * The lines written between two timestamps are streamed by
+ * {@link #stream(File, long, long, Charset, ILineSink)}, which starts at the
+ * entry covering the first timestamp and ends at the first entry after the
+ * second one. The lines are therefore precise up to the
+ * <code>resolution</code>, i.e. some lines written up to
+ * <code>resolution</code> milliseconds prior to or after the window may be
+ * streamed as well. The segments are scanned for the bytes of the
+ * line-separator, i.e. only lines of an ASCII-compatible <code>Charset</code>
+ * (see {@link LineFramer#isAsciiCompatible(Charset)}) can be streamed, and a
+ * line of more than <code>maxLineLength</code> bytes is skipped, so that the
+ * read-buffer is bound.
+ *
+ * @author pmeisen
+ *
+ */
+public class TimestampIndex implements Closeable {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(TimestampIndex.class);
+
+	/**
+	 * The size of an entry, i.e. the timestamp, the sequence-number of the
+	 * segment and the offset.
+	 */
+	public final static int ENTRY_SIZE = 24;
+	/**
+	 * The default resolution, i.e. <code>1000</code> milliseconds.
+	 */
+	public final static long DEFAULT_RESOLUTION = 1000;
+	/**
+	 * The default amount of bytes between two entries, i.e.
+	 * <code>1 MB</code>.
+	 */
+	public final static long DEFAULT_INTERVAL = 1024 * 1024;
+	/**
+	 * The suffix of the file of the index.
+	 */
+	public final static String SUFFIX = ".idx";
+	/**
+	 * The default maximal length of a streamed line, i.e. <code>16 MB</code>.
+	 */
+	public final static int DEFAULT_MAX_LINE_LENGTH = 16 * 1024 * 1024;
+
+	private final static int PENDING_ENTRIES = 256;
+	private final static int READ_BUFFER_SIZE = 64 * 1024;
+
+	private final File indexFile;
+	private final long resolution;
+	private final long interval;
+	private final RandomAccessFile raf;
+	private final ByteBuffer pending = ByteBuffer.allocate(PENDING_ENTRIES
+			* ENTRY_SIZE);
+	private final ByteBuffer probe = ByteBuffer.allocate(ENTRY_SIZE);
+
+	private long lastTimestamp = Long.MIN_VALUE;
+	private long lastSegment = -1;
+	private long lastOffset = 0;
+	private long entries = 0;
+	private boolean closed = false;
+	private volatile int maxLineLength = DEFAULT_MAX_LINE_LENGTH;
+
+	/**
+	 * An entry of the index.
+	 */
+	public static class Entry {
+		private final long timestamp;
+		private final long segment;
+		private final long offset;
+
+		/**
+		 * Creates an entry.
+		 *
+		 * @param timestamp
+		 *            the time the line was written
+		 * @param segment
+		 *            the sequence-number of the segment of the line
+		 * @param offset
+		 *            the offset of the line within the segment
+		 */
+		public Entry(final long timestamp, final long segment,
+				final long offset) {
+			this.timestamp = timestamp;
+			this.segment = segment;
+			this.offset = offset;
+		}
+
+		/**
+		 * Gets the time the line was written.
+		 *
+		 * @return the time the line was written in milliseconds
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * Gets the sequence-number of the segment of the line.
+		 *
+		 * @return the sequence-number of the segment
+		 */
+		public long getSegment() {
+			return segment;
+		}
+
+		/**
+		 * Gets the offset of the line within the segment.
+		 *
+		 * @return the offset of the line
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * Checks if the line of this entry is located prior to the line of
+		 * the specified entry.
+		 *
+		 * @param entry
+		 *            the entry to compare with
+		 *
+		 * @return <code>true</code> if the line is located prior to the other
+		 *         one, otherwise <code>false</code>
+		 */
+		public boolean isBefore(final Entry entry) {
+			return segment < entry.segment
+					|| (segment == entry.segment && offset < entry.offset);
+		}
+
+		@Override
+		public String toString() {
+			return timestamp + " -> " + segment + ":" + offset;
+		}
+	}
+
+	/**
+	 * Opens the index of the specified file using the default resolution
+	 * and interval. An index should be read using the resolution it was
+	 * written with, otherwise the streamed window is less precise.
+	 *
+	 * @param indexFile
+	 *            the file of the index
+	 *
+	 * @throws IOException
+	 *             if the index cannot be opened
+	 */
+	public TimestampIndex(final File indexFile) throws IOException {
+		this(indexFile, DEFAULT_RESOLUTION, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Opens the index of the specified file, an incomplete entry at its end
+	 * is cut off.
+	 *
+	 * @param indexFile
+	 *            the file of the index
+	 * @param resolution
+	 *            the time (in milliseconds) after which another entry is
+	 *            added
+	 * @param interval
+	 *            the amount of bytes after which another entry is added
+	 *
+	 * @throws IOException
+	 *             if the index cannot be opened
+	 */
+	public TimestampIndex(final File indexFile, final long resolution,
+			final long interval) throws IOException {
+		if (resolution < 1) {
+			throw new IllegalArgumentException(
+					"The resolution must be positive.");
+		} else if (interval < 1) {
+			throw new IllegalArgumentException("The interval must be positive.");
+		}
+
+		this.indexFile = indexFile.getAbsoluteFile();
+		this.resolution = resolution;
+		this.interval = interval;
+		this.raf = new RandomAccessFile(this.indexFile, "rw");
+
+		final FileChannel channel = raf.getChannel();
+		this.entries = channel.size() / ENTRY_SIZE;
+		try {
+			channel.truncate(entries * ENTRY_SIZE);
+			if (entries > 0) {
+				final Entry last = read(entries - 1);
+				lastTimestamp = last.getTimestamp();
+				lastSegment = last.getSegment();
+				lastOffset = last.getOffset();
+			}
+		} catch (final IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Adds an entry for the line written at the specified time to the
+	 * specified position, if the line starts a segment or the
+	 * <code>resolution</code> or the <code>interval</code> is exceeded.
+	 *
+	 * @param timestamp
+	 *            the time the line was written
+	 * @param segment
+	 *            the sequence-number of the segment of the line
+	 * @param offset
+	 *            the offset of the line within the segment
+	 *
+	 * @return <code>true</code> if an entry was added, otherwise
+	 *         <code>false</code>
+	 *
+	 * @throws IOException
+	 *             if the entries cannot be written
+	 */
+	public synchronized boolean update(final long timestamp,
+			final long segment, final long offset) throws IOException {
+		if (segment == lastSegment && timestamp - lastTimestamp < resolution
+				&& offset - lastOffset < interval) {
+			return false;
+		}
+
+		add(timestamp, segment, offset);
+		return true;
+	}
+
+	/**
+	 * Adds an entry to the index. The timestamps of the entries never
+	 * decrease, i.e. if the clock is set back the timestamp of the last entry
+	 * is used.
+	 *
+	 * @param timestamp
+	 *            the time the line was written
+	 * @param segment
+	 *            the sequence-number of the segment of the line
+	 * @param offset
+	 *            the offset of the line within the segment
+	 *
+	 * @throws IOException
+	 *             if the entries cannot be written
+	 */
+	public synchronized void add(final long timestamp, final long segment,
+			final long offset) throws IOException {
+		if (closed) {
+			throw new IOException("The index is closed.");
+		} else if (!pending.hasRemaining()) {
+			flush();
+		}
+
+		lastTimestamp = Math.max(timestamp, lastTimestamp);
+		lastSegment = segment;
+		lastOffset = offset;
+		pending.putLong(lastTimestamp).putLong(segment).putLong(offset);
+		entries++;
+	}
+
+	/**
+	 * Writes the pending entries to the file of the index.
+	 *
+	 * @throws IOException
+	 *             if the entries cannot be written
+	 */
+	public synchronized void flush() throws IOException {
+		if (closed || pending.position() == 0) {
+			return;
+		}
+
+		final FileChannel channel = raf.getChannel();
+		pending.flip();
+		try {
+			long position = channel.size();
+			while (pending.hasRemaining()) {
+				position += channel.write(pending, position);
+			}
+		} finally {
+			pending.clear();
+		}
+	}
+
+	/**
+	 * Gets the entry at the specified position.
+	 *
+	 * @param position
+	 *            the position of the entry
+	 *
+	 * @return the entry
+	 *
+	 * @throws IOException
+	 *             if the entry cannot be read
+	 */
+	protected synchronized Entry read(final long position) throws IOException {
+		flush();
+
+		final FileChannel channel = raf.getChannel();
+		probe.clear();
+		while (probe.hasRemaining()) {
+			final long at = position * ENTRY_SIZE + probe.position();
+			if (channel.read(probe, at) < 0) {
+				throw new IOException("The index '" + indexFile
+						+ "' ends unexpectedly.");
+			}
+		}
+
+		return new Entry(probe.getLong(0), probe.getLong(8), probe.getLong(16));
+	}
+
+	/**
+	 * Counts the entries with a timestamp less than or equal to the specified
+	 * one using a binary search.
+	 *
+	 * @param timestamp
+	 *            the timestamp to search for
+	 *
+	 * @return the amount of entries with a timestamp less than or equal to
+	 *         the specified one
+	 *
+	 * @throws IOException
+	 *             if the entries cannot be read
+	 */
+	protected synchronized long count(final long timestamp)
+			throws IOException {
+		long low = 0;
+		long high = entries;
+		while (low < high) {
+			final long mid = (low + high) >>> 1;
+			if (read(mid).getTimestamp() <= timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Gets the entry of the first line which may be written at or after the
+	 * specified time. The lines between an entry and the next one are written
+	 * within the <code>resolution</code> of the entry, i.e. the last entry
+	 * prior to the time is skipped if its resolution ends prior to the time.
+	 *
+	 * @param timestamp
+	 *            the timestamp to search for
+	 *
+	 * @return the entry of the first line which may be written at or after
+	 *         the time, <code>null</code> if there is none
+	 *
+	 * @throws IOException
+	 *             if the entries cannot be read
+	 */
+	public synchronized Entry start(final long timestamp) throws IOException {
+		final long before = timestamp == Long.MIN_VALUE ? 0
+				: count(timestamp - 1);
+		if (before == 0) {
+			return entries == 0 ? null : read(0);
+		}
+
+		final Entry last = read(before - 1);
+		if (last.getTimestamp() + resolution > timestamp) {
+			return last;
+		} else {
+			return before == entries ? null : read(before);
+		}
+	}
+
+	/**
+	 * Gets the first entry with a timestamp greater than the specified one.
+	 *
+	 * @param timestamp
+	 *            the timestamp to search for
+	 *
+	 * @return the first entry with a timestamp greater than the specified
+	 *         one, <code>null</code> if there is none
+	 *
+	 * @throws IOException
+	 *             if the entries cannot be read
+	 */
+	public synchronized Entry higher(final long timestamp) throws IOException {
+		final long count = count(timestamp);
+		return count == entries ? null : read(count);
+	}
+
+	/**
+	 * Streams the lines written between the two timestamps (both inclusive)
+	 * to the specified sink. The segments are read through a buffer of at
+	 * most <code>maxLineLength</code> bytes, i.e. they are not loaded into the
+	 * heap and longer lines are skipped.
+	 *
+	 * @param file
+	 *            the file of the sink the segments belong to
+	 * @param from
+	 *            the time (in milliseconds) the first line was written
+	 * @param to
+	 *            the time (in milliseconds) the last line was written
+	 * @param charset
+	 *            the <code>Charset</code> used to decode the lines, which must
+	 *            be ASCII-compatible
+	 * @param target
+	 *            the sink to stream the lines to
+	 *
+	 * @return the amount of streamed lines
+	 *
+	 * @throws IOException
+	 *             if the segments cannot be read or the sink fails
+	 * @throws IllegalArgumentException
+	 *             if the <code>Charset</code> isn't ASCII-compatible
+	 */
+	public long stream(final File file, final long from, final long to,
+			final Charset charset, final ILineSink target) throws IOException {
+		if (!LineFramer.isAsciiCompatible(charset)) {
+			throw new IllegalArgumentException("The charset '" + charset
+					+ "' cannot be streamed, it isn't ASCII-compatible.");
+		} else if (from > to) {
+			return 0;
+		}
+
+		final Entry start;
+		final Entry end;
+		synchronized (this) {
+			start = start(from);
+			end = higher(to);
+		}
+		if (start == null || (end != null && !start.isBefore(end))) {
+			return 0;
+		}
+
+		long count = 0;
+		for (final File segment : MappedFileSink.getSegments(file)) {
+			final long seq = MappedFileSink.getSequence(file, segment);
+			if (seq < start.getSegment()) {
+				continue;
+			} else if (end != null && seq > end.getSegment()) {
+				break;
+			}
+
+			final long offset = seq == start.getSegment() ? start.getOffset()
+					: 0;
+			final long limit = end != null && seq == end.getSegment() ? end
+					.getOffset() : Long.MAX_VALUE;
+			count += streamSegment(segment, offset, limit, charset, target);
+		}
+		target.flush();
+
+		return count;
+	}
+
+	/**
+	 * Streams the lines of the specified segment between the specified
+	 * offsets. The streaming ends at the limit or at the not yet written
+	 * (zeroed) end of the segment, a line exceeding the
+	 * <code>maxLineLength</code> is skipped.
+	 *
+	 * @param segment
+	 *            the segment to read
+	 * @param offset
+	 *            the offset of the first line
+	 * @param limit
+	 *            the offset following the last line
+	 * @param charset
+	 *            the <code>Charset</code> used to decode the lines
+	 * @param target
+	 *            the sink to stream the lines to
+	 *
+	 * @return the amount of streamed lines
+	 *
+	 * @throws IOException
+	 *             if the segment cannot be read or the sink fails
+	 */
+	protected long streamSegment(final File segment, final long offset,
+			final long limit, final Charset charset, final ILineSink target)
+			throws IOException {
+		final FileInputStream in = new FileInputStream(segment);
+
+		final int maxLength = maxLineLength;
+		long count = 0;
+		try {
+			final FileChannel channel = in.getChannel();
+			final long size = Math.min(channel.size(), limit);
+			long position = offset;
+
+			// the bytes of a line exceeding the maximal length
+			long skipped = 0;
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(
+					READ_BUFFER_SIZE, maxLength + 1L));
+			buffer.flip();
+			while (true) {
+
+				// find the end of the next line
+				int eol = -1;
+				for (int i = buffer.position(); i < buffer.limit(); i++) {
+					if (buffer.get(i) == '\n') {
+						eol = i;
+						break;
+					}
+				}
+
+				if (eol == -1) {
+					if (position >= size
+							|| (skipped == 0 && buffer.hasRemaining() && buffer
+									.get(buffer.position()) == 0)) {
+						break;
+					}
+
+					// read more bytes, enlarging the buffer for long lines
+					if (buffer.position() == 0
+							&& buffer.limit() == buffer.capacity()) {
+						if (buffer.capacity() > maxLength) {
+							skipped += buffer.remaining();
+							buffer.clear();
+						} else {
+							final ByteBuffer larger = ByteBuffer
+									.allocate((int) Math.min(
+											2L * buffer.capacity(),
+											maxLength + 1L));
+							larger.put(buffer);
+							buffer = larger;
+						}
+					} else {
+						buffer.compact();
+					}
+					buffer.limit((int) Math.min(buffer.capacity(),
+							buffer.position() + size - position));
+					final int read = channel.read(buffer, position);
+					buffer.flip();
+					if (read < 0) {
+						break;
+					}
+					position += read;
+					continue;
+				}
+
+				// skip the rest of a line exceeding the maximal length
+				final int start = buffer.position();
+				if (skipped > 0) {
+					if (LOG.isWarnEnabled()) {
+						LOG.warn("Skipping a line of "
+								+ (skipped + eol - start) + " bytes within '"
+								+ segment + "', exceeding the maximum of "
+								+ maxLength + " bytes.");
+					}
+					buffer.position(eol + 1);
+					skipped = 0;
+					continue;
+				}
+
+				// the not yet written end of the segment
+				if (buffer.get(start) == 0) {
+					break;
+				}
+
+				final int end = eol > start && buffer.get(eol - 1) == '\r' ? eol
+						- 1 : eol;
+				target.write(new String(buffer.array(), start, end - start,
+						charset));
+				buffer.position(eol + 1);
+				count++;
+			}
+		} finally {
+			in.close();
+		}
+
+		return count;
+	}
+
+	/**
+	 * Gets the maximal length of a streamed line, longer lines are skipped.
+	 *
+	 * @return the maximal length of a streamed line in bytes
+	 */
+	public int getMaxLineLength() {
+		return maxLineLength;
+	}
+
+	/**
+	 * Sets the maximal length of a streamed line, longer lines are skipped.
+	 *
+	 * @param maxLineLength
+	 *            the maximal length of a streamed line in bytes
+	 */
+	public void setMaxLineLength(final int maxLineLength) {
+		if (maxLineLength < 1) {
+			throw new IllegalArgumentException(
+					"The maxLineLength must be at least 1.");
+		}
+		this.maxLineLength = maxLineLength;
+	}
+
+	/**
+	 * Gets the file of the index.
+	 *
+	 * @return the file of the index
+	 */
+	public File getIndexFile() {
+		return indexFile;
+	}
+
+	/**
+	 * Gets the time after which another entry is added.
+	 *
+	 * @return the resolution in milliseconds
+	 */
+	public long getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * Gets the amount of bytes after which another entry is added.
+	 *
+	 * @return the interval in bytes
+	 */
+	public long getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Gets the amount of entries.
+	 *
+	 * @return the amount of entries
+	 */
+	public synchronized long size() {
+		return entries;
+	}
+
+	/**
+	 * Forces the entries to the storage.
+	 *
+	 * @throws IOException
+	 *             if the entries cannot be written
+	 */
+	public synchronized void sync() throws IOException {
+		flush();
+		if (!closed) {
+			raf.getChannel().force(false);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		try {
+			flush();
+		} finally {
+			closed = true;
+			raf.close();
+		}
+	}
+
+	/**
+	 * Gets the file of the index of the specified file.
+	 *
+	 * @param file
+	 *            the file of the sink
+	 *
+	 * @return the file of the index
+	 */
+	public static File getIndexFile(final File file) {
+		final File base = file.getAbsoluteFile();
+		return new File(base.getParentFile(), base.getName() + SUFFIX);
+	}
+
+	@Override
+	public String toString() {
+		return "index (" + indexFile + ", resolution: " + resolution
+				+ ", interval: " + interval + ", entries: " + entries + ")";
+	}
+}
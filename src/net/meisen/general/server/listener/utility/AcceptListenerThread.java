@@ -2,14 +2,14 @@ package net.meisen.general.server.listener.utility;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,7 +17,8 @@ import org.slf4j.LoggerFactory;
 /**
  * Helper implementation to handle request on an accepting <code>Socket</code>.
  * The implementation creates a new thread (see
- * <code>createWorkerThread(Socket)</code>) for each incoming connection.
+ * <code>createWorkerThread(Socket)</code>) for each incoming connection, which
+ * is executed by the defined <code>WorkerDispatcher</code>.
  * 
  * @author pmeisen
  * 
@@ -27,8 +28,15 @@ public abstract class AcceptListenerThread extends Thread {
 			.getLogger(AcceptListenerThread.class);
 
 	private final ServerSocket serverSocket;
-	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-	private final Set<Thread> workingThreads = new HashSet<Thread>();
+	private final ConnectionRegistry connectionRegistry = new ConnectionRegistry();
+	private final RateMeter acceptRate = new RateMeter();
+
+	private WorkerDispatcher workerDispatcher;
+	private AdmissionControl admissionControl = new AdmissionControl();
+	private IdleReaper idleReaper = null;
+	private RateLimiter rateLimiter = null;
+	private Charset charset = Charset.defaultCharset();
+	private long shutdownTimeout = 2000;
 
 	/**
 	 * Constructor which specifies the <code>port</code> to retrieve the
@@ -61,10 +69,27 @@ public abstract class AcceptListenerThread extends Thread {
 	 */
 	public AcceptListenerThread(final int port, final int timeout)
 			throws IOException {
-		serverSocket = new ServerSocket(port);
+		this(new ServerSocket(port));
 		serverSocket.setSoTimeout(timeout);
 	}
 
+	/**
+	 * Constructor which uses the specified, already bound
+	 * <code>ServerSocket</code> to retrieve the incoming connections from.
+	 *
+	 * @param serverSocket
+	 *            the bound <code>ServerSocket</code> to retrieve the incoming
+	 *            connections from, cannot be <code>null</code>
+	 */
+	protected AcceptListenerThread(final ServerSocket serverSocket) {
+		if (serverSocket == null) {
+			throw new NullPointerException("The serverSocket cannot be null.");
+		}
+
+		this.serverSocket = serverSocket;
+		setWorkerDispatcher(new ThreadWorkerDispatcher());
+	}
+
 	/**
 	 * Get the <code>Socket</code> for the incoming connections.
 	 * 
@@ -74,6 +99,45 @@ public abstract class AcceptListenerThread extends Thread {
 		return serverSocket;
 	}
 
+	/**
+	 * Gets the <code>WorkerDispatcher</code> used to execute the created
+	 * workers.
+	 * 
+	 * @return the <code>WorkerDispatcher</code> used to execute the workers
+	 */
+	public WorkerDispatcher getWorkerDispatcher() {
+		return workerDispatcher;
+	}
+
+	/**
+	 * Sets the <code>WorkerDispatcher</code> used to execute the created
+	 * workers. The dispatcher should be set prior to starting
+	 * <code>this</code>.
+	 * 
+	 * @param workerDispatcher
+	 *            the <code>WorkerDispatcher</code> to be used, cannot be
+	 *            <code>null</code>
+	 */
+	public void setWorkerDispatcher(final WorkerDispatcher workerDispatcher) {
+		if (workerDispatcher == null) {
+			throw new NullPointerException(
+					"The workerDispatcher cannot be null.");
+		}
+
+		this.workerDispatcher = workerDispatcher;
+		this.workerDispatcher.setConnectionRegistry(connectionRegistry);
+	}
+
+	/**
+	 * Gets the <code>ConnectionRegistry</code> which contains the workers of
+	 * the currently open connections.
+	 * 
+	 * @return the <code>ConnectionRegistry</code> of <code>this</code>
+	 */
+	public ConnectionRegistry getConnectionRegistry() {
+		return connectionRegistry;
+	}
+
 	@Override
 	public void run() {
 
@@ -90,6 +154,11 @@ public abstract class AcceptListenerThread extends Thread {
 
 		while (curState) {
 			try {
+				// wait until the limits allow another connection
+				if (!awaitAdmission()) {
+					break;
+				}
+
 				// listen to the socket
 				final Socket socket = serverSocket.accept();
 
@@ -99,15 +168,29 @@ public abstract class AcceptListenerThread extends Thread {
 							+ socket.getInetAddress());
 				}
 
-				// start the thread to handle the connection
-				final Thread t = createWorkerThread(socket);
+				if (isAdmissionExceeded()) {
+					reject(socket);
+				} else if (!isRateAdmitted(socket)) {
+					closeWithMessage(socket, rateLimiter.getMessage());
+				} else {
+					admissionControl.markAccepted();
+					acceptRate.mark();
+
+					// start the thread to handle the connection
+					final Thread t = createWorkerThread(socket);
+					if (idleReaper != null && t instanceof WorkerThread) {
+						((WorkerThread) t).watch(idleReaper);
+					}
+					if (rateLimiter != null && t instanceof WorkerThread) {
+						((WorkerThread) t).limit(rateLimiter);
+					}
 
-				// add the thread
-				cleanUpAndAdd(t);
+					// add the thread
+					cleanUpAndAdd(t);
 
-				// start the thread
-				t.setDaemon(true);
-				t.start();
+					// execute the thread
+					workerDispatcher.dispatch(t);
+				}
 
 				// set the current state
 				curState = !Thread.interrupted() && !isClosed();
@@ -115,6 +198,9 @@ public abstract class AcceptListenerThread extends Thread {
 				break;
 			} catch (final SocketException e) {
 				break;
+			} catch (final ClosedChannelException e) {
+				// the socket of a channel (e.g. using SO_REUSEPORT) was closed
+				break;
 			} catch (final IOException e) {
 				if (LOG.isErrorEnabled()) {
 					LOG.error("I/O error initialising connection thread", e);
@@ -135,37 +221,156 @@ public abstract class AcceptListenerThread extends Thread {
 	}
 
 	/**
-	 * Cleans up the currently running threads and adds the one specified
+	 * Gets the <code>RateMeter</code> of the connections accepted (and not
+	 * rejected) by <code>this</code>.
 	 * 
-	 * @param newThread
-	 *            the thread to be added, can be {@code null} if just a cleanup
-	 *            should be performed
+	 * @return the <code>RateMeter</code> of the accepted connections
 	 */
-	protected void cleanUpAndAdd(final Thread newThread) {
+	public RateMeter getAcceptRate() {
+		return acceptRate;
+	}
 
-		lock.readLock().lock();
-		final List<Thread> toBeRemoved;
-		try {
-			toBeRemoved = new ArrayList<Thread>();
-			for (final Thread t : workingThreads) {
-				if (!t.isAlive() || t.isInterrupted()) {
-					toBeRemoved.add(t);
-				}
+	/**
+	 * Gets the amount of currently open connections.
+	 * 
+	 * @return the amount of currently open connections
+	 */
+	protected int getConnectionCount() {
+		return connectionRegistry.size();
+	}
+
+	/**
+	 * Checks if the limits of the <code>AdmissionControl</code> are reached,
+	 * i.e. if no further connection should be admitted.
+	 * 
+	 * @return <code>true</code> if a limit is reached, otherwise
+	 *         <code>false</code>
+	 */
+	protected boolean isAdmissionExceeded() {
+		return admissionControl.isLimited()
+				&& admissionControl.isExceeded(getConnectionCount(),
+						workerDispatcher.getPendingCount());
+	}
+
+	/**
+	 * Pauses the accepting, if the <code>AdmissionControl</code> is pausing
+	 * and a limit is reached. The method returns as soon as the limits allow
+	 * another connection.
+	 * 
+	 * @return <code>true</code> if another connection can be accepted,
+	 *         <code>false</code> if the listener was closed or interrupted
+	 *         while waiting
+	 */
+	protected boolean awaitAdmission() {
+		if (!admissionControl.isPausing() || !isAdmissionExceeded()) {
+			return true;
+		}
+
+		admissionControl.markPaused();
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Pausing the accepting on port "
+					+ getServerSocket().getLocalPort() + ", limits of "
+					+ admissionControl + " reached.");
+		}
+
+		while (isAdmissionExceeded()) {
+			if (isClosed()) {
+				return false;
+			}
+
+			try {
+				Thread.sleep(admissionControl.getPauseInterval());
+			} catch (final InterruptedException e) {
+				return false;
 			}
-		} finally {
-			lock.readLock().unlock();
 		}
 
-		// remove the finished once and add the new one
-		lock.writeLock().lock();
-		try {
-			workingThreads.removeAll(toBeRemoved);
+		return !isClosed();
+	}
+
+	/**
+	 * Rejects the specified accepted <code>socket</code>, i.e. sends the
+	 * message of the <code>AdmissionControl</code> and closes the
+	 * <code>socket</code>.
+	 * 
+	 * @param socket
+	 *            the <code>Socket</code> to be rejected
+	 */
+	protected void reject(final Socket socket) {
+		admissionControl.markRejected();
 
-			if (newThread != null) {
-				workingThreads.add(newThread);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Rejecting connection from " + socket.getInetAddress()
+					+ ", limits of " + admissionControl + " reached.");
+		}
+
+		closeWithMessage(socket, admissionControl.getMessage());
+	}
+
+	/**
+	 * Checks if the <code>RateLimiter</code> admits the specified accepted
+	 * <code>socket</code>, i.e. if the remote address did not exceed its
+	 * connection-rate.
+	 * 
+	 * @param socket
+	 *            the accepted <code>Socket</code>
+	 * 
+	 * @return <code>true</code> if the <code>socket</code> is admitted,
+	 *         otherwise <code>false</code>
+	 */
+	protected boolean isRateAdmitted(final Socket socket) {
+		if (rateLimiter == null
+				|| rateLimiter.acquireConnection(socket.getInetAddress())) {
+			return true;
+		}
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Rejecting connection from " + socket.getInetAddress()
+					+ ", connection-rate exceeded.");
+		}
+		return false;
+	}
+
+	/**
+	 * Sends the specified <code>message</code> as line (encoded using the
+	 * <code>Charset</code> of <code>this</code>) and closes the specified
+	 * <code>socket</code>.
+	 * 
+	 * @param socket
+	 *            the <code>Socket</code> to be closed
+	 * @param message
+	 *            the message to be sent, can be <code>null</code> if the
+	 *            <code>socket</code> should just be closed
+	 */
+	protected void closeWithMessage(final Socket socket, final String message) {
+		try {
+			if (message != null) {
+				final OutputStream out = socket.getOutputStream();
+				out.write((message + System.getProperty("line.separator"))
+						.getBytes(charset));
+				out.flush();
 			}
+		} catch (final IOException e) {
+			// ignore it, the socket is closed anyways
 		} finally {
-			lock.writeLock().unlock();
+			try {
+				socket.close();
+			} catch (final IOException e) {
+				// ignore it
+			}
+		}
+	}
+
+	/**
+	 * Adds the specified thread to the running ones. The thread is removed
+	 * automatically when it's finished.
+	 * 
+	 * @param newThread
+	 *            the thread to be added, can be {@code null}
+	 */
+	protected void cleanUpAndAdd(final Thread newThread) {
+		if (newThread != null) {
+			connectionRegistry.register(newThread);
 		}
 	}
 
@@ -197,64 +402,228 @@ public abstract class AcceptListenerThread extends Thread {
 
 	/**
 	 * Closes the listener and makes sure that no further connections are
-	 * handled.
+	 * handled. The open connections are closed and the workers are given at
+	 * most the shutdown-timeout to finish.
+	 * 
+	 * @see #setShutdownTimeout(long)
 	 */
 	public void close() {
+		close(getShutdownTimeout());
+	}
+
+	/**
+	 * Closes the listener and makes sure that no further connections are
+	 * handled. All open connections are closed at once, afterwards the workers
+	 * are given at most <code>timeout</code> milliseconds (in total) to finish.
+	 * 
+	 * @param timeout
+	 *            the time in milliseconds to wait for all the workers to finish
+	 * 
+	 * @return the workers which were still running after the
+	 *         <code>timeout</code> and were abandoned
+	 */
+	public List<Thread> close(final long timeout) {
 		final ServerSocket serverSocket = getServerSocket();
 
+		// stop accepting any new connection first
 		synchronized (serverSocket) {
+			if (!serverSocket.isClosed()) {
+				try {
+					serverSocket.close();
+				} catch (final IOException e) {
+					// ignore it
+				}
+			}
+		}
 
-			lock.writeLock().lock();
-			try {
-				for (final Thread t : workingThreads) {
-					t.interrupt();
+		// close all the connections at once
+		final List<Thread> workers = connectionRegistry.getWorkers();
+		for (final Thread t : workers) {
+			workerDispatcher.interrupt(t);
 
-					// close the instance if it's a WorkerThread
-					if (t instanceof WorkerThread) {
-						((WorkerThread) t).close();
-					}
-				}
+			// close the instance if it's a WorkerThread
+			if (t instanceof WorkerThread) {
+				((WorkerThread) t).close();
+			}
+		}
 
-				// validate the threads
-				for (final Thread t : workingThreads) {
-
-					// check if the thread is still alive
-					if (t.isAlive()) {
-						try {
-							t.join(500);
-						} catch (final InterruptedException e) {
-							// do nothing
-						}
-					} else {
-						continue;
-					}
+		// wait for the workers, using one deadline for all of them
+		final long deadline = System.currentTimeMillis() + timeout;
+		final List<Thread> abandoned = new ArrayList<Thread>();
+		for (final Thread t : workers) {
+			if (!workerDispatcher.isRunning(t)) {
+				continue;
+			}
 
-					// check if it's still alive
-					if (t.isAlive()) {
-						if (LOG.isErrorEnabled()) {
-							LOG.error("The thread working-thread '"
-									+ t.getName()
-									+ "' is still running, even after flagged interrupted and closed (only if WorkingThread). This might lead to a memory-leak.");
-						}
-					}
+			final long remaining = deadline - System.currentTimeMillis();
+			if (remaining > 0) {
+				try {
+					workerDispatcher.join(t, remaining);
+				} catch (final InterruptedException e) {
+					// do nothing
 				}
+			}
+
+			if (workerDispatcher.isRunning(t)) {
+				abandoned.add(t);
+			}
+		}
 
-				// remove all threads
-				workingThreads.clear();
+		// remove all threads and release the dispatcher
+		connectionRegistry.clear();
+		workerDispatcher.shutdown();
 
-				// close the socket while write-lock is enabled
-				if (!serverSocket.isClosed()) {
-					try {
-						serverSocket.close();
-					} catch (final IOException e) {
-						// ignore it
-					}
-				}
-			} finally {
-				lock.writeLock().unlock();
+		if (abandoned.size() > 0 && LOG.isErrorEnabled()) {
+			final StringBuilder sb = new StringBuilder();
+			for (final Thread t : abandoned) {
+				sb.append(sb.length() == 0 ? "" : ", ").append(describe(t));
 			}
 
+			LOG.error("The working-threads [" + sb
+					+ "] are still running " + timeout
+					+ "ms after being flagged interrupted and closed (only if WorkingThread) and were abandoned. This might lead to a memory-leak.");
 		}
+
+		return abandoned;
+	}
+
+	/**
+	 * Creates a description of the specified worker, used for logging.
+	 * 
+	 * @param worker
+	 *            the worker to be described
+	 * 
+	 * @return the description of the worker
+	 */
+	protected String describe(final Thread worker) {
+		if (worker instanceof WorkerThread) {
+			final Socket socket = ((WorkerThread) worker).getSocket();
+			return worker.getName() + " (" + socket.getRemoteSocketAddress()
+					+ ")";
+		} else {
+			return worker.getName();
+		}
+	}
+
+	/**
+	 * Gets the <code>AdmissionControl</code> which limits the connections
+	 * accepted.
+	 * 
+	 * @return the <code>AdmissionControl</code> of <code>this</code>
+	 */
+	public AdmissionControl getAdmissionControl() {
+		return admissionControl;
+	}
+
+	/**
+	 * Sets the <code>AdmissionControl</code> which limits the connections
+	 * accepted. The control should be set prior to starting
+	 * <code>this</code>.
+	 * 
+	 * @param admissionControl
+	 *            the <code>AdmissionControl</code> to be used, cannot be
+	 *            <code>null</code>
+	 */
+	public void setAdmissionControl(final AdmissionControl admissionControl) {
+		if (admissionControl == null) {
+			throw new NullPointerException(
+					"The admissionControl cannot be null.");
+		}
+
+		this.admissionControl = admissionControl;
+	}
+
+	/**
+	 * Gets the <code>IdleReaper</code> which closes idle connections.
+	 * 
+	 * @return the <code>IdleReaper</code> of <code>this</code>,
+	 *         <code>null</code> if idle connections are not closed
+	 */
+	public IdleReaper getIdleReaper() {
+		return idleReaper;
+	}
+
+	/**
+	 * Sets the <code>IdleReaper</code> which closes idle connections. The
+	 * reaper should be set prior to starting <code>this</code>.
+	 * 
+	 * @param idleReaper
+	 *            the <code>IdleReaper</code> to be used, <code>null</code> if
+	 *            idle connections should not be closed
+	 */
+	public void setIdleReaper(final IdleReaper idleReaper) {
+		this.idleReaper = idleReaper;
+	}
+
+	/**
+	 * Gets the <code>RateLimiter</code> which limits the connections per
+	 * remote address and the lines per connection.
+	 * 
+	 * @return the <code>RateLimiter</code> of <code>this</code>,
+	 *         <code>null</code> if no rate is limited
+	 */
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * Sets the <code>RateLimiter</code> which limits the connections per
+	 * remote address and the lines per connection. The limiter should be set
+	 * prior to starting <code>this</code>.
+	 * 
+	 * @param rateLimiter
+	 *            the <code>RateLimiter</code> to be used, <code>null</code>
+	 *            if no rate should be limited
+	 */
+	public void setRateLimiter(final RateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+	}
+
+	/**
+	 * Gets the <code>Charset</code> used to encode the messages sent to the
+	 * connections.
+	 * 
+	 * @return the <code>Charset</code> used
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Sets the <code>Charset</code> used to encode the messages sent to the
+	 * connections, e.g. when a connection is rejected. The charset should be
+	 * set prior to starting <code>this</code>.
+	 * 
+	 * @param charset
+	 *            the <code>Charset</code> to be used
+	 */
+	public void setCharset(final Charset charset) {
+		if (charset == null) {
+			throw new NullPointerException("The charset cannot be null.");
+		}
+
+		this.charset = charset;
+	}
+
+	/**
+	 * Gets the time in milliseconds the closing waits (in total) for the
+	 * workers to finish.
+	 * 
+	 * @return the time in milliseconds to wait for the workers on close
+	 */
+	public long getShutdownTimeout() {
+		return shutdownTimeout;
+	}
+
+	/**
+	 * Sets the time in milliseconds the closing waits (in total) for the
+	 * workers to finish.
+	 * 
+	 * @param shutdownTimeout
+	 *            the time in milliseconds to wait for the workers on close
+	 */
+	public void setShutdownTimeout(final long shutdownTimeout) {
+		this.shutdownTimeout = shutdownTimeout;
 	}
 
 	/**
@@ -0,0 +1,290 @@
+package net.meisen.general.server.listener.utility;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The admission-control of an <code>AcceptListenerThread</code>, i.e. limits
+ * for the amount of concurrently open connections and the amount of
+ * connections waiting to be handed to a worker. If a limit is exceeded, the
+ * <code>AdmissionPolicy</code> is applied. The settings are defined per
+ * <code>Connector</code> using the <code>admission</code> extension, e.g.:
+ *
+ * <pre>
+ * &lt;ed:extension&gt;
+ *   &lt;admission maxConnections="1000" maxPending="100" policy="reject" message="BUSY" /&gt;
+ * &lt;/ed:extension&gt;
+ * </pre>
+ *
+ * A limit of <code>0</code> means that the limit is not checked at all.
+ *
+ * @author pmeisen
+ *
+ */
+public class AdmissionControl {
+
+	/**
+	 * The policy applied if a limit of the <code>AdmissionControl</code> is
+	 * exceeded.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	public enum AdmissionPolicy {
+		/**
+		 * No further connection is accepted until the amount of connections
+		 * is below the limits again, i.e. new connections wait within the
+		 * backlog of the operating-system.
+		 */
+		PAUSE,
+		/**
+		 * New connections are accepted, answered with the message of the
+		 * <code>AdmissionControl</code> and closed immediately.
+		 */
+		REJECT;
+
+		/**
+		 * Determines the <code>AdmissionPolicy</code> specified by the passed
+		 * <code>value</code>. The value is compared case-insensitive.
+		 *
+		 * @param value
+		 *            the value to determine the <code>AdmissionPolicy</code>
+		 *            for
+		 *
+		 * @return the <code>AdmissionPolicy</code> or <code>null</code> if no
+		 *         policy is associated to the value
+		 */
+		public static AdmissionPolicy find(final String value) {
+			if (value == null) {
+				return null;
+			}
+
+			final String name = value.trim();
+			for (final AdmissionPolicy policy : AdmissionPolicy.values()) {
+				if (policy.name().equalsIgnoreCase(name)) {
+					return policy;
+				}
+			}
+
+			return null;
+		}
+	}
+
+	private int maxConnections = 0;
+	private int maxPending = 0;
+	private AdmissionPolicy policy = AdmissionPolicy.PAUSE;
+	private String message = "BUSY";
+	private long pauseInterval = 10;
+
+	private final AtomicLong accepted = new AtomicLong(0);
+	private final AtomicLong rejected = new AtomicLong(0);
+	private final AtomicLong paused = new AtomicLong(0);
+
+	/**
+	 * Checks if the specified amounts exceed the limits.
+	 *
+	 * @param connections
+	 *            the amount of open connections
+	 * @param pending
+	 *            the amount of connections waiting to be handled by a worker
+	 *
+	 * @return <code>true</code> if a limit is reached, i.e. no further
+	 *         connection should be admitted, otherwise <code>false</code>
+	 */
+	public boolean isExceeded(final int connections, final int pending) {
+		return (maxConnections > 0 && connections >= maxConnections)
+				|| (maxPending > 0 && pending >= maxPending);
+	}
+
+	/**
+	 * Checks if any limit is defined.
+	 *
+	 * @return <code>true</code> if at least one limit is defined, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isLimited() {
+		return maxConnections > 0 || maxPending > 0;
+	}
+
+	/**
+	 * Checks if the <code>AdmissionPolicy</code> is
+	 * {@link AdmissionPolicy#PAUSE}.
+	 *
+	 * @return <code>true</code> if the accepting is paused if a limit is
+	 *         reached, otherwise <code>false</code>
+	 */
+	public boolean isPausing() {
+		return AdmissionPolicy.PAUSE.equals(policy);
+	}
+
+	/**
+	 * Marks a connection to be accepted.
+	 */
+	public void markAccepted() {
+		accepted.incrementAndGet();
+	}
+
+	/**
+	 * Marks a connection to be rejected.
+	 */
+	public void markRejected() {
+		rejected.incrementAndGet();
+	}
+
+	/**
+	 * Marks the accepting to be paused.
+	 */
+	public void markPaused() {
+		paused.incrementAndGet();
+	}
+
+	/**
+	 * Gets the amount of accepted connections, i.e. the ones passed to a
+	 * worker.
+	 *
+	 * @return the amount of accepted connections
+	 */
+	public long getAcceptedCount() {
+		return accepted.get();
+	}
+
+	/**
+	 * Gets the amount of rejected connections.
+	 *
+	 * @return the amount of rejected connections
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * Gets the amount of times the accepting was paused.
+	 *
+	 * @return the amount of times the accepting was paused
+	 */
+	public long getPausedCount() {
+		return paused.get();
+	}
+
+	/**
+	 * Gets the maximal amount of concurrently open connections.
+	 *
+	 * @return the maximal amount of concurrently open connections,
+	 *         <code>0</code> if not limited
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Sets the maximal amount of concurrently open connections.
+	 *
+	 * @param maxConnections
+	 *            the maximal amount of concurrently open connections,
+	 *            <code>0</code> if not limited
+	 */
+	public void setMaxConnections(final int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * Gets the maximal amount of connections waiting to be handled by a
+	 * worker.
+	 *
+	 * @return the maximal amount of waiting connections, <code>0</code> if
+	 *         not limited
+	 */
+	public int getMaxPending() {
+		return maxPending;
+	}
+
+	/**
+	 * Sets the maximal amount of connections waiting to be handled by a
+	 * worker.
+	 *
+	 * @param maxPending
+	 *            the maximal amount of waiting connections, <code>0</code> if
+	 *            not limited
+	 */
+	public void setMaxPending(final int maxPending) {
+		this.maxPending = maxPending;
+	}
+
+	/**
+	 * Gets the <code>AdmissionPolicy</code> applied if a limit is reached.
+	 *
+	 * @return the <code>AdmissionPolicy</code> applied if a limit is reached
+	 */
+	public AdmissionPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Sets the <code>AdmissionPolicy</code> applied if a limit is reached.
+	 *
+	 * @param policy
+	 *            the <code>AdmissionPolicy</code> to be applied
+	 */
+	public void setPolicy(final AdmissionPolicy policy) {
+		this.policy = policy;
+	}
+
+	/**
+	 * Gets the message (i.e. status-line) sent to a rejected connection.
+	 *
+	 * @return the message sent to a rejected connection
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Sets the message (i.e. status-line) sent to a rejected connection.
+	 *
+	 * @param message
+	 *            the message sent to a rejected connection, <code>null</code>
+	 *            to close the connection without any message
+	 */
+	public void setMessage(final String message) {
+		this.message = message;
+	}
+
+	/**
+	 * Gets the time in milliseconds between two checks of the limits, while
+	 * the accepting is paused.
+	 *
+	 * @return the time in milliseconds between two checks
+	 */
+	public long getPauseInterval() {
+		return pauseInterval;
+	}
+
+	/**
+	 * Sets the time in milliseconds between two checks of the limits, while
+	 * the accepting is paused.
+	 *
+	 * @param pauseInterval
+	 *            the time in milliseconds between two checks
+	 */
+	public void setPauseInterval(final long pauseInterval) {
+		this.pauseInterval = pauseInterval;
+	}
+
+	/**
+	 * Checks if the settings are valid.
+	 *
+	 * @return <code>true</code> if the settings are valid, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isValid() {
+		return maxConnections >= 0 && maxPending >= 0 && policy != null
+				&& pauseInterval > 0;
+	}
+
+	@Override
+	public String toString() {
+		return policy + " (maxConnections: " + maxConnections
+				+ ", maxPending: " + maxPending + ", accepted: "
+				+ getAcceptedCount() + ", rejected: " + getRejectedCount()
+				+ ", paused: " + getPausedCount() + ")";
+	}
+}
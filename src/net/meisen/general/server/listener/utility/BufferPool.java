@@ -0,0 +1,474 @@
+package net.meisen.general.server.listener.utility;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of <code>ByteBuffer</code> instances shared by the connections of
+ * one or several listeners, so that a connection only holds a buffer while
+ * data is in-flight. The buffers are pooled in size-classes (powers of two
+ * between <code>minSize</code> and <code>maxSize</code>), larger buffers are
+ * allocated without pooling. The memory of all the pooled buffers (borrowed
+ * or free) is limited by <code>maxMemory</code>, if the limit is reached a
+ * buffer is allocated without pooling as well.<br/>
+ * <br/>
+ * Each buffer returned by {@link #acquire(int)} must be passed to
+ * {@link #release(ByteBuffer)} when not needed anymore. A buffer which is
+ * garbage collected without being released is counted as leak (see
+ * {@link #getLeaks()}) and its memory is reused.<br/>
+ * <br/>
+ * The pool can hold heap or direct buffers. Direct buffers only pay off for
+ * channel-based I/O, the stream-based readers and writers of the workers need
+ * heap buffers (i.e. use {@link ByteBuffer#array()}).
+ *
+ * @author pmeisen
+ *
+ */
+public class BufferPool {
+	private final static Logger LOG = LoggerFactory.getLogger(BufferPool.class);
+
+	/**
+	 * The default size of the smallest size-class, i.e. <code>512</code>
+	 * bytes.
+	 */
+	public final static int DEFAULT_MIN_SIZE = 512;
+
+	/**
+	 * The default size of the largest size-class, i.e. <code>64 KB</code>.
+	 */
+	public final static int DEFAULT_MAX_SIZE = 64 * 1024;
+
+	/**
+	 * The default limit of the memory of the pooled buffers, i.e.
+	 * <code>64 MB</code>.
+	 */
+	public final static long DEFAULT_MAX_MEMORY = 64L * 1024 * 1024;
+
+	private final static BufferPool SHARED = new BufferPool(false,
+			DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_MAX_MEMORY);
+
+	private final boolean direct;
+	private final int minSize;
+	private final int maxSize;
+	private final long maxMemory;
+	private final int minShift;
+	private final List<ConcurrentLinkedDeque<ByteBuffer>> free;
+
+	private final Map<Integer, Lease> borrowed = new HashMap<Integer, Lease>();
+	private final ReferenceQueue<ByteBuffer> lost = new ReferenceQueue<ByteBuffer>();
+
+	private final AtomicLong allocatedMemory = new AtomicLong(0);
+	private final AtomicLong freeMemory = new AtomicLong(0);
+	private final AtomicLong usedMemory = new AtomicLong(0);
+	private final AtomicLong acquires = new AtomicLong(0);
+	private final AtomicLong misses = new AtomicLong(0);
+	private final AtomicLong overflows = new AtomicLong(0);
+	private final AtomicLong leaks = new AtomicLong(0);
+	private int borrowedCount = 0;
+
+	/**
+	 * Creates a pool using the default settings.
+	 *
+	 * @param direct
+	 *            <code>true</code> if the pool should hold direct buffers,
+	 *            otherwise <code>false</code>
+	 */
+	public BufferPool(final boolean direct) {
+		this(direct, DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_MAX_MEMORY);
+	}
+
+	/**
+	 * Creates a pool with the specified settings.
+	 *
+	 * @param direct
+	 *            <code>true</code> if the pool should hold direct buffers,
+	 *            otherwise <code>false</code>
+	 * @param minSize
+	 *            the size of the smallest size-class in bytes, rounded up to
+	 *            a power of two
+	 * @param maxSize
+	 *            the size of the largest size-class in bytes, rounded up to a
+	 *            power of two
+	 * @param maxMemory
+	 *            the maximal memory of all the pooled buffers in bytes
+	 */
+	public BufferPool(final boolean direct, final int minSize,
+			final int maxSize, final long maxMemory) {
+		if (minSize <= 0) {
+			throw new IllegalArgumentException("The minSize must be positive.");
+		} else if (maxSize < minSize || maxSize > (1 << 30)) {
+			throw new IllegalArgumentException("The maxSize must be between "
+					+ minSize + " and " + (1 << 30) + ".");
+		} else if (maxMemory < 0) {
+			throw new IllegalArgumentException(
+					"The maxMemory cannot be negative.");
+		}
+
+		this.direct = direct;
+		this.minSize = roundUp(minSize);
+		this.maxSize = roundUp(maxSize);
+		this.maxMemory = maxMemory;
+		this.minShift = Integer.numberOfTrailingZeros(this.minSize);
+
+		final int classes = Integer.numberOfTrailingZeros(this.maxSize)
+				- minShift + 1;
+		this.free = new ArrayList<ConcurrentLinkedDeque<ByteBuffer>>(classes);
+		for (int i = 0; i < classes; i++) {
+			this.free.add(new ConcurrentLinkedDeque<ByteBuffer>());
+		}
+	}
+
+	/**
+	 * Gets the pool shared by all the listeners, which don't define their
+	 * own pool. The shared pool holds heap buffers and uses the default
+	 * settings.
+	 *
+	 * @return the shared pool
+	 */
+	public static BufferPool getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Borrows a cleared buffer of at least the specified capacity. The buffer
+	 * must be passed to {@link #release(ByteBuffer)} when not needed anymore.
+	 *
+	 * @param capacity
+	 *            the minimal capacity of the buffer
+	 *
+	 * @return the borrowed buffer, the capacity might be larger than
+	 *         requested
+	 */
+	public ByteBuffer acquire(final int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException(
+					"The capacity cannot be negative.");
+		}
+		expunge();
+		acquires.incrementAndGet();
+
+		ByteBuffer slab = null;
+		int sizeClass = -1;
+		if (capacity <= maxSize) {
+			final int size = Math.max(minSize, roundUp(capacity));
+			sizeClass = Integer.numberOfTrailingZeros(size) - minShift;
+
+			slab = free.get(sizeClass).pollFirst();
+			if (slab != null) {
+				freeMemory.addAndGet(-size);
+			} else if (allocatedMemory.addAndGet(size) > maxMemory) {
+				allocatedMemory.addAndGet(-size);
+				sizeClass = -1;
+			} else {
+				misses.incrementAndGet();
+				slab = allocate(size);
+			}
+		}
+
+		// the buffer isn't pooled
+		if (slab == null) {
+			overflows.incrementAndGet();
+			slab = allocate(capacity);
+		}
+		slab.clear();
+
+		// the caller gets its own view, which is tracked to detect leaks
+		final ByteBuffer buffer = slab.duplicate();
+		final Lease lease = new Lease(buffer, slab, sizeClass, lost);
+		synchronized (borrowed) {
+			lease.next = borrowed.put(lease.key, lease);
+			borrowedCount++;
+		}
+		usedMemory.addAndGet(slab.capacity());
+
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer borrowed from the pool. The buffer must not be used
+	 * after it's released. Buffers not borrowed from the pool (or already
+	 * released) are ignored.
+	 *
+	 * @param buffer
+	 *            the buffer to be released, can be <code>null</code>
+	 */
+	public void release(final ByteBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+		expunge();
+
+		final Lease lease = untrack(buffer);
+		if (lease == null) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Ignoring the release of a buffer not borrowed "
+						+ "from the pool.");
+			}
+			return;
+		}
+
+		lease.clear();
+		reclaim(lease);
+	}
+
+	/**
+	 * Frees the memory of all the buffers currently not borrowed, e.g. after
+	 * a peak of connections.
+	 */
+	public void trim() {
+		for (final ConcurrentLinkedDeque<ByteBuffer> sizeClass : free) {
+			ByteBuffer slab;
+			while ((slab = sizeClass.pollFirst()) != null) {
+				freeMemory.addAndGet(-slab.capacity());
+				allocatedMemory.addAndGet(-slab.capacity());
+			}
+		}
+	}
+
+	/**
+	 * Removes the lease of the specified buffer from the borrowed ones.
+	 *
+	 * @param buffer
+	 *            the buffer to remove the lease for
+	 *
+	 * @return the removed lease, <code>null</code> if the buffer is not
+	 *         borrowed
+	 */
+	protected Lease untrack(final ByteBuffer buffer) {
+		final Integer key = System.identityHashCode(buffer);
+
+		synchronized (borrowed) {
+			Lease prev = null;
+			Lease lease = borrowed.get(key);
+			while (lease != null && lease.get() != buffer) {
+				prev = lease;
+				lease = lease.next;
+			}
+
+			return remove(key, prev, lease);
+		}
+	}
+
+	/**
+	 * Counts the buffers garbage collected without being released as leaks
+	 * and reuses their memory.
+	 */
+	protected void expunge() {
+		Lease lease;
+		while ((lease = (Lease) lost.poll()) != null) {
+			synchronized (borrowed) {
+				Lease prev = null;
+				Lease cur = borrowed.get(lease.key);
+				while (cur != null && cur != lease) {
+					prev = cur;
+					cur = cur.next;
+				}
+				if (remove(lease.key, prev, cur) == null) {
+					continue;
+				}
+			}
+
+			leaks.incrementAndGet();
+			if (LOG.isWarnEnabled()) {
+				LOG.warn("A buffer of " + lease.slab.capacity()
+						+ " bytes was never released to the pool.");
+			}
+			reclaim(lease);
+		}
+	}
+
+	private Lease remove(final Integer key, final Lease prev,
+			final Lease lease) {
+		if (lease == null) {
+			return null;
+		} else if (prev != null) {
+			prev.next = lease.next;
+		} else if (lease.next != null) {
+			borrowed.put(key, lease.next);
+		} else {
+			borrowed.remove(key);
+		}
+		borrowedCount--;
+
+		return lease;
+	}
+
+	private void reclaim(final Lease lease) {
+		final int capacity = lease.slab.capacity();
+		usedMemory.addAndGet(-capacity);
+
+		if (lease.sizeClass >= 0) {
+			freeMemory.addAndGet(capacity);
+			free.get(lease.sizeClass).offerFirst(lease.slab);
+		}
+	}
+
+	private ByteBuffer allocate(final int capacity) {
+		return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer
+				.allocate(capacity);
+	}
+
+	private static int roundUp(final int size) {
+		final int highest = Integer.highestOneBit(Math.max(1, size));
+		return highest == size ? size : highest << 1;
+	}
+
+	/**
+	 * Checks if the pool holds direct buffers.
+	 *
+	 * @return <code>true</code> if the pool holds direct buffers, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isDirect() {
+		return direct;
+	}
+
+	/**
+	 * Gets the size of the smallest size-class.
+	 *
+	 * @return the size of the smallest size-class in bytes
+	 */
+	public int getMinSize() {
+		return minSize;
+	}
+
+	/**
+	 * Gets the size of the largest size-class, larger buffers are not
+	 * pooled.
+	 *
+	 * @return the size of the largest size-class in bytes
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Gets the maximal memory of all the pooled buffers.
+	 *
+	 * @return the maximal memory of all the pooled buffers in bytes
+	 */
+	public long getMaxMemory() {
+		return maxMemory;
+	}
+
+	/**
+	 * Gets the memory of all the pooled buffers, i.e. the borrowed and the
+	 * free ones.
+	 *
+	 * @return the memory of all the pooled buffers in bytes
+	 */
+	public long getAllocatedMemory() {
+		return allocatedMemory.get();
+	}
+
+	/**
+	 * Gets the memory of the pooled buffers currently not borrowed.
+	 *
+	 * @return the memory of the free buffers in bytes
+	 */
+	public long getFreeMemory() {
+		return freeMemory.get();
+	}
+
+	/**
+	 * Gets the memory of all the buffers currently borrowed, including the
+	 * ones not pooled.
+	 *
+	 * @return the memory of the borrowed buffers in bytes
+	 */
+	public long getUsedMemory() {
+		return usedMemory.get();
+	}
+
+	/**
+	 * Gets the amount of buffers currently borrowed.
+	 *
+	 * @return the amount of buffers currently borrowed
+	 */
+	public int getBorrowed() {
+		synchronized (borrowed) {
+			return borrowedCount;
+		}
+	}
+
+	/**
+	 * Gets the amount of buffers acquired so far.
+	 *
+	 * @return the amount of buffers acquired
+	 */
+	public long getAcquires() {
+		return acquires.get();
+	}
+
+	/**
+	 * Gets the amount of pooled buffers allocated so far, i.e. the amount of
+	 * acquires not served by a free buffer.
+	 *
+	 * @return the amount of pooled buffers allocated
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the amount of buffers allocated without pooling so far, i.e.
+	 * buffers exceeding the largest size-class or acquired while the memory
+	 * limit was reached.
+	 *
+	 * @return the amount of buffers allocated without pooling
+	 */
+	public long getOverflows() {
+		return overflows.get();
+	}
+
+	/**
+	 * Gets the amount of buffers garbage collected without being released.
+	 *
+	 * @return the amount of leaked buffers
+	 */
+	public long getLeaks() {
+		expunge();
+		return leaks.get();
+	}
+
+	@Override
+	public String toString() {
+		return (direct ? "direct" : "heap") + " (size: " + minSize + "-"
+				+ maxSize + ", memory: " + getAllocatedMemory() + "/"
+				+ maxMemory + ", used: " + getUsedMemory() + ", leaks: "
+				+ leaks.get() + ")";
+	}
+
+	/**
+	 * The lease of a borrowed buffer, which references the buffer weakly to
+	 * detect leaks and the pooled slab strongly to reuse it.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	protected static class Lease extends WeakReference<ByteBuffer> {
+		private final Integer key;
+		private final ByteBuffer slab;
+		private final int sizeClass;
+		private Lease next = null;
+
+		private Lease(final ByteBuffer buffer, final ByteBuffer slab,
+				final int sizeClass, final ReferenceQueue<ByteBuffer> queue) {
+			super(buffer, queue);
+
+			this.key = System.identityHashCode(buffer);
+			this.slab = slab;
+			this.sizeClass = sizeClass;
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package net.meisen.general.server.listener.utility;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Helper to negotiate and apply the <code>DEFLATE</code> compression of a
+ * connection. A client requests the compression by sending the
+ * {@link #HELLO} line (terminated by <code>\n</code> or <code>\r\n</code>)
+ * as first data of the connection. A server supporting the compression
+ * answers with the same line (uncompressed), afterwards the data of both
+ * directions is compressed. Each flush of the compressed output performs a
+ * <code>SYNC_FLUSH</code>, i.e. all the data written is received by the
+ * other side without waiting for further data.<br/>
+ * <br/>
+ * A server not enabling the compression answers the {@link #HELLO} line
+ * with the {@link #DECLINE} line and never passes it to the handler, e.g.
+ * an <code>OutputListener</code> doesn't write it to its output. A server not
+ * supporting the negotiation at all handles the {@link #HELLO} line like
+ * any other request, i.e. the client has to check the answer (see
+ * {@link #request(InputStream, OutputStream)}) and proceeds uncompressed, if
+ * the answer differs.
+ *
+ * @author pmeisen
+ *
+ */
+public class Compression {
+	private final static Charset ASCII = Charset.forName("US-ASCII");
+
+	/**
+	 * The line sent by the client to request the compression and by the
+	 * server to acknowledge it.
+	 */
+	public final static String HELLO = "%DEFLATE";
+
+	/**
+	 * The line sent by a server not enabling the compression as answer to
+	 * the {@link #HELLO} line.
+	 */
+	public final static String DECLINE = "%PLAIN";
+
+	private final static byte[] HELLO_BYTES = HELLO.getBytes(ASCII);
+	private final static byte[] DECLINE_BYTES = DECLINE.getBytes(ASCII);
+
+	/**
+	 * Gets the size of the pushback-buffer needed by the
+	 * <code>PushbackInputStream</code> passed to
+	 * {@link #accept(PushbackInputStream)}.
+	 *
+	 * @return the size of the pushback-buffer needed
+	 */
+	public static int getPushbackSize() {
+		return HELLO_BYTES.length + 2;
+	}
+
+	/**
+	 * Checks if the client requests the compression, i.e. if the data starts
+	 * with the {@link #HELLO} line. The line is consumed if it's a request,
+	 * otherwise any byte read is pushed back. The method returns as soon as
+	 * the data differs from the {@link #HELLO} line, i.e. a client not
+	 * requesting the compression isn't delayed.
+	 *
+	 * @param in
+	 *            the stream to read the request from, the pushback-buffer
+	 *            must have at least the size of {@link #getPushbackSize()}
+	 *
+	 * @return <code>true</code> if the client requests the compression,
+	 *         otherwise <code>false</code>
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	public static boolean accept(final PushbackInputStream in)
+			throws IOException {
+		final byte[] read = new byte[getPushbackSize()];
+
+		int len = 0;
+		while (len < HELLO_BYTES.length) {
+			final int b = in.read();
+			if (b < 0) {
+				in.unread(read, 0, len);
+				return false;
+			}
+
+			read[len++] = (byte) b;
+			if (b != HELLO_BYTES[len - 1]) {
+				in.unread(read, 0, len);
+				return false;
+			}
+		}
+
+		// check the terminator
+		final int b = in.read();
+		if (b == '\n') {
+			return true;
+		} else if (b == '\r') {
+			final int next = in.read();
+			if (next != '\n' && next >= 0) {
+				in.unread(next);
+			}
+			return true;
+		} else {
+			if (b >= 0) {
+				read[len++] = (byte) b;
+			}
+			in.unread(read, 0, len);
+			return false;
+		}
+	}
+
+	/**
+	 * Acknowledges the compression requested by the client.
+	 *
+	 * @param out
+	 *            the uncompressed stream to write the acknowledgement to
+	 *
+	 * @throws IOException
+	 *             if the acknowledgement cannot be written
+	 */
+	public static void acknowledge(final OutputStream out) throws IOException {
+		out.write(HELLO_BYTES);
+		out.write('\n');
+		out.flush();
+	}
+
+	/**
+	 * Declines the compression requested by the client, i.e. the connection
+	 * is used uncompressed.
+	 *
+	 * @param out
+	 *            the uncompressed stream to write the answer to
+	 *
+	 * @throws IOException
+	 *             if the answer cannot be written
+	 */
+	public static void decline(final OutputStream out) throws IOException {
+		out.write(DECLINE_BYTES);
+		out.write('\n');
+		out.flush();
+	}
+
+	/**
+	 * Requests the compression from the server, i.e. sends the
+	 * {@link #HELLO} line and reads the answer. The answer is read
+	 * byte-by-byte, i.e. no data following the answer is consumed.
+	 *
+	 * @param in
+	 *            the uncompressed stream to read the answer from
+	 * @param out
+	 *            the uncompressed stream to write the request to
+	 *
+	 * @return <code>true</code> if the server acknowledged the compression,
+	 *         otherwise <code>false</code>
+	 *
+	 * @throws IOException
+	 *             if the request cannot be written or the answer cannot be
+	 *             read
+	 */
+	public static boolean request(final InputStream in, final OutputStream out)
+			throws IOException {
+		acknowledge(out);
+
+		final StringBuilder answer = new StringBuilder();
+		int b;
+		while ((b = in.read()) >= 0 && b != '\n') {
+			if (b != '\r') {
+				answer.append((char) b);
+			}
+		}
+
+		return HELLO.equals(answer.toString());
+	}
+
+	/**
+	 * Creates a stream compressing the data written to the specified
+	 * <code>OutputStream</code>, each flush performs a
+	 * <code>SYNC_FLUSH</code>.
+	 *
+	 * @param out
+	 *            the stream to write the compressed data to
+	 * @param level
+	 *            the compression level (<code>0-9</code>) or
+	 *            <code>-1</code> for the default level
+	 *
+	 * @return the compressing stream
+	 */
+	public static OutputStream deflate(final OutputStream out, final int level) {
+		final Deflater deflater = new Deflater(level);
+
+		return new DeflaterOutputStream(new BufferedOutputStream(out), deflater,
+				true) {
+
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					deflater.end();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Creates a stream decompressing the data read from the specified
+	 * <code>InputStream</code>.
+	 *
+	 * @param in
+	 *            the stream to read the compressed data from
+	 *
+	 * @return the decompressing stream
+	 */
+	public static InputStream inflate(final InputStream in) {
+		return new InflatingInputStream(in);
+	}
+}
@@ -0,0 +1,86 @@
+package net.meisen.general.server.listener.utility;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the workers currently handling a connection of an
+ * <code>AcceptListenerThread</code>. Workers are registered when the
+ * connection is accepted and deregister themselves (via the
+ * <code>WorkerDispatcher</code>) when they are finished. Registering and
+ * deregistering are <code>O(1)</code> and do not block, i.e. the accepting is
+ * not slowed down by the amount of open connections.
+ *
+ * @author pmeisen
+ *
+ */
+public class ConnectionRegistry {
+	private final Set<Thread> workers = Collections
+			.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+	/**
+	 * Registers the specified <code>worker</code>.
+	 *
+	 * @param worker
+	 *            the worker to be registered
+	 */
+	public void register(final Thread worker) {
+		workers.add(worker);
+	}
+
+	/**
+	 * Removes the specified <code>worker</code> from the registry.
+	 *
+	 * @param worker
+	 *            the worker to be removed
+	 *
+	 * @return <code>true</code> if the worker was registered, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean deregister(final Thread worker) {
+		return workers.remove(worker);
+	}
+
+	/**
+	 * Checks if the specified <code>worker</code> is registered.
+	 *
+	 * @param worker
+	 *            the worker to be checked
+	 *
+	 * @return <code>true</code> if the worker is registered, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isRegistered(final Thread worker) {
+		return workers.contains(worker);
+	}
+
+	/**
+	 * Gets the amount of registered workers.
+	 *
+	 * @return the amount of registered workers
+	 */
+	public int size() {
+		return workers.size();
+	}
+
+	/**
+	 * Gets a snapshot of the registered workers. Workers registered or
+	 * deregistered while creating the snapshot might or might not be
+	 * contained.
+	 *
+	 * @return a snapshot of the registered workers
+	 */
+	public List<Thread> getWorkers() {
+		return new ArrayList<Thread>(workers);
+	}
+
+	/**
+	 * Removes all the workers from the registry.
+	 */
+	public void clear() {
+		workers.clear();
+	}
+}
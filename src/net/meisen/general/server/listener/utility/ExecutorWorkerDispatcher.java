@@ -0,0 +1,175 @@
+package net.meisen.general.server.listener.utility;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A <code>WorkerDispatcher</code> which passes the workers to an
+ * <code>ExecutorService</code>, i.e. the worker is not started as own
+ * <code>Thread</code>, instead it's <code>run</code> method is executed by a
+ * thread of the executor.
+ *
+ * @author pmeisen
+ *
+ */
+public abstract class ExecutorWorkerDispatcher extends WorkerDispatcher {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(ExecutorWorkerDispatcher.class);
+
+	private final Map<Thread, Execution> executions = new ConcurrentHashMap<Thread, Execution>();
+
+	/**
+	 * Gets the <code>ExecutorService</code> used to execute the workers.
+	 *
+	 * @return the <code>ExecutorService</code> used to execute the workers
+	 */
+	protected abstract ExecutorService getExecutor();
+
+	@Override
+	public void dispatch(final Thread worker) {
+		final Execution execution = new Execution(worker);
+		executions.put(worker, execution);
+
+		try {
+			getExecutor().execute(execution);
+		} catch (final RejectedExecutionException e) {
+			reject(execution);
+		}
+	}
+
+	/**
+	 * Rejects the specified <code>execution</code>, i.e. the worker is not
+	 * executed and the connection of the worker is closed.
+	 *
+	 * @param execution
+	 *            the execution to be rejected
+	 */
+	protected void reject(final Execution execution) {
+		final Thread worker = execution.getWorker();
+
+		if (LOG.isWarnEnabled()) {
+			LOG.warn("The worker '" + worker.getName()
+					+ "' was rejected, the connection will be closed.");
+		}
+
+		// close the instance if it's a WorkerThread
+		if (worker instanceof WorkerThread) {
+			((WorkerThread) worker).close();
+		}
+
+		finished(execution);
+	}
+
+	/**
+	 * Marks the specified <code>execution</code> to be finished.
+	 *
+	 * @param execution
+	 *            the finished execution
+	 */
+	protected void finished(final Execution execution) {
+		executions.remove(execution.getWorker());
+		exited(execution.getWorker());
+
+		execution.done.countDown();
+	}
+
+	@Override
+	public boolean isRunning(final Thread worker) {
+		return executions.containsKey(worker);
+	}
+
+	@Override
+	public void interrupt(final Thread worker) {
+		worker.interrupt();
+
+		final Execution execution = executions.get(worker);
+		if (execution != null) {
+			execution.interrupt();
+		}
+	}
+
+	@Override
+	public void join(final Thread worker, final long millis)
+			throws InterruptedException {
+		final Execution execution = executions.get(worker);
+
+		if (execution != null) {
+			execution.done.await(millis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		final List<Runnable> notExecuted = getExecutor().shutdownNow();
+
+		// close the connections of the ones never executed
+		for (final Runnable runnable : notExecuted) {
+			if (runnable instanceof Execution) {
+				reject((Execution) runnable);
+			}
+		}
+	}
+
+	/**
+	 * The <code>Runnable</code> passed to the executor to execute a worker.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	protected class Execution implements Runnable {
+		private final Thread worker;
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		private Thread carrier = null;
+
+		/**
+		 * Creates an execution of the specified <code>worker</code>.
+		 *
+		 * @param worker
+		 *            the worker to be executed
+		 */
+		protected Execution(final Thread worker) {
+			this.worker = worker;
+		}
+
+		/**
+		 * Gets the worker executed.
+		 *
+		 * @return the worker executed
+		 */
+		public Thread getWorker() {
+			return worker;
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				carrier = Thread.currentThread();
+			}
+
+			try {
+				worker.run();
+			} finally {
+				synchronized (this) {
+					carrier = null;
+				}
+
+				finished(this);
+			}
+		}
+
+		private synchronized void interrupt() {
+			if (carrier != null) {
+				carrier.interrupt();
+			}
+		}
+	}
+}
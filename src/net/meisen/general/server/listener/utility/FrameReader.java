@@ -0,0 +1,354 @@
+package net.meisen.general.server.listener.utility;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads binary frames prefixed by their length (four bytes in big-endian
+ * order) from an <code>InputStream</code>. Small frames are read together
+ * with their headers into one reusable buffer, the payload of large frames is
+ * read directly into the frame (i.e. without copying it from the buffer).<br/>
+ * <br/>
+ * If <code>pooled</code> is <code>true</code>, the frames are read into a
+ * buffer kept by the reader, i.e. no memory is allocated per frame, but a
+ * frame returned is only valid until the next call of {@link #readFrame()}.
+ * Otherwise each frame is read into its own array.<br/>
+ * <br/>
+ * If a <code>BufferPool</code> is used, the buffer of the headers is only
+ * borrowed while data is buffered, i.e. a reader waiting for the next frame
+ * doesn't hold any buffer.
+ *
+ * @author pmeisen
+ *
+ * @see Framing#LENGTH
+ */
+public class FrameReader implements Closeable {
+
+	/**
+	 * The size of the header of a frame, i.e. of the length.
+	 */
+	public final static int HEADER_SIZE = 4;
+
+	/**
+	 * The default maximal size of a frame, i.e. <code>16 MB</code>.
+	 */
+	public final static int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+	private final static int BUFFER_SIZE = 8192;
+
+	private final InputStream in;
+	private final int maxFrameSize;
+	private final boolean pooled;
+	private final BufferPool pool;
+
+	private ByteBuffer lease = null;
+	private byte[] buffer;
+
+	private int start = 0;
+	private int end = 0;
+	private byte[] frame = null;
+
+	/**
+	 * Creates a reader reading from the specified <code>InputStream</code>.
+	 *
+	 * @param in
+	 *            the <code>InputStream</code> to read from
+	 * @param maxFrameSize
+	 *            the maximal size of a frame in bytes
+	 * @param pooled
+	 *            <code>true</code> if the frames should be read into a buffer
+	 *            reused for all frames, otherwise <code>false</code>
+	 */
+	public FrameReader(final InputStream in, final int maxFrameSize,
+			final boolean pooled) {
+		this(in, maxFrameSize, pooled, null);
+	}
+
+	/**
+	 * Creates a reader reading from the specified <code>InputStream</code>,
+	 * which borrows its buffer from the specified <code>BufferPool</code>.
+	 *
+	 * @param in
+	 *            the <code>InputStream</code> to read from
+	 * @param maxFrameSize
+	 *            the maximal size of a frame in bytes
+	 * @param pooled
+	 *            <code>true</code> if the frames should be read into a buffer
+	 *            reused for all frames, otherwise <code>false</code>
+	 * @param pool
+	 *            the <code>BufferPool</code> holding heap buffers to borrow
+	 *            the buffer from, <code>null</code> to allocate an own buffer
+	 */
+	public FrameReader(final InputStream in, final int maxFrameSize,
+			final boolean pooled, final BufferPool pool) {
+		if (in == null) {
+			throw new NullPointerException("The in cannot be null.");
+		} else if (maxFrameSize < 0) {
+			throw new IllegalArgumentException(
+					"The maxFrameSize cannot be negative.");
+		} else if (pool != null && pool.isDirect()) {
+			throw new IllegalArgumentException(
+					"The pool must provide heap buffers.");
+		}
+
+		this.in = in;
+		this.maxFrameSize = maxFrameSize;
+		this.pooled = pooled;
+		this.pool = pool;
+		this.buffer = pool == null ? new byte[BUFFER_SIZE] : null;
+	}
+
+	/**
+	 * Reads the next frame.
+	 *
+	 * @return the payload of the frame or <code>null</code> if the end of the
+	 *         stream is reached
+	 *
+	 * @throws FrameTooLargeException
+	 *             if the frame exceeds the maximal size
+	 * @throws EOFException
+	 *             if the stream ends within a frame
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	public ByteBuffer readFrame() throws IOException {
+		if (!ensure(HEADER_SIZE)) {
+			if (end > start) {
+				throw new EOFException("The stream ended within a header.");
+			}
+			return null;
+		}
+
+		final int length = readLength(buffer, start);
+		if (length < 0 || length > maxFrameSize) {
+			throw new FrameTooLargeException(length & 0xFFFFFFFFL,
+					maxFrameSize);
+		}
+		start += HEADER_SIZE;
+
+		// get the array to read the frame into
+		final byte[] target;
+		if (!pooled) {
+			target = new byte[length];
+		} else if (frame == null || frame.length < length) {
+			target = frame = new byte[length];
+		} else {
+			target = frame;
+		}
+
+		// copy the buffered part and read the remaining one directly
+		final int buffered = Math.min(length, end - start);
+		System.arraycopy(buffer, start, target, 0, buffered);
+		start += buffered;
+
+		int pos = buffered;
+		while (pos < length) {
+			final int read = in.read(target, pos, length - pos);
+			if (read < 0) {
+				throw new EOFException("The stream ended within a frame.");
+			}
+			pos += read;
+		}
+
+		return ByteBuffer.wrap(target, 0, length);
+	}
+
+	/**
+	 * Checks if a complete frame is available without blocking, i.e. if the
+	 * next call of {@link #readFrame()} returns without waiting for further
+	 * data.
+	 *
+	 * @return <code>true</code> if a complete frame is available, otherwise
+	 *         <code>false</code>
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	public boolean hasFrame() throws IOException {
+		while (true) {
+			final int buffered = end - start;
+			if (buffered >= HEADER_SIZE) {
+				final long length = readLength(buffer, start) & 0xFFFFFFFFL;
+				if (buffered - HEADER_SIZE >= length) {
+					return true;
+				} else if (length > BUFFER_SIZE - HEADER_SIZE) {
+
+					// the frame will not be buffered completely
+					return buffered - HEADER_SIZE + in.available() >= length;
+				}
+			}
+
+			// read the available data
+			if (in.available() <= 0 || !fill()) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Makes sure that at least <code>size</code> bytes are buffered.
+	 *
+	 * @param size
+	 *            the amount of bytes needed, at most the size of the buffer
+	 *
+	 * @return <code>false</code> if the end of the stream is reached before,
+	 *         otherwise <code>true</code>
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	protected boolean ensure(final int size) throws IOException {
+		while (end - start < size) {
+			if (!fill()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Moves the unread bytes to the beginning of the buffer and reads from
+	 * the stream. If the buffer is borrowed and empty, it's released prior to
+	 * waiting for data.
+	 *
+	 * @return <code>false</code> if the end of the stream is reached or the
+	 *         buffer is full, otherwise <code>true</code>
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	protected boolean fill() throws IOException {
+		if (pool != null && start == end) {
+			recycle();
+
+			// wait for data without holding any buffer
+			final int b = in.read();
+			if (b < 0) {
+				return false;
+			}
+			lease = pool.acquire(BUFFER_SIZE);
+			buffer = lease.array();
+			buffer[end++] = (byte) b;
+
+			// read the data already received
+			final int available = Math.min(in.available(), BUFFER_SIZE - end);
+			if (available > 0) {
+				final int read = in.read(buffer, end, available);
+				if (read > 0) {
+					end += read;
+				}
+			}
+
+			return true;
+		} else if (start > 0) {
+			System.arraycopy(buffer, start, buffer, 0, end - start);
+			end -= start;
+			start = 0;
+		}
+		if (end == BUFFER_SIZE) {
+			return false;
+		}
+
+		final int read = in.read(buffer, end, BUFFER_SIZE - end);
+		if (read < 0) {
+			return false;
+		}
+		end += read;
+
+		return true;
+	}
+
+	/**
+	 * Gets the maximal size of a frame.
+	 *
+	 * @return the maximal size of a frame in bytes
+	 */
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+
+	/**
+	 * Checks if the frames are read into a reused buffer.
+	 *
+	 * @return <code>true</code> if the frames are read into a reused buffer,
+	 *         otherwise <code>false</code>
+	 */
+	public boolean isPooled() {
+		return pooled;
+	}
+
+	/**
+	 * Releases the borrowed buffer, the buffered data is discarded.
+	 */
+	protected void recycle() {
+		if (lease != null) {
+			pool.release(lease);
+			lease = null;
+			buffer = null;
+		}
+		start = 0;
+		end = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		frame = null;
+		if (pool != null) {
+			recycle();
+		}
+		in.close();
+	}
+
+	/**
+	 * Reads the length of a frame from the specified position.
+	 *
+	 * @param bytes
+	 *            the bytes to read the length from
+	 * @param pos
+	 *            the position of the header
+	 *
+	 * @return the length, which might be negative if the header is invalid
+	 */
+	public static int readLength(final byte[] bytes, final int pos) {
+		return ((bytes[pos] & 0xFF) << 24) | ((bytes[pos + 1] & 0xFF) << 16)
+				| ((bytes[pos + 2] & 0xFF) << 8) | (bytes[pos + 3] & 0xFF);
+	}
+
+	/**
+	 * Writes the specified payload as frame, i.e. prefixed by its length. The
+	 * <code>OutputStream</code> should be buffered.
+	 *
+	 * @param out
+	 *            the <code>OutputStream</code> to write to
+	 * @param payload
+	 *            the payload to be written, <code>null</code> is written as
+	 *            empty frame
+	 *
+	 * @throws IOException
+	 *             if the frame cannot be written
+	 */
+	public static void writeFrame(final OutputStream out,
+			final ByteBuffer payload) throws IOException {
+		final int length = payload == null ? 0 : payload.remaining();
+		out.write(length >>> 24);
+		out.write(length >>> 16);
+		out.write(length >>> 8);
+		out.write(length);
+
+		if (length == 0) {
+			// nothing to write
+		} else if (payload.hasArray()) {
+			out.write(payload.array(),
+					payload.arrayOffset() + payload.position(), length);
+		} else {
+			final byte[] bytes = new byte[length];
+			payload.duplicate().get(bytes);
+			out.write(bytes);
+		}
+	}
+}
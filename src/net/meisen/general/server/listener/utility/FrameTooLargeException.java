@@ -0,0 +1,50 @@
+package net.meisen.general.server.listener.utility;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown if a frame received exceeds the maximal size allowed.
+ *
+ * @author pmeisen
+ *
+ */
+public class FrameTooLargeException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	private final long size;
+	private final int maxFrameSize;
+
+	/**
+	 * Creates the exception for a frame of the specified <code>size</code>.
+	 *
+	 * @param size
+	 *            the size of the frame received
+	 * @param maxFrameSize
+	 *            the maximal size allowed
+	 */
+	public FrameTooLargeException(final long size, final int maxFrameSize) {
+		super("The frame of " + size + " bytes exceeds the maximum of "
+				+ maxFrameSize + " bytes.");
+
+		this.size = size;
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	/**
+	 * Gets the size of the frame received.
+	 *
+	 * @return the size of the frame received
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the maximal size allowed.
+	 *
+	 * @return the maximal size allowed
+	 */
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+}
@@ -0,0 +1,62 @@
+package net.meisen.general.server.listener.utility;
+
+/**
+ * The different wire-formats used to split the data received on a connection
+ * into requests. The framing is selected per <code>Connector</code> using the
+ * <code>worker</code> extension, e.g.:
+ *
+ * <pre>
+ * &lt;ed:extension&gt;
+ *   &lt;worker framing="length" maxFrameSize="16777216" pooled="true" /&gt;
+ * &lt;/ed:extension&gt;
+ * </pre>
+ *
+ * @author pmeisen
+ *
+ */
+public enum Framing {
+	/**
+	 * Each request is a line of text terminated by <code>\n</code>,
+	 * <code>\r</code> or <code>\r\n</code>, see <code>LineFramer</code>.
+	 */
+	LINE,
+	/**
+	 * Each request is a binary frame prefixed by its length (as four bytes in
+	 * big-endian order), see <code>FrameReader</code>. The answers are
+	 * written using the same format.
+	 */
+	LENGTH,
+	/**
+	 * Each request is a line prefixed by a request-id, i.e.
+	 * <code>&lt;id&gt; &lt;request&gt;</code>. The requests of a connection
+	 * are handled concurrently (at most <code>maxInFlight</code>) and each
+	 * answer is written as <code>&lt;id&gt; &lt;answer&gt;</code> as soon as
+	 * it's completed, i.e. the answers are written in any order and a slow
+	 * request doesn't block the following ones, see <code>RequestTags</code>.
+	 */
+	TAGGED;
+
+	/**
+	 * Determines the <code>Framing</code> specified by the passed
+	 * <code>value</code>. The value is compared case-insensitive.
+	 *
+	 * @param value
+	 *            the value to determine the <code>Framing</code> for
+	 *
+	 * @return the <code>Framing</code> or <code>null</code> if no framing is
+	 *         associated to the value
+	 */
+	public static Framing find(final String value) {
+		if (value == null) {
+			return null;
+		}
+
+		for (final Framing framing : Framing.values()) {
+			if (framing.name().equalsIgnoreCase(value.trim())) {
+				return framing;
+			}
+		}
+
+		return null;
+	}
+}
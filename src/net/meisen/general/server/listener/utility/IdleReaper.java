@@ -0,0 +1,356 @@
+package net.meisen.general.server.listener.utility;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.meisen.general.server.listener.utility.TimerWheel.Timeout;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Closes the connections of a listener which are idle or too slow. The
+ * timeouts are tracked by a (shared) <code>TimerWheel</code>, i.e. no thread
+ * or <code>SO_TIMEOUT</code> is needed per connection. Two timeouts are
+ * supported (a value of <code>0</code> disables the timeout):
+ * <ul>
+ * <li><b>idle-timeout</b>: the connection is closed if no data was received
+ * and no answer was sent for the specified time</li>
+ * <li><b>read-timeout</b>: the connection is closed if a request (i.e. a line)
+ * started to arrive, but is not complete within the specified time</li>
+ * </ul>
+ * The timeouts are defined per <code>Connector</code> using the
+ * <code>worker</code> extension, e.g.:
+ *
+ * <pre>
+ * &lt;ed:extension&gt;
+ *   &lt;worker idleTimeout="300000" readTimeout="10000" /&gt;
+ * &lt;/ed:extension&gt;
+ * </pre>
+ *
+ * @author pmeisen
+ *
+ */
+public class IdleReaper {
+	private final static Logger LOG = LoggerFactory.getLogger(IdleReaper.class);
+
+	private final long idleTimeout;
+	private final long readTimeout;
+	private final TimerWheel timerWheel;
+	private final boolean shared;
+
+	private volatile boolean closed = false;
+
+	private final AtomicLong idleClosed = new AtomicLong(0);
+	private final AtomicLong readTimedOut = new AtomicLong(0);
+
+	/**
+	 * Creates a reaper using the shared <code>TimerWheel</code>. The reaper
+	 * holds a reference to the shared timer until it is closed.
+	 *
+	 * @param idleTimeout
+	 *            the idle-timeout in milliseconds, <code>0</code> to disable
+	 * @param readTimeout
+	 *            the read-timeout in milliseconds, <code>0</code> to disable
+	 *
+	 * @see TimerWheel#acquireDefault()
+	 * @see #close()
+	 */
+	public IdleReaper(final long idleTimeout, final long readTimeout) {
+		this(idleTimeout, readTimeout, null, true);
+	}
+
+	/**
+	 * Creates a reaper using the specified <code>TimerWheel</code>.
+	 *
+	 * @param idleTimeout
+	 *            the idle-timeout in milliseconds, <code>0</code> to disable
+	 * @param readTimeout
+	 *            the read-timeout in milliseconds, <code>0</code> to disable
+	 * @param timerWheel
+	 *            the <code>TimerWheel</code> used to track the timeouts
+	 */
+	public IdleReaper(final long idleTimeout, final long readTimeout,
+			final TimerWheel timerWheel) {
+		this(idleTimeout, readTimeout, timerWheel, false);
+	}
+
+	private IdleReaper(final long idleTimeout, final long readTimeout,
+			final TimerWheel timerWheel, final boolean shared) {
+		if (idleTimeout < 0 || readTimeout < 0) {
+			throw new IllegalArgumentException(
+					"The timeouts cannot be negative.");
+		} else if (!shared && timerWheel == null) {
+			throw new NullPointerException("The timerWheel cannot be null.");
+		}
+
+		this.idleTimeout = idleTimeout;
+		this.readTimeout = readTimeout;
+		this.shared = shared;
+		this.timerWheel = shared ? TimerWheel.acquireDefault() : timerWheel;
+	}
+
+	/**
+	 * Starts to watch the specified <code>connection</code>, the connection
+	 * is closed if one of the timeouts is reached.
+	 *
+	 * @param connection
+	 *            the connection to be watched
+	 *
+	 * @return the <code>Watch</code> which has to be informed about the
+	 *         activities of the connection
+	 */
+	public Watch watch(final Closeable connection) {
+		final Watch watch = new Watch(this, connection);
+		watch.schedule(System.currentTimeMillis());
+
+		return watch;
+	}
+
+	/**
+	 * Closes the reaper, i.e. no further timeouts are scheduled. The
+	 * reference to the shared <code>TimerWheel</code> is released, so that
+	 * its thread ends when no other reaper uses it.
+	 */
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+		if (shared) {
+			TimerWheel.releaseDefault();
+		}
+	}
+
+	/**
+	 * Checks if the reaper is closed.
+	 *
+	 * @return <code>true</code> if the reaper is closed, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Checks if any timeout is enabled.
+	 *
+	 * @return <code>true</code> if a timeout is enabled, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isEnabled() {
+		return idleTimeout > 0 || readTimeout > 0;
+	}
+
+	/**
+	 * Gets the idle-timeout in milliseconds.
+	 *
+	 * @return the idle-timeout in milliseconds, <code>0</code> if disabled
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Gets the read-timeout in milliseconds.
+	 *
+	 * @return the read-timeout in milliseconds, <code>0</code> if disabled
+	 */
+	public long getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * Gets the amount of connections closed because of the idle-timeout.
+	 *
+	 * @return the amount of connections closed because of the idle-timeout
+	 */
+	public long getIdleClosedCount() {
+		return idleClosed.get();
+	}
+
+	/**
+	 * Gets the amount of connections closed because of the read-timeout.
+	 *
+	 * @return the amount of connections closed because of the read-timeout
+	 */
+	public long getReadTimedOutCount() {
+		return readTimedOut.get();
+	}
+
+	@Override
+	public String toString() {
+		return "idle: " + idleTimeout + "ms (closed: " + getIdleClosedCount()
+				+ "), read: " + readTimeout + "ms (closed: "
+				+ getReadTimedOutCount() + ")";
+	}
+
+	/**
+	 * The watch of a single connection. The connection has to inform the
+	 * watch whenever data is received ({@link #received()}), a complete
+	 * request is processed ({@link #processing()}) and the request is handled
+	 * ({@link #handled(boolean)}).
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	public static class Watch implements Runnable {
+		private final IdleReaper reaper;
+		private final Closeable connection;
+
+		private volatile long lastActivity;
+		private volatile long requestStart = 0;
+		private volatile boolean processing = false;
+		private volatile boolean cancelled = false;
+		private volatile Timeout timeout = null;
+
+		private Watch(final IdleReaper reaper, final Closeable connection) {
+			this.reaper = reaper;
+			this.connection = connection;
+			this.lastActivity = System.currentTimeMillis();
+		}
+
+		/**
+		 * Informs the watch that data was received.
+		 */
+		public void received() {
+			final long now = System.currentTimeMillis();
+
+			lastActivity = now;
+			if (requestStart == 0) {
+				requestStart = now;
+			}
+		}
+
+		/**
+		 * Informs the watch that a complete request was received and is
+		 * processed, no timeout is applied while processing.
+		 */
+		public void processing() {
+			processing = true;
+		}
+
+		/**
+		 * Informs the watch that the request is handled, i.e. the answer was
+		 * sent.
+		 *
+		 * @param pending
+		 *            <code>true</code> if data of a further (incomplete)
+		 *            request is already received
+		 */
+		public void handled(final boolean pending) {
+			final long now = System.currentTimeMillis();
+
+			lastActivity = now;
+			requestStart = pending ? now : 0;
+			processing = false;
+		}
+
+		/**
+		 * Stops watching the connection, e.g. because the connection is
+		 * closed.
+		 */
+		public void cancel() {
+			cancelled = true;
+
+			final Timeout curTimeout = timeout;
+			if (curTimeout != null) {
+				curTimeout.cancel();
+			}
+		}
+
+		/**
+		 * Wraps the specified <code>InputStream</code>, so that the watch is
+		 * informed whenever data is received.
+		 *
+		 * @param in
+		 *            the <code>InputStream</code> to be wrapped
+		 *
+		 * @return the wrapping <code>InputStream</code>
+		 */
+		public InputStream monitor(final InputStream in) {
+			return new FilterInputStream(in) {
+
+				@Override
+				public int read() throws IOException {
+					final int b = super.read();
+					if (b >= 0) {
+						received();
+					}
+					return b;
+				}
+
+				@Override
+				public int read(final byte[] b, final int off, final int len)
+						throws IOException {
+					final int read = super.read(b, off, len);
+					if (read > 0) {
+						received();
+					}
+					return read;
+				}
+			};
+		}
+
+		/**
+		 * Checks the timeouts, called by the <code>TimerWheel</code>.
+		 */
+		@Override
+		public void run() {
+			if (cancelled) {
+				return;
+			}
+
+			final long now = System.currentTimeMillis();
+			final long curRequestStart = requestStart;
+
+			if (processing) {
+				schedule(now);
+			} else if (reaper.readTimeout > 0 && curRequestStart > 0
+					&& now - curRequestStart >= reaper.readTimeout) {
+				reaper.readTimedOut.incrementAndGet();
+				close("read-timeout");
+			} else if (reaper.idleTimeout > 0
+					&& now - lastActivity >= reaper.idleTimeout) {
+				reaper.idleClosed.incrementAndGet();
+				close("idle-timeout");
+			} else {
+				schedule(now);
+			}
+		}
+
+		private void schedule(final long now) {
+			long next = Long.MAX_VALUE;
+
+			final long curRequestStart = requestStart;
+			if (reaper.readTimeout > 0) {
+				next = Math.min(next, (curRequestStart > 0 ? curRequestStart
+						: now) + reaper.readTimeout);
+			}
+			if (reaper.idleTimeout > 0) {
+				next = Math.min(next, lastActivity + reaper.idleTimeout);
+			}
+
+			if (next != Long.MAX_VALUE && !cancelled && !reaper.closed) {
+				timeout = reaper.timerWheel.schedule(this, next - now);
+			}
+		}
+
+		private void close(final String reason) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Closing connection because of the " + reason + ".");
+			}
+
+			cancelled = true;
+			try {
+				connection.close();
+			} catch (final IOException e) {
+				// ignore it
+			}
+		}
+	}
+}
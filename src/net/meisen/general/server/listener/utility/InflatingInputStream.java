@@ -0,0 +1,151 @@
+package net.meisen.general.server.listener.utility;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * An <code>InputStream</code> decompressing the data (compressed using
+ * <code>DEFLATE</code>) read from another <code>InputStream</code>. In
+ * contrast to the <code>InflaterInputStream</code>, the
+ * {@link #available()} method returns the amount of bytes which can be read
+ * without blocking, i.e. the decompressed data is buffered and the stream
+ * can be used by the <code>LineFramer</code> or the <code>FrameReader</code>
+ * to detect pipelined requests.
+ *
+ * @author pmeisen
+ *
+ */
+public class InflatingInputStream extends InputStream {
+	private final static int BUFFER_SIZE = 8192;
+
+	private final InputStream in;
+	private final Inflater inflater;
+	private final byte[] input = new byte[BUFFER_SIZE];
+	private final byte[] output = new byte[BUFFER_SIZE];
+
+	private int pos = 0;
+	private int end = 0;
+	private boolean eof = false;
+	private boolean closed = false;
+
+	/**
+	 * Creates a stream decompressing the data read from the specified
+	 * <code>InputStream</code>.
+	 *
+	 * @param in
+	 *            the <code>InputStream</code> to read the compressed data from
+	 */
+	public InflatingInputStream(final InputStream in) {
+		if (in == null) {
+			throw new NullPointerException("The in cannot be null.");
+		}
+
+		this.in = in;
+		this.inflater = new Inflater();
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensure(true)) {
+			return -1;
+		}
+
+		return output[pos++] & 0xFF;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len)
+			throws IOException {
+		if (len == 0) {
+			return 0;
+		} else if (!ensure(true)) {
+			return -1;
+		}
+
+		final int read = Math.min(len, end - pos);
+		System.arraycopy(output, pos, b, off, read);
+		pos += read;
+
+		return read;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (pos == end) {
+			ensure(false);
+		}
+
+		return end - pos;
+	}
+
+	/**
+	 * Makes sure that decompressed data is buffered.
+	 *
+	 * @param block
+	 *            <code>true</code> if the method should wait for compressed
+	 *            data, otherwise only the data available is read
+	 *
+	 * @return <code>true</code> if data is buffered, <code>false</code> if
+	 *         no data is buffered, i.e. the end of the stream is reached or
+	 *         (if not blocking) no data is available
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read or is corrupted
+	 */
+	protected boolean ensure(final boolean block) throws IOException {
+		if (closed) {
+			throw new IOException("The stream is closed.");
+		}
+
+		while (pos == end) {
+			if (eof) {
+				return false;
+			}
+
+			// decompress the data already read
+			try {
+				end = inflater.inflate(output);
+				pos = 0;
+			} catch (final DataFormatException e) {
+				throw new IOException("The compressed data is corrupted.", e);
+			}
+			if (end > 0) {
+				return true;
+			} else if (inflater.finished()) {
+				eof = true;
+				return false;
+			} else if (inflater.needsDictionary()) {
+				throw new IOException(
+						"The compressed data needs an unsupported dictionary.");
+			} else if (!inflater.needsInput()) {
+				continue;
+			} else if (!block && in.available() <= 0) {
+				return false;
+			}
+
+			// read the next compressed data
+			final int read = in.read(input, 0, block ? input.length : Math
+					.min(input.length, in.available()));
+			if (read < 0) {
+
+				// a peer closing the connection might not finish the stream
+				eof = true;
+				return false;
+			}
+			inflater.setInput(input, 0, read);
+		}
+
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			inflater.end();
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,697 @@
+package net.meisen.general.server.listener.utility;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import net.meisen.general.server.listener.codec.LineFrameDecoder;
+
+/**
+ * Splits the bytes of an <code>InputStream</code> into lines, using the same
+ * terminators as {@link java.io.BufferedReader#readLine()} (i.e.
+ * <code>\n</code>, <code>\r</code> or <code>\r\n</code>). In contrast to a
+ * <code>BufferedReader</code>, the bytes are scanned for the terminators
+ * within one reusable buffer and only the bytes of a complete line are
+ * decoded, i.e. no intermediate <code>char</code> buffers are used. Lines
+ * which consist of ASCII characters only (or any line if the charset is
+ * <code>ISO-8859-1</code>) are converted without any decoding at all.<br/>
+ * <br/>
+ * The terminators are searched as single bytes, i.e. the charset must encode
+ * them as such (e.g. <code>UTF-8</code>, <code>ISO-8859-x</code> or
+ * <code>windows-125x</code>, but not <code>UTF-16</code>), other charsets
+ * are rejected (see {@link #isAsciiCompatible(Charset)}).<br/>
+ * <br/>
+ * If a <code>maxLineLength</code> is defined, a line exceeding it is returned
+ * in parts of at most <code>maxLineLength</code> bytes (see
+ * {@link #isPartial()}), i.e. the buffer never grows beyond the maximal
+ * line-length. The rest of such a line can be skipped using
+ * {@link #skipLine()}. The lines are split by a {@link LineFrameDecoder},
+ * i.e. the same way as by the codec-pipeline.<br/>
+ * <br/>
+ * If a <code>BufferPool</code> is used, the buffer is only borrowed while
+ * data is buffered, i.e. a framer waiting for the next line doesn't hold any
+ * buffer.
+ *
+ * @author pmeisen
+ *
+ */
+public class LineFramer implements Closeable {
+	private final static Charset LATIN1 = Charset.forName("ISO-8859-1");
+	private final static Charset ASCII = Charset.forName("US-ASCII");
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The default size of the buffer.
+	 */
+	public final static int DEFAULT_BUFFER_SIZE = 8192;
+
+	/**
+	 * The default maximal length of a line, i.e. <code>1 MB</code>.
+	 */
+	public final static int DEFAULT_MAX_LINE_LENGTH = 1024 * 1024;
+
+	private final InputStream in;
+	private final Charset charset;
+	private final boolean asciiCompatible;
+	private final int maxLineLength;
+	private final int bufferSize;
+	private final BufferPool pool;
+	private final LineFrameDecoder decoder;
+
+	private ByteBuffer lease = null;
+	private byte[] buffer;
+	private ByteBuffer wrapped = null;
+	private int start = 0;
+	private int end = 0;
+	private boolean partial = false;
+	private boolean decoded = false;
+	private boolean decodedPartial = false;
+	private int lineStart = 0;
+	private int lineLength = 0;
+	private byte[] viewed = null;
+	private ByteBuffer view = null;
+
+	/**
+	 * Creates a framer reading from the specified <code>InputStream</code>
+	 * using the default buffer-size.
+	 *
+	 * @param in
+	 *            the <code>InputStream</code> to read from
+	 * @param charset
+	 *            the <code>Charset</code> used to decode the lines
+	 */
+	public LineFramer(final InputStream in, final Charset charset) {
+		this(in, charset, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a framer reading from the specified <code>InputStream</code>.
+	 *
+	 * @param in
+	 *            the <code>InputStream</code> to read from
+	 * @param charset
+	 *            the <code>Charset</code> used to decode the lines
+	 * @param bufferSize
+	 *            the initial size of the buffer, the buffer grows if a line
+	 *            exceeds the size
+	 */
+	public LineFramer(final InputStream in, final Charset charset,
+			final int bufferSize) {
+		this(in, charset, bufferSize, 0);
+	}
+
+	/**
+	 * Creates a framer reading from the specified <code>InputStream</code>,
+	 * which returns lines exceeding the <code>maxLineLength</code> in parts.
+	 *
+	 * @param in
+	 *            the <code>InputStream</code> to read from
+	 * @param charset
+	 *            the <code>Charset</code> used to decode the lines
+	 * @param bufferSize
+	 *            the initial size of the buffer, the buffer grows if a line
+	 *            exceeds the size (but never beyond the maximal length)
+	 * @param maxLineLength
+	 *            the maximal length of a line in bytes, <code>0</code> if the
+	 *            length is not limited
+	 */
+	public LineFramer(final InputStream in, final Charset charset,
+			final int bufferSize, final int maxLineLength) {
+		this(in, charset, bufferSize, maxLineLength, null);
+	}
+
+	/**
+	 * Creates a framer reading from the specified <code>InputStream</code>,
+	 * which borrows its buffer from the specified <code>BufferPool</code>.
+	 *
+	 * @param in
+	 *            the <code>InputStream</code> to read from
+	 * @param charset
+	 *            the <code>Charset</code> used to decode the lines
+	 * @param bufferSize
+	 *            the initial size of the buffer, the buffer grows if a line
+	 *            exceeds the size (but never beyond the maximal length)
+	 * @param maxLineLength
+	 *            the maximal length of a line in bytes, <code>0</code> if the
+	 *            length is not limited
+	 * @param pool
+	 *            the <code>BufferPool</code> holding heap buffers to borrow
+	 *            the buffer from, <code>null</code> to allocate an own buffer
+	 */
+	public LineFramer(final InputStream in, final Charset charset,
+			final int bufferSize, final int maxLineLength,
+			final BufferPool pool) {
+		if (in == null) {
+			throw new NullPointerException("The in cannot be null.");
+		} else if (charset == null) {
+			throw new NullPointerException("The charset cannot be null.");
+		} else if (!isAsciiCompatible(charset)) {
+			throw new IllegalArgumentException("The charset '" + charset
+					+ "' isn't ASCII-compatible.");
+		} else if (bufferSize <= 0) {
+			throw new IllegalArgumentException(
+					"The bufferSize must be positive.");
+		} else if (maxLineLength < 0) {
+			throw new IllegalArgumentException(
+					"The maxLineLength cannot be negative.");
+		} else if (pool != null && pool.isDirect()) {
+			throw new IllegalArgumentException(
+					"The pool must provide heap buffers.");
+		}
+
+		this.in = in;
+		this.charset = charset;
+		this.asciiCompatible = isAsciiCompatible(charset);
+		this.maxLineLength = maxLineLength;
+		this.bufferSize = bufferSize;
+		this.pool = pool;
+		this.buffer = pool == null ? new byte[bufferSize] : null;
+		this.decoder = new LineFrameDecoder(
+				maxLineLength == 0 ? Integer.MAX_VALUE : maxLineLength,
+				charset, true);
+	}
+
+	/**
+	 * Reads the next line. If the line exceeds the maximal line-length, the
+	 * next part of the line is returned and {@link #isPartial()} returns
+	 * <code>true</code> until the last part is returned.
+	 *
+	 * @return the read line (without any terminator) or <code>null</code> if
+	 *         the end of the stream is reached
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	public String readLine() throws IOException {
+		return nextLine() ? decode(buffer, lineStart, lineLength) : null;
+	}
+
+	/**
+	 * Reads the next line without decoding it, i.e. the returned buffer is a
+	 * read-only view of the bytes of the line within the buffer of the
+	 * framer. The view is reused and only valid until the next call of any
+	 * read method. Lines exceeding the maximal line-length are returned in
+	 * parts like by {@link #readLine()}.
+	 * 
+	 * @return a read-only view of the read line (without any terminator) or
+	 *         <code>null</code> if the end of the stream is reached
+	 * 
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	public ByteBuffer readLineBytes() throws IOException {
+		if (!nextLine()) {
+			return null;
+		}
+
+		if (view == null || viewed != buffer) {
+			viewed = buffer;
+			view = ByteBuffer.wrap(buffer).asReadOnlyBuffer();
+		}
+		view.limit(lineStart + lineLength);
+		view.position(lineStart);
+
+		return view;
+	}
+
+	/**
+	 * Searches the next line (or part of a line) and marks its bytes within
+	 * the buffer, i.e. sets the <code>lineStart</code> and the
+	 * <code>lineLength</code>.
+	 * 
+	 * @return <code>true</code> if a line is found, <code>false</code> if the
+	 *         end of the stream is reached
+	 * 
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	protected boolean nextLine() throws IOException {
+		while (!decodeBuffered()) {
+			if (!fill()) {
+				partial = false;
+				return decodeLast();
+			}
+		}
+
+		decoded = false;
+		partial = decodedPartial;
+
+		return true;
+	}
+
+	/**
+	 * Decodes the next line (or part of a line) of the buffered data, if not
+	 * already done.
+	 * 
+	 * @return <code>true</code> if a line is decoded, otherwise
+	 *         <code>false</code>
+	 * 
+	 * @throws IOException
+	 *             if the line cannot be decoded
+	 */
+	protected boolean decodeBuffered() throws IOException {
+		if (decoded || buffer == null) {
+			return decoded;
+		}
+
+		final ByteBuffer line = decoder.decode(wrap());
+		start = wrapped.position();
+		if (line != null) {
+			decoded = true;
+			decodedPartial = decoder.isPartial();
+			lineStart = line.position();
+			lineLength = line.remaining();
+		}
+
+		return decoded;
+	}
+
+	/**
+	 * Decodes the data left when the end of the stream is reached.
+	 * 
+	 * @return <code>true</code> if data is left, otherwise <code>false</code>
+	 */
+	protected boolean decodeLast() {
+		if (buffer == null) {
+			return false;
+		}
+
+		final ByteBuffer line = decoder.decodeLast(wrap());
+		start = wrapped.position();
+		if (line == null) {
+			return false;
+		}
+		lineStart = line.position();
+		lineLength = line.remaining();
+
+		return true;
+	}
+
+	/**
+	 * Wraps the buffered data, i.e. the bytes between the start and the end.
+	 * 
+	 * @return the wrapped data
+	 */
+	protected ByteBuffer wrap() {
+		if (wrapped == null || wrapped.array() != buffer) {
+			wrapped = ByteBuffer.wrap(buffer);
+		}
+		wrapped.limit(end);
+		wrapped.position(start);
+
+		return wrapped;
+	}
+
+	/**
+	 * Checks if the line returned by the last call of {@link #readLine()} (or
+	 * {@link #readLineBytes()}) is
+	 * only a part of a line exceeding the maximal line-length, i.e. if the
+	 * next call returns the next part of the same line.
+	 *
+	 * @return <code>true</code> if the last line returned is a part of a line,
+	 *         otherwise <code>false</code>
+	 */
+	public boolean isPartial() {
+		return partial;
+	}
+
+	/**
+	 * Skips the rest of a line, if the last call of {@link #readLine()}
+	 * returned a part of a line (see {@link #isPartial()}). The skipped bytes
+	 * are not buffered, i.e. the rest of the line can be of any size.
+	 *
+	 * @return the amount of bytes skipped
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	public long skipLine() throws IOException {
+		long skipped = 0;
+		while (partial && nextLine()) {
+			skipped += lineLength;
+		}
+		partial = false;
+
+		return skipped;
+	}
+
+	/**
+	 * Gets the maximal length of a line.
+	 *
+	 * @return the maximal length of a line in bytes, <code>0</code> if the
+	 *         length is not limited
+	 */
+	public int getMaxLineLength() {
+		return maxLineLength;
+	}
+
+	/**
+	 * Checks if data is available without blocking, i.e. if a further call
+	 * of {@link #readLine()} might not block.
+	 *
+	 * @return <code>true</code> if data is available, otherwise
+	 *         <code>false</code>
+	 *
+	 * @throws IOException
+	 *             if the availability of the stream cannot be determined
+	 */
+	public boolean ready() throws IOException {
+		return decodeBuffered() || end > start || in.available() > 0;
+	}
+
+	/**
+	 * Checks if a complete line is available without blocking, i.e. if the
+	 * next call of {@link #readLine()} returns a line without waiting for
+	 * further data. Data already received by the stream (see
+	 * {@link InputStream#available()}) is moved into the buffer to find the
+	 * terminator.
+	 *
+	 * @return <code>true</code> if a complete line is available, otherwise
+	 *         <code>false</code>
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	public boolean hasLine() throws IOException {
+		while (!decodeBuffered()) {
+			if (in.available() <= 0 || !fill()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gets the <code>Charset</code> used to decode the lines.
+	 *
+	 * @return the <code>Charset</code> used to decode the lines
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Fills the buffer, i.e. moves the unread bytes to the beginning of the
+	 * buffer (or grows it if it's full) and reads from the stream. If the
+	 * buffer is borrowed and empty, it's released prior to waiting for data.
+	 *
+	 * @return <code>false</code> if the end of the stream is reached,
+	 *         otherwise <code>true</code>
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	protected boolean fill() throws IOException {
+		if (pool != null && start == end) {
+			recycle();
+
+			// wait for data without holding any buffer
+			final int b = in.read();
+			if (b < 0) {
+				return false;
+			}
+			borrow(bufferSize);
+			buffer[end++] = (byte) b;
+
+			// read the data already received
+			final int available = Math.min(in.available(), buffer.length
+					- end);
+			if (available > 0) {
+				final int read = in.read(buffer, end, available);
+				if (read > 0) {
+					end += read;
+				}
+			}
+
+			return true;
+		} else if (start > 0) {
+			System.arraycopy(buffer, start, buffer, 0, end - start);
+			end -= start;
+			start = 0;
+		}
+
+		if (end == buffer.length) {
+
+			// a part of a line never exceeds the maximal length (plus one)
+			int size = buffer.length << 1;
+			if (maxLineLength > 0 && buffer.length <= maxLineLength
+					&& size > maxLineLength + 1L) {
+				size = maxLineLength + 1;
+			}
+
+			if (pool == null) {
+				final byte[] grown = new byte[size];
+				System.arraycopy(buffer, 0, grown, 0, end);
+				buffer = grown;
+			} else {
+				final ByteBuffer old = lease;
+				final byte[] data = buffer;
+				borrow(size);
+				System.arraycopy(data, 0, buffer, 0, end);
+				pool.release(old);
+			}
+		}
+
+		final int read = in.read(buffer, end, buffer.length - end);
+		if (read < 0) {
+			return false;
+		}
+		end += read;
+
+		return true;
+	}
+
+	/**
+	 * Borrows a buffer of at least the specified size from the pool.
+	 *
+	 * @param size
+	 *            the minimal size of the buffer
+	 */
+	protected void borrow(final int size) {
+		lease = pool.acquire(size);
+		buffer = lease.array();
+	}
+
+	/**
+	 * Releases the borrowed buffer, the buffered data is discarded.
+	 */
+	protected void recycle() {
+		if (lease != null) {
+			pool.release(lease);
+			lease = null;
+			buffer = null;
+		}
+		start = 0;
+		end = 0;
+	}
+
+	/**
+	 * Decodes the specified bytes using the <code>Charset</code> of the
+	 * framer.
+	 *
+	 * @param bytes
+	 *            the bytes to be decoded
+	 * @param offset
+	 *            the offset of the first byte
+	 * @param length
+	 *            the amount of bytes
+	 *
+	 * @return the decoded <code>String</code>
+	 */
+	protected String decode(final byte[] bytes, final int offset,
+			final int length) {
+		return decode(bytes, offset, length, charset, asciiCompatible);
+	}
+
+	/**
+	 * Decodes the specified bytes using the specified <code>Charset</code>.
+	 * If the charset maps each byte to the <code>char</code> of the same value
+	 * (i.e. <code>ISO-8859-1</code>) or all the bytes are ASCII characters
+	 * (and the charset encodes ASCII as single bytes), the bytes are converted
+	 * directly.
+	 *
+	 * @param bytes
+	 *            the bytes to be decoded
+	 * @param offset
+	 *            the offset of the first byte
+	 * @param length
+	 *            the amount of bytes
+	 * @param charset
+	 *            the <code>Charset</code> used to decode
+	 * @param asciiCompatible
+	 *            <code>true</code> if the charset encodes ASCII as single
+	 *            bytes, see {@link #isAsciiCompatible(Charset)}
+	 *
+	 * @return the decoded <code>String</code>
+	 */
+	public static String decode(final byte[] bytes, final int offset,
+			final int length, final Charset charset,
+			final boolean asciiCompatible) {
+		if (length == 0) {
+			return "";
+		} else if (LATIN1.equals(charset)
+				|| (asciiCompatible && isAscii(bytes, offset, length))) {
+			return fromLatin1(bytes, offset, length);
+		} else {
+			return new String(bytes, offset, length, charset);
+		}
+	}
+
+	/**
+	 * Decodes the remaining bytes of the specified <code>ByteBuffer</code>
+	 * using the specified <code>Charset</code>, without modifying the
+	 * position of the buffer. The bytes are converted directly, if possible
+	 * (see {@link #decode(byte[], int, int, Charset, boolean)}), which is
+	 * also supported for read-only buffers.
+	 * 
+	 * @param bytes
+	 *            the bytes to be decoded
+	 * @param charset
+	 *            the <code>Charset</code> used to decode
+	 * 
+	 * @return the decoded <code>String</code>
+	 */
+	public static String decode(final ByteBuffer bytes, final Charset charset) {
+		if (bytes.hasArray()) {
+			return decode(bytes.array(), bytes.arrayOffset() + bytes.position(),
+					bytes.remaining(), charset, isAsciiCompatible(charset));
+		}
+
+		final int offset = bytes.position();
+		final int length = bytes.remaining();
+		final boolean latin1 = LATIN1.equals(charset);
+		if (length == 0) {
+			return "";
+		} else if (latin1 || isAsciiCompatible(charset)) {
+			final char[] chars = new char[length];
+			for (int i = 0; i < length; i++) {
+				final byte b = bytes.get(offset + i);
+				if (b < 0 && !latin1) {
+					return charset.decode(bytes.duplicate()).toString();
+				}
+				chars[i] = (char) (b & 0xFF);
+			}
+
+			return new String(chars);
+		} else {
+			return charset.decode(bytes.duplicate()).toString();
+		}
+	}
+
+	/**
+	 * Determines the length of a part of a line, i.e. makes sure that a
+	 * multi-byte character of <code>UTF-8</code> is not split between two
+	 * parts. For any other <code>Charset</code> the passed length is
+	 * returned.
+	 *
+	 * @param bytes
+	 *            the bytes of the line
+	 * @param offset
+	 *            the offset of the first byte
+	 * @param length
+	 *            the maximal length of the part
+	 * @param charset
+	 *            the <code>Charset</code> of the bytes
+	 *
+	 * @return the length of the part
+	 */
+	public static int chunkLength(final byte[] bytes, final int offset,
+			final int length, final Charset charset) {
+		return chunkLength(ByteBuffer.wrap(bytes), offset, length, charset);
+	}
+
+	/**
+	 * Determines the length of a part of a line, like
+	 * {@link #chunkLength(byte[], int, int, Charset)}, using the absolute
+	 * positions of the specified <code>ByteBuffer</code>.
+	 *
+	 * @param bytes
+	 *            the bytes of the line
+	 * @param offset
+	 *            the position of the first byte
+	 * @param length
+	 *            the maximal length of the part
+	 * @param charset
+	 *            the <code>Charset</code> of the bytes
+	 *
+	 * @return the length of the part
+	 */
+	public static int chunkLength(final ByteBuffer bytes, final int offset,
+			final int length, final Charset charset) {
+		if (!UTF8.equals(charset)) {
+			return length;
+		}
+
+		// find the lead-byte of the last character
+		int pos = offset + length - 1;
+		int continuations = 0;
+		while (continuations < 3 && pos >= offset
+				&& (bytes.get(pos) & 0xC0) == 0x80) {
+			pos--;
+			continuations++;
+		}
+		if (pos < offset) {
+			return length;
+		}
+
+		// check if the character is complete
+		final int lead = bytes.get(pos) & 0xFF;
+		final int size = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3
+				: lead >= 0xC0 ? 2 : 1;
+		if (size > continuations + 1 && pos > offset) {
+			return pos - offset;
+		} else {
+			return length;
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private static String fromLatin1(final byte[] bytes, final int offset,
+			final int length) {
+		return new String(bytes, 0, offset, length);
+	}
+
+	private static boolean isAscii(final byte[] bytes, final int offset,
+			final int length) {
+		final int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			if (bytes[i] < 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks if the specified <code>Charset</code> encodes the ASCII
+	 * characters as single bytes of the same value.
+	 *
+	 * @param charset
+	 *            the <code>Charset</code> to be checked
+	 *
+	 * @return <code>true</code> if the ASCII characters are encoded as single
+	 *         bytes, otherwise <code>false</code>
+	 */
+	public static boolean isAsciiCompatible(final Charset charset) {
+		if (ASCII.equals(charset) || LATIN1.equals(charset)
+				|| UTF8.equals(charset)) {
+			return true;
+		}
+
+		// check if the ASCII characters are encoded as single bytes
+		final byte[] encoded = "azAZ09\n".getBytes(charset);
+		return encoded.length == 7 && encoded[0] == 'a' && encoded[6] == '\n';
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (pool != null) {
+			recycle();
+		}
+		in.close();
+	}
+}
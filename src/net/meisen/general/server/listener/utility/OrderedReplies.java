@@ -0,0 +1,267 @@
+package net.meisen.general.server.listener.utility;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the answers of the requests of a single connection, which are handled
+ * asynchronously, in the order of the requests. An answer is only available
+ * (see {@link #poll()}) if all the answers of the previous requests are
+ * available as well. The amount of requests in-flight (i.e. added but not
+ * polled yet) is limited by <code>maxInFlight</code>, the caller is
+ * responsible to check the limit using {@link #isFull()} or
+ * {@link #awaitCapacity()} prior to adding a request.<br/>
+ * <br/>
+ * Each time an answer is completed, {@link #completed()} is called by the
+ * completing thread, i.e. implementations can write the available answers
+ * without any further polling. A request completed exceptionally is logged
+ * and answered with <code>null</code>.<br/>
+ * <br/>
+ * If the replies are <code>tagged</code>, each request is added with its
+ * request-id and the answers are available in the order of their completion
+ * (prefixed by the request-id, see {@link RequestTags#tag(String, String)}),
+ * i.e. a slow request doesn't hold back the answers of the following ones.
+ *
+ * @author pmeisen
+ *
+ */
+public class OrderedReplies {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(OrderedReplies.class);
+
+	private final int maxInFlight;
+	private final boolean tagged;
+	private final Deque<Reply> replies = new ArrayDeque<Reply>();
+
+	/**
+	 * Creates an instance allowing <code>maxInFlight</code> requests to be
+	 * in-flight.
+	 *
+	 * @param maxInFlight
+	 *            the maximal amount of requests in-flight
+	 */
+	public OrderedReplies(final int maxInFlight) {
+		this(maxInFlight, false);
+	}
+
+	/**
+	 * Creates an instance allowing <code>maxInFlight</code> requests to be
+	 * in-flight, which keeps the answers in the order of the requests or, if
+	 * <code>tagged</code>, in the order of their completion.
+	 *
+	 * @param maxInFlight
+	 *            the maximal amount of requests in-flight
+	 * @param tagged
+	 *            <code>true</code> if the answers should be prefixed by the
+	 *            request-id and be available as soon as completed, otherwise
+	 *            <code>false</code>
+	 */
+	public OrderedReplies(final int maxInFlight, final boolean tagged) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException(
+					"The maxInFlight must be at least 1.");
+		}
+
+		this.maxInFlight = maxInFlight;
+		this.tagged = tagged;
+	}
+
+	/**
+	 * Adds the answer of the next request.
+	 *
+	 * @param stage
+	 *            the stage completing with the answer, <code>null</code> is
+	 *            handled like a stage completed with <code>null</code>
+	 */
+	public void add(final CompletionStage<String> stage) {
+		add(null, stage);
+	}
+
+	/**
+	 * Adds the answer of the next request with the specified request-id. The
+	 * request-id is only used if the replies are <code>tagged</code>.
+	 *
+	 * @param tag
+	 *            the request-id of the request
+	 * @param stage
+	 *            the stage completing with the answer, <code>null</code> is
+	 *            handled like a stage completed with <code>null</code>
+	 */
+	public void add(final String tag, final CompletionStage<String> stage) {
+		final Reply reply = new Reply(tag);
+		synchronized (this) {
+			replies.add(reply);
+		}
+
+		if (stage == null) {
+			complete(reply, null, null);
+		} else {
+			stage.whenComplete(new BiConsumer<String, Throwable>() {
+
+				@Override
+				public void accept(final String value, final Throwable t) {
+					complete(reply, value, t);
+				}
+			});
+		}
+	}
+
+	private void complete(final Reply reply, final String value,
+			final Throwable t) {
+		if (t != null && LOG.isErrorEnabled()) {
+			LOG.error("The asynchronous handling of a request failed.", t);
+		}
+
+		synchronized (this) {
+			reply.value = t == null ? value : null;
+			reply.done = true;
+
+			notifyAll();
+		}
+
+		completed();
+	}
+
+	/**
+	 * Removes and returns the answers available in the order of the
+	 * requests, i.e. all the completed answers up to the first request not
+	 * completed yet. If the replies are <code>tagged</code>, all the completed
+	 * answers are returned prefixed by their request-id.
+	 *
+	 * @return the available answers, might be empty
+	 */
+	public synchronized List<String> poll() {
+		if (tagged) {
+			return pollTagged();
+		} else if (replies.isEmpty() || !replies.peek().done) {
+			return Collections.emptyList();
+		}
+
+		final List<String> values = new ArrayList<String>();
+		while (!replies.isEmpty() && replies.peek().done) {
+			values.add(replies.poll().value);
+		}
+		notifyAll();
+
+		return values;
+	}
+
+	private List<String> pollTagged() {
+		List<String> values = null;
+
+		final Iterator<Reply> it = replies.iterator();
+		while (it.hasNext()) {
+			final Reply reply = it.next();
+			if (reply.done) {
+				if (values == null) {
+					values = new ArrayList<String>();
+				}
+				values.add(RequestTags.tag(reply.tag, reply.value));
+				it.remove();
+			}
+		}
+
+		if (values == null) {
+			return Collections.emptyList();
+		} else {
+			notifyAll();
+			return values;
+		}
+	}
+
+	/**
+	 * Method called whenever an answer is completed, the default
+	 * implementation does nothing.
+	 */
+	protected void completed() {
+		// nothing to do by default
+	}
+
+	/**
+	 * Checks if the maximal amount of requests is in-flight.
+	 *
+	 * @return <code>true</code> if no further request should be added,
+	 *         otherwise <code>false</code>
+	 */
+	public synchronized boolean isFull() {
+		return replies.size() >= maxInFlight;
+	}
+
+	/**
+	 * Gets the amount of requests in-flight, i.e. added but not polled yet.
+	 *
+	 * @return the amount of requests in-flight
+	 */
+	public synchronized int getInFlight() {
+		return replies.size();
+	}
+
+	/**
+	 * Gets the maximal amount of requests in-flight.
+	 *
+	 * @return the maximal amount of requests in-flight
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * Checks if the answers are prefixed by the request-id and available in
+	 * the order of their completion.
+	 *
+	 * @return <code>true</code> if the replies are tagged, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isTagged() {
+		return tagged;
+	}
+
+	/**
+	 * Waits until another request can be added.
+	 *
+	 * @throws InterruptedException
+	 *             if the waiting thread is interrupted
+	 */
+	public synchronized void awaitCapacity() throws InterruptedException {
+		while (isFull()) {
+			wait();
+		}
+	}
+
+	/**
+	 * Waits until all the requests added are polled.
+	 *
+	 * @throws InterruptedException
+	 *             if the waiting thread is interrupted
+	 */
+	public synchronized void awaitEmpty() throws InterruptedException {
+		while (!replies.isEmpty()) {
+			wait();
+		}
+	}
+
+	/**
+	 * The answer of a single request.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	private static class Reply {
+		private final String tag;
+		private String value = null;
+		private boolean done = false;
+
+		private Reply(final String tag) {
+			this.tag = tag;
+		}
+	}
+}
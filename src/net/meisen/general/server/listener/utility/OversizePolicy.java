@@ -0,0 +1,55 @@
+package net.meisen.general.server.listener.utility;
+
+/**
+ * The policies applied to lines exceeding the maximal line-length of a
+ * connector. The policy is selected per <code>Connector</code> using the
+ * <code>worker</code> extension, e.g.:
+ *
+ * <pre>
+ * &lt;ed:extension&gt;
+ *   &lt;worker maxLineLength="65536" oversize="stream" /&gt;
+ * &lt;/ed:extension&gt;
+ * </pre>
+ *
+ * In any case an oversized line is never kept completely in memory.
+ *
+ * @author pmeisen
+ *
+ */
+public enum OversizePolicy {
+	/**
+	 * The rest of the line is skipped and the line is answered with the
+	 * <code>oversizeMessage</code>.
+	 */
+	REJECT,
+	/**
+	 * The line is passed in chunks (of at most <code>maxLineLength</code>
+	 * bytes) to the <code>handleChunk</code> method of the listener, the
+	 * answer returned for the last chunk answers the line.
+	 */
+	STREAM;
+
+	/**
+	 * Determines the <code>OversizePolicy</code> specified by the passed
+	 * <code>value</code>. The value is compared case-insensitive.
+	 *
+	 * @param value
+	 *            the value to determine the <code>OversizePolicy</code> for
+	 *
+	 * @return the <code>OversizePolicy</code> or <code>null</code> if no
+	 *         policy is associated to the value
+	 */
+	public static OversizePolicy find(final String value) {
+		if (value == null) {
+			return null;
+		}
+
+		for (final OversizePolicy policy : OversizePolicy.values()) {
+			if (policy.name().equalsIgnoreCase(value.trim())) {
+				return policy;
+			}
+		}
+
+		return null;
+	}
+}
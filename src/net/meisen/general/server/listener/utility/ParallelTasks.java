@@ -0,0 +1,53 @@
+package net.meisen.general.server.listener.utility;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helper to execute several tasks in parallel, e.g. to close listeners or
+ * acceptors, so that their timeouts elapse at the same time instead of one
+ * after another.
+ *
+ * @author pmeisen
+ *
+ */
+public class ParallelTasks {
+
+	/**
+	 * Executes each of the specified <code>tasks</code> within its own
+	 * thread and waits for all of them to be finished. The threads are named
+	 * using the specified <code>name</code> as prefix. If the current thread
+	 * is interrupted while waiting, it stops waiting (the tasks keep running)
+	 * and the interrupted flag is restored.
+	 *
+	 * @param name
+	 *            the name used as prefix for the threads
+	 * @param tasks
+	 *            the tasks to be executed
+	 *
+	 * @return <code>true</code> if all tasks are finished, <code>false</code>
+	 *         if the waiting was interrupted
+	 */
+	public static boolean runAll(final String name,
+			final List<? extends Runnable> tasks) {
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (final Runnable task : tasks) {
+			final Thread thread = new Thread(task, name + "-" + threads.size());
+			thread.start();
+
+			threads.add(thread);
+		}
+
+		// wait for all of them
+		for (final Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,128 @@
+package net.meisen.general.server.listener.utility;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A buffered <code>OutputStream</code>, which borrows its buffer from a
+ * <code>BufferPool</code> on the first write and releases it when flushed,
+ * i.e. an idle stream doesn't hold any buffer.
+ *
+ * @author pmeisen
+ *
+ */
+public class PooledOutputStream extends OutputStream {
+	private final OutputStream out;
+	private final BufferPool pool;
+	private final int bufferSize;
+
+	private ByteBuffer lease = null;
+	private byte[] buffer = null;
+	private int count = 0;
+
+	/**
+	 * Creates a stream writing to the specified <code>OutputStream</code>.
+	 *
+	 * @param out
+	 *            the <code>OutputStream</code> to write to
+	 * @param pool
+	 *            the <code>BufferPool</code> holding heap buffers to borrow
+	 *            the buffer from
+	 * @param bufferSize
+	 *            the size of the buffer
+	 */
+	public PooledOutputStream(final OutputStream out, final BufferPool pool,
+			final int bufferSize) {
+		if (out == null) {
+			throw new NullPointerException("The out cannot be null.");
+		} else if (pool == null) {
+			throw new NullPointerException("The pool cannot be null.");
+		} else if (pool.isDirect()) {
+			throw new IllegalArgumentException(
+					"The pool must provide heap buffers.");
+		} else if (bufferSize <= 0) {
+			throw new IllegalArgumentException(
+					"The bufferSize must be positive.");
+		}
+
+		this.out = out;
+		this.pool = pool;
+		this.bufferSize = bufferSize;
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		if (buffer == null) {
+			borrow();
+		} else if (count == buffer.length) {
+			flushBuffer();
+		}
+
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len)
+			throws IOException {
+		if (len >= bufferSize) {
+
+			// write large data directly
+			flushBuffer();
+			out.write(b, off, len);
+			return;
+		} else if (buffer == null) {
+			borrow();
+		} else if (len > buffer.length - count) {
+			flushBuffer();
+		}
+
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		recycle();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			recycle();
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the buffered data, the buffer is kept.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be written
+	 */
+	protected void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	private void borrow() {
+		lease = pool.acquire(bufferSize);
+		buffer = lease.array();
+		count = 0;
+	}
+
+	private void recycle() {
+		if (lease != null) {
+			pool.release(lease);
+			lease = null;
+			buffer = null;
+			count = 0;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package net.meisen.general.server.listener.utility;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A <code>WorkerDispatcher</code> which executes the workers within a bounded
+ * pool of threads. The pool starts <code>coreSize</code> threads, additional
+ * workers are queued until the queue (of the size <code>queueSize</code>) is
+ * full, afterwards up to <code>maxSize</code> threads are used. If the pool
+ * and the queue are exhausted the <code>RejectionPolicy</code> is applied.
+ *
+ * @author pmeisen
+ *
+ */
+public class PooledWorkerDispatcher extends ExecutorWorkerDispatcher {
+
+	/**
+	 * The policy applied if a worker cannot be executed by the pool, because
+	 * all threads are busy and the queue is full.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	public enum RejectionPolicy {
+		/**
+		 * The connection of the rejected worker is closed immediately.
+		 */
+		CLOSE,
+		/**
+		 * The rejected worker is executed by the accepting thread, i.e. no
+		 * other connection is accepted until the worker is finished.
+		 */
+		CALLERRUNS,
+		/**
+		 * The oldest waiting worker is removed from the queue (and its
+		 * connection is closed), afterwards the execution is retried.
+		 */
+		DISCARDOLDEST;
+
+		/**
+		 * Determines the <code>RejectionPolicy</code> specified by the passed
+		 * <code>value</code>. The value is compared case-insensitive, and any
+		 * <code>_</code> or <code>-</code> is ignored, i.e.
+		 * <code>callerRuns</code> and <code>CALLER_RUNS</code> are both valid.
+		 *
+		 * @param value
+		 *            the value to determine the <code>RejectionPolicy</code>
+		 *            for
+		 *
+		 * @return the <code>RejectionPolicy</code> or <code>null</code> if no
+		 *         policy is associated to the value
+		 */
+		public static RejectionPolicy find(final String value) {
+			if (value == null) {
+				return null;
+			}
+
+			final String name = value.trim().replaceAll("[_\\-]", "");
+			for (final RejectionPolicy policy : RejectionPolicy.values()) {
+				if (policy.name().equalsIgnoreCase(name)) {
+					return policy;
+				}
+			}
+
+			return null;
+		}
+	}
+
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong rejected = new AtomicLong(0);
+
+	/**
+	 * Creates a pool with the specified settings.
+	 *
+	 * @param name
+	 *            the name used as prefix for the threads of the pool
+	 * @param coreSize
+	 *            the amount of threads kept within the pool
+	 * @param maxSize
+	 *            the maximal amount of threads of the pool
+	 * @param queueSize
+	 *            the maximal amount of workers waiting to be executed
+	 * @param keepAlive
+	 *            the time in milliseconds an idle thread exceeding the
+	 *            <code>coreSize</code> is kept
+	 * @param policy
+	 *            the <code>RejectionPolicy</code> to be applied
+	 */
+	public PooledWorkerDispatcher(final String name, final int coreSize,
+			final int maxSize, final int queueSize, final long keepAlive,
+			final RejectionPolicy policy) {
+		final AtomicInteger counter = new AtomicInteger(0);
+
+		this.executor = new ThreadPoolExecutor(coreSize, maxSize, keepAlive,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+						queueSize), new ThreadFactory() {
+
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread t = new Thread(r, name + "-"
+								+ counter.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				}, new RejectedExecutionHandler() {
+
+					@Override
+					public void rejectedExecution(final Runnable r,
+							final ThreadPoolExecutor executor) {
+						rejected(r, executor, policy);
+					}
+				});
+	}
+
+	/**
+	 * Applies the <code>policy</code> to the rejected <code>runnable</code>.
+	 *
+	 * @param runnable
+	 *            the rejected <code>Runnable</code>
+	 * @param executor
+	 *            the executor which rejected the <code>runnable</code>
+	 * @param policy
+	 *            the policy to be applied
+	 */
+	protected void rejected(final Runnable runnable,
+			final ThreadPoolExecutor executor, final RejectionPolicy policy) {
+		final Execution execution = (Execution) runnable;
+
+		if (executor.isShutdown()) {
+			rejected.incrementAndGet();
+			reject(execution);
+		} else if (RejectionPolicy.CALLERRUNS.equals(policy)) {
+			execution.run();
+		} else if (RejectionPolicy.DISCARDOLDEST.equals(policy)) {
+			final Runnable oldest = executor.getQueue().poll();
+			if (oldest instanceof Execution) {
+				rejected.incrementAndGet();
+				reject((Execution) oldest);
+			}
+			executor.execute(execution);
+		} else {
+			rejected.incrementAndGet();
+			reject(execution);
+		}
+	}
+
+	@Override
+	protected ExecutorService getExecutor() {
+		return executor;
+	}
+
+	@Override
+	public int getPendingCount() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Gets the amount of workers rejected so far.
+	 *
+	 * @return the amount of rejected workers
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+}
@@ -0,0 +1,172 @@
+package net.meisen.general.server.listener.utility;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A <code>Writer</code> which encodes the characters directly into a buffer
+ * borrowed from a <code>BufferPool</code>. The buffer is borrowed on the
+ * first write and released when flushed, i.e. in contrast to an
+ * <code>OutputStreamWriter</code> an idle writer doesn't hold any buffer.
+ * Malformed or unmappable characters are replaced, like it's done by the
+ * <code>OutputStreamWriter</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class PooledWriter extends Writer {
+	private final OutputStream out;
+	private final BufferPool pool;
+	private final int bufferSize;
+	private final CharsetEncoder encoder;
+
+	private ByteBuffer buffer = null;
+	private char leftover = 0;
+	private boolean hasLeftover = false;
+
+	/**
+	 * Creates a writer writing to the specified <code>OutputStream</code>.
+	 *
+	 * @param out
+	 *            the <code>OutputStream</code> to write to
+	 * @param charset
+	 *            the <code>Charset</code> used to encode the characters
+	 * @param pool
+	 *            the <code>BufferPool</code> holding heap buffers to borrow
+	 *            the buffer from
+	 * @param bufferSize
+	 *            the size of the buffer
+	 */
+	public PooledWriter(final OutputStream out, final Charset charset,
+			final BufferPool pool, final int bufferSize) {
+		if (out == null) {
+			throw new NullPointerException("The out cannot be null.");
+		} else if (charset == null) {
+			throw new NullPointerException("The charset cannot be null.");
+		} else if (pool == null) {
+			throw new NullPointerException("The pool cannot be null.");
+		} else if (pool.isDirect()) {
+			throw new IllegalArgumentException(
+					"The pool must provide heap buffers.");
+		} else if (bufferSize <= 0) {
+			throw new IllegalArgumentException(
+					"The bufferSize must be positive.");
+		}
+
+		this.out = out;
+		this.pool = pool;
+		this.bufferSize = bufferSize;
+		this.encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	@Override
+	public void write(final char[] cbuf, final int off, final int len)
+			throws IOException {
+		synchronized (lock) {
+			encode(CharBuffer.wrap(cbuf, off, len));
+		}
+	}
+
+	@Override
+	public void write(final String str, final int off, final int len)
+			throws IOException {
+		synchronized (lock) {
+			encode(CharBuffer.wrap(str, off, off + len));
+		}
+	}
+
+	@Override
+	public void write(final int c) throws IOException {
+		write(new char[] { (char) c }, 0, 1);
+	}
+
+	/**
+	 * Encodes the specified characters into the buffer, the buffer is written
+	 * whenever it's full. A trailing high-surrogate is kept until the next
+	 * write.
+	 *
+	 * @param chars
+	 *            the characters to be encoded
+	 *
+	 * @throws IOException
+	 *             if the data cannot be written
+	 */
+	protected void encode(final CharBuffer chars) throws IOException {
+		CharBuffer input = chars;
+		if (hasLeftover && input.hasRemaining()) {
+			final CharBuffer joined = CharBuffer
+					.allocate(input.remaining() + 1);
+			joined.put(leftover).put(input).flip();
+			input = joined;
+			hasLeftover = false;
+		}
+
+		if (buffer == null) {
+			buffer = pool.acquire(bufferSize);
+		}
+		while (true) {
+			final CoderResult result = encoder.encode(input, buffer, false);
+			if (result.isOverflow()) {
+				flushBuffer();
+			} else {
+				break;
+			}
+		}
+
+		// keep an incomplete surrogate pair
+		if (input.hasRemaining()) {
+			leftover = input.get();
+			hasLeftover = true;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		synchronized (lock) {
+			flushBuffer();
+			recycle();
+			out.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			try {
+				flushBuffer();
+			} finally {
+				recycle();
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Writes the encoded data, the buffer is kept.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be written
+	 */
+	protected void flushBuffer() throws IOException {
+		if (buffer != null && buffer.position() > 0) {
+			out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+			buffer.clear();
+		}
+	}
+
+	private void recycle() {
+		if (buffer != null) {
+			pool.release(buffer);
+			buffer = null;
+		}
+	}
+}
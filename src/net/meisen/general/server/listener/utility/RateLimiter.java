@@ -0,0 +1,321 @@
+package net.meisen.general.server.listener.utility;
+
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the rate of the connections opened per remote address and the rate
+ * of the lines sent per connection, both using token-buckets. The buckets of
+ * the addresses are kept within a bounded map, which evicts the least
+ * recently used address, so that the memory is bounded even with a huge
+ * amount of different clients. The limits are defined per
+ * <code>Connector</code> using the <code>ratelimit</code> extension, e.g.:
+ *
+ * <pre>
+ * &lt;ed:extension&gt;
+ *   &lt;ratelimit connectionRate="5" connectionBurst="20" lineRate="100" lineBurst="200" maxAddresses="10000" /&gt;
+ * &lt;/ed:extension&gt;
+ * </pre>
+ *
+ * A rate of <code>0</code> means that the rate is not limited. Connections
+ * exceeding the rate are answered with the <code>message</code> and closed,
+ * lines exceeding the rate are answered with the <code>message</code> instead
+ * of being handled.
+ *
+ * @author pmeisen
+ *
+ * @see TokenBucket
+ */
+public class RateLimiter {
+	private int connectionRate = 0;
+	private int connectionBurst = 0;
+	private int lineRate = 0;
+	private int lineBurst = 0;
+	private int maxAddresses = 10000;
+	private String message = "RATE LIMIT EXCEEDED";
+
+	private final AtomicLong rejectedConnections = new AtomicLong(0);
+	private final AtomicLong rejectedLines = new AtomicLong(0);
+	private final AtomicLong evictedAddresses = new AtomicLong(0);
+
+	private Map<InetAddress, TokenBucket> buckets = null;
+
+	/**
+	 * Takes a token of the bucket of the specified <code>address</code>.
+	 *
+	 * @param address
+	 *            the remote address of the connection
+	 *
+	 * @return <code>true</code> if the connection can be accepted,
+	 *         <code>false</code> if the rate of the address is exceeded
+	 */
+	public boolean acquireConnection(final InetAddress address) {
+		if (connectionRate <= 0) {
+			return true;
+		}
+
+		final TokenBucket bucket;
+		synchronized (this) {
+			if (buckets == null) {
+				buckets = createBuckets();
+			}
+
+			final TokenBucket existing = buckets.get(address);
+			if (existing == null) {
+				bucket = new TokenBucket(connectionRate, getConnectionBurst());
+				buckets.put(address, bucket);
+			} else {
+				bucket = existing;
+			}
+		}
+
+		if (bucket.tryAcquire()) {
+			return true;
+		} else {
+			rejectedConnections.incrementAndGet();
+			return false;
+		}
+	}
+
+	/**
+	 * Creates the bucket used to limit the lines of a single connection.
+	 *
+	 * @return the bucket used to limit the lines, <code>null</code> if the
+	 *         lines are not limited
+	 */
+	public TokenBucket createLineBucket() {
+		if (lineRate <= 0) {
+			return null;
+		} else {
+			return new TokenBucket(lineRate, getLineBurst());
+		}
+	}
+
+	/**
+	 * Takes a token of the specified bucket of a connection.
+	 *
+	 * @param lineBucket
+	 *            the bucket of the connection, can be <code>null</code> if
+	 *            the lines are not limited
+	 *
+	 * @return <code>true</code> if the line can be handled,
+	 *         <code>false</code> if the rate of the connection is exceeded
+	 *
+	 * @see #createLineBucket()
+	 */
+	public boolean acquireLine(final TokenBucket lineBucket) {
+		if (lineBucket == null || lineBucket.tryAcquire()) {
+			return true;
+		} else {
+			rejectedLines.incrementAndGet();
+			return false;
+		}
+	}
+
+	/**
+	 * Creates the map of the buckets per address, which evicts the least
+	 * recently used address if more than <code>maxAddresses</code> are
+	 * contained.
+	 *
+	 * @return the map used to keep the buckets
+	 */
+	protected Map<InetAddress, TokenBucket> createBuckets() {
+		return new LinkedHashMap<InetAddress, TokenBucket>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					final Map.Entry<InetAddress, TokenBucket> eldest) {
+				if (size() > maxAddresses) {
+					evictedAddresses.incrementAndGet();
+					return true;
+				} else {
+					return false;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Gets the amount of addresses a bucket is currently kept for.
+	 *
+	 * @return the amount of addresses a bucket is kept for
+	 */
+	public synchronized int getAddressCount() {
+		return buckets == null ? 0 : buckets.size();
+	}
+
+	/**
+	 * Gets the amount of connections rejected because the rate of the
+	 * address was exceeded.
+	 *
+	 * @return the amount of rejected connections
+	 */
+	public long getRejectedConnectionCount() {
+		return rejectedConnections.get();
+	}
+
+	/**
+	 * Gets the amount of lines rejected because the rate of the connection
+	 * was exceeded.
+	 *
+	 * @return the amount of rejected lines
+	 */
+	public long getRejectedLineCount() {
+		return rejectedLines.get();
+	}
+
+	/**
+	 * Gets the amount of addresses evicted from the map of buckets.
+	 *
+	 * @return the amount of evicted addresses
+	 */
+	public long getEvictedAddressCount() {
+		return evictedAddresses.get();
+	}
+
+	/**
+	 * Gets the amount of connections per second allowed per address.
+	 *
+	 * @return the amount of connections per second, <code>0</code> if not
+	 *         limited
+	 */
+	public int getConnectionRate() {
+		return connectionRate;
+	}
+
+	/**
+	 * Sets the amount of connections per second allowed per address.
+	 *
+	 * @param connectionRate
+	 *            the amount of connections per second, <code>0</code> if not
+	 *            limited
+	 */
+	public void setConnectionRate(final int connectionRate) {
+		this.connectionRate = connectionRate;
+	}
+
+	/**
+	 * Gets the amount of connections an address can open at once.
+	 *
+	 * @return the amount of connections an address can open at once, if not
+	 *         defined the <code>connectionRate</code> is used
+	 */
+	public int getConnectionBurst() {
+		return connectionBurst > 0 ? connectionBurst : connectionRate;
+	}
+
+	/**
+	 * Sets the amount of connections an address can open at once.
+	 *
+	 * @param connectionBurst
+	 *            the amount of connections an address can open at once,
+	 *            <code>0</code> to use the <code>connectionRate</code>
+	 */
+	public void setConnectionBurst(final int connectionBurst) {
+		this.connectionBurst = connectionBurst;
+	}
+
+	/**
+	 * Gets the amount of lines per second allowed per connection.
+	 *
+	 * @return the amount of lines per second, <code>0</code> if not limited
+	 */
+	public int getLineRate() {
+		return lineRate;
+	}
+
+	/**
+	 * Sets the amount of lines per second allowed per connection.
+	 *
+	 * @param lineRate
+	 *            the amount of lines per second, <code>0</code> if not
+	 *            limited
+	 */
+	public void setLineRate(final int lineRate) {
+		this.lineRate = lineRate;
+	}
+
+	/**
+	 * Gets the amount of lines a connection can send at once.
+	 *
+	 * @return the amount of lines a connection can send at once, if not
+	 *         defined the <code>lineRate</code> is used
+	 */
+	public int getLineBurst() {
+		return lineBurst > 0 ? lineBurst : lineRate;
+	}
+
+	/**
+	 * Sets the amount of lines a connection can send at once.
+	 *
+	 * @param lineBurst
+	 *            the amount of lines a connection can send at once,
+	 *            <code>0</code> to use the <code>lineRate</code>
+	 */
+	public void setLineBurst(final int lineBurst) {
+		this.lineBurst = lineBurst;
+	}
+
+	/**
+	 * Gets the maximal amount of addresses a bucket is kept for.
+	 *
+	 * @return the maximal amount of addresses a bucket is kept for
+	 */
+	public int getMaxAddresses() {
+		return maxAddresses;
+	}
+
+	/**
+	 * Sets the maximal amount of addresses a bucket is kept for.
+	 *
+	 * @param maxAddresses
+	 *            the maximal amount of addresses a bucket is kept for
+	 */
+	public void setMaxAddresses(final int maxAddresses) {
+		this.maxAddresses = maxAddresses;
+	}
+
+	/**
+	 * Gets the message sent if a rate is exceeded.
+	 *
+	 * @return the message sent if a rate is exceeded
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Sets the message sent if a rate is exceeded.
+	 *
+	 * @param message
+	 *            the message sent if a rate is exceeded, <code>null</code> to
+	 *            close exceeding connections without any message (exceeding
+	 *            lines are answered with an empty line)
+	 */
+	public void setMessage(final String message) {
+		this.message = message;
+	}
+
+	/**
+	 * Checks if the settings are valid.
+	 *
+	 * @return <code>true</code> if the settings are valid, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isValid() {
+		return connectionRate >= 0 && connectionBurst >= 0 && lineRate >= 0
+				&& lineBurst >= 0 && maxAddresses > 0;
+	}
+
+	@Override
+	public String toString() {
+		return "connections: " + connectionRate + "/s (burst: "
+				+ getConnectionBurst() + ", rejected: "
+				+ getRejectedConnectionCount() + "), lines: " + lineRate
+				+ "/s (burst: " + getLineBurst() + ", rejected: "
+				+ getRejectedLineCount() + "), maxAddresses: " + maxAddresses;
+	}
+}
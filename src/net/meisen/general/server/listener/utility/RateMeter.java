@@ -0,0 +1,90 @@
+package net.meisen.general.server.listener.utility;
+
+/**
+ * Meter to determine the rate of events, e.g. of accepted connections. The
+ * rate is the amount of events per second within the last completed interval.
+ *
+ * @author pmeisen
+ *
+ */
+public class RateMeter {
+	private final long interval;
+
+	private long count = 0;
+	private long windowStart;
+	private long windowCount = 0;
+	private double rate = 0.0;
+
+	/**
+	 * Creates a meter using an interval of one second.
+	 */
+	public RateMeter() {
+		this(1000);
+	}
+
+	/**
+	 * Creates a meter which determines the rate using the specified
+	 * <code>interval</code>.
+	 *
+	 * @param interval
+	 *            the interval in milliseconds
+	 */
+	public RateMeter(final long interval) {
+		if (interval <= 0) {
+			throw new IllegalArgumentException(
+					"The interval must be positive.");
+		}
+
+		this.interval = interval;
+		this.windowStart = System.currentTimeMillis();
+	}
+
+	/**
+	 * Marks the occurrence of an event.
+	 */
+	public synchronized void mark() {
+		roll(System.currentTimeMillis());
+
+		count++;
+		windowCount++;
+	}
+
+	/**
+	 * Gets the amount of events per second within the last completed
+	 * interval.
+	 *
+	 * @return the amount of events per second
+	 */
+	public synchronized double getRate() {
+		roll(System.currentTimeMillis());
+
+		return rate;
+	}
+
+	/**
+	 * Gets the total amount of marked events.
+	 *
+	 * @return the total amount of marked events
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	private void roll(final long now) {
+		final long elapsed = now - windowStart;
+		if (elapsed < interval) {
+			return;
+		}
+
+		// if more than one interval passed, the last one had no events
+		rate = elapsed < 2 * interval ? windowCount * 1000.0 / interval : 0.0;
+
+		windowStart = now - (elapsed % interval);
+		windowCount = 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%.1f/s (total: %d)", getRate(), getCount());
+	}
+}
@@ -0,0 +1,72 @@
+package net.meisen.general.server.listener.utility;
+
+/**
+ * Helper to read and write the lines of the {@link Framing#TAGGED} framing,
+ * i.e. lines prefixed by a request-id separated by a single
+ * {@link #SEPARATOR}. A line without any separator is an empty request with
+ * the line as request-id.
+ *
+ * @author pmeisen
+ *
+ */
+public class RequestTags {
+
+	/**
+	 * The character separating the request-id from the request or answer.
+	 */
+	public final static char SEPARATOR = ' ';
+
+	/**
+	 * Gets the request-id of the specified line.
+	 *
+	 * @param line
+	 *            the line to get the request-id from
+	 *
+	 * @return the request-id, <code>null</code> if the line is
+	 *         <code>null</code>
+	 */
+	public static String getTag(final String line) {
+		if (line == null) {
+			return null;
+		}
+
+		final int pos = line.indexOf(SEPARATOR);
+		return pos < 0 ? line : line.substring(0, pos);
+	}
+
+	/**
+	 * Gets the request or answer of the specified line, i.e. the line without
+	 * the request-id.
+	 *
+	 * @param line
+	 *            the line to get the request or answer from
+	 *
+	 * @return the request or answer, <code>null</code> if the line is
+	 *         <code>null</code>
+	 */
+	public static String getPayload(final String line) {
+		if (line == null) {
+			return null;
+		}
+
+		final int pos = line.indexOf(SEPARATOR);
+		return pos < 0 ? "" : line.substring(pos + 1);
+	}
+
+	/**
+	 * Prefixes the specified request or answer with the request-id.
+	 *
+	 * @param tag
+	 *            the request-id, <code>null</code> is handled like an empty
+	 *            request-id
+	 * @param payload
+	 *            the request or answer, <code>null</code> is handled like an
+	 *            empty string
+	 *
+	 * @return the tagged line
+	 */
+	public static String tag(final String tag, final String payload) {
+		return (tag == null ? "" : tag) + SEPARATOR
+				+ (payload == null ? "" : payload);
+	}
+}
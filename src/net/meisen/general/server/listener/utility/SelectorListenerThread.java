@@ -0,0 +1,1308 @@
+package net.meisen.general.server.listener.utility;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.meisen.general.server.api.IMessageHandler;
+import net.meisen.general.server.listener.codec.CodecPipeline;
+import net.meisen.general.server.listener.codec.CodecSettings;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An <code>AcceptListenerThread</code> which accepts and reads all the
+ * connections within a single event-loop based on a <code>Selector</code>,
+ * i.e. no <code>Thread</code> is created per connection. The data received is
+ * split into frames by the <code>CodecPipeline</code> of the connection,
+ * which uses the stages of the <code>CodecSettings</code> (if set) or the ones
+ * expressing the <code>Framing</code> (see
+ * {@link CodecSettings#forFraming(Framing, Charset, int, boolean)}). By
+ * default the data is split into lines (using the same terminators as
+ * {@link java.io.BufferedReader#readLine()}) and each line is passed to
+ * {@link #handleInput(String)}, the returned answer is written back as line.
+ * If the framing is set to {@link Framing#LENGTH}, the length-prefixed frames
+ * are passed to {@link #handleFrame(ByteBuffer)}. If a
+ * <code>CodecSettings</code> is set, the messages are handled by the
+ * pipeline. A line exceeding the <code>maxLineLength</code> is
+ * never buffered completely, instead the <code>OversizePolicy</code> is
+ * applied, i.e. it's answered with the <code>oversizeMessage</code> or passed
+ * in chunks to {@link #handleChunk(String, boolean)}.
+ * <br/>
+ * <b>Note:</b> {@link #handleInput(String)} is called within the event-loop,
+ * i.e. a long running implementation delays all other connections of the
+ * listener. If <code>maxInFlight</code> is set, the lines are passed to
+ * {@link #handleInputAsync(String)} instead and the answers are written (in
+ * the order of the lines) as soon as they are completed. A connection with
+ * <code>maxInFlight</code> requests in-flight is not read until an answer is
+ * written. Using {@link Framing#TAGGED} each line is prefixed by a
+ * request-id, which prefixes the answer as well, and the answers are written
+ * in the order of their completion (<code>maxInFlight</code> defaults to
+ * <code>1</code> in this case).
+ *
+ * @author pmeisen
+ *
+ */
+public abstract class SelectorListenerThread extends AcceptListenerThread {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(SelectorListenerThread.class);
+
+	private final static int READ_BUFFER_SIZE = 8192;
+
+	/*
+	 * Placeholder of a rejected line waiting to be answered asynchronously,
+	 * the instance is compared by identity.
+	 */
+	private final static String OVERSIZED = new String("OVERSIZED");
+
+	private final Selector selector;
+	private boolean asciiCompatible;
+	private final String lineSeparator;
+	private final ByteBuffer readBuffer;
+
+	private final Queue<Connection> expired = new ConcurrentLinkedQueue<Connection>();
+	private final Queue<Connection> completed = new ConcurrentLinkedQueue<Connection>();
+
+	private int maxInFlight = 0;
+	private Framing framing = Framing.LINE;
+	private int maxFrameSize = FrameReader.DEFAULT_MAX_FRAME_SIZE;
+	private boolean pooled = false;
+	private CodecSettings codec = null;
+	private CodecSettings framingSettings = null;
+	private BufferPool bufferPool = null;
+	private int maxLineLength = LineFramer.DEFAULT_MAX_LINE_LENGTH;
+	private OversizePolicy oversizePolicy = OversizePolicy.REJECT;
+	private String oversizeMessage = "LINE TOO LONG";
+
+	private SelectionKey acceptKey = null;
+	private volatile int connectionCount = 0;
+
+	/**
+	 * Constructor which specifies the <code>port</code> to retrieve the
+	 * incoming connections from.
+	 *
+	 * @param port
+	 *            the port to retrieve the incoming connection from
+	 *
+	 * @throws IOException
+	 *             if the <code>Socket</code> or the <code>Selector</code>
+	 *             cannot be created
+	 */
+	public SelectorListenerThread(final int port) throws IOException {
+		this(openServerSocket(port));
+	}
+
+	/**
+	 * Constructor which uses the specified, already bound and non-blocking
+	 * <code>ServerSocket</code> to retrieve the incoming connections from. The
+	 * <code>ServerSocket</code> can be shared by several
+	 * <code>SelectorListenerThread</code> instances, i.e. each connection is
+	 * accepted by one of the instances.
+	 *
+	 * @param serverSocket
+	 *            the bound <code>ServerSocket</code> of a non-blocking
+	 *            <code>ServerSocketChannel</code>
+	 *
+	 * @throws IOException
+	 *             if the <code>Selector</code> cannot be created
+	 *
+	 * @see ServerSocketOpener
+	 */
+	protected SelectorListenerThread(final ServerSocket serverSocket)
+			throws IOException {
+		super(serverSocket);
+
+		try {
+			this.selector = Selector.open();
+		} catch (final IOException e) {
+			getServerSocket().close();
+			throw e;
+		}
+
+		// use the same defaults as the StringWorkerThread
+		setCharset(Charset.defaultCharset());
+		this.lineSeparator = System.getProperty("line.separator");
+		this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+	}
+
+	/**
+	 * Opens a non-blocking <code>ServerSocketChannel</code> bound to the
+	 * specified <code>port</code>.
+	 *
+	 * @param port
+	 *            the port to bind the channel to
+	 *
+	 * @return the <code>ServerSocket</code> of the opened channel
+	 *
+	 * @throws IOException
+	 *             if the channel cannot be opened or bound
+	 */
+	protected static ServerSocket openServerSocket(final int port)
+			throws IOException {
+		return ServerSocketOpener.open(port, false, false);
+	}
+
+	/**
+	 * Sets the <code>Charset</code> used to decode the received lines and to
+	 * encode the answers. The charset should be set prior to starting
+	 * <code>this</code>.
+	 *
+	 * @param charset
+	 *            the <code>Charset</code> to be used, must encode the line
+	 *            terminators as single bytes
+	 *
+	 * @see LineFramer
+	 */
+	@Override
+	public void setCharset(final Charset charset) {
+		super.setCharset(charset);
+		this.asciiCompatible = LineFramer.isAsciiCompatible(charset);
+		this.framingSettings = null;
+	}
+
+	/**
+	 * Gets the maximal amount of requests handled asynchronously per
+	 * connection.
+	 *
+	 * @return the maximal amount of requests in-flight per connection,
+	 *         <code>0</code> if the requests are handled synchronously
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * Sets the maximal amount of requests handled asynchronously per
+	 * connection. The value should be set prior to starting
+	 * <code>this</code>.
+	 *
+	 * @param maxInFlight
+	 *            the maximal amount of requests in-flight per connection,
+	 *            <code>0</code> to handle the requests synchronously using
+	 *            {@link #handleInput(String)}
+	 */
+	public void setMaxInFlight(final int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Gets the <code>Framing</code> used to split the received data into
+	 * requests.
+	 *
+	 * @return the <code>Framing</code> used
+	 */
+	public Framing getFraming() {
+		return framing;
+	}
+
+	/**
+	 * Sets the <code>Framing</code> used to split the received data into
+	 * requests. The framing should be set prior to starting
+	 * <code>this</code>.
+	 *
+	 * @param framing
+	 *            the <code>Framing</code> to be used
+	 */
+	public void setFraming(final Framing framing) {
+		if (framing == null) {
+			throw new NullPointerException("The framing cannot be null.");
+		}
+
+		this.framing = framing;
+		this.framingSettings = null;
+	}
+
+	/**
+	 * Gets the maximal size of a frame, if {@link Framing#LENGTH} is used.
+	 *
+	 * @return the maximal size of a frame in bytes
+	 */
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+
+	/**
+	 * Sets the maximal size of a frame, if {@link Framing#LENGTH} is used. A
+	 * connection sending a larger frame is closed.
+	 *
+	 * @param maxFrameSize
+	 *            the maximal size of a frame in bytes
+	 */
+	public void setMaxFrameSize(final int maxFrameSize) {
+		this.maxFrameSize = maxFrameSize;
+		this.framingSettings = null;
+	}
+
+	/**
+	 * Checks if the frames of a connection are read into a reused buffer, if
+	 * {@link Framing#LENGTH} is used.
+	 *
+	 * @return <code>true</code> if the frames are read into a reused buffer,
+	 *         otherwise <code>false</code>
+	 */
+	public boolean isPooled() {
+		return pooled;
+	}
+
+	/**
+	 * Defines if the frames of a connection are read into a reused buffer, if
+	 * {@link Framing#LENGTH} is used. A frame passed to
+	 * {@link #handleFrame(ByteBuffer)} is then only valid during the call.
+	 *
+	 * @param pooled
+	 *            <code>true</code> if the frames should be read into a reused
+	 *            buffer, otherwise <code>false</code>
+	 */
+	public void setPooled(final boolean pooled) {
+		this.pooled = pooled;
+		this.framingSettings = null;
+	}
+
+	/**
+	 * Gets the maximal length of a line, if {@link Framing#LINE} is used.
+	 *
+	 * @return the maximal length of a line in bytes, <code>0</code> if the
+	 *         length is not limited
+	 */
+	public int getMaxLineLength() {
+		return maxLineLength;
+	}
+
+	/**
+	 * Sets the maximal length of a line, if {@link Framing#LINE} is used.
+	 *
+	 * @param maxLineLength
+	 *            the maximal length of a line in bytes, <code>0</code> if the
+	 *            length should not be limited
+	 */
+	public void setMaxLineLength(final int maxLineLength) {
+		if (maxLineLength < 0) {
+			throw new IllegalArgumentException(
+					"The maxLineLength cannot be negative.");
+		}
+
+		this.maxLineLength = maxLineLength;
+		this.framingSettings = null;
+	}
+
+	/**
+	 * Gets the <code>OversizePolicy</code> applied to lines exceeding the
+	 * maximal length.
+	 *
+	 * @return the <code>OversizePolicy</code> applied
+	 */
+	public OversizePolicy getOversizePolicy() {
+		return oversizePolicy;
+	}
+
+	/**
+	 * Sets the <code>OversizePolicy</code> applied to lines exceeding the
+	 * maximal length. Streaming the lines cannot be combined with
+	 * <code>maxInFlight</code>.
+	 *
+	 * @param oversizePolicy
+	 *            the <code>OversizePolicy</code> to be applied
+	 */
+	public void setOversizePolicy(final OversizePolicy oversizePolicy) {
+		if (oversizePolicy == null) {
+			throw new NullPointerException(
+					"The oversizePolicy cannot be null.");
+		}
+
+		this.oversizePolicy = oversizePolicy;
+	}
+
+	/**
+	 * Gets the message answering a line rejected because of its length.
+	 *
+	 * @return the message answering a rejected line
+	 */
+	public String getOversizeMessage() {
+		return oversizeMessage;
+	}
+
+	/**
+	 * Sets the message answering a line rejected because of its length.
+	 *
+	 * @param oversizeMessage
+	 *            the message answering a rejected line
+	 */
+	public void setOversizeMessage(final String oversizeMessage) {
+		this.oversizeMessage = oversizeMessage;
+	}
+
+	/**
+	 * Gets the <code>CodecSettings</code> used to create the pipeline of each
+	 * connection.
+	 *
+	 * @return the <code>CodecSettings</code> used, <code>null</code> if the
+	 *         data is split using the <code>Framing</code>
+	 */
+	public CodecSettings getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Sets the <code>CodecSettings</code> used to create the pipeline of each
+	 * connection. The codec replaces the <code>Framing</code> and should be
+	 * set prior to starting <code>this</code>.
+	 *
+	 * @param codec
+	 *            the <code>CodecSettings</code> to be used, <code>null</code>
+	 *            to split the data using the <code>Framing</code>
+	 */
+	public void setCodec(final CodecSettings codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * Gets the <code>CodecSettings</code> expressing the <code>Framing</code>,
+	 * i.e. the stages splitting the data of a connection if no codec is set.
+	 *
+	 * @return the <code>CodecSettings</code> of the <code>Framing</code>
+	 */
+	protected CodecSettings getFramingSettings() {
+		if (framingSettings == null) {
+			framingSettings = CodecSettings.forFraming(framing, getCharset(),
+					Framing.LENGTH.equals(framing) ? maxFrameSize
+							: maxLineLength, pooled);
+		}
+
+		return framingSettings;
+	}
+
+	/**
+	 * Gets the <code>BufferPool</code> the buffers of the connections are
+	 * borrowed from.
+	 *
+	 * @return the <code>BufferPool</code> used, <code>null</code> if each
+	 *         connection allocates its own buffer
+	 */
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * Sets the <code>BufferPool</code> the buffers of the connections are
+	 * borrowed from, i.e. a connection only holds a buffer while data of an
+	 * incomplete request is buffered. The pool should be set prior to
+	 * starting <code>this</code>.
+	 *
+	 * @param bufferPool
+	 *            the <code>BufferPool</code> to be used, <code>null</code> to
+	 *            let each connection allocate its own buffer
+	 */
+	public void setBufferPool(final BufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * Gets the <code>ServerSocketChannel</code> the connections are accepted
+	 * from.
+	 *
+	 * @return the <code>ServerSocketChannel</code> the connections are
+	 *         accepted from
+	 */
+	protected ServerSocketChannel getServerSocketChannel() {
+		return getServerSocket().getChannel();
+	}
+
+	@Override
+	public void run() {
+
+		// determine the status of the first call
+		final boolean firstState = !Thread.interrupted() && !isClosed();
+
+		final ServerSocketChannel serverChannel = getServerSocketChannel();
+		if (LOG.isInfoEnabled()) {
+			LOG.info("Start listening on port "
+					+ serverChannel.socket().getLocalPort()
+					+ " (selector)...");
+		}
+
+		try {
+			if (firstState) {
+				acceptKey = serverChannel.register(selector,
+						SelectionKey.OP_ACCEPT);
+			}
+
+			boolean curState = firstState;
+			while (curState) {
+				selector.select();
+
+				final Iterator<SelectionKey> it = selector.selectedKeys()
+						.iterator();
+				while (it.hasNext()) {
+					final SelectionKey key = it.next();
+					it.remove();
+
+					handleKey(key);
+				}
+
+				// close the connections timed out by the IdleReaper
+				Connection connection;
+				while ((connection = expired.poll()) != null) {
+					release(connection);
+				}
+
+				// write the answers completed asynchronously
+				while ((connection = completed.poll()) != null) {
+					deliver(connection);
+				}
+
+				// pause or resume the accepting depending on the limits
+				updateAccepting();
+
+				// set the current state
+				curState = !Thread.interrupted() && !isClosed();
+			}
+		} catch (final ClosedSelectorException e) {
+			// the listener was closed
+		} catch (final IOException e) {
+			if (!isClosed() && LOG.isErrorEnabled()) {
+				LOG.error("I/O error within the selector-loop", e);
+			}
+		} finally {
+			closeConnections();
+		}
+
+		if (firstState) {
+			if (LOG.isInfoEnabled()) {
+				LOG.info("End listening on port "
+						+ serverChannel.socket().getLocalPort() + "...");
+			}
+
+			// make sure the socket is closed
+			close();
+		}
+	}
+
+	/**
+	 * Handles a selected <code>SelectionKey</code>, i.e. accepts a new
+	 * connection or reads from and writes to an accepted one.
+	 *
+	 * @param key
+	 *            the selected key
+	 *
+	 * @throws IOException
+	 *             if a new connection cannot be accepted
+	 */
+	protected void handleKey(final SelectionKey key) throws IOException {
+		if (!key.isValid()) {
+			return;
+		} else if (key.isAcceptable()) {
+			accept((ServerSocketChannel) key.channel());
+			return;
+		}
+
+		final Connection connection = (Connection) key.attachment();
+		try {
+			if (key.isReadable()) {
+				read(key, connection);
+			}
+			if (key.isValid() && key.isWritable()) {
+				flush(key, connection);
+			}
+		} catch (final CancelledKeyException e) {
+			release(connection);
+		} catch (final IOException e) {
+			if (LOG.isTraceEnabled()) {
+				LOG.trace("Caught IOException and closed the connection.", e);
+			}
+			release(connection);
+		} catch (final RuntimeException e) {
+			if (LOG.isErrorEnabled()) {
+				LOG.error("Error while handling the input of "
+						+ connection.getRemoteAddress()
+						+ ", closing the connection.", e);
+			}
+			release(connection);
+		}
+	}
+
+	/**
+	 * Closes the specified <code>connection</code> and removes it from the
+	 * open ones.
+	 *
+	 * @param connection
+	 *            the connection to be closed
+	 */
+	protected void release(final Connection connection) {
+		if (connection.watch != null) {
+			connection.watch.cancel();
+		}
+
+		if (connection.close()) {
+			connectionCount--;
+		}
+	}
+
+	@Override
+	protected int getConnectionCount() {
+		return connectionCount;
+	}
+
+	/**
+	 * Pauses the accepting (i.e. the <code>Selector</code> does not select
+	 * any new connection), if the <code>AdmissionControl</code> is pausing
+	 * and a limit is reached. The accepting is resumed as soon as the limits
+	 * allow another connection.
+	 */
+	protected void updateAccepting() {
+		final AdmissionControl admissionControl = getAdmissionControl();
+		if (acceptKey == null || !acceptKey.isValid()
+				|| !admissionControl.isPausing()) {
+			return;
+		}
+
+		final boolean accepting = (acceptKey.interestOps() & SelectionKey.OP_ACCEPT) != 0;
+		final boolean exceeded = isAdmissionExceeded();
+		if (accepting && exceeded) {
+			acceptKey.interestOps(0);
+			admissionControl.markPaused();
+
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Pausing the accepting on port "
+						+ getServerSocket().getLocalPort() + ", limits of "
+						+ admissionControl + " reached.");
+			}
+		} else if (!accepting && !exceeded) {
+			acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+		}
+	}
+
+	/**
+	 * Accepts a new connection and registers it for reading.
+	 *
+	 * @param serverChannel
+	 *            the channel to accept the connection from
+	 *
+	 * @throws IOException
+	 *             if the connection cannot be accepted
+	 */
+	protected void accept(final ServerSocketChannel serverChannel)
+			throws IOException {
+
+		// keep the connection within the backlog if paused
+		if (getAdmissionControl().isPausing() && isAdmissionExceeded()) {
+			updateAccepting();
+			return;
+		}
+
+		final SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+
+		// log the incoming connection
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Incoming connection from "
+					+ channel.socket().getInetAddress());
+		}
+
+		// the channel is still blocking, so the socket can be rejected
+		if (isAdmissionExceeded()) {
+			reject(channel.socket());
+			return;
+		} else if (!isRateAdmitted(channel.socket())) {
+			closeWithMessage(channel.socket(), getRateLimiter().getMessage());
+			return;
+		}
+
+		try {
+			final Connection connection = new Connection(channel);
+			channel.configureBlocking(false);
+			connection.key = channel.register(selector, SelectionKey.OP_READ,
+					connection);
+
+			// let the loop write the answers completed asynchronously
+			final boolean tagged = Framing.TAGGED.equals(framing);
+			if (maxInFlight > 0 || tagged) {
+				connection.replies = new OrderedReplies(Math.max(1,
+						maxInFlight), tagged) {
+
+					@Override
+					protected void completed() {
+
+						// within the loop the answers are delivered anyway
+						if (Thread.currentThread() != SelectorListenerThread.this) {
+							SelectorListenerThread.this.completed
+									.add(connection);
+							selector.wakeup();
+						}
+					}
+				};
+			}
+
+			final RateLimiter rateLimiter = getRateLimiter();
+			if (rateLimiter != null) {
+				connection.lineBucket = rateLimiter.createLineBucket();
+			}
+
+			final CodecSettings stages = codec == null ? getFramingSettings()
+					: codec;
+			connection.pipeline = stages.createPipeline(
+					createHandler(connection), bufferPool);
+
+			// let the reaper close the connection within the loop
+			final IdleReaper idleReaper = getIdleReaper();
+			if (idleReaper != null) {
+				connection.watch = idleReaper.watch(new Closeable() {
+
+					@Override
+					public void close() {
+						expired.add(connection);
+						selector.wakeup();
+					}
+				});
+			}
+
+			getAdmissionControl().markAccepted();
+			getAcceptRate().mark();
+			connectionCount++;
+		} catch (final IOException e) {
+			channel.close();
+
+			if (LOG.isErrorEnabled()) {
+				LOG.error("I/O error initialising connection", e);
+			}
+		}
+	}
+
+	/**
+	 * Reads the available data of the connection, handles each complete frame
+	 * and writes the answers.
+	 *
+	 * @param key
+	 *            the key of the connection
+	 * @param connection
+	 *            the connection to read from
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read or the answers cannot be written
+	 */
+	protected void read(final SelectionKey key, final Connection connection)
+			throws IOException {
+		final CodecPipeline pipeline = connection.pipeline;
+		readBuffer.clear();
+
+		final int read = connection.channel.read(readBuffer);
+		if (read < 0) {
+
+			// end of stream, the BufferedReader would pass null
+			if (codec != null || Framing.LENGTH.equals(framing)) {
+				pipeline.end();
+			} else {
+				if (connection.oversized && connection.streaming) {
+					final ByteBuffer rest = pipeline.lastFrame();
+					handleChunk(rest == null ? "" : decode(rest), true);
+				}
+
+				if (connection.replies == null) {
+					handleInput(null);
+				} else {
+					handleInputAsync(null);
+				}
+			}
+			release(connection);
+			return;
+		}
+
+		final IdleReaper.Watch watch = connection.watch;
+		if (watch != null) {
+			watch.received();
+		}
+		pipeline.receive(readBuffer.array(), 0, readBuffer.position());
+
+		boolean handled = false;
+		ByteBuffer frame;
+		while ((frame = pipeline.nextFrame()) != null) {
+			if (watch != null && !handled) {
+				watch.processing();
+			}
+			handled = true;
+
+			if (codec != null || Framing.LENGTH.equals(framing)) {
+				connection.write(pipeline.handle(frame));
+			} else {
+				handleLine(connection, frame, pipeline.isPartial());
+			}
+		}
+
+		if (watch != null && handled) {
+			watch.handled(pipeline.hasBuffered() || connection.oversized);
+		}
+
+		// write all the answers of the read data at once
+		if (connection.replies == null) {
+			flush(key, connection);
+		} else {
+			deliver(connection);
+		}
+	}
+
+	/**
+	 * Handles a line (or a part of a line exceeding the maximal line-length)
+	 * received on the connection. A line is answered directly or, if
+	 * <code>maxInFlight</code> is set, waits to be passed to
+	 * {@link #handleInputAsync(String)}.
+	 *
+	 * @param connection
+	 *            the connection the line is received on
+	 * @param line
+	 *            the bytes of the line, only valid during the call
+	 * @param partial
+	 *            <code>true</code> if the line is a part of a line exceeding
+	 *            the maximal line-length
+	 */
+	protected void handleLine(final Connection connection,
+			final ByteBuffer line, final boolean partial) {
+		final boolean first = connection.first;
+		connection.first = false;
+
+		if (partial || connection.oversized) {
+			oversized(connection, line, partial);
+			return;
+		}
+
+		final String input = decode(line);
+		if (first && Compression.HELLO.equals(input)) {
+
+			// the compression isn't supported, never handle the hello
+			connection.write(encode(Compression.DECLINE));
+		} else if (connection.replies == null) {
+			final RateLimiter rateLimiter = getRateLimiter();
+			final boolean admitted = rateLimiter == null
+					|| rateLimiter.acquireLine(connection.lineBucket);
+			final String output = admitted ? handleInput(input) : rateLimiter
+					.getMessage();
+			connection.write(encode(output));
+		} else {
+			connection.waiting.add(input);
+		}
+	}
+
+	/**
+	 * Handles a part of a line of the connection exceeding the maximal
+	 * line-length, i.e. applies the <code>OversizePolicy</code>. The line is
+	 * either discarded (and answered with its last part) or the parts are
+	 * passed to {@link #handleChunk(String, boolean)}.
+	 *
+	 * @param connection
+	 *            the connection the line is received on
+	 * @param part
+	 *            the bytes of the part, only valid during the call
+	 * @param partial
+	 *            <code>false</code> if the part is the last one of the line
+	 */
+	protected void oversized(final Connection connection,
+			final ByteBuffer part, final boolean partial) {
+		if (!connection.oversized) {
+			final RateLimiter rateLimiter = getRateLimiter();
+			connection.oversized = true;
+			connection.streaming = false;
+
+			// the rate of asynchronous requests is checked when delivered
+			if (connection.replies == null && rateLimiter != null
+					&& !rateLimiter.acquireLine(connection.lineBucket)) {
+				connection.rejection = rateLimiter.getMessage();
+			} else if (connection.replies != null
+					|| OversizePolicy.REJECT.equals(oversizePolicy)) {
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("Rejecting a line of more than " + maxLineLength
+							+ " bytes received from "
+							+ connection.getRemoteAddress() + ".");
+				}
+
+				// the answer of a tagged line needs the request-id
+				if (connection.replies != null
+						&& connection.replies.isTagged()) {
+					connection.rejectedTag = RequestTags.getTag(decode(part));
+				}
+				connection.rejection = oversizeMessage;
+			} else {
+				connection.streaming = true;
+			}
+		}
+
+		String answer = null;
+		if (connection.streaming) {
+			answer = handleChunk(decode(part), !partial);
+		}
+		if (partial) {
+			return;
+		}
+		connection.oversized = false;
+
+		// answer the streamed or rejected line
+		if (connection.streaming) {
+			connection.write(encode(answer));
+		} else if (connection.replies == null) {
+			connection.write(encode(connection.rejection));
+		} else if (connection.replies.isTagged()) {
+			connection.write(encode(RequestTags.tag(connection.rejectedTag,
+					connection.rejection)));
+		} else {
+			connection.waiting.add(OVERSIZED);
+		}
+	}
+
+	/**
+	 * Creates the <code>IMessageHandler</code> of the pipeline of the
+	 * specified connection, i.e. the one of the <code>CodecSettings</code>
+	 * (or the one calling {@link #handleMessage(Object)}) limited by the
+	 * <code>RateLimiter</code>. Without any <code>CodecSettings</code> the
+	 * frames are passed to {@link #handleFrame(ByteBuffer)}, the lines are
+	 * handled by {@link #handleLine(Connection, ByteBuffer, boolean)}.
+	 *
+	 * @param connection
+	 *            the connection to create the handler for
+	 *
+	 * @return the <code>IMessageHandler</code> of the connection
+	 */
+	protected IMessageHandler createHandler(final Connection connection) {
+		final IMessageHandler handler;
+		if (codec == null) {
+			handler = new IMessageHandler() {
+
+				@Override
+				public Object handle(final Object message) {
+					return handleFrame((ByteBuffer) message);
+				}
+			};
+		} else {
+			handler = codec.getHandler(new IMessageHandler() {
+
+				@Override
+				public Object handle(final Object message) {
+					return handleMessage(message);
+				}
+			});
+		}
+
+		final RateLimiter rateLimiter = getRateLimiter();
+		if (rateLimiter == null) {
+			return handler;
+		}
+
+		return new IMessageHandler() {
+
+			@Override
+			public Object handle(final Object message) {
+				if (message == null
+						|| rateLimiter.acquireLine(connection.lineBucket)) {
+					return handler.handle(message);
+				} else {
+					return rateLimiter.getMessage();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Writes the answers of the connection completed asynchronously and
+	 * passes the waiting lines to {@link #handleInputAsync(String)} as long as
+	 * the maximal amount of requests in-flight is not reached.
+	 *
+	 * @param connection
+	 *            the connection to deliver the answers of
+	 */
+	protected void deliver(final Connection connection) {
+		final SelectionKey key = connection.key;
+		if (key == null || !key.isValid()) {
+			return;
+		}
+
+		try {
+			final OrderedReplies replies = connection.replies;
+			final RateLimiter rateLimiter = getRateLimiter();
+
+			boolean modified = true;
+			while (modified) {
+				modified = false;
+
+				// pass the waiting lines as long as allowed
+				while (!connection.waiting.isEmpty() && !replies.isFull()) {
+					final String input = connection.waiting.poll();
+					final String tag = replies.isTagged() ? RequestTags
+							.getTag(input) : null;
+					if (rateLimiter != null
+							&& !rateLimiter.acquireLine(connection.lineBucket)) {
+						replies.add(tag, CompletableFuture
+								.completedFuture(rateLimiter.getMessage()));
+					} else if (input == OVERSIZED) {
+						replies.add(CompletableFuture
+								.completedFuture(oversizeMessage));
+					} else if (replies.isTagged()) {
+						replies.add(tag,
+								handleInputAsync(RequestTags.getPayload(input)));
+					} else {
+						replies.add(handleInputAsync(input));
+					}
+				}
+
+				// write the available answers, which might free capacity
+				for (final String output : replies.poll()) {
+					connection.write(encode(output));
+					modified = true;
+				}
+			}
+
+			flush(key, connection);
+		} catch (final CancelledKeyException e) {
+			release(connection);
+		} catch (final IOException e) {
+			if (LOG.isTraceEnabled()) {
+				LOG.trace("Caught IOException and closed the connection.", e);
+			}
+			release(connection);
+		} catch (final RuntimeException e) {
+			if (LOG.isErrorEnabled()) {
+				LOG.error("Error while handling the input of "
+						+ connection.getRemoteAddress()
+						+ ", closing the connection.", e);
+			}
+			release(connection);
+		}
+	}
+
+	/**
+	 * Encodes the specified answer as line.
+	 *
+	 * @param output
+	 *            the answer to be encoded, <code>null</code> is encoded as
+	 *            empty line
+	 *
+	 * @return the encoded line
+	 */
+	protected ByteBuffer encode(final String output) {
+		return encode(output, true);
+	}
+
+	/**
+	 * Encodes the specified answer using the <code>Charset</code>.
+	 *
+	 * @param output
+	 *            the answer to be encoded, <code>null</code> is encoded as
+	 *            empty string
+	 * @param line
+	 *            <code>true</code> if the line-separator should be appended,
+	 *            otherwise <code>false</code>
+	 *
+	 * @return the encoded answer
+	 */
+	protected ByteBuffer encode(final String output, final boolean line) {
+		final String value = output == null ? "" : output;
+		return getCharset().encode(CharBuffer.wrap(line ? value + lineSeparator
+				: value));
+	}
+
+	/**
+	 * Decodes the remaining bytes of the specified buffer using the
+	 * <code>Charset</code>.
+	 *
+	 * @param bytes
+	 *            the bytes to be decoded
+	 *
+	 * @return the decoded <code>String</code>
+	 */
+	protected String decode(final ByteBuffer bytes) {
+		if (bytes.hasArray()) {
+			return LineFramer.decode(bytes.array(), bytes.arrayOffset()
+					+ bytes.position(), bytes.remaining(), getCharset(),
+					asciiCompatible);
+		} else {
+			return LineFramer.decode(bytes, getCharset());
+		}
+	}
+
+	/**
+	 * Writes the pending answers of the connection. If not all the data can
+	 * be written, the connection stops reading until the remaining data is
+	 * written.
+	 *
+	 * @param key
+	 *            the key of the connection
+	 * @param connection
+	 *            the connection to write to
+	 *
+	 * @throws IOException
+	 *             if the data cannot be written
+	 */
+	protected void flush(final SelectionKey key, final Connection connection)
+			throws IOException {
+		final Deque<ByteBuffer> output = connection.output;
+
+		while (!output.isEmpty()) {
+			final ByteBuffer buffer = output.peek();
+			connection.channel.write(buffer);
+
+			if (buffer.hasRemaining()) {
+				break;
+			} else {
+				output.poll();
+			}
+		}
+
+		// don't read any further requests if the in-flight limit is reached
+		final int readOps = connection.isSuspended() ? 0
+				: SelectionKey.OP_READ;
+		key.interestOps(output.isEmpty() ? readOps : SelectionKey.OP_WRITE);
+	}
+
+	/**
+	 * Closes all the connections registered at the <code>Selector</code> and
+	 * the <code>Selector</code> itself.
+	 */
+	protected void closeConnections() {
+		try {
+			for (final SelectionKey key : selector.keys()) {
+				final Object attachment = key.attachment();
+				if (attachment instanceof Connection) {
+					((Connection) attachment).close();
+				}
+			}
+		} catch (final ClosedSelectorException e) {
+			// nothing to close anymore
+		}
+
+		try {
+			selector.close();
+		} catch (final IOException e) {
+			// ignore it
+		}
+		connectionCount = 0;
+	}
+
+	/**
+	 * Method used to handle a specific input, i.e. a line received on one of
+	 * the connections.
+	 *
+	 * @param input
+	 *            the input retrieved on the connection, <code>null</code> if
+	 *            the end of the stream was reached
+	 *
+	 * @return the message to reply
+	 */
+	protected abstract String handleInput(final String input);
+
+	/**
+	 * Method used to handle a specific input asynchronously, i.e. a line
+	 * received on one of the connections, if <code>maxInFlight</code> is set.
+	 * The method is called within the event-loop and should not block. The
+	 * default implementation completes the answer of
+	 * {@link #handleInput(String)} directly.
+	 *
+	 * @param input
+	 *            the input retrieved on the connection, <code>null</code> if
+	 *            the end of the stream was reached
+	 *
+	 * @return the stage completing with the message to reply
+	 *
+	 * @see #setMaxInFlight(int)
+	 */
+	protected CompletionStage<String> handleInputAsync(final String input) {
+		return CompletableFuture.completedFuture(handleInput(input));
+	}
+
+	/**
+	 * Method used to handle a message decoded by the
+	 * <code>CodecPipeline</code>, if no <code>IMessageHandler</code> is
+	 * defined by the <code>CodecSettings</code>. The default implementation
+	 * passes a <code>ByteBuffer</code> to {@link #handleFrame(ByteBuffer)} and
+	 * any other message (as <code>String</code>) to
+	 * {@link #handleInput(String)}.
+	 *
+	 * @param message
+	 *            the decoded message, <code>null</code> if the end of the
+	 *            stream was reached
+	 *
+	 * @return the answer to be encoded
+	 */
+	protected Object handleMessage(final Object message) {
+		if (message instanceof ByteBuffer) {
+			return handleFrame((ByteBuffer) message);
+		} else {
+			return handleInput(message == null ? null : message.toString());
+		}
+	}
+
+	/**
+	 * Method used to handle the chunks of a line exceeding the maximal
+	 * line-length, if the <code>OversizePolicy</code> is
+	 * {@link OversizePolicy#STREAM}. The chunks of a line are passed in order,
+	 * the answer returned for the last chunk answers the line. The default
+	 * implementation ignores the chunks and answers with the
+	 * <code>oversizeMessage</code>.
+	 *
+	 * @param chunk
+	 *            the chunk of the line, at most <code>maxLineLength</code>
+	 *            bytes
+	 * @param last
+	 *            <code>true</code> if the chunk is the last one of the line,
+	 *            otherwise <code>false</code>
+	 *
+	 * @return the message to reply, only used for the last chunk
+	 */
+	protected String handleChunk(final String chunk, final boolean last) {
+		return last ? oversizeMessage : null;
+	}
+
+	/**
+	 * Method used to handle a frame received on one of the connections, if
+	 * {@link Framing#LENGTH} is used. The default implementation decodes the
+	 * frame using the <code>Charset</code> and passes it to
+	 * {@link #handleInput(String)}.
+	 *
+	 * @param frame
+	 *            the payload of the frame, <code>null</code> if the end of the
+	 *            stream was reached
+	 *
+	 * @return the payload of the frame to reply, <code>null</code> to reply
+	 *         with an empty frame
+	 */
+	protected ByteBuffer handleFrame(final ByteBuffer frame) {
+		final String output = handleInput(frame == null ? null
+				: decode(frame));
+
+		return output == null ? null : encode(output, false);
+	}
+
+	/**
+	 * The <code>SelectorListenerThread</code> does not create any
+	 * <code>WorkerThread</code>.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	protected Thread createWorkerThread(final Socket socket) {
+		throw new UnsupportedOperationException(
+				"The selector-loop does not support worker-threads.");
+	}
+
+	@Override
+	public List<Thread> close(final long timeout) {
+		final List<Thread> abandoned = super.close(timeout);
+
+		// wake the loop up so that it recognizes the closing
+		try {
+			selector.wakeup();
+		} catch (final ClosedSelectorException e) {
+			// already closed
+		}
+
+		// if the loop is not running, nobody else will close the selector
+		if (!isAlive()) {
+			closeConnections();
+		} else if (Thread.currentThread() != this && timeout > 0) {
+
+			/*
+			 * A channel registered at a selector is released on the next
+			 * selection, so wait for the loop to make sure the port is free.
+			 */
+			try {
+				join(timeout);
+			} catch (final InterruptedException e) {
+				// do nothing
+			}
+		}
+
+		return abandoned;
+	}
+
+	/**
+	 * The state of a connection handled by the
+	 * <code>SelectorListenerThread</code>.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	protected static class Connection {
+		private final SocketChannel channel;
+		private final Deque<ByteBuffer> output = new ArrayDeque<ByteBuffer>();
+		private final Deque<String> waiting = new ArrayDeque<String>();
+
+		private boolean first = true;
+		private boolean oversized = false;
+		private boolean streaming = false;
+		private String rejection = null;
+		private String rejectedTag = null;
+		private IdleReaper.Watch watch = null;
+		private TokenBucket lineBucket = null;
+		private SelectionKey key = null;
+		private OrderedReplies replies = null;
+		private CodecPipeline pipeline = null;
+
+		/**
+		 * Creates the state for the specified <code>channel</code>.
+		 *
+		 * @param channel
+		 *            the accepted channel
+		 */
+		protected Connection(final SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		private void write(final ByteBuffer data) {
+			output.add(data);
+		}
+
+		private boolean isSuspended() {
+			return replies != null
+					&& (replies.isFull() || !waiting.isEmpty());
+		}
+
+		/**
+		 * Gets the address of the remote end of the connection.
+		 *
+		 * @return the address of the remote end
+		 */
+		public SocketAddress getRemoteAddress() {
+			return channel.socket().getRemoteSocketAddress();
+		}
+
+		/**
+		 * Closes the connection.
+		 *
+		 * @return <code>true</code> if the connection was open, otherwise
+		 *         <code>false</code>
+		 */
+		public boolean close() {
+			output.clear();
+			waiting.clear();
+			if (pipeline != null) {
+				pipeline.release();
+			}
+
+			final boolean open = channel.isOpen();
+			try {
+				channel.close();
+			} catch (final IOException e) {
+				// we cannot do anything
+			}
+
+			return open;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package net.meisen.general.server.listener.utility;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * Utility to open the <code>ServerSocket</code> of a listener, based on a
+ * <code>ServerSocketChannel</code>. Several sockets can be bound to the same
+ * port using the <code>SO_REUSEPORT</code> option, so that the operating
+ * system spreads the incoming connections among them. The option is available
+ * starting with Java 9 (and is only supported by some operating systems, e.g.
+ * Linux), the utility uses reflection so that the library can still be used
+ * with older versions, see {@link #isReusePortSupported()}.
+ *
+ * @author pmeisen
+ *
+ */
+public class ServerSocketOpener {
+	private final static SocketOption<Boolean> SO_REUSEPORT;
+
+	static {
+		SocketOption<Boolean> reusePort = null;
+
+		try {
+			@SuppressWarnings("unchecked")
+			final SocketOption<Boolean> option = (SocketOption<Boolean>) StandardSocketOptions.class
+					.getField("SO_REUSEPORT").get(null);
+
+			// check if the operating system supports it
+			final ServerSocketChannel channel = ServerSocketChannel.open();
+			try {
+				if (channel.supportedOptions().contains(option)) {
+					reusePort = option;
+				}
+			} finally {
+				channel.close();
+			}
+		} catch (final Exception e) {
+			reusePort = null;
+		}
+
+		SO_REUSEPORT = reusePort;
+	}
+
+	/**
+	 * Checks if the <code>SO_REUSEPORT</code> option is supported by the JVM
+	 * and the operating system.
+	 *
+	 * @return <code>true</code> if the option is supported, otherwise
+	 *         <code>false</code>
+	 */
+	public static boolean isReusePortSupported() {
+		return SO_REUSEPORT != null;
+	}
+
+	/**
+	 * Opens a <code>ServerSocketChannel</code> bound to the specified
+	 * <code>port</code>.
+	 *
+	 * @param port
+	 *            the port to bind the channel to
+	 * @param blocking
+	 *            <code>true</code> if the channel should be blocking,
+	 *            <code>false</code> if it's used with a <code>Selector</code>
+	 * @param reusePort
+	 *            <code>true</code> if the <code>SO_REUSEPORT</code> option
+	 *            should be enabled, i.e. other sockets can be bound to the same
+	 *            port
+	 *
+	 * @return the <code>ServerSocket</code> of the opened channel
+	 *
+	 * @throws IOException
+	 *             if the channel cannot be opened or bound
+	 * @throws UnsupportedOperationException
+	 *             if <code>reusePort</code> is requested, but not supported
+	 *
+	 * @see #isReusePortSupported()
+	 */
+	public static ServerSocket open(final int port, final boolean blocking,
+			final boolean reusePort) throws IOException {
+		if (reusePort && !isReusePortSupported()) {
+			throw new UnsupportedOperationException(
+					"The option SO_REUSEPORT is not supported (Java "
+							+ System.getProperty("java.version") + ", "
+							+ System.getProperty("os.name") + ").");
+		}
+
+		final ServerSocketChannel channel = ServerSocketChannel.open();
+		try {
+			if (reusePort) {
+				channel.setOption(SO_REUSEPORT, Boolean.TRUE);
+			}
+			channel.socket().bind(new InetSocketAddress(port));
+			channel.configureBlocking(blocking);
+		} catch (final IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		return channel.socket();
+	}
+}
@@ -1,23 +1,57 @@
 package net.meisen.general.server.listener.utility;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.PushbackInputStream;
+import java.io.Writer;
 import java.net.Socket;
+import java.nio.charset.Charset;
 
 import net.meisen.general.genmisc.types.Streams;
 
 /**
  * {@code WorkerThread} used to handle strings from and read strings to the
- * associated {@code Socket}.
+ * associated {@code Socket}. If the <code>compression</code> is enabled, the
+ * client can request a compressed connection (see {@link Compression}) with
+ * its first line, the readers and writers created afterwards transparently
+ * decompress and compress the data. Otherwise such a request is declined and
+ * never read as line. The readers and writers are only
+ * released by the thread which created them (normally within the
+ * <code>finally</code> of {@link #run()}), i.e. a {@link #close()} from any
+ * other thread just closes the <code>Socket</code>. Thereby the
+ * <code>Inflater</code> and <code>Deflater</code> of a compressed connection
+ * are never ended while the worker uses them.
  * 
  * @author pmeisen
  * 
  */
 public abstract class StringWorkerThread extends WorkerThread {
+	/**
+	 * The size of the buffer borrowed to write to the <code>Socket</code>.
+	 */
+	public final static int OUTPUT_BUFFER_SIZE = 8192;
+
+	private Charset charset = Charset.defaultCharset();
+	private int maxLineLength = 0;
+	private BufferPool bufferPool = null;
+	private boolean compression = false;
+	private int compressionLevel = -1;
+
 	private BufferedReader reader = null;
+	private LineFramer framer = null;
+	private FrameReader frameReader = null;
 	private PrintWriter writer = null;
+	private OutputStream outputStream = null;
+	private InputStream inputStream = null;
+	private OutputStream compressedOutput = null;
+	private boolean compressed = false;
+	private volatile Thread owner = null;
 
 	/**
 	 * Constructor which binds the specified {@code Socket} to {@code this}.
@@ -44,14 +78,165 @@ public abstract class StringWorkerThread extends WorkerThread {
 	 */
 	protected BufferedReader createSocketReader() throws IOException {
 		if (reader == null) {
-			final Socket socket = getSocket();
 			reader = new BufferedReader(new InputStreamReader(
-					socket.getInputStream()));
+					createSocketInputStream(), charset));
 		}
 
 		return reader;
 	}
 
+	/**
+	 * Creates a <code>LineFramer</code> on the <code>Socket</code>, which
+	 * reads the lines without any intermediate decoding (in contrast to a
+	 * <code>BufferedReader</code>). There can be only one
+	 * <code>LineFramer</code> on each <code>Socket</code>, therefore the
+	 * <code>LineFramer</code> is created on the first call and on any other
+	 * the created instance is returned. The <code>LineFramer</code> should
+	 * not be mixed with the <code>BufferedReader</code> of
+	 * {@link #createSocketReader()}. Lines exceeding the
+	 * <code>maxLineLength</code> are returned in parts, see
+	 * {@link LineFramer#isPartial()}.
+	 * 
+	 * @return a <code>LineFramer</code> to retrieve lines from the
+	 *         <code>Socket</code>
+	 * 
+	 * @throws IOException
+	 *             if the <code>InputStream</code> on the <code>Socket</code>
+	 *             cannot be created
+	 */
+	protected LineFramer createSocketFramer() throws IOException {
+		if (framer == null) {
+			framer = new LineFramer(createSocketInputStream(), charset,
+					LineFramer.DEFAULT_BUFFER_SIZE, maxLineLength, bufferPool);
+		}
+
+		return framer;
+	}
+
+	/**
+	 * Creates a <code>FrameReader</code> on the <code>Socket</code>, which
+	 * reads length-prefixed binary frames. There can be only one
+	 * <code>FrameReader</code> on each <code>Socket</code>, therefore the
+	 * <code>FrameReader</code> is created on the first call and on any other
+	 * the created instance is returned (i.e. the parameters are only
+	 * considered on the first call).
+	 * 
+	 * @param maxFrameSize
+	 *            the maximal size of a frame in bytes
+	 * @param pooled
+	 *            <code>true</code> if the frames should be read into a reused
+	 *            buffer, otherwise <code>false</code>
+	 * 
+	 * @return a <code>FrameReader</code> to retrieve frames from the
+	 *         <code>Socket</code>
+	 * 
+	 * @throws IOException
+	 *             if the <code>InputStream</code> on the <code>Socket</code>
+	 *             cannot be created
+	 */
+	protected FrameReader createSocketFrameReader(final int maxFrameSize,
+			final boolean pooled) throws IOException {
+		if (frameReader == null) {
+			frameReader = new FrameReader(createSocketInputStream(),
+					maxFrameSize, pooled, bufferPool);
+		}
+
+		return frameReader;
+	}
+
+	/**
+	 * Creates a buffered <code>OutputStream</code> on the <code>Socket</code>
+	 * used to write binary data, e.g. frames. There can be only one
+	 * <code>OutputStream</code> on each <code>Socket</code>, therefore the
+	 * <code>OutputStream</code> is created on the first call and on any other
+	 * the created instance is returned. The <code>OutputStream</code> should
+	 * not be mixed with the <code>PrintWriter</code> of
+	 * {@link #createSocketWriter()}.
+	 * 
+	 * @return a buffered <code>OutputStream</code> to write to the
+	 *         <code>Socket</code>
+	 * 
+	 * @throws IOException
+	 *             if the <code>OutputStream</code> on the <code>Socket</code>
+	 *             cannot be created
+	 */
+	protected OutputStream createSocketOutputStream() throws IOException {
+		if (outputStream == null) {
+			final OutputStream out = getSocketOutputStream();
+			outputStream = bufferPool == null ? new BufferedOutputStream(out)
+					: new PooledOutputStream(out, bufferPool, OUTPUT_BUFFER_SIZE);
+		}
+
+		return outputStream;
+	}
+
+	/**
+	 * Gets the <code>InputStream</code> of the <code>Socket</code>, which
+	 * informs the <code>Watch</code> (if any) about the received data. The
+	 * compression is negotiated on the first call, i.e. the returned stream
+	 * decompresses the data if requested by the client and the
+	 * <code>compression</code> is enabled. If the <code>compression</code> is
+	 * disabled, a request is declined and never passed as line.
+	 * 
+	 * @return the <code>InputStream</code> of the <code>Socket</code>
+	 * 
+	 * @throws IOException
+	 *             if the <code>InputStream</code> on the <code>Socket</code>
+	 *             cannot be created
+	 */
+	protected InputStream createSocketInputStream() throws IOException {
+		if (inputStream == null) {
+			owner = Thread.currentThread();
+
+			final Socket socket = getSocket();
+			final IdleReaper.Watch watch = getWatch();
+			final InputStream in = watch == null ? socket.getInputStream()
+					: watch.monitor(socket.getInputStream());
+
+			final PushbackInputStream pushback = new PushbackInputStream(in,
+					Compression.getPushbackSize());
+			if (!Compression.accept(pushback)) {
+				inputStream = pushback;
+			} else if (compression) {
+				compressed = true;
+				Compression.acknowledge(socket.getOutputStream());
+				inputStream = Compression.inflate(pushback);
+			} else {
+				Compression.decline(socket.getOutputStream());
+				inputStream = pushback;
+			}
+		}
+
+		return inputStream;
+	}
+
+	/**
+	 * Gets the <code>OutputStream</code> of the <code>Socket</code>, which
+	 * compresses the data if the compression was negotiated. The returned
+	 * stream is not buffered, but each flush of a compressing stream
+	 * compresses and sends all the data written so far.
+	 * 
+	 * @return the <code>OutputStream</code> of the <code>Socket</code>
+	 * 
+	 * @throws IOException
+	 *             if the <code>OutputStream</code> on the <code>Socket</code>
+	 *             cannot be created
+	 */
+	protected OutputStream getSocketOutputStream() throws IOException {
+
+		// make sure the compression is negotiated
+		createSocketInputStream();
+
+		if (!compressed) {
+			return getSocket().getOutputStream();
+		} else if (compressedOutput == null) {
+			compressedOutput = Compression.deflate(getSocket()
+					.getOutputStream(), compressionLevel);
+		}
+
+		return compressedOutput;
+	}
+
 	/**
 	 * Creates a <code>PrintWriter</code> on the <code>Socket</code>. There can
 	 * be only one <code>PrintWriter</code> on each <code>Socket</code>,
@@ -65,23 +250,221 @@ public abstract class StringWorkerThread extends WorkerThread {
 	 *             cannot be created
 	 */
 	protected PrintWriter createSocketWriter() throws IOException {
+		return createSocketWriter(true);
+	}
+
+	/**
+	 * Creates a <code>PrintWriter</code> on the <code>Socket</code>, which
+	 * flushes on each <code>println</code> if <code>autoFlush</code> is
+	 * <code>true</code>. Otherwise the written data is buffered until the
+	 * <code>PrintWriter</code> is flushed explicitly (or the buffer is full),
+	 * which allows to write several answers with a single flush. There can be
+	 * only one <code>PrintWriter</code> on each <code>Socket</code>, therefore
+	 * the <code>PrintWriter</code> is created on the first call and on any
+	 * other the created instance is returned (i.e. <code>autoFlush</code> is
+	 * only considered on the first call).
+	 * 
+	 * @param autoFlush
+	 *            <code>true</code> if each <code>println</code> should flush
+	 *            the <code>PrintWriter</code>, otherwise <code>false</code>
+	 * 
+	 * @return a <code>PrintWriter</code> to write to the <code>Socket</code>
+	 * 
+	 * @throws IOException
+	 *             if the <code>OutputStream</code> on the <code>Socket</code>
+	 *             cannot be created
+	 */
+	protected PrintWriter createSocketWriter(final boolean autoFlush)
+			throws IOException {
 		if (writer == null) {
-			final Socket socket = getSocket();
-			writer = new PrintWriter(socket.getOutputStream(), true);
+			final OutputStream out = getSocketOutputStream();
+			final Writer w = bufferPool == null ? new OutputStreamWriter(out,
+					charset) : new PooledWriter(out, charset, bufferPool,
+					OUTPUT_BUFFER_SIZE);
+			writer = new PrintWriter(w, autoFlush);
 		}
 
 		return writer;
 	}
 
+	/**
+	 * Gets the <code>Charset</code> used to read and write strings.
+	 * 
+	 * @return the <code>Charset</code> used to read and write strings
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Sets the <code>Charset</code> used to read and write strings. The
+	 * charset must be set prior to the creation of any reader or writer.
+	 * 
+	 * @param charset
+	 *            the <code>Charset</code> to be used
+	 */
+	public void setCharset(final Charset charset) {
+		if (charset == null) {
+			throw new NullPointerException("The charset cannot be null.");
+		}
+
+		this.charset = charset;
+	}
+
+	/**
+	 * Gets the maximal length of a line read by the <code>LineFramer</code>.
+	 * 
+	 * @return the maximal length of a line in bytes, <code>0</code> if the
+	 *         length is not limited
+	 */
+	public int getMaxLineLength() {
+		return maxLineLength;
+	}
+
+	/**
+	 * Sets the maximal length of a line read by the <code>LineFramer</code>.
+	 * The length must be set prior to the creation of the
+	 * <code>LineFramer</code>.
+	 * 
+	 * @param maxLineLength
+	 *            the maximal length of a line in bytes, <code>0</code> if the
+	 *            length should not be limited
+	 */
+	public void setMaxLineLength(final int maxLineLength) {
+		if (maxLineLength < 0) {
+			throw new IllegalArgumentException(
+					"The maxLineLength cannot be negative.");
+		}
+
+		this.maxLineLength = maxLineLength;
+	}
+
+	/**
+	 * Gets the <code>BufferPool</code> the buffers of the readers and writers
+	 * are borrowed from.
+	 * 
+	 * @return the <code>BufferPool</code>, <code>null</code> if the buffers
+	 *         are allocated per connection
+	 */
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * Sets the <code>BufferPool</code> the buffers of the readers and writers
+	 * are borrowed from. A borrowed buffer is only held while data is in
+	 * flight, i.e. an idle connection doesn't hold any buffer. The pool must
+	 * be set prior to the creation of any reader or writer.
+	 * 
+	 * @param bufferPool
+	 *            the <code>BufferPool</code> providing heap buffers,
+	 *            <code>null</code> to allocate the buffers per connection
+	 */
+	public void setBufferPool(final BufferPool bufferPool) {
+		if (bufferPool != null && bufferPool.isDirect()) {
+			throw new IllegalArgumentException(
+					"The bufferPool must provide heap buffers.");
+		}
+
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * Checks if the client can request a compressed connection.
+	 * 
+	 * @return <code>true</code> if the compression can be requested,
+	 *         otherwise <code>false</code>
+	 */
+	public boolean isCompression() {
+		return compression;
+	}
+
+	/**
+	 * Defines if the client can request a compressed connection. The
+	 * compression must be set prior to the creation of any reader or writer.
+	 * 
+	 * @param compression
+	 *            <code>true</code> if the compression can be requested,
+	 *            otherwise <code>false</code>
+	 */
+	public void setCompression(final boolean compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * Gets the level used to compress the data.
+	 * 
+	 * @return the level used to compress the data, <code>-1</code> for the
+	 *         default level
+	 */
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * Sets the level used to compress the data.
+	 * 
+	 * @param compressionLevel
+	 *            the level (<code>0-9</code>) used to compress the data,
+	 *            <code>-1</code> for the default level
+	 */
+	public void setCompressionLevel(final int compressionLevel) {
+		if (compressionLevel < -1 || compressionLevel > 9) {
+			throw new IllegalArgumentException(
+					"The compressionLevel must be between -1 and 9.");
+		}
+
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * Checks if the client requested a compressed connection, i.e. if the data
+	 * is compressed. The value is only valid after the first reader is
+	 * created.
+	 * 
+	 * @return <code>true</code> if the data is compressed, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * Closes the <code>Socket</code> and releases the readers and writers, if
+	 * called by the thread which created them. Otherwise the thread using
+	 * them fails reading from or writing to the closed <code>Socket</code>
+	 * and has to call <code>close</code> itself.
+	 */
 	@Override
 	public void close() {
 		super.close();
-		
+
+		// the streams are released by the thread using them
+		final Thread thread = owner;
+		if (thread != null && thread != Thread.currentThread()) {
+			return;
+		}
+
 		if (reader != null) {
 			Streams.closeIO(reader);
 		}
+		if (framer != null) {
+			Streams.closeIO(framer);
+		}
+		if (frameReader != null) {
+			Streams.closeIO(frameReader);
+		}
+		if (outputStream != null) {
+			Streams.closeIO(outputStream);
+		}
 		if (writer != null) {
 			Streams.closeIO(writer);
 		}
+		if (compressedOutput != null) {
+			Streams.closeIO(compressedOutput);
+		}
+		if (inputStream != null) {
+			Streams.closeIO(inputStream);
+		}
 	}
 }
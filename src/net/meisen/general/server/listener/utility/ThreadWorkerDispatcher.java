@@ -0,0 +1,56 @@
+package net.meisen.general.server.listener.utility;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The default <code>WorkerDispatcher</code> which executes each worker within
+ * its own daemon-<code>Thread</code>, i.e. a thread is created for each
+ * connection and ends with it.
+ *
+ * @author pmeisen
+ *
+ */
+public class ThreadWorkerDispatcher extends ExecutorWorkerDispatcher {
+	private final ExecutorService executor;
+
+	/**
+	 * Default constructor.
+	 */
+	public ThreadWorkerDispatcher() {
+		this("Worker");
+	}
+
+	/**
+	 * Creates a dispatcher which names the threads using the specified
+	 * <code>name</code> as prefix.
+	 *
+	 * @param name
+	 *            the name used as prefix for the threads
+	 */
+	public ThreadWorkerDispatcher(final String name) {
+		final AtomicInteger counter = new AtomicInteger(0);
+
+		this.executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0,
+				TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(),
+				new ThreadFactory() {
+
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread t = new Thread(r, name + "-"
+								+ counter.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	@Override
+	protected ExecutorService getExecutor() {
+		return executor;
+	}
+}
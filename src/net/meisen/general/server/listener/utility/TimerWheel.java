@@ -0,0 +1,288 @@
+package net.meisen.general.server.listener.utility;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timer wheel, i.e. a timer which executes tasks after a delay with
+ * a precision of one tick. The scheduled tasks are hashed into the buckets of
+ * a wheel, which is advanced by a single thread once per tick, so that
+ * scheduling and cancelling are <code>O(1)</code>. The timer is meant for a
+ * huge amount of short tasks, which are most likely cancelled or rescheduled
+ * before they are executed, e.g. the timeouts of connections.<br/>
+ * <br/>
+ * The tasks are executed by the thread of the timer, i.e. a task should not
+ * block.
+ *
+ * @author pmeisen
+ *
+ */
+public class TimerWheel {
+	private final static Logger LOG = LoggerFactory.getLogger(TimerWheel.class);
+
+	private static TimerWheel defaultTimerWheel = null;
+	private static int defaultReferences = 0;
+
+	private final long tickDuration;
+	private final List<Queue<Timeout>> wheel;
+	private final int mask;
+	private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<Timeout>();
+	private final Thread thread;
+
+	private volatile boolean running = true;
+	private long tick = 0;
+	private long startTime;
+
+	/**
+	 * Creates a timer with the specified settings and starts it.
+	 *
+	 * @param name
+	 *            the name of the thread of the timer
+	 * @param tickDuration
+	 *            the duration of a tick in milliseconds, i.e. the precision of
+	 *            the timer
+	 * @param wheelSize
+	 *            the amount of buckets of the wheel, is rounded up to the next
+	 *            power of two
+	 */
+	public TimerWheel(final String name, final long tickDuration,
+			final int wheelSize) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException(
+					"The tickDuration must be positive.");
+		} else if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+			throw new IllegalArgumentException(
+					"The wheelSize must be positive and less than 2^30.");
+		}
+
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+
+		this.tickDuration = tickDuration;
+		this.wheel = new ArrayList<Queue<Timeout>>(size);
+		for (int i = 0; i < size; i++) {
+			this.wheel.add(new LinkedList<Timeout>());
+		}
+		this.mask = size - 1;
+
+		this.startTime = System.currentTimeMillis();
+		this.thread = new Thread(name) {
+
+			@Override
+			public void run() {
+				TimerWheel.this.run();
+			}
+		};
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Gets the timer shared by all the listeners. The timer uses a tick of
+	 * <code>100ms</code> and is created on the first call.
+	 *
+	 * @return the timer shared by all the listeners
+	 */
+	public static synchronized TimerWheel getDefault() {
+		if (defaultTimerWheel == null || !defaultTimerWheel.running) {
+			defaultTimerWheel = new TimerWheel("TimerWheel", 100, 512);
+		}
+
+		return defaultTimerWheel;
+	}
+
+	/**
+	 * Gets the timer shared by all the listeners and registers a reference
+	 * to it. The timer is stopped when the last reference is released by
+	 * {@link #releaseDefault()}.
+	 *
+	 * @return the timer shared by all the listeners
+	 *
+	 * @see #getDefault()
+	 */
+	public static synchronized TimerWheel acquireDefault() {
+		final TimerWheel timerWheel = getDefault();
+		defaultReferences++;
+
+		return timerWheel;
+	}
+
+	/**
+	 * Releases a reference acquired by {@link #acquireDefault()}. The shared
+	 * timer is stopped if no reference is left, i.e. its thread ends.
+	 */
+	public static synchronized void releaseDefault() {
+		if (defaultReferences > 0 && --defaultReferences == 0
+				&& defaultTimerWheel != null) {
+			defaultTimerWheel.stop();
+			defaultTimerWheel = null;
+		}
+	}
+
+	/**
+	 * Schedules the specified <code>task</code> to be executed after the
+	 * specified <code>delay</code>.
+	 *
+	 * @param task
+	 *            the task to be executed
+	 * @param delay
+	 *            the delay in milliseconds
+	 *
+	 * @return the <code>Timeout</code> which can be used to cancel the
+	 *         execution
+	 */
+	public Timeout schedule(final Runnable task, final long delay) {
+		if (!running) {
+			throw new IllegalStateException("The timer is already stopped.");
+		}
+
+		final Timeout timeout = new Timeout(task, System.currentTimeMillis()
+				+ Math.max(0, delay));
+		scheduled.add(timeout);
+
+		return timeout;
+	}
+
+	/**
+	 * Stops the timer, tasks not executed yet are discarded.
+	 */
+	public void stop() {
+		running = false;
+		thread.interrupt();
+	}
+
+	/**
+	 * Checks if the timer is running.
+	 *
+	 * @return <code>true</code> if the timer is running, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Gets the duration of a tick in milliseconds.
+	 *
+	 * @return the duration of a tick in milliseconds
+	 */
+	public long getTickDuration() {
+		return tickDuration;
+	}
+
+	/**
+	 * The loop of the timer's thread.
+	 */
+	protected void run() {
+		while (running) {
+
+			// wait for the next tick
+			final long deadline = startTime + (tick + 1) * tickDuration;
+			final long sleep = deadline - System.currentTimeMillis();
+			if (sleep > 0) {
+				try {
+					Thread.sleep(sleep);
+				} catch (final InterruptedException e) {
+					continue;
+				}
+			}
+
+			transferScheduled();
+			expire(wheel.get((int) (tick & mask)), deadline);
+
+			tick++;
+		}
+
+		// release everything
+		scheduled.clear();
+		for (final Queue<Timeout> bucket : wheel) {
+			bucket.clear();
+		}
+	}
+
+	private void transferScheduled() {
+		Timeout timeout;
+		while ((timeout = scheduled.poll()) != null) {
+			if (timeout.isCancelled()) {
+				continue;
+			}
+
+			// determine the tick to execute the timeout at (never the past)
+			final long ticks = Math.max(tick, (timeout.deadline - startTime)
+					/ tickDuration);
+			timeout.rounds = (ticks - tick) / wheel.size();
+			wheel.get((int) (ticks & mask)).add(timeout);
+		}
+	}
+
+	private void expire(final Queue<Timeout> bucket, final long deadline) {
+		final Iterator<Timeout> it = bucket.iterator();
+		while (it.hasNext()) {
+			final Timeout timeout = it.next();
+
+			if (timeout.isCancelled()) {
+				it.remove();
+			} else if (timeout.rounds > 0) {
+				timeout.rounds--;
+			} else if (timeout.deadline <= deadline) {
+				it.remove();
+				timeout.expire();
+			}
+		}
+	}
+
+	/**
+	 * A task scheduled by the <code>TimerWheel</code>.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	public static class Timeout {
+		private final Runnable task;
+		private final long deadline;
+
+		private volatile boolean cancelled = false;
+		private long rounds = 0;
+
+		private Timeout(final Runnable task, final long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancels the execution of the task.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * Checks if the task was cancelled.
+		 *
+		 * @return <code>true</code> if the task was cancelled, otherwise
+		 *         <code>false</code>
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		private void expire() {
+			try {
+				task.run();
+			} catch (final RuntimeException e) {
+				if (LOG.isErrorEnabled()) {
+					LOG.error("Error while executing a timed task.", e);
+				}
+			}
+		}
+	}
+}
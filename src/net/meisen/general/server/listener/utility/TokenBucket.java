@@ -0,0 +1,76 @@
+package net.meisen.general.server.listener.utility;
+
+/**
+ * A token-bucket, i.e. a bucket which is refilled with <code>rate</code>
+ * tokens per second up to its <code>capacity</code>. Each event takes one
+ * token, if the bucket is empty the event exceeds the rate. The capacity
+ * defines the burst, i.e. how many events are allowed at once.
+ *
+ * @author pmeisen
+ *
+ */
+public class TokenBucket {
+	private final double rate;
+	private final double capacity;
+
+	private double tokens;
+	private long lastRefill;
+
+	/**
+	 * Creates a full bucket.
+	 *
+	 * @param rate
+	 *            the amount of tokens added per second
+	 * @param capacity
+	 *            the maximal amount of tokens
+	 */
+	public TokenBucket(final double rate, final double capacity) {
+		if (rate <= 0 || capacity < 1) {
+			throw new IllegalArgumentException(
+					"The rate must be positive and the capacity at least 1.");
+		}
+
+		this.rate = rate;
+		this.capacity = capacity;
+		this.tokens = capacity;
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * Takes a token from the bucket, if one is available.
+	 *
+	 * @return <code>true</code> if a token was taken, <code>false</code> if
+	 *         the bucket is empty, i.e. the rate is exceeded
+	 */
+	public synchronized boolean tryAcquire() {
+		refill();
+
+		if (tokens >= 1.0) {
+			tokens -= 1.0;
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Gets the amount of tokens currently available.
+	 *
+	 * @return the amount of tokens currently available
+	 */
+	public synchronized double getTokens() {
+		refill();
+
+		return tokens;
+	}
+
+	private void refill() {
+		final long now = System.nanoTime();
+		final long elapsed = now - lastRefill;
+
+		if (elapsed > 0) {
+			tokens = Math.min(capacity, tokens + elapsed * rate / 1e9);
+			lastRefill = now;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package net.meisen.general.server.listener.utility;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A <code>WorkerDispatcher</code> which executes each worker within its own
+ * virtual thread, i.e. the blocking reads and writes of the worker do not
+ * occupy a platform thread while waiting. Virtual threads are available
+ * starting with Java 21, the dispatcher uses reflection so that the library
+ * can still be used with older versions, see {@link #isSupported()}.
+ *
+ * @author pmeisen
+ *
+ */
+public class VirtualWorkerDispatcher extends ExecutorWorkerDispatcher {
+	private final static Method OF_VIRTUAL;
+	private final static Method NAME;
+	private final static Method FACTORY;
+	private final static Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method factory = null;
+		Method newThreadPerTaskExecutor = null;
+
+		try {
+			final Class<?> builderClazz = Class
+					.forName("java.lang.Thread$Builder");
+
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			name = builderClazz.getMethod("name", String.class, long.class);
+			factory = builderClazz.getMethod("factory");
+			newThreadPerTaskExecutor = Executors.class.getMethod(
+					"newThreadPerTaskExecutor", ThreadFactory.class);
+		} catch (final Exception e) {
+			ofVirtual = null;
+		}
+
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		FACTORY = factory;
+		NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+	}
+
+	private final ExecutorService executor;
+
+	/**
+	 * Creates a dispatcher which names the virtual threads using the
+	 * specified <code>name</code> as prefix.
+	 *
+	 * @param name
+	 *            the name used as prefix for the virtual threads
+	 *
+	 * @throws UnsupportedOperationException
+	 *             if the JVM does not support virtual threads
+	 */
+	public VirtualWorkerDispatcher(final String name) {
+		if (!isSupported()) {
+			throw new UnsupportedOperationException(
+					"Virtual threads are not supported by the used JVM ("
+							+ System.getProperty("java.version") + ").");
+		}
+
+		try {
+			final Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name
+					+ "-", 1L);
+			final ThreadFactory factory = (ThreadFactory) FACTORY
+					.invoke(builder);
+
+			this.executor = (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR
+					.invoke(null, factory);
+		} catch (final Exception e) {
+			throw new UnsupportedOperationException(
+					"Unable to create the virtual threads executor.", e);
+		}
+	}
+
+	/**
+	 * Checks if the used JVM supports virtual threads.
+	 *
+	 * @return <code>true</code> if virtual threads are supported, otherwise
+	 *         <code>false</code>
+	 */
+	public static boolean isSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	@Override
+	protected ExecutorService getExecutor() {
+		return executor;
+	}
+}
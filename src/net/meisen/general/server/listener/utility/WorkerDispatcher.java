@@ -0,0 +1,107 @@
+package net.meisen.general.server.listener.utility;
+
+/**
+ * A <code>WorkerDispatcher</code> defines how the worker created for an
+ * accepted connection (see
+ * {@link AcceptListenerThread#createWorkerThread(java.net.Socket)}) is
+ * executed, e.g. by starting it as own <code>Thread</code> or by passing it to
+ * a pool of threads.
+ *
+ * @author pmeisen
+ *
+ * @see ThreadWorkerDispatcher
+ * @see PooledWorkerDispatcher
+ *
+ */
+public abstract class WorkerDispatcher {
+	private ConnectionRegistry connectionRegistry = null;
+
+	/**
+	 * Sets the <code>ConnectionRegistry</code> the workers are removed from
+	 * when they are finished.
+	 *
+	 * @param connectionRegistry
+	 *            the <code>ConnectionRegistry</code> to be informed, can be
+	 *            <code>null</code>
+	 */
+	public void setConnectionRegistry(
+			final ConnectionRegistry connectionRegistry) {
+		this.connectionRegistry = connectionRegistry;
+	}
+
+	/**
+	 * Must be called by the concrete implementation whenever a worker is
+	 * finished (or will never be executed), so that the worker is removed
+	 * from the <code>ConnectionRegistry</code>.
+	 *
+	 * @param worker
+	 *            the finished worker
+	 */
+	protected void exited(final Thread worker) {
+		final ConnectionRegistry registry = connectionRegistry;
+
+		if (registry != null) {
+			registry.deregister(worker);
+		}
+	}
+
+	/**
+	 * Executes the specified <code>worker</code>.
+	 *
+	 * @param worker
+	 *            the worker to be executed
+	 */
+	public abstract void dispatch(final Thread worker);
+
+	/**
+	 * Checks if the specified <code>worker</code> is still running or waiting
+	 * to be executed.
+	 *
+	 * @param worker
+	 *            the worker to be checked
+	 *
+	 * @return <code>true</code> if the worker is still running or waiting,
+	 *         otherwise <code>false</code>
+	 */
+	public abstract boolean isRunning(final Thread worker);
+
+	/**
+	 * Interrupts the execution of the specified <code>worker</code>.
+	 *
+	 * @param worker
+	 *            the worker to be interrupted
+	 */
+	public abstract void interrupt(final Thread worker);
+
+	/**
+	 * Waits at most <code>millis</code> milliseconds for the specified
+	 * <code>worker</code> to finish.
+	 *
+	 * @param worker
+	 *            the worker to wait for
+	 * @param millis
+	 *            the time to wait in milliseconds
+	 *
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting
+	 */
+	public abstract void join(final Thread worker, final long millis)
+			throws InterruptedException;
+
+	/**
+	 * Gets the amount of workers which are dispatched, but not executed yet.
+	 *
+	 * @return the amount of waiting workers
+	 */
+	public int getPendingCount() {
+		return 0;
+	}
+
+	/**
+	 * Releases all the resources used by the dispatcher, i.e. no other worker
+	 * can be dispatched afterwards.
+	 */
+	public void shutdown() {
+		// nothing to do by default
+	}
+}
@@ -0,0 +1,62 @@
+package net.meisen.general.server.listener.utility;
+
+/**
+ * The different modes available to handle the connections accepted by a
+ * listener. The mode is selected per <code>Connector</code> using the
+ * <code>worker</code> extension, e.g.:
+ *
+ * <pre>
+ * &lt;ed:extension&gt;
+ *   &lt;worker mode="selector" /&gt;
+ * &lt;/ed:extension&gt;
+ * </pre>
+ *
+ * @author pmeisen
+ *
+ */
+public enum WorkerMode {
+	/**
+	 * Each accepted connection is handled by its own <code>Thread</code>, see
+	 * <code>AcceptListenerThread</code>.
+	 */
+	THREAD,
+	/**
+	 * All connections are accepted and read by a single event-loop based on a
+	 * <code>Selector</code>, see <code>SelectorListenerThread</code>.
+	 */
+	SELECTOR,
+	/**
+	 * Each accepted connection is handled by a thread of a bounded pool, see
+	 * <code>PooledWorkerDispatcher</code>.
+	 */
+	POOL,
+	/**
+	 * Each accepted connection is handled by its own virtual thread (requires
+	 * Java 21 or later), see <code>VirtualWorkerDispatcher</code>.
+	 */
+	VIRTUAL;
+
+	/**
+	 * Determines the <code>WorkerMode</code> specified by the passed
+	 * <code>value</code>. The value is compared case-insensitive.
+	 *
+	 * @param value
+	 *            the value to determine the <code>WorkerMode</code> for
+	 *
+	 * @return the <code>WorkerMode</code> or <code>null</code> if no mode is
+	 *         associated to the value
+	 */
+	public static WorkerMode find(final String value) {
+		if (value == null) {
+			return null;
+		}
+
+		for (final WorkerMode mode : WorkerMode.values()) {
+			if (mode.name().equalsIgnoreCase(value.trim())) {
+				return mode;
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,699 @@
+package net.meisen.general.server.listener.utility;
+
+import java.nio.charset.Charset;
+
+import net.meisen.general.server.listener.codec.CodecSettings;
+import net.meisen.general.server.listener.utility.PooledWorkerDispatcher.RejectionPolicy;
+
+/**
+ * The settings of the workers of a listener, i.e. the <code>WorkerMode</code>
+ * and the settings specific for the mode. The settings are defined per
+ * <code>Connector</code> using the <code>worker</code> extension, e.g.:
+ *
+ * <pre>
+ * &lt;ed:extension&gt;
+ *   &lt;worker mode="pool" core="4" max="64" queue="256" rejection="close" /&gt;
+ * &lt;/ed:extension&gt;
+ * </pre>
+ *
+ * Using <code>acceptors</code> several threads accept the connections of the
+ * port. If supported, each acceptor binds its own socket using
+ * <code>SO_REUSEPORT</code>, otherwise the acceptors share one socket. Each
+ * acceptor uses its own workers, i.e. the pool-settings and the limits of the
+ * admission-control apply per acceptor.<br/>
+ * <br/>
+ * Setting <code>pipelined="true"</code> lets the default worker handle all
+ * the lines already received (at most <code>pipelineLimit</code>) before the
+ * answers are flushed at once, i.e. clients pipelining requests need less
+ * system-calls and round-trips.<br/>
+ * <br/>
+ * Setting <code>async="true"</code> passes the requests to
+ * <code>handleInputAsync</code>, i.e. the answers are written (in the order of
+ * the requests) when completed and at most <code>maxInFlight</code> requests
+ * of a connection are handled concurrently.<br/>
+ * <br/>
+ * Setting <code>framing="length"</code> reads length-prefixed binary frames
+ * (of at most <code>maxFrameSize</code> bytes) instead of lines, see
+ * {@link Framing}. With <code>pooled="true"</code> the frames of a connection
+ * are read into a reused buffer. Using <code>framing="tagged"</code> each
+ * line is prefixed by a request-id, the requests are handled concurrently (at
+ * most <code>maxInFlight</code> per connection, by at most
+ * <code>requestThreads</code> threads per listener) and the tagged answers are
+ * written in the order of their completion.<br/>
+ * <br/>
+ * Lines exceeding <code>maxLineLength</code> bytes (<code>0</code> for no
+ * limit) are never read completely into memory, instead the
+ * {@link OversizePolicy} defined by <code>oversize</code> is applied, i.e.
+ * the line is answered with the <code>oversizeMessage</code> or streamed in
+ * chunks to the listener.<br/>
+ * <br/>
+ * Setting <code>compression="true"</code> lets clients request a
+ * <code>DEFLATE</code> compressed connection with their first line (see
+ * {@link Compression}), the data is compressed using the
+ * <code>compressionLevel</code>. The compression is not supported by the
+ * {@link WorkerMode#SELECTOR}.
+ *
+ * @author pmeisen
+ *
+ */
+public class WorkerSettings {
+	private WorkerMode mode = WorkerMode.THREAD;
+
+	private int poolCoreSize = Runtime.getRuntime().availableProcessors();
+	private int poolMaxSize = 4 * Runtime.getRuntime().availableProcessors();
+	private int poolQueueSize = 1000;
+	private long poolKeepAlive = 60000;
+	private RejectionPolicy poolRejectionPolicy = RejectionPolicy.CLOSE;
+
+	private long shutdownTimeout = 2000;
+	private int acceptors = 1;
+	private long idleTimeout = 0;
+	private long readTimeout = 0;
+	private Charset charset = Charset.defaultCharset();
+	private boolean pipelined = false;
+	private int pipelineLimit = 256;
+	private boolean async = false;
+	private int maxInFlight = 16;
+	private int requestThreads = 4 * Runtime.getRuntime()
+			.availableProcessors();
+	private Framing framing = Framing.LINE;
+	private int maxFrameSize = FrameReader.DEFAULT_MAX_FRAME_SIZE;
+	private boolean pooled = false;
+	private int maxLineLength = LineFramer.DEFAULT_MAX_LINE_LENGTH;
+	private OversizePolicy oversizePolicy = OversizePolicy.REJECT;
+	private String oversizeMessage = "LINE TOO LONG";
+	private boolean compression = false;
+	private int compressionLevel = -1;
+
+	/**
+	 * Gets the <code>WorkerMode</code> to be used.
+	 *
+	 * @return the <code>WorkerMode</code> to be used
+	 */
+	public WorkerMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Sets the <code>WorkerMode</code> to be used.
+	 *
+	 * @param mode
+	 *            the <code>WorkerMode</code> to be used
+	 */
+	public void setMode(final WorkerMode mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Gets the amount of threads kept within the pool, only used if the mode
+	 * is {@link WorkerMode#POOL}.
+	 *
+	 * @return the amount of threads kept within the pool
+	 */
+	public int getPoolCoreSize() {
+		return poolCoreSize;
+	}
+
+	/**
+	 * Sets the amount of threads kept within the pool.
+	 *
+	 * @param poolCoreSize
+	 *            the amount of threads kept within the pool
+	 */
+	public void setPoolCoreSize(final int poolCoreSize) {
+		this.poolCoreSize = poolCoreSize;
+	}
+
+	/**
+	 * Gets the maximal amount of threads of the pool, only used if the mode is
+	 * {@link WorkerMode#POOL}.
+	 *
+	 * @return the maximal amount of threads of the pool
+	 */
+	public int getPoolMaxSize() {
+		return poolMaxSize;
+	}
+
+	/**
+	 * Sets the maximal amount of threads of the pool.
+	 *
+	 * @param poolMaxSize
+	 *            the maximal amount of threads of the pool
+	 */
+	public void setPoolMaxSize(final int poolMaxSize) {
+		this.poolMaxSize = poolMaxSize;
+	}
+
+	/**
+	 * Gets the maximal amount of connections waiting for a thread of the pool,
+	 * only used if the mode is {@link WorkerMode#POOL}.
+	 *
+	 * @return the maximal amount of waiting connections
+	 */
+	public int getPoolQueueSize() {
+		return poolQueueSize;
+	}
+
+	/**
+	 * Sets the maximal amount of connections waiting for a thread of the pool.
+	 *
+	 * @param poolQueueSize
+	 *            the maximal amount of waiting connections
+	 */
+	public void setPoolQueueSize(final int poolQueueSize) {
+		this.poolQueueSize = poolQueueSize;
+	}
+
+	/**
+	 * Gets the time in milliseconds an idle thread exceeding the core-size is
+	 * kept, only used if the mode is {@link WorkerMode#POOL}.
+	 *
+	 * @return the time in milliseconds an idle thread is kept
+	 */
+	public long getPoolKeepAlive() {
+		return poolKeepAlive;
+	}
+
+	/**
+	 * Sets the time in milliseconds an idle thread exceeding the core-size is
+	 * kept.
+	 *
+	 * @param poolKeepAlive
+	 *            the time in milliseconds an idle thread is kept
+	 */
+	public void setPoolKeepAlive(final long poolKeepAlive) {
+		this.poolKeepAlive = poolKeepAlive;
+	}
+
+	/**
+	 * Gets the <code>RejectionPolicy</code> applied if the pool is exhausted,
+	 * only used if the mode is {@link WorkerMode#POOL}.
+	 *
+	 * @return the <code>RejectionPolicy</code> applied if the pool is
+	 *         exhausted
+	 */
+	public RejectionPolicy getPoolRejectionPolicy() {
+		return poolRejectionPolicy;
+	}
+
+	/**
+	 * Sets the <code>RejectionPolicy</code> applied if the pool is exhausted.
+	 *
+	 * @param poolRejectionPolicy
+	 *            the <code>RejectionPolicy</code> to be applied
+	 */
+	public void setPoolRejectionPolicy(
+			final RejectionPolicy poolRejectionPolicy) {
+		this.poolRejectionPolicy = poolRejectionPolicy;
+	}
+
+	/**
+	 * Gets the time in milliseconds the closing of the listener waits (in
+	 * total) for the workers to finish.
+	 *
+	 * @return the time in milliseconds to wait for the workers on close
+	 */
+	public long getShutdownTimeout() {
+		return shutdownTimeout;
+	}
+
+	/**
+	 * Sets the time in milliseconds the closing of the listener waits (in
+	 * total) for the workers to finish.
+	 *
+	 * @param shutdownTimeout
+	 *            the time in milliseconds to wait for the workers on close
+	 */
+	public void setShutdownTimeout(final long shutdownTimeout) {
+		this.shutdownTimeout = shutdownTimeout;
+	}
+
+	/**
+	 * Gets the amount of threads accepting the connections.
+	 *
+	 * @return the amount of threads accepting the connections
+	 */
+	public int getAcceptors() {
+		return acceptors;
+	}
+
+	/**
+	 * Sets the amount of threads accepting the connections.
+	 *
+	 * @param acceptors
+	 *            the amount of threads accepting the connections
+	 */
+	public void setAcceptors(final int acceptors) {
+		this.acceptors = acceptors;
+	}
+
+	/**
+	 * Gets the time in milliseconds after which an idle connection is
+	 * closed.
+	 *
+	 * @return the idle-timeout in milliseconds, <code>0</code> if idle
+	 *         connections are not closed
+	 *
+	 * @see IdleReaper
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Sets the time in milliseconds after which an idle connection is
+	 * closed.
+	 *
+	 * @param idleTimeout
+	 *            the idle-timeout in milliseconds, <code>0</code> if idle
+	 *            connections should not be closed
+	 */
+	public void setIdleTimeout(final long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Gets the time in milliseconds a started request must be received
+	 * completely, otherwise the connection is closed.
+	 *
+	 * @return the read-timeout in milliseconds, <code>0</code> if no timeout
+	 *         is applied
+	 *
+	 * @see IdleReaper
+	 */
+	public long getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * Sets the time in milliseconds a started request must be received
+	 * completely, otherwise the connection is closed.
+	 *
+	 * @param readTimeout
+	 *            the read-timeout in milliseconds, <code>0</code> if no
+	 *            timeout should be applied
+	 */
+	public void setReadTimeout(final long readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Gets the <code>Charset</code> used to read the requests and write the
+	 * answers.
+	 *
+	 * @return the <code>Charset</code> used to read and write
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Sets the <code>Charset</code> used to read the requests and write the
+	 * answers. The lines are split at the bytes of the terminators, i.e. the
+	 * <code>Charset</code> must be ASCII-compatible (see
+	 * {@link LineFramer#isAsciiCompatible(Charset)}).
+	 *
+	 * @param charset
+	 *            the <code>Charset</code> used to read and write
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the <code>Charset</code> isn't ASCII-compatible
+	 */
+	public void setCharset(final Charset charset) {
+		if (charset != null && !LineFramer.isAsciiCompatible(charset)) {
+			throw new IllegalArgumentException("The charset '" + charset
+					+ "' isn't ASCII-compatible.");
+		}
+		this.charset = charset;
+	}
+
+	/**
+	 * Checks if the workers process the requests pipelined, i.e. handle all
+	 * the lines already received and write the answers with a single flush.
+	 *
+	 * @return <code>true</code> if the requests are processed pipelined,
+	 *         otherwise <code>false</code>
+	 */
+	public boolean isPipelined() {
+		return pipelined;
+	}
+
+	/**
+	 * Defines if the workers process the requests pipelined, i.e. handle all
+	 * the lines already received and write the answers with a single flush.
+	 *
+	 * @param pipelined
+	 *            <code>true</code> if the requests should be processed
+	 *            pipelined, otherwise <code>false</code>
+	 */
+	public void setPipelined(final boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+
+	/**
+	 * Gets the maximal amount of answers written with a single flush, if the
+	 * requests are processed pipelined.
+	 *
+	 * @return the maximal amount of answers written with a single flush
+	 */
+	public int getPipelineLimit() {
+		return pipelineLimit;
+	}
+
+	/**
+	 * Sets the maximal amount of answers written with a single flush, if the
+	 * requests are processed pipelined.
+	 *
+	 * @param pipelineLimit
+	 *            the maximal amount of answers written with a single flush
+	 */
+	public void setPipelineLimit(final int pipelineLimit) {
+		this.pipelineLimit = pipelineLimit;
+	}
+
+	/**
+	 * Checks if the requests are handled asynchronously. The requests of the
+	 * {@link Framing#TAGGED} framing are handled asynchronously regardless of
+	 * this setting.
+	 *
+	 * @return <code>true</code> if the requests are handled asynchronously,
+	 *         otherwise <code>false</code>
+	 */
+	public boolean isAsync() {
+		return async;
+	}
+
+	/**
+	 * Defines if the requests are handled asynchronously.
+	 *
+	 * @param async
+	 *            <code>true</code> if the requests should be handled
+	 *            asynchronously, otherwise <code>false</code>
+	 */
+	public void setAsync(final boolean async) {
+		this.async = async;
+	}
+
+	/**
+	 * Gets the maximal amount of requests of a connection handled
+	 * asynchronously at the same time.
+	 *
+	 * @return the maximal amount of requests in-flight per connection
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * Sets the maximal amount of requests of a connection handled
+	 * asynchronously at the same time.
+	 *
+	 * @param maxInFlight
+	 *            the maximal amount of requests in-flight per connection
+	 */
+	public void setMaxInFlight(final int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Gets the maximal amount of threads handling the tagged requests of all
+	 * the connections of the listener.
+	 *
+	 * @return the maximal amount of threads handling the tagged requests
+	 */
+	public int getRequestThreads() {
+		return requestThreads;
+	}
+
+	/**
+	 * Sets the maximal amount of threads handling the tagged requests of all
+	 * the connections of the listener. Further requests are queued until a
+	 * thread is available.
+	 *
+	 * @param requestThreads
+	 *            the maximal amount of threads handling the tagged requests
+	 */
+	public void setRequestThreads(final int requestThreads) {
+		this.requestThreads = requestThreads;
+	}
+
+	/**
+	 * Gets the <code>Framing</code> used to split the received data into
+	 * requests.
+	 *
+	 * @return the <code>Framing</code> used
+	 */
+	public Framing getFraming() {
+		return framing;
+	}
+
+	/**
+	 * Sets the <code>Framing</code> used to split the received data into
+	 * requests.
+	 *
+	 * @param framing
+	 *            the <code>Framing</code> to be used
+	 */
+	public void setFraming(final Framing framing) {
+		this.framing = framing;
+	}
+
+	/**
+	 * Gets the maximal size of a frame, if {@link Framing#LENGTH} is used.
+	 *
+	 * @return the maximal size of a frame in bytes
+	 */
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+
+	/**
+	 * Sets the maximal size of a frame, if {@link Framing#LENGTH} is used.
+	 *
+	 * @param maxFrameSize
+	 *            the maximal size of a frame in bytes
+	 */
+	public void setMaxFrameSize(final int maxFrameSize) {
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	/**
+	 * Checks if the frames of a connection are read into a reused buffer.
+	 *
+	 * @return <code>true</code> if the frames are read into a reused buffer,
+	 *         otherwise <code>false</code>
+	 */
+	public boolean isPooled() {
+		return pooled;
+	}
+
+	/**
+	 * Defines if the frames of a connection are read into a reused buffer.
+	 *
+	 * @param pooled
+	 *            <code>true</code> if the frames should be read into a reused
+	 *            buffer, otherwise <code>false</code>
+	 */
+	public void setPooled(final boolean pooled) {
+		this.pooled = pooled;
+	}
+
+	/**
+	 * Gets the maximal length of a line, if {@link Framing#LINE} is used.
+	 *
+	 * @return the maximal length of a line in bytes, <code>0</code> if the
+	 *         length is not limited
+	 */
+	public int getMaxLineLength() {
+		return maxLineLength;
+	}
+
+	/**
+	 * Sets the maximal length of a line, if {@link Framing#LINE} is used.
+	 *
+	 * @param maxLineLength
+	 *            the maximal length of a line in bytes, <code>0</code> if the
+	 *            length should not be limited
+	 */
+	public void setMaxLineLength(final int maxLineLength) {
+		this.maxLineLength = maxLineLength;
+	}
+
+	/**
+	 * Gets the <code>OversizePolicy</code> applied to lines exceeding the
+	 * maximal length.
+	 *
+	 * @return the <code>OversizePolicy</code> applied
+	 */
+	public OversizePolicy getOversizePolicy() {
+		return oversizePolicy;
+	}
+
+	/**
+	 * Sets the <code>OversizePolicy</code> applied to lines exceeding the
+	 * maximal length.
+	 *
+	 * @param oversizePolicy
+	 *            the <code>OversizePolicy</code> to be applied
+	 */
+	public void setOversizePolicy(final OversizePolicy oversizePolicy) {
+		this.oversizePolicy = oversizePolicy;
+	}
+
+	/**
+	 * Gets the message answering a line rejected because of its length.
+	 *
+	 * @return the message answering a rejected line
+	 *
+	 * @see OversizePolicy#REJECT
+	 */
+	public String getOversizeMessage() {
+		return oversizeMessage;
+	}
+
+	/**
+	 * Sets the message answering a line rejected because of its length.
+	 *
+	 * @param oversizeMessage
+	 *            the message answering a rejected line
+	 */
+	public void setOversizeMessage(final String oversizeMessage) {
+		this.oversizeMessage = oversizeMessage;
+	}
+
+	/**
+	 * Checks if the clients can request a compressed connection.
+	 *
+	 * @return <code>true</code> if the compression can be requested,
+	 *         otherwise <code>false</code>
+	 */
+	public boolean isCompression() {
+		return compression;
+	}
+
+	/**
+	 * Defines if the clients can request a compressed connection.
+	 *
+	 * @param compression
+	 *            <code>true</code> if the compression can be requested,
+	 *            otherwise <code>false</code>
+	 */
+	public void setCompression(final boolean compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * Gets the level used to compress the data of a compressed connection.
+	 *
+	 * @return the level used to compress the data, <code>-1</code> for the
+	 *         default level
+	 */
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * Sets the level used to compress the data of a compressed connection.
+	 *
+	 * @param compressionLevel
+	 *            the level (<code>0-9</code>) used to compress the data,
+	 *            <code>-1</code> for the default level
+	 */
+	public void setCompressionLevel(final int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * Creates the <code>IdleReaper</code> defined by the settings.
+	 *
+	 * @return the created <code>IdleReaper</code>, <code>null</code> if no
+	 *         timeout is defined
+	 */
+	public IdleReaper createIdleReaper() {
+		if (idleTimeout > 0 || readTimeout > 0) {
+			return new IdleReaper(idleTimeout, readTimeout);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the <code>CodecSettings</code> expressing the
+	 * <code>Framing</code> of the settings, i.e. the stages splitting the data
+	 * of a connection into frames if no codec-pipeline is defined.
+	 *
+	 * @return the created <code>CodecSettings</code>
+	 *
+	 * @see CodecSettings#forFraming(Framing, Charset, int, boolean)
+	 */
+	public CodecSettings createCodecSettings() {
+		return CodecSettings.forFraming(framing, charset,
+				Framing.LENGTH.equals(framing) ? maxFrameSize : maxLineLength,
+				pooled);
+	}
+
+	/**
+	 * Checks if the settings are valid, i.e. can be used to create a
+	 * <code>WorkerDispatcher</code>.
+	 *
+	 * @return <code>true</code> if the settings are valid, otherwise
+	 *         <code>false</code>
+	 */
+	public boolean isValid() {
+		if (shutdownTimeout < 0 || acceptors < 1 || idleTimeout < 0
+				|| readTimeout < 0 || charset == null
+				|| !LineFramer.isAsciiCompatible(charset) || pipelineLimit < 1
+				|| maxInFlight < 1 || requestThreads < 1 || framing == null
+				|| maxFrameSize < 0 || maxLineLength < 0 || oversizePolicy == null
+				|| compressionLevel < -1 || compressionLevel > 9) {
+			return false;
+		} else if (compression && WorkerMode.SELECTOR.equals(mode)) {
+			return false;
+		} else if (async && Framing.LENGTH.equals(framing)) {
+			return false;
+		} else if ((async || Framing.TAGGED.equals(framing))
+				&& OversizePolicy.STREAM.equals(oversizePolicy)) {
+			return false;
+		} else if (WorkerMode.VIRTUAL.equals(mode)) {
+			return VirtualWorkerDispatcher.isSupported();
+		} else if (!WorkerMode.POOL.equals(mode)) {
+			return true;
+		}
+
+		return poolCoreSize >= 0 && poolMaxSize > 0
+				&& poolMaxSize >= poolCoreSize && poolQueueSize > 0
+				&& poolKeepAlive >= 0 && poolRejectionPolicy != null;
+	}
+
+	/**
+	 * Creates the <code>WorkerDispatcher</code> defined by the settings.
+	 *
+	 * @param name
+	 *            the name of the listener the dispatcher is created for
+	 *
+	 * @return the created <code>WorkerDispatcher</code>
+	 */
+	public WorkerDispatcher createDispatcher(final String name) {
+		if (WorkerMode.POOL.equals(mode)) {
+			return new PooledWorkerDispatcher(name, poolCoreSize, poolMaxSize,
+					poolQueueSize, poolKeepAlive, poolRejectionPolicy);
+		} else if (WorkerMode.VIRTUAL.equals(mode)) {
+			return new VirtualWorkerDispatcher(name);
+		} else {
+			return new ThreadWorkerDispatcher(name);
+		}
+	}
+
+	@Override
+	public String toString() {
+		final String acceptorsInfo = acceptors == 1 ? "" : " x" + acceptors;
+
+		if (WorkerMode.POOL.equals(mode)) {
+			return mode + acceptorsInfo + " (core: " + poolCoreSize
+					+ ", max: " + poolMaxSize + ", queue: " + poolQueueSize
+					+ ", rejection: " + poolRejectionPolicy + ")";
+		} else {
+			return mode + acceptorsInfo;
+		}
+	}
+}
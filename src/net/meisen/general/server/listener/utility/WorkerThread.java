@@ -15,6 +15,10 @@ import java.net.Socket;
 public abstract class WorkerThread extends Thread implements Closeable {
 	private final Socket input;
 
+	private IdleReaper.Watch watch = null;
+	private RateLimiter rateLimiter = null;
+	private TokenBucket lineBucket = null;
+
 	/**
 	 * Default constructor of a <code>WorkerThread</code>.
 	 * 
@@ -42,11 +46,73 @@ public abstract class WorkerThread extends Thread implements Closeable {
 		return input;
 	}
 
+	/**
+	 * Lets the specified <code>IdleReaper</code> watch the connection of the
+	 * <code>WorkerThread</code>, i.e. the connection is closed if it's idle.
+	 * 
+	 * @param idleReaper
+	 *            the <code>IdleReaper</code> to watch the connection
+	 */
+	public void watch(final IdleReaper idleReaper) {
+		this.watch = idleReaper.watch(this);
+	}
+
+	/**
+	 * Gets the <code>Watch</code> of the connection, which has to be informed
+	 * about the activities on the connection.
+	 * 
+	 * @return the <code>Watch</code> of the connection, <code>null</code> if
+	 *         the connection is not watched
+	 */
+	protected IdleReaper.Watch getWatch() {
+		return watch;
+	}
+
+	/**
+	 * Lets the specified <code>RateLimiter</code> limit the lines handled by
+	 * the <code>WorkerThread</code>.
+	 * 
+	 * @param rateLimiter
+	 *            the <code>RateLimiter</code> to limit the lines
+	 * 
+	 * @see #acquireLine()
+	 */
+	public void limit(final RateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+		this.lineBucket = rateLimiter.createLineBucket();
+	}
+
+	/**
+	 * Gets the <code>RateLimiter</code> which limits the lines handled by the
+	 * <code>WorkerThread</code>.
+	 * 
+	 * @return the <code>RateLimiter</code>, <code>null</code> if the lines
+	 *         are not limited
+	 */
+	protected RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * Checks if another line can be handled, i.e. if the line-rate of the
+	 * connection is not exceeded.
+	 * 
+	 * @return <code>true</code> if the line can be handled, otherwise
+	 *         <code>false</code>
+	 */
+	protected boolean acquireLine() {
+		return rateLimiter == null || rateLimiter.acquireLine(lineBucket);
+	}
+
 	/**
 	 * Closes the socket bound to the thread.
 	 */
 	@Override
 	public void close() {
+		if (watch != null) {
+			watch.cancel();
+		}
+
 		final Socket input = getSocket();
 
 		if (input != null) {
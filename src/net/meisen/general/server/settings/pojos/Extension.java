@@ -228,4 +228,97 @@ public class Extension {
 		final T value = (T) properties.get(property);
 		return value;
 	}
+
+	/**
+	 * Gets the value of the specified property as <code>int</code>. The
+	 * <code>defaultValue</code> is returned if the property is not defined.
+	 * 
+	 * @param property
+	 *            the name of the property to get the value for
+	 * @param defaultValue
+	 *            the value to be returned if the property is not defined
+	 * 
+	 * @return the value of the property
+	 * 
+	 * @throws NumberFormatException
+	 *             if the value of the property is not a valid number
+	 */
+	public int getIntProperty(final String property, final int defaultValue) {
+		final Object value = properties.get(property);
+
+		if (value == null) {
+			return defaultValue;
+		} else if (value instanceof Number) {
+			return ((Number) value).intValue();
+		} else {
+			return Integer.parseInt(value.toString().trim());
+		}
+	}
+
+	/**
+	 * Gets the value of the specified property as <code>long</code>. The
+	 * <code>defaultValue</code> is returned if the property is not defined.
+	 * 
+	 * @param property
+	 *            the name of the property to get the value for
+	 * @param defaultValue
+	 *            the value to be returned if the property is not defined
+	 * 
+	 * @return the value of the property
+	 * 
+	 * @throws NumberFormatException
+	 *             if the value of the property is not a valid number
+	 */
+	public long getLongProperty(final String property, final long defaultValue) {
+		final Object value = properties.get(property);
+
+		if (value == null) {
+			return defaultValue;
+		} else if (value instanceof Number) {
+			return ((Number) value).longValue();
+		} else {
+			return Long.parseLong(value.toString().trim());
+		}
+	}
+
+	/**
+	 * Gets the value of the specified property as <code>boolean</code>. The
+	 * <code>defaultValue</code> is returned if the property is not defined.
+	 * 
+	 * @param property
+	 *            the name of the property to get the value for
+	 * @param defaultValue
+	 *            the value to be returned if the property is not defined
+	 * 
+	 * @return the value of the property
+	 */
+	public boolean getBooleanProperty(final String property,
+			final boolean defaultValue) {
+		final Object value = properties.get(property);
+
+		if (value == null) {
+			return defaultValue;
+		} else if (value instanceof Boolean) {
+			return ((Boolean) value).booleanValue();
+		} else {
+			return Boolean.parseBoolean(value.toString().trim());
+		}
+	}
+
+	/**
+	 * Gets the value of the specified property as <code>String</code>. The
+	 * <code>defaultValue</code> is returned if the property is not defined.
+	 * 
+	 * @param property
+	 *            the name of the property to get the value for
+	 * @param defaultValue
+	 *            the value to be returned if the property is not defined
+	 * 
+	 * @return the value of the property
+	 */
+	public String getStringProperty(final String property,
+			final String defaultValue) {
+		final Object value = properties.get(property);
+		return value == null ? defaultValue : value.toString();
+	}
 }
@@ -1,9 +1,34 @@
 package net.meisen.general.server;
 
+import net.meisen.general.server.api.impl.TestBaseListener;
 import net.meisen.general.server.control.TestServerController;
 import net.meisen.general.server.control.TestDefaultControlMessagesManager;
 import net.meisen.general.server.control.TestDefaultControlMessagesManagerWithDefaultSettings;
 import net.meisen.general.server.listener.TestOutputListener;
+import net.meisen.general.server.listener.TestOutputListenerJournal;
+import net.meisen.general.server.listener.codec.TestCodecPipeline;
+import net.meisen.general.server.listener.control.TestControlListener;
+import net.meisen.general.server.listener.output.TestAsyncSink;
+import net.meisen.general.server.listener.output.TestGroupCommitSink;
+import net.meisen.general.server.listener.output.TestIngestJournal;
+import net.meisen.general.server.listener.output.TestMappedFileSink;
+import net.meisen.general.server.listener.output.TestSpillQueue;
+import net.meisen.general.server.listener.output.TestTimestampIndex;
+import net.meisen.general.server.listener.utility.TestAcceptListenerThread;
+import net.meisen.general.server.listener.utility.TestAdmissionControl;
+import net.meisen.general.server.listener.utility.TestBufferPool;
+import net.meisen.general.server.listener.utility.TestCompression;
+import net.meisen.general.server.listener.utility.TestFrameReader;
+import net.meisen.general.server.listener.utility.TestIdleReaper;
+import net.meisen.general.server.listener.utility.TestLineFramer;
+import net.meisen.general.server.listener.utility.TestOrderedReplies;
+import net.meisen.general.server.listener.utility.TestParallelTasks;
+import net.meisen.general.server.listener.utility.TestPooledWorkerDispatcher;
+import net.meisen.general.server.listener.utility.TestRateLimiter;
+import net.meisen.general.server.listener.utility.TestSelectorListenerThread;
+import net.meisen.general.server.listener.utility.TestServerSocketOpener;
+import net.meisen.general.server.listener.utility.TestTimerWheel;
+import net.meisen.general.server.listener.utility.TestVirtualWorkerDispatcher;
 import net.meisen.general.server.settings.TestDefaultServerSettingsManager;
 
 import org.junit.runner.RunWith;
@@ -19,7 +44,19 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({ TestDefaultServerSettingsManager.class, TestServer.class,
 		TestDefaultControlMessagesManager.class,
 		TestDefaultControlMessagesManagerWithDefaultSettings.class,
-		TestServerController.class, TestOutputListener.class })
+		TestServerController.class, TestOutputListener.class,
+		TestSelectorListenerThread.class, TestPooledWorkerDispatcher.class,
+		TestVirtualWorkerDispatcher.class, TestAcceptListenerThread.class,
+		TestAdmissionControl.class, TestServerSocketOpener.class,
+		TestTimerWheel.class, TestIdleReaper.class, TestRateLimiter.class,
+		TestLineFramer.class, TestOrderedReplies.class,
+		TestFrameReader.class, TestCodecPipeline.class,
+		TestBufferPool.class, TestCompression.class, TestAsyncSink.class,
+		TestMappedFileSink.class, TestGroupCommitSink.class,
+		TestIngestJournal.class, TestSpillQueue.class,
+		TestTimestampIndex.class, TestBaseListener.class,
+		TestControlListener.class, TestOutputListenerJournal.class,
+		TestParallelTasks.class })
 public class AllTests {
 	// nothing more to do here
 }
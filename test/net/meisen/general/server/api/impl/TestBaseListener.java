@@ -0,0 +1,401 @@
+package net.meisen.general.server.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.meisen.general.genmisc.exceptions.registry.IExceptionRegistry;
+import net.meisen.general.server.control.ServerController;
+import net.meisen.general.server.api.impl.exceptions.BaseListenerException;
+import net.meisen.general.server.listener.utility.AcceptListenerThread;
+import net.meisen.general.server.listener.utility.IdleReaper;
+import net.meisen.general.server.listener.utility.PooledWorkerDispatcher.RejectionPolicy;
+import net.meisen.general.server.settings.pojos.Connector;
+import net.meisen.general.server.testutilities.TestHelper;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>BaseListener</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestBaseListener {
+
+	/**
+	 * Creates a <code>BaseListener</code> using the registry created by
+	 * {@link TestHelper#createExceptionRegistry()}, which answers each line
+	 * with the line prefixed by <code>ECHO</code>.
+	 *
+	 * @return the created listener
+	 */
+	protected static BaseListener createListener() {
+		final IExceptionRegistry registry = TestHelper
+				.createExceptionRegistry();
+
+		return new BaseListener() {
+
+			@Override
+			protected IExceptionRegistry getExceptionRegistry() {
+				return registry;
+			}
+
+			@Override
+			protected String handleInput(final String input) {
+				return input == null ? null : "ECHO " + input;
+			}
+		};
+	}
+
+	/**
+	 * Creates a <code>Connector</code> with a <code>worker</code> extension.
+	 *
+	 * @param port
+	 *            the port of the connector
+	 * @param properties
+	 *            the properties of the <code>worker</code> extension, i.e.
+	 *            pairs of names and values
+	 *
+	 * @return the created <code>Connector</code>
+	 *
+	 * @see TestHelper#createConnector(String, int, String...)
+	 */
+	protected static Connector createConnector(final int port,
+			final String... properties) {
+		return TestHelper.createConnector("TestBaseListener", port,
+				properties);
+	}
+
+	/**
+	 * Tests the error raised for an unknown rejection-policy, which lists
+	 * the supported policies.
+	 */
+	@Test
+	public void testUnknownRejection() {
+		final BaseListener listener = createListener();
+		try {
+			listener.initialize(createConnector(10030, "mode", "pool",
+					"rejection", "ignore"));
+			fail("Exception expected");
+		} catch (final BaseListenerException e) {
+			assertTrue(e.getMessage(),
+					e.getMessage().startsWith("1019 [ignore, "));
+			assertTrue(e.getMessage(), e.getMessage().contains(
+					Arrays.asList(RejectionPolicy.values()).toString()));
+		}
+
+		// a known policy is accepted in any mode
+		listener.initialize(createConnector(10030, "rejection", "callerRuns"));
+		assertEquals(10030, listener.getPort());
+	}
+
+	/**
+	 * Tests the error raised for a charset, which isn't ASCII-compatible.
+	 */
+	@Test
+	public void testCharset() {
+		final BaseListener listener = createListener();
+		try {
+			listener.initialize(createConnector(10030, "charset", "UTF-16"));
+			fail("Exception expected");
+		} catch (final BaseListenerException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("1012 "));
+		}
+
+		// an ASCII-compatible charset is accepted
+		listener.initialize(createConnector(10030, "charset", "ISO-8859-1"));
+		assertEquals(Charset.forName("ISO-8859-1"), listener
+				.getWorkerSettings().getCharset());
+	}
+
+	/**
+	 * Tests the answers of the listeners created for one and for several
+	 * acceptors, using blocking workers and a selector.
+	 */
+	@Test
+	public void testAcceptors() {
+		int port = 10040;
+		for (final String mode : new String[] { "thread", "selector" }) {
+			for (final String acceptors : new String[] { "1", "2" }) {
+				final BaseListener listener = createListener();
+				listener.initialize(createConnector(++port, "mode", mode,
+						"acceptors", acceptors));
+				listener.open();
+
+				try {
+					for (int i = 0; i < 4; i++) {
+						assertEquals(mode + " " + acceptors, "ECHO " + i,
+								TestHelper.sendMessage("" + i, "localhost",
+										port));
+					}
+				} finally {
+					listener.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests the release of the <code>IdleReaper</code> when the listener is
+	 * closed and when the acceptors cannot be created.
+	 */
+	@Test
+	public void testReleaseOnClose() {
+		final BaseListener listener = createListener();
+		listener.initialize(createConnector(10032, "idleTimeout", "1000"));
+		listener.open();
+		final IdleReaper reaper = listener.getIdleReaper();
+		assertFalse(reaper.isClosed());
+		listener.close();
+		assertTrue(reaper.isClosed());
+		assertNull(listener.getIdleReaper());
+
+		// fail to create the acceptors
+		final IExceptionRegistry registry = TestHelper
+				.createExceptionRegistry();
+		final AtomicReference<IdleReaper> failed;
+		failed = new AtomicReference<IdleReaper>();
+		final BaseListener failing = new BaseListener() {
+
+			@Override
+			protected IExceptionRegistry getExceptionRegistry() {
+				return registry;
+			}
+
+			@Override
+			protected List<AcceptListenerThread> createAcceptListenerThreads(
+					final int acceptors) throws IOException {
+				failed.set(getIdleReaper());
+				throw new IOException("Failing acceptors");
+			}
+		};
+		failing.initialize(createConnector(10032, "idleTimeout", "1000",
+				"framing", "tagged"));
+		try {
+			failing.open();
+			fail("Exception expected");
+		} catch (final BaseListenerException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("1001 "));
+		}
+		assertTrue(failed.get().isClosed());
+		assertNull(failing.getIdleReaper());
+	}
+
+	/**
+	 * Tests the tagged handling of the blocking workers, i.e. a slow request
+	 * doesn't block the answers of the following ones and the requests are
+	 * handled by at most <code>requestThreads</code> threads.
+	 *
+	 * @throws IOException
+	 *             if the socket cannot be used
+	 */
+	@Test
+	public void testThreadTagged() throws IOException {
+		final IExceptionRegistry registry = TestHelper
+				.createExceptionRegistry();
+		final AtomicInteger running = new AtomicInteger(0);
+		final AtomicInteger maxRunning = new AtomicInteger(0);
+		final BaseListener listener = new BaseListener() {
+
+			@Override
+			protected IExceptionRegistry getExceptionRegistry() {
+				return registry;
+			}
+
+			@Override
+			protected String handleInput(final String input) {
+				final int current = running.incrementAndGet();
+				synchronized (maxRunning) {
+					maxRunning.set(Math.max(current, maxRunning.get()));
+				}
+
+				try {
+					if ("SLOW".equals(input)) {
+						Thread.sleep(300);
+					}
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					running.decrementAndGet();
+				}
+
+				return input == null ? null : "ECHO " + input;
+			}
+		};
+		listener.initialize(createConnector(10033, "mode", "thread",
+				"framing", "tagged", "maxInFlight", "4", "requestThreads",
+				"2"));
+		assertEquals(2, listener.getWorkerSettings().getRequestThreads());
+		listener.open();
+
+		final Socket socket = new Socket("localhost", 10033);
+		try {
+			final PrintWriter out = new PrintWriter(socket.getOutputStream(),
+					false);
+			final BufferedReader in = new BufferedReader(new InputStreamReader(
+					socket.getInputStream()));
+
+			// the slow request is answered last
+			out.println("a SLOW");
+			out.println("b FAST");
+			out.println("c");
+			out.flush();
+
+			final Set<String> fast = new HashSet<String>();
+			for (int i = 0; i < 2; i++) {
+				fast.add(in.readLine());
+			}
+			assertEquals(new HashSet<String>(Arrays.asList("b ECHO FAST",
+					"c ECHO ")), fast);
+			assertEquals("a ECHO SLOW", in.readLine());
+
+			// more slow requests than threads
+			final Set<String> expected = new HashSet<String>();
+			for (final String tag : new String[] { "d", "e", "f", "g" }) {
+				out.println(tag + " SLOW");
+				expected.add(tag + " ECHO SLOW");
+			}
+			out.flush();
+
+			final Set<String> slow = new HashSet<String>();
+			for (int i = 0; i < 4; i++) {
+				slow.add(in.readLine());
+			}
+			assertEquals(expected, slow);
+			assertEquals(2, maxRunning.get());
+		} finally {
+			socket.close();
+			listener.close();
+		}
+	}
+
+	/**
+	 * Tests a multiplexed batch of the <code>ServerController</code>, which
+	 * (including its answers) exceeds the buffers of the sockets, i.e. the
+	 * controller must not write all messages before reading the answers.
+	 */
+	@Test
+	public void testMultiplexedBatch() {
+		final BaseListener listener = createListener();
+		listener.initialize(createConnector(10045, "mode", "thread",
+				"framing", "tagged", "maxInFlight", "4"));
+		listener.open();
+
+		final char[] padding = new char[1024];
+		Arrays.fill(padding, 'x');
+		final String[] msgs = new String[8192];
+		for (int i = 0; i < msgs.length; i++) {
+			msgs[i] = i + " " + new String(padding);
+		}
+
+		try {
+			final ServerController controller = new ServerController(
+					"localhost", 10045);
+			controller.setMultiplexed(true);
+			controller.setMaxInFlight(4);
+
+			final List<String> answers = controller.sendMessages(msgs);
+			assertEquals(msgs.length, answers.size());
+			for (int i = 0; i < msgs.length; i++) {
+				assertEquals("ECHO " + msgs[i], answers.get(i));
+			}
+		} finally {
+			listener.close();
+		}
+	}
+
+	/**
+	 * Tests the default worker handling the lines as bytes, i.e. several
+	 * pipelined requests, a line split over several reads and the end of the
+	 * stream, which is passed once as <code>null</code>.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testPipelinedBytes() throws Exception {
+		final Charset charset = Charset.forName("UTF-8");
+		final byte[] echo = "ECHO ".getBytes(charset);
+
+		int port = 10035;
+		for (final String pooled : new String[] { "false", "true" }) {
+			final IExceptionRegistry registry = TestHelper
+					.createExceptionRegistry();
+			final AtomicInteger ends = new AtomicInteger(0);
+			final BaseListener listener = new BaseListener() {
+
+				@Override
+				protected IExceptionRegistry getExceptionRegistry() {
+					return registry;
+				}
+
+				@Override
+				protected ByteBuffer handleBytes(final ByteBuffer input,
+						final ByteBuffer output) {
+					if (input == null) {
+						ends.incrementAndGet();
+						return null;
+					}
+
+					output.put(echo).put(input).flip();
+					return output;
+				}
+			};
+			listener.initialize(createConnector(++port, "mode", "thread",
+					"pipelined", "true", "pooled", pooled, "charset",
+					"UTF-8"));
+			listener.open();
+
+			final Socket socket = new Socket("localhost", port);
+			try {
+				final OutputStream out = socket.getOutputStream();
+				final BufferedReader in = new BufferedReader(
+						new InputStreamReader(socket.getInputStream(),
+								charset));
+
+				// several requests at once, the last one is incomplete
+				out.write("a\nb\nc".getBytes(charset));
+				out.flush();
+				assertEquals("ECHO a", in.readLine());
+				assertEquals("ECHO b", in.readLine());
+
+				// complete the line (split within a character)
+				final byte[] rest = "\u00e4\nd\n".getBytes(charset);
+				out.write(rest, 0, 1);
+				out.flush();
+				Thread.sleep(50);
+				out.write(rest, 1, rest.length - 1);
+				out.flush();
+				assertEquals("ECHO c\u00e4", in.readLine());
+				assertEquals("ECHO d", in.readLine());
+
+				// the end of the stream is handled once
+				socket.shutdownOutput();
+				assertEquals("", in.readLine());
+				assertNull(in.readLine());
+				assertEquals(pooled, 1, ends.get());
+			} finally {
+				socket.close();
+				listener.close();
+			}
+		}
+	}
+}
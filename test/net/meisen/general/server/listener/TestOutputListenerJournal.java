@@ -0,0 +1,234 @@
+package net.meisen.general.server.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import net.meisen.general.genmisc.exceptions.registry.IExceptionRegistry;
+import net.meisen.general.server.api.ILineSink;
+import net.meisen.general.server.api.impl.exceptions.BaseListenerException;
+import net.meisen.general.server.listener.output.MappedFileSink;
+import net.meisen.general.server.settings.pojos.Connector;
+import net.meisen.general.server.settings.pojos.Extension;
+import net.meisen.general.server.testutilities.TestHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the journal of the <code>OutputListener</code> used together with a
+ * durable output.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestOutputListenerJournal {
+	private File dir;
+
+	/**
+	 * Creates a temporary directory for the files.
+	 *
+	 * @throws IOException
+	 *             if the directory cannot be created
+	 */
+	@Before
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory("outputJournal").toFile();
+	}
+
+	/**
+	 * Deletes the temporary directory.
+	 */
+	@After
+	public void deleteDir() {
+		final File[] files = dir.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				assertTrue(file.delete());
+			}
+		}
+		assertTrue(dir.delete());
+	}
+
+	/**
+	 * Creates an extension with the specified properties.
+	 *
+	 * @param id
+	 *            the identifier of the extension
+	 * @param properties
+	 *            pairs of names and values
+	 *
+	 * @return the created extension
+	 */
+	protected Extension createExtension(final String id,
+			final String... properties) {
+		final Extension extension = new Extension();
+		extension.setId(id);
+		for (int i = 0; i < properties.length; i += 2) {
+			extension.setProperty(properties[i], properties[i + 1]);
+		}
+
+		return extension;
+	}
+
+	/**
+	 * Creates an <code>OutputListener</code> writing durable to the specified
+	 * file and journaling the lines to the smallest possible segments.
+	 *
+	 * @param port
+	 *            the port of the listener
+	 * @param file
+	 *            the file written to
+	 *
+	 * @return the initialized listener
+	 */
+	protected OutputListener createListener(final int port, final File file) {
+		final IExceptionRegistry registry = TestHelper
+				.createExceptionRegistry();
+		final OutputListener listener = new OutputListener() {
+
+			@Override
+			protected IExceptionRegistry getExceptionRegistry() {
+				return registry;
+			}
+		};
+
+		final Connector c = new Connector();
+		c.setId("TestOutputListenerJournal");
+		c.setPort(port);
+		c.setExtensions(Arrays.asList(
+				createExtension("output", "file", file.getPath()),
+				createExtension("durable", "commitInterval", "0"),
+				createExtension("journal", "file", new File(dir,
+						"ingest.journal").getPath(), "segmentSize", "4096")));
+		listener.initialize(c);
+
+		return listener;
+	}
+
+	/**
+	 * Tests the release of the journal segments containing only committed
+	 * lines, written synchronously and asynchronously.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testRelease() throws Exception {
+		final OutputListener listener = createListener(10038, new File(dir,
+				"ingest.log"));
+		listener.open();
+
+		final char[] padding = new char[100];
+		Arrays.fill(padding, 'x');
+		final String suffix = " " + new String(padding);
+
+		try {
+			final File journal = listener.getJournal().getFile();
+			for (int i = 0; i < 100; i++) {
+				assertEquals("", listener.handleInput("sync " + i + suffix));
+			}
+			assertTrue(MappedFileSink.getSegments(journal).size() <= 2);
+
+			final List<CompletionStage<String>> answers;
+			answers = new ArrayList<CompletionStage<String>>();
+			for (int i = 0; i < 100; i++) {
+				answers.add(listener.handleInputAsync("async " + i + suffix));
+			}
+			for (final CompletionStage<String> answer : answers) {
+				assertEquals("", answer.toCompletableFuture().get());
+			}
+			assertTrue(MappedFileSink.getSegments(journal).size() <= 2);
+
+			// the remaining segments end with the last line
+			final List<String> lines = new ArrayList<String>();
+			listener.getJournal().replay(1, new ILineSink() {
+
+				@Override
+				public void write(final String line) throws IOException {
+					lines.add(line);
+				}
+
+				@Override
+				public void flush() throws IOException {
+					// nothing to do
+				}
+
+				@Override
+				public void close() throws IOException {
+					// nothing to do
+				}
+			});
+			assertTrue(lines.size() < 200);
+			assertEquals("async 99" + suffix, lines.get(lines.size() - 1));
+		} finally {
+			listener.close();
+		}
+	}
+
+	/**
+	 * Tests the closing of the journal if the output cannot be opened.
+	 *
+	 * @throws IOException
+	 *             if the blocking file cannot be created
+	 */
+	@Test
+	public void testFailingOpen() throws IOException {
+		final File blocking = new File(dir, "blocking");
+		assertTrue(blocking.createNewFile());
+
+		final OutputListener listener = createListener(10039, new File(
+				blocking, "ingest.log"));
+		try {
+			listener.open();
+			fail("Exception expected");
+		} catch (final BaseListenerException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("1006 "));
+		}
+		assertNull(listener.getJournal());
+		assertNull(listener.getSink());
+	}
+
+	/**
+	 * Tests the error raised if the spill-file is the journal.
+	 */
+	@Test
+	public void testSpillFileConflict() {
+		final IExceptionRegistry registry = TestHelper
+				.createExceptionRegistry();
+		final OutputListener listener = new OutputListener() {
+
+			@Override
+			protected IExceptionRegistry getExceptionRegistry() {
+				return registry;
+			}
+		};
+
+		final String journal = new File(dir, "ingest.journal").getPath();
+		final Connector c = new Connector();
+		c.setId("TestOutputListenerJournal");
+		c.setPort(10040);
+		c.setExtensions(Arrays.asList(
+				createExtension("output", "file", new File(dir, "ingest.log")
+						.getPath()),
+				createExtension("async", "overflow", "spill", "spillFile",
+						journal),
+				createExtension("journal", "file", journal)));
+		try {
+			listener.initialize(c);
+			fail("Exception expected");
+		} catch (final BaseListenerException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("1007 "));
+		}
+	}
+}
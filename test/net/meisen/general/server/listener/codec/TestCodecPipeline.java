@@ -0,0 +1,333 @@
+package net.meisen.general.server.listener.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.meisen.general.server.api.IMessageHandler;
+import net.meisen.general.server.listener.utility.FrameReader;
+import net.meisen.general.server.listener.utility.FrameTooLargeException;
+import net.meisen.general.server.listener.utility.Framing;
+import net.meisen.general.server.listener.utility.SelectorListenerThread;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>CodecPipeline</code> and the
+ * <code>CodecSettings</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestCodecPipeline {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private final String host = "localhost";
+	private final int port = 10018;
+
+	/**
+	 * Handler used to test the creation of a handler by its class name.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	public static class ReverseHandler implements IMessageHandler {
+
+		@Override
+		public Object handle(final Object message) {
+			if (message == null) {
+				return null;
+			}
+
+			return new StringBuilder(message.toString()).reverse().toString();
+		}
+	}
+
+	/**
+	 * Creates a pipeline using the specified settings, which records the
+	 * messages received and answers with the message itself.
+	 *
+	 * @param settings
+	 *            the settings of the pipeline
+	 * @param messages
+	 *            the list to record the messages in
+	 *
+	 * @return the created pipeline
+	 */
+	protected CodecPipeline echo(final CodecSettings settings,
+			final List<Object> messages) {
+		return settings.createPipeline(new IMessageHandler() {
+
+			@Override
+			public Object handle(final Object message) {
+				messages.add(message);
+				return message;
+			}
+		});
+	}
+
+	/**
+	 * Passes the specified string to the pipeline.
+	 *
+	 * @param pipeline
+	 *            the pipeline to pass the data to
+	 * @param data
+	 *            the data to be passed
+	 */
+	protected void receive(final CodecPipeline pipeline, final String data) {
+		final byte[] bytes = data.getBytes(UTF8);
+		pipeline.receive(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Converts the remaining bytes of the buffer into an array.
+	 *
+	 * @param buffer
+	 *            the buffer to be converted
+	 *
+	 * @return the array of the remaining bytes
+	 */
+	protected byte[] toArray(final ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+
+		return bytes;
+	}
+
+	/**
+	 * Tests the default pipeline, i.e. the reading and writing of lines.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be decoded
+	 */
+	@Test
+	public void testLines() throws IOException {
+		final CodecSettings settings = new CodecSettings();
+		settings.setCharset(UTF8);
+
+		final List<Object> messages = new ArrayList<Object>();
+		final CodecPipeline pipeline = echo(settings, messages);
+
+		// split a terminator and a multi-byte character between two reads
+		receive(pipeline, "first\r");
+		assertEquals("first" + System.getProperty("line.separator"),
+				new String(toArray(pipeline.next()), UTF8));
+		assertNull(pipeline.next());
+		receive(pipeline, "\nsec");
+		assertNull(pipeline.next());
+		final byte[] umlaut = "\u00fcnd\n\nlast".getBytes(UTF8);
+		pipeline.receive(umlaut, 0, 1);
+		assertNull(pipeline.next());
+		pipeline.receive(umlaut, 1, umlaut.length - 1);
+		assertTrue(pipeline.next().hasRemaining());
+		assertTrue(pipeline.next().hasRemaining());
+		assertNull(pipeline.next());
+		assertTrue(pipeline.hasBuffered());
+
+		pipeline.end();
+		assertEquals(4, messages.size());
+		assertEquals("first", messages.get(0));
+		assertEquals("sec\u00fcnd", messages.get(1));
+		assertEquals("", messages.get(2));
+		assertNull(messages.get(3));
+	}
+
+	/**
+	 * Tests the length-prefixed frames passed as bytes.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be decoded
+	 */
+	@Test
+	public void testLengthFrames() throws IOException {
+		final CodecSettings settings = new CodecSettings();
+		settings.setFrameDecoderClass(CodecSettings.findFrameDecoder("length"));
+		settings.setMessageDecoderClass(CodecSettings
+				.findMessageDecoder("bytes"));
+		settings.setEncoderClass(CodecSettings.findEncoder("LENGTH"));
+		settings.setMaxFrameSize(100);
+		settings.initialize();
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FrameReader.writeFrame(out, ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+		FrameReader.writeFrame(out, null);
+		FrameReader.writeFrame(out, ByteBuffer.wrap(new byte[101]));
+		final byte[] data = out.toByteArray();
+
+		final List<Object> messages = new ArrayList<Object>();
+		final CodecPipeline pipeline = echo(settings, messages);
+		for (int i = 0; i < 11; i++) {
+			pipeline.receive(data, i, 1);
+		}
+		assertArrayEquals(new byte[] { 0, 0, 0, 3, 1, 2, 3 },
+				toArray(pipeline.next()));
+		assertArrayEquals(new byte[] { 0, 0, 0, 0 }, toArray(pipeline.next()));
+		assertNull(pipeline.next());
+		assertFalse(pipeline.hasBuffered());
+		assertTrue(((ByteBuffer) messages.get(0)).isReadOnly());
+
+		// the last frame exceeds the maximum
+		pipeline.receive(data, 11, 4);
+		try {
+			pipeline.next();
+			fail("Exception expected");
+		} catch (final FrameTooLargeException e) {
+			assertEquals(101, e.getSize());
+		}
+	}
+
+	/**
+	 * Tests a line exceeding the maximal size of a frame.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be decoded
+	 */
+	@Test
+	public void testLineTooLarge() throws IOException {
+		final CodecSettings settings = new CodecSettings();
+		settings.setMaxFrameSize(5);
+
+		final CodecPipeline pipeline = echo(settings, new ArrayList<Object>());
+		receive(pipeline, "12345\n123");
+		assertTrue(pipeline.next().hasRemaining());
+		assertNull(pipeline.next());
+		receive(pipeline, "456");
+		try {
+			pipeline.next();
+			fail("Exception expected");
+		} catch (final FrameTooLargeException e) {
+			assertEquals(5, e.getMaxFrameSize());
+		}
+	}
+
+	/**
+	 * Tests the stages expressing the built-in line framing, i.e. a line
+	 * exceeding the maximum is passed in parts.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be decoded
+	 */
+	@Test
+	public void testFramingLines() throws IOException {
+		final CodecSettings settings = CodecSettings.forFraming(Framing.LINE,
+				UTF8, 4, true);
+
+		final CodecPipeline pipeline = echo(settings, new ArrayList<Object>());
+		receive(pipeline, "abc\r\n1234567");
+		assertArrayEquals("abc".getBytes(UTF8), toArray(pipeline.nextFrame()));
+		assertFalse(pipeline.isPartial());
+		assertArrayEquals("1234".getBytes(UTF8), toArray(pipeline.nextFrame()));
+		assertTrue(pipeline.isPartial());
+		assertNull(pipeline.nextFrame());
+		receive(pipeline, "89\nlast");
+		assertArrayEquals("5678".getBytes(UTF8), toArray(pipeline.nextFrame()));
+		assertTrue(pipeline.isPartial());
+		assertArrayEquals("9".getBytes(UTF8), toArray(pipeline.nextFrame()));
+		assertFalse(pipeline.isPartial());
+		assertNull(pipeline.nextFrame());
+
+		// the unterminated last line is available at the end of the stream
+		assertArrayEquals("last".getBytes(UTF8), toArray(pipeline.lastFrame()));
+		assertNull(pipeline.lastFrame());
+		assertFalse(pipeline.hasBuffered());
+	}
+
+	/**
+	 * Tests the determination of the stages.
+	 */
+	@Test
+	public void testFind() {
+		assertSame(LineFrameDecoder.class,
+				CodecSettings.findFrameDecoder(" Line "));
+		assertSame(StringMessageDecoder.class,
+				CodecSettings.findMessageDecoder("string"));
+		assertSame(LineMessageEncoder.class,
+				CodecSettings.findEncoder(LineMessageEncoder.class.getName()));
+		assertSame(ReverseHandler.class,
+				CodecSettings.findHandler(ReverseHandler.class.getName()));
+
+		assertNull(CodecSettings.findFrameDecoder("unknown"));
+		assertNull(CodecSettings.findEncoder(LineFrameDecoder.class.getName()));
+		assertNull(CodecSettings.findHandler("line"));
+		assertNull(CodecSettings.findHandler(null));
+	}
+
+	/**
+	 * Tests the usage of a handler defined by the settings.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be decoded
+	 */
+	@Test
+	public void testHandler() throws IOException {
+		final CodecSettings settings = new CodecSettings();
+		settings.setHandlerClass(ReverseHandler.class);
+		settings.initialize();
+
+		final CodecPipeline pipeline = echo(settings, new ArrayList<Object>());
+		receive(pipeline, "abc\n");
+		assertEquals("cba" + System.getProperty("line.separator"),
+				new String(toArray(pipeline.next()), UTF8));
+	}
+
+	/**
+	 * Tests the pipeline within the selector-loop.
+	 *
+	 * @throws IOException
+	 *             if the listener cannot be opened
+	 */
+	@Test
+	public void testSelectorPipeline() throws IOException {
+		final CodecSettings settings = new CodecSettings();
+		settings.setFrameDecoderClass(LengthFrameDecoder.class);
+		settings.setMessageDecoderClass(StringMessageDecoder.class);
+		settings.setEncoderClass(LengthMessageEncoder.class);
+		settings.setCharset(UTF8);
+		settings.initialize();
+
+		final SelectorListenerThread listener = new SelectorListenerThread(
+				port) {
+
+			@Override
+			protected String handleInput(final String input) {
+				return input == null ? null : "ECHO " + input;
+			}
+		};
+		listener.setCodec(settings);
+		listener.start();
+
+		final Socket socket = new Socket(host, port);
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			for (int i = 0; i < 100; i++) {
+				FrameReader.writeFrame(out,
+						ByteBuffer.wrap(("\u00e4" + i).getBytes(UTF8)));
+			}
+			socket.getOutputStream().write(out.toByteArray());
+
+			final DataInputStream in = new DataInputStream(
+					socket.getInputStream());
+			for (int i = 0; i < 100; i++) {
+				final byte[] answer = new byte[in.readInt()];
+				in.readFully(answer);
+				assertEquals("ECHO \u00e4" + i, new String(answer, UTF8));
+			}
+		} finally {
+			socket.close();
+			listener.close();
+		}
+	}
+}
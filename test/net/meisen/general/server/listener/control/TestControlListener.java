@@ -0,0 +1,162 @@
+package net.meisen.general.server.listener.control;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import net.meisen.general.genmisc.exceptions.registry.IExceptionRegistry;
+import net.meisen.general.server.api.IControlMessage;
+import net.meisen.general.server.api.IControlMessagesManager;
+import net.meisen.general.server.testutilities.TestHelper;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>ControlListener</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestControlListener {
+
+	/**
+	 * A message answering with its identifier, the execution of the
+	 * <code>SLOW</code> message takes some time.
+	 */
+	protected static class TestMessage implements IControlMessage {
+		private final String identifier;
+
+		/**
+		 * Constructor specifying the identifier of the message.
+		 *
+		 * @param identifier
+		 *            the identifier of the message
+		 */
+		public TestMessage(final String identifier) {
+			this.identifier = identifier;
+		}
+
+		@Override
+		public String getMessageIdentifier() {
+			return identifier;
+		}
+
+		@Override
+		public Collection<MessageType> getType() {
+			return Arrays.asList(MessageType.values());
+		}
+
+		@Override
+		public void execute() {
+			if ("SLOW".equals(identifier)) {
+				try {
+					Thread.sleep(300);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a <code>ControlListener</code> using a manager which knows any
+	 * message.
+	 *
+	 * @return the created listener
+	 */
+	protected ControlListener createListener() {
+		final IExceptionRegistry registry = TestHelper
+				.createExceptionRegistry();
+		final ControlListener listener = new ControlListener() {
+
+			@Override
+			protected IExceptionRegistry getExceptionRegistry() {
+				return registry;
+			}
+		};
+		listener.setControlMessagesManager(new IControlMessagesManager() {
+
+			@Override
+			public IControlMessage determineMessage(final String msg) {
+				return new TestMessage(msg);
+			}
+
+			@Override
+			public void addControlMessage(
+					final Class<? extends IControlMessage> controlMessageClazz,
+					final boolean override) {
+				throw new UnsupportedOperationException();
+			}
+		});
+
+		return listener;
+	}
+
+	/**
+	 * Tests the tagged handling of the commands, i.e. a slow command doesn't
+	 * block the answers of the following ones.
+	 *
+	 * @throws IOException
+	 *             if the socket cannot be used
+	 */
+	@Test
+	public void testTagged() throws IOException {
+		final ControlListener listener = createListener();
+		listener.initialize(TestHelper.createConnector("TestControlListener",
+				10034, "framing", "tagged", "maxInFlight", "4"));
+		listener.open();
+
+		final Socket socket = new Socket("localhost", 10034);
+		try {
+			final PrintWriter out = new PrintWriter(socket.getOutputStream(),
+					false);
+			final BufferedReader in = new BufferedReader(new InputStreamReader(
+					socket.getInputStream()));
+
+			out.println("a SLOW");
+			out.println("b FAST");
+			out.println("c SHUTDOWN");
+			out.flush();
+
+			// the slow command is answered last
+			final Set<String> fast = new HashSet<String>();
+			for (int i = 0; i < 2; i++) {
+				fast.add(in.readLine());
+			}
+			assertEquals(new HashSet<String>(Arrays.asList("b RCVD", "c RCVD")),
+					fast);
+			assertEquals("a RCVD", in.readLine());
+		} finally {
+			socket.close();
+			listener.close();
+		}
+	}
+
+	/**
+	 * Tests the untagged handling of the commands by the
+	 * <code>HandleCommandsThread</code>, i.e. the commands are answered one
+	 * after another.
+	 */
+	@Test
+	public void testUntagged() {
+		final ControlListener listener = createListener();
+		listener.initialize(TestHelper.createConnector("TestControlListener",
+				10035));
+		listener.open();
+
+		try {
+			assertEquals("RCVD",
+					TestHelper.sendMessage("FAST", "localhost", 10035));
+		} finally {
+			listener.close();
+		}
+	}
+}
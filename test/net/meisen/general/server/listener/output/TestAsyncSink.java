@@ -0,0 +1,324 @@
+package net.meisen.general.server.listener.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import net.meisen.general.server.api.ILineSink;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>RingBuffer</code> and the
+ * <code>AsyncSink</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestAsyncSink {
+
+	/**
+	 * A sink collecting the written lines, which can be stalled.
+	 */
+	protected static class CollectingSink implements ILineSink {
+		private final List<String> lines = Collections
+				.synchronizedList(new ArrayList<String>());
+		private final CountDownLatch stall;
+		private volatile int flushes = 0;
+		private volatile boolean closed = false;
+
+		/**
+		 * Creates a sink, which waits on the specified latch prior to writing
+		 * a line.
+		 *
+		 * @param stall
+		 *            the latch to wait for, <code>null</code> to never wait
+		 */
+		public CollectingSink(final CountDownLatch stall) {
+			this.stall = stall;
+		}
+
+		@Override
+		public void write(final String line) throws IOException {
+			if (stall != null) {
+				try {
+					stall.await();
+				} catch (final InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+			lines.add(line);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			flushes++;
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+		}
+	}
+
+	/**
+	 * Tests the publishing and removing of lines.
+	 */
+	@Test
+	public void testRingBuffer() {
+		final RingBuffer ring = new RingBuffer(3);
+		assertEquals(4, ring.getCapacity());
+		assertTrue(ring.isEmpty());
+		assertNull(ring.poll());
+
+		for (int i = 0; i < 4; i++) {
+			assertTrue(ring.offer("" + i));
+		}
+		assertFalse(ring.offer("4"));
+		assertEquals(4, ring.size());
+		assertEquals("0", ring.poll());
+		assertTrue(ring.offer("4"));
+
+		// the slots are reused in order
+		final String[] lines = new String[3];
+		assertEquals(3, ring.drain(lines, 10));
+		assertEquals("1", lines[0]);
+		assertEquals("3", lines[2]);
+		assertEquals("4", ring.poll());
+		assertTrue(ring.isEmpty());
+		assertEquals(0, ring.size());
+
+		try {
+			new RingBuffer(0);
+			fail("Exception expected");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests several threads publishing lines, i.e. that all lines are
+	 * written in the order of each thread.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testProducers() throws Exception {
+		final CollectingSink target = new CollectingSink(null);
+		final AsyncSink sink = new AsyncSink(target, 64, 16, 10,
+				OverflowPolicy.BLOCK);
+
+		final int producers = 4;
+		final int amount = 5000;
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (int p = 0; p < producers; p++) {
+			final int id = p;
+			final Thread thread = new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < amount; i++) {
+							sink.write(id + ":" + i);
+						}
+					} catch (final IOException e) {
+						// checked by the amount of lines
+					}
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		sink.close();
+
+		assertTrue(target.closed);
+		assertEquals(producers * amount, target.lines.size());
+		assertEquals(producers * amount, sink.getPublished());
+		assertEquals(producers * amount, sink.getWritten());
+		assertTrue(sink.getBatches() >= producers * amount / 16);
+		assertTrue(target.flushes > 0);
+		assertEquals(0, sink.getDepth());
+
+		final int[] next = new int[producers];
+		for (final String line : target.lines) {
+			final String[] parts = line.split(":");
+			final int id = Integer.parseInt(parts[0]);
+			assertEquals(next[id]++, Integer.parseInt(parts[1]));
+		}
+
+		try {
+			sink.write("closed");
+			fail("Exception expected");
+		} catch (final IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests the <code>OverflowPolicy</code> values <code>DROP</code> and
+	 * <code>SPILL</code> with a stalled target.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testOverflow() throws Exception {
+		for (final OverflowPolicy policy : new OverflowPolicy[] {
+				OverflowPolicy.DROP, OverflowPolicy.SPILL }) {
+			final CountDownLatch stall = new CountDownLatch(1);
+			final CollectingSink target = new CollectingSink(stall);
+			final AsyncSink sink = new AsyncSink(target, 4, 2, 0, policy);
+
+			for (int i = 0; i < 20; i++) {
+				sink.write("" + i);
+			}
+			if (OverflowPolicy.SPILL.equals(policy)) {
+				assertTrue(sink.getSpillBytes() > 0);
+				assertTrue(sink.getDepth() > sink.getCapacity());
+			} else {
+				assertEquals(0, sink.getSpillBytes());
+			}
+			stall.countDown();
+			sink.close();
+
+			if (OverflowPolicy.DROP.equals(policy)) {
+				assertTrue(sink.getDropped() > 0);
+				assertEquals(0, sink.getSpilled());
+				assertEquals(20, sink.getDropped() + target.lines.size());
+			} else {
+				assertTrue(sink.getSpilled() > 0);
+				assertEquals(0, sink.getSpillBytes());
+				assertEquals(0, sink.getDropped());
+				assertEquals(20, target.lines.size());
+				for (int i = 0; i < 20; i++) {
+					assertEquals("" + i, target.lines.get(i));
+				}
+			}
+			assertEquals(target.lines.size(), sink.getWritten());
+		}
+	}
+
+	/**
+	 * Tests the blocking of the publishing threads and the writing to a
+	 * <code>PrintStream</code>.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testBlock() throws Exception {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final AsyncSink sink = new AsyncSink(new PrintStreamSink(
+				new PrintStream(bytes, false, "UTF-8")), 2, 1, 0,
+				OverflowPolicy.BLOCK);
+
+		final StringBuilder expected = new StringBuilder();
+		final String separator = System.getProperty("line.separator");
+		for (int i = 0; i < 1000; i++) {
+			sink.write("line " + i);
+			expected.append("line " + i).append(separator);
+		}
+		sink.close();
+
+		assertEquals(1000, sink.getWritten());
+		assertEquals(0, sink.getDropped());
+		assertEquals(expected.toString(), bytes.toString("UTF-8"));
+	}
+
+	/**
+	 * Tests a target throwing a <code>RuntimeException</code>, i.e. the
+	 * failing batches are counted and the writer-thread keeps on writing the
+	 * following ones, so that blocked producers are not stalled.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testFailingTarget() throws Exception {
+		final CollectingSink target = new CollectingSink(null) {
+
+			@Override
+			public void write(final String line) throws IOException {
+				if (line.endsWith("0")) {
+					throw new IllegalStateException("Failing " + line);
+				}
+				super.write(line);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				super.flush();
+				throw new IllegalStateException("Failing flush");
+			}
+		};
+		final AsyncSink sink = new AsyncSink(target, 2, 1, 0,
+				OverflowPolicy.BLOCK);
+
+		final List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++) {
+			sink.write("line " + i);
+			if (i % 10 != 0) {
+				expected.add("line " + i);
+			}
+		}
+		sink.flush();
+		sink.close();
+
+		assertEquals(900, sink.getWritten());
+		assertEquals(100, sink.getFailed());
+		assertEquals(expected, target.lines);
+		assertTrue(target.flushes > 0);
+		assertTrue(target.closed);
+	}
+
+	/**
+	 * Tests the validation of the <code>OutputSettings</code>.
+	 */
+	@Test
+	public void testSettings() {
+		final OutputSettings settings = new OutputSettings();
+		settings.setCapacity(0);
+		assertTrue(settings.isValid());
+		assertEquals("sync", settings.toString());
+
+		settings.setAsync(true);
+		assertFalse(settings.isValid());
+		settings.setCapacity(16);
+		assertTrue(settings.isValid());
+		settings.setOverflowPolicy(OverflowPolicy.find(" Spill "));
+		assertEquals(OverflowPolicy.SPILL, settings.getOverflowPolicy());
+		assertNull(OverflowPolicy.find("wait"));
+		settings.setFlushInterval(-1);
+		assertFalse(settings.isValid());
+		settings.setFlushInterval(0);
+
+		// the spill-file must differ from the file and the journal
+		settings.setSpillFile(new File("ingest.spill"));
+		assertFalse(settings.isSpillFileConflicting());
+		assertTrue(settings.isValid());
+		settings.setFile(new File("ingest.spill").getAbsoluteFile());
+		assertTrue(settings.isSpillFileConflicting());
+		assertFalse(settings.isValid());
+		settings.setFile(new File("ingest.log"));
+		settings.setJournal(new File("ingest.spill"));
+		assertTrue(settings.isSpillFileConflicting());
+		assertFalse(settings.isValid());
+		settings.setJournal(new File("ingest.journal"));
+		assertTrue(settings.isValid());
+	}
+}
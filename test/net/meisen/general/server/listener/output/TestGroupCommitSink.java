@@ -0,0 +1,276 @@
+package net.meisen.general.server.listener.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.meisen.general.server.api.IDurableLineSink;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>GroupCommitSink</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestGroupCommitSink {
+
+	/**
+	 * A sink collecting the written lines and counting the syncs, a line is
+	 * marked as durable when synced.
+	 */
+	protected static class SyncingSink implements IDurableLineSink {
+		private final List<String> lines = Collections
+				.synchronizedList(new ArrayList<String>());
+		private final AtomicInteger syncs = new AtomicInteger();
+		private volatile int durable = 0;
+		private volatile boolean failing = false;
+		private volatile boolean crashing = false;
+		private volatile boolean closed = false;
+
+		@Override
+		public void write(final String line) throws IOException {
+			lines.add(line);
+		}
+
+		@Override
+		public void sync() throws IOException {
+			if (failing) {
+				throw new IOException("Failing sync");
+			} else if (crashing) {
+				throw new IllegalStateException("Crashing sync");
+			}
+
+			syncs.incrementAndGet();
+			durable = lines.size();
+		}
+
+		@Override
+		public void flush() throws IOException {
+			// nothing to do
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+		}
+	}
+
+	/**
+	 * Tests several threads writing lines, i.e. that the lines are
+	 * acknowledged after the sync and that several lines share a sync.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testGroupCommit() throws Exception {
+		final SyncingSink target = new SyncingSink();
+		final GroupCommitSink sink = new GroupCommitSink(target, 5, 64);
+
+		final int writers = 8;
+		final int amount = 200;
+		final AtomicInteger violations = new AtomicInteger();
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (int w = 0; w < writers; w++) {
+			final int id = w;
+			final Thread thread = new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < amount; i++) {
+							sink.write(id + ":" + i);
+
+							// the acknowledged line must be durable
+							if (target.durable < target.lines.indexOf(id + ":"
+									+ i) + 1) {
+								violations.incrementAndGet();
+							}
+						}
+					} catch (final IOException e) {
+						violations.incrementAndGet();
+					}
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		sink.close();
+
+		assertTrue(target.closed);
+		assertEquals(0, violations.get());
+		assertEquals(writers * amount, target.lines.size());
+		assertEquals(writers * amount, sink.getCommitted());
+		assertEquals(sink.getCommits(), target.syncs.get());
+		assertTrue(sink.getCommits() < writers * amount);
+		assertTrue(sink.getLargestBatch() > 1);
+	}
+
+	/**
+	 * Tests the stages returned by <code>append</code>, i.e. that the lines
+	 * appended without waiting are committed together.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testAppend() throws Exception {
+		final SyncingSink target = new SyncingSink();
+		final GroupCommitSink sink = new GroupCommitSink(target, 1000, 10);
+
+		// the max batch commits without waiting for the interval
+		final List<CompletableFuture<Void>> commits = new ArrayList<CompletableFuture<Void>>();
+		for (int i = 0; i < 10; i++) {
+			commits.add(sink.append("" + i));
+		}
+		for (final CompletableFuture<Void> commit : commits) {
+			commit.get(500, TimeUnit.MILLISECONDS);
+		}
+		assertEquals(1, target.syncs.get());
+		assertEquals(10, sink.getLargestBatch());
+
+		// the flush commits without waiting for the interval
+		final CompletableFuture<Void> commit = sink.append("flushed");
+		assertFalse(commit.isDone());
+		sink.flush();
+		commit.get(500, TimeUnit.MILLISECONDS);
+		assertEquals(2, target.syncs.get());
+
+		// the close commits the pending lines
+		final CompletableFuture<Void> last = sink.append("last");
+		sink.close();
+		assertTrue(last.isDone());
+		assertEquals(12, sink.getCommitted());
+
+		try {
+			sink.append("closed");
+			fail("Exception expected");
+		} catch (final IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests the failure of a sync, i.e. that the lines are not acknowledged.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testFailure() throws Exception {
+		final SyncingSink target = new SyncingSink();
+		target.failing = true;
+		final GroupCommitSink sink = new GroupCommitSink(target, 0, 10);
+
+		try {
+			sink.append("failed").get();
+			fail("Exception expected");
+		} catch (final ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		try {
+			sink.write("failed");
+			fail("Exception expected");
+		} catch (final IOException e) {
+			// expected
+		}
+		assertEquals(2, sink.getFailed());
+
+		target.failing = false;
+		sink.write("committed");
+		assertEquals(1, sink.getCommitted());
+		sink.close();
+	}
+
+	/**
+	 * Tests a sync throwing a <code>RuntimeException</code>, i.e. only the
+	 * lines of the failing commit fail and the following lines are still
+	 * committed.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testRuntimeFailure() throws Exception {
+		final SyncingSink target = new SyncingSink();
+		target.crashing = true;
+		final GroupCommitSink sink = new GroupCommitSink(target, 0, 10);
+
+		try {
+			sink.write("failed");
+			fail("Exception expected");
+		} catch (final IOException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertEquals(1, sink.getFailed());
+
+		target.crashing = false;
+		sink.write("committed");
+		assertEquals(1, sink.getCommitted());
+		assertEquals(2, target.durable);
+		sink.close();
+		assertTrue(target.closed);
+	}
+
+	/**
+	 * Tests the durable settings writing to a <code>MappedFileSink</code>.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testMappedFileSink() throws Exception {
+		final Charset utf8 = Charset.forName("UTF-8");
+		final File dir = Files.createTempDirectory("groupCommitSink").toFile();
+		final File file = new File(dir, "durable.log");
+
+		final OutputSettings settings = new OutputSettings();
+		settings.setDurable(true);
+		assertFalse(settings.isValid());
+		settings.setFile(file);
+		settings.setSegmentSize(4096);
+		settings.setCharset(utf8);
+		assertTrue(settings.isValid());
+		settings.setAsync(true);
+		assertFalse(settings.isValid());
+		settings.setAsync(false);
+
+		final GroupCommitSink sink = (GroupCommitSink) settings
+				.createSink(settings.createTarget(null));
+		assertTrue(((MappedFileSink) sink.getTarget()).isSyncOnRollover());
+		final List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 500; i++) {
+			expected.add("line " + i);
+			sink.append("line " + i);
+		}
+		sink.write("last");
+		expected.add("last");
+		sink.close();
+
+		final List<String> lines = new ArrayList<String>();
+		for (final File segment : MappedFileSink.getSegments(file)) {
+			lines.addAll(Files.readAllLines(segment.toPath(), utf8));
+			assertTrue(segment.delete());
+		}
+		assertTrue(dir.delete());
+		assertEquals(expected, lines);
+	}
+}
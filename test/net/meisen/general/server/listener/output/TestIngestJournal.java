@@ -0,0 +1,257 @@
+package net.meisen.general.server.listener.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.meisen.general.server.api.ILineSink;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>IngestJournal</code> and the
+ * <code>JournalReader</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestIngestJournal {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private File dir;
+	private File file;
+
+	/**
+	 * A sink collecting the replayed lines.
+	 */
+	protected static class ListSink implements ILineSink {
+		private final List<String> lines = new ArrayList<String>();
+
+		@Override
+		public void write(final String line) throws IOException {
+			lines.add(line);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			// nothing to do
+		}
+
+		@Override
+		public void close() throws IOException {
+			// nothing to do
+		}
+	}
+
+	/**
+	 * Creates a temporary directory for the segments.
+	 *
+	 * @throws IOException
+	 *             if the directory cannot be created
+	 */
+	@Before
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory("ingestJournal").toFile();
+		file = new File(dir, "ingest.journal");
+	}
+
+	/**
+	 * Deletes the temporary directory.
+	 */
+	@After
+	public void deleteDir() {
+		final File[] files = dir.listFiles();
+		if (files != null) {
+			for (final File f : files) {
+				assertTrue(f.delete());
+			}
+		}
+		assertTrue(dir.delete());
+	}
+
+	/**
+	 * Tests the appending and the replay of records over several segments.
+	 *
+	 * @throws IOException
+	 *             if the journal cannot be written or read
+	 */
+	@Test
+	public void testReplay() throws IOException {
+		final IngestJournal journal = new IngestJournal(file, 4096, UTF8);
+		for (int i = 1; i <= 1000; i++) {
+			assertEquals(i, journal.append("line " + i + " \u00e4\u20ac"));
+		}
+		journal.write("");
+		assertTrue(MappedFileSink.getSegments(file).size() > 1);
+		for (final File segment : MappedFileSink.getSegments(file)) {
+			assertTrue(segment.length() <= 4096);
+		}
+
+		// replay everything
+		ListSink sink = new ListSink();
+		assertEquals(1001, journal.replay(1, sink));
+		assertEquals(1001, sink.lines.size());
+		assertEquals("line 1 \u00e4\u20ac", sink.lines.get(0));
+		assertEquals("", sink.lines.get(1000));
+
+		// replay from a sequence within a later segment
+		sink = new ListSink();
+		assertEquals(1001, journal.replay(777, sink));
+		assertEquals(225, sink.lines.size());
+		assertEquals("line 777 \u00e4\u20ac", sink.lines.get(0));
+
+		// replay after the end
+		sink = new ListSink();
+		assertEquals(-1, journal.replay(2000, sink));
+		assertEquals(0, sink.lines.size());
+		journal.close();
+
+		try {
+			journal.append("closed");
+			fail("Exception expected");
+		} catch (final IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests the reopening of a journal with an incomplete record at the end,
+	 * i.e. that the record is cut off and the sequence-numbers continue.
+	 *
+	 * @throws IOException
+	 *             if the journal cannot be written or read
+	 */
+	@Test
+	public void testRecovery() throws IOException {
+		IngestJournal journal = new IngestJournal(file, 4096, UTF8);
+		for (int i = 1; i <= 10; i++) {
+			journal.append("line " + i);
+		}
+		final File segment = journal.getCurrentSegment();
+		journal.close();
+
+		// simulate an interrupted write of the last record
+		final RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+		try {
+			raf.setLength(raf.length() - 3);
+		} finally {
+			raf.close();
+		}
+
+		journal = new IngestJournal(file, 4096, UTF8);
+		assertEquals(10, journal.getNextSequence());
+		assertEquals(10, journal.append("replaced"));
+		journal.append("line 11");
+		journal.close();
+
+		final ListSink sink = new ListSink();
+		journal = new IngestJournal(file, 4096, UTF8);
+		assertEquals(12, journal.getNextSequence());
+		assertEquals(11, journal.replay(9, sink));
+		assertEquals(3, sink.lines.size());
+		assertEquals("line 9", sink.lines.get(0));
+		assertEquals("replaced", sink.lines.get(1));
+		journal.close();
+	}
+
+	/**
+	 * Tests the detection of a corrupted record prior to the last segment.
+	 *
+	 * @throws IOException
+	 *             if the journal cannot be written or read
+	 */
+	@Test
+	public void testCorruption() throws IOException {
+		final IngestJournal journal = new IngestJournal(file, 4096, UTF8);
+		for (int i = 1; i <= 1000; i++) {
+			journal.append("line " + i);
+		}
+		journal.close();
+
+		// flip a byte of the line of the first record
+		final File first = MappedFileSink.getSegments(file).get(0);
+		final RandomAccessFile raf = new RandomAccessFile(first, "rw");
+		try {
+			raf.seek(IngestJournal.HEADER_SIZE);
+			raf.write('X');
+		} finally {
+			raf.close();
+		}
+
+		final JournalReader reader = new JournalReader(
+				MappedFileSink.getSegments(file), 1, UTF8);
+		try {
+			reader.next();
+			fail("Exception expected");
+		} catch (final IOException e) {
+			assertTrue(e.getMessage().contains(first.getName()));
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Tests the releasing of segments and a record exceeding the buffer of
+	 * the reader.
+	 *
+	 * @throws IOException
+	 *             if the journal cannot be written or read
+	 */
+	@Test
+	public void testRelease() throws IOException {
+		final IngestJournal journal = new IngestJournal(file, 4096, UTF8);
+		for (int i = 1; i <= 1000; i++) {
+			journal.append("line " + i);
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 2 * JournalReader.DEFAULT_BUFFER_SIZE; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		final long large = journal.append(sb.toString());
+
+		final int segments = MappedFileSink.getSegments(file).size();
+		final int removed = journal.release(500);
+		assertTrue(removed > 0);
+		assertEquals(segments - removed, MappedFileSink.getSegments(file)
+				.size());
+
+		final ListSink sink = new ListSink();
+		assertEquals(large, journal.replay(500, sink));
+		assertEquals("line 500", sink.lines.get(0));
+		assertEquals(sb.toString(), sink.lines.get(sink.lines.size() - 1));
+
+		// the current segment is never released
+		journal.release(Long.MAX_VALUE);
+		assertFalse(MappedFileSink.getSegments(file).isEmpty());
+		assertEquals(large + 1, journal.getNextSequence());
+		journal.close();
+	}
+
+	/**
+	 * Tests the validation of the journal within the
+	 * <code>OutputSettings</code>.
+	 */
+	@Test
+	public void testSettings() {
+		final OutputSettings settings = new OutputSettings();
+		settings.setJournal(file);
+		assertTrue(settings.isValid());
+		settings.setFile(file);
+		assertFalse(settings.isValid());
+		settings.setFile(new File(dir, "ingest.log"));
+		assertTrue(settings.isValid());
+		settings.setJournalSegmentSize(16);
+		assertFalse(settings.isValid());
+	}
+}
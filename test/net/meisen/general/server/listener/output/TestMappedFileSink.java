@@ -0,0 +1,266 @@
+package net.meisen.general.server.listener.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>MappedFileSink</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestMappedFileSink {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private File dir;
+
+	/**
+	 * Creates a temporary directory for the segments.
+	 *
+	 * @throws IOException
+	 *             if the directory cannot be created
+	 */
+	@Before
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory("mappedFileSink").toFile();
+	}
+
+	/**
+	 * Deletes the temporary directory.
+	 */
+	@After
+	public void deleteDir() {
+		final File[] files = dir.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				assertTrue(file.delete());
+			}
+		}
+		assertTrue(dir.delete());
+	}
+
+	/**
+	 * Reads all the lines of the segments of the specified file.
+	 *
+	 * @param file
+	 *            the file of the sink
+	 *
+	 * @return the lines of all segments
+	 *
+	 * @throws IOException
+	 *             if a segment cannot be read
+	 */
+	protected List<String> readLines(final File file) throws IOException {
+		final List<String> lines = new ArrayList<String>();
+		for (final File segment : MappedFileSink.getSegments(file)) {
+			lines.addAll(Files.readAllLines(segment.toPath(), UTF8));
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Tests the rollover of full segments, i.e. that the lines are written
+	 * in order and the segments are truncated.
+	 *
+	 * @throws IOException
+	 *             if the segments cannot be written
+	 */
+	@Test
+	public void testRollover() throws IOException {
+		final File file = new File(dir, "ingest.log");
+		final MappedFileSink sink = new MappedFileSink(file, 4096, 0, UTF8);
+
+		final List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++) {
+			final String line = "line " + i + " \u00e4\u20ac";
+			sink.write(line);
+			expected.add(line);
+		}
+		assertTrue(sink.getRollovers() > 0);
+		assertEquals(1000, sink.getWritten());
+		sink.close();
+
+		final List<File> segments = MappedFileSink.getSegments(file);
+		assertEquals(sink.getRollovers() + 1, segments.size());
+		assertEquals(segments.size(), dir.listFiles().length);
+		for (final File segment : segments) {
+			assertTrue(segment.length() <= 4096);
+		}
+		assertEquals(expected, readLines(file));
+		assertEquals(1, MappedFileSink.getSequence(file, segments.get(0)));
+
+		// a new sink continues after the existing segments
+		final MappedFileSink next = new MappedFileSink(file, 4096, 0, UTF8);
+		next.write("next");
+		assertTrue(next.getCurrentSegment().getSequence() > segments.size());
+		next.close();
+		expected.add("next");
+		assertEquals(expected, readLines(file));
+	}
+
+	/**
+	 * Tests a line exceeding the size of a segment.
+	 *
+	 * @throws IOException
+	 *             if the segments cannot be written
+	 */
+	@Test
+	public void testLargeLine() throws IOException {
+		final File file = new File(dir, "large.log");
+		final MappedFileSink sink = new MappedFileSink(file, 4096, 0, UTF8);
+
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		sink.write("first");
+		sink.write(sb.toString());
+		sink.write("last");
+		sink.close();
+
+		final List<String> lines = readLines(file);
+		assertEquals(3, lines.size());
+		assertEquals(sb.toString(), lines.get(1));
+		assertEquals("last", lines.get(2));
+
+		// a large first line doesn't leave an empty segment
+		final MappedFileSink next = new MappedFileSink(file, 4096, 0, UTF8);
+		next.write(sb.toString());
+		next.close();
+
+		final List<File> segments = MappedFileSink.getSegments(file);
+		assertEquals(4, segments.size());
+		for (final File segment : segments) {
+			assertTrue(segment.getName(), segment.length() > 0);
+		}
+	}
+
+	/**
+	 * Tests the recovery of the segments of a sink, which wasn't closed
+	 * properly, i.e. the zeroed tail and the incomplete line of the last
+	 * segment are removed and the preallocated segment is deleted.
+	 *
+	 * @throws IOException
+	 *             if the segments cannot be written
+	 */
+	@Test
+	public void testRecover() throws IOException {
+		final File file = new File(dir, "crashed.log");
+		final String separator = System.getProperty("line.separator");
+		final byte[] data = ("a" + separator + "b" + separator + "incompl")
+				.getBytes(UTF8);
+		final byte[] segment = new byte[4096];
+		System.arraycopy(data, 0, segment, 0, data.length);
+		Files.write(MappedFileSink.getSegmentFile(file, 1).toPath(), segment);
+		final File pre = new File(dir, "crashed.log.000002.pre");
+		Files.write(pre.toPath(), new byte[4096]);
+		final File other = new File(dir, "other.pre");
+		Files.write(other.toPath(), new byte[0]);
+
+		final MappedFileSink sink = new MappedFileSink(file, 4096, 0, UTF8);
+		assertFalse(pre.exists());
+		assertTrue(other.exists());
+		assertEquals(2 + 2 * separator.length(), MappedFileSink
+				.getSegmentFile(file, 1).length());
+		sink.write("c");
+		sink.close();
+
+		final List<String> expected = new ArrayList<String>();
+		expected.add("a");
+		expected.add("b");
+		expected.add("c");
+		assertEquals(expected, readLines(file));
+
+		// a segment without any complete line is deleted
+		Files.write(MappedFileSink.getSegmentFile(file, 3).toPath(),
+				new byte[4096]);
+		new MappedFileSink(file, 4096, 0, UTF8).close();
+		assertFalse(MappedFileSink.getSegmentFile(file, 3).exists());
+		assertEquals(expected, readLines(file));
+	}
+
+	/**
+	 * Tests the search of the last separator, also if it's split between two
+	 * reads or ends with a zero byte.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be written or read
+	 */
+	@Test
+	public void testLastSeparator() throws IOException {
+		final File file = new File(dir, "separator.log");
+		final Charset utf16 = Charset.forName("UTF-16LE");
+		Files.write(file.toPath(), "ab\ncd\nef".getBytes(utf16));
+
+		final byte[] separator = "\n".getBytes(utf16);
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			for (int size = 2; size < 20; size++) {
+				final byte[] buffer = new byte[size];
+				assertEquals(12, MappedFileSink.lastSeparator(raf, 16,
+						separator, buffer));
+				assertEquals(6, MappedFileSink.lastSeparator(raf, 11,
+						separator, buffer));
+				assertEquals(0, MappedFileSink.lastSeparator(raf, 5,
+						separator, buffer));
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Tests the rollover of aged segments.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testRolloverInterval() throws Exception {
+		final File file = new File(dir, "timed.log");
+		final MappedFileSink sink = new MappedFileSink(file, 4096, 50, UTF8);
+
+		sink.write("first");
+		sink.write("second");
+		assertEquals(0, sink.getRollovers());
+		Thread.sleep(100);
+		sink.write("third");
+		assertEquals(1, sink.getRollovers());
+		sink.close();
+
+		final List<File> segments = MappedFileSink.getSegments(file);
+		assertEquals(2, segments.size());
+		assertEquals(2, Files.readAllLines(segments.get(0).toPath(), UTF8)
+				.size());
+	}
+
+	/**
+	 * Tests the naming of the segments.
+	 */
+	@Test
+	public void testSegmentNames() {
+		final File file = new File(dir, "out.log");
+		final File segment = MappedFileSink.getSegmentFile(file, 12);
+		assertEquals("out.log.000012", segment.getName());
+		assertEquals(12, MappedFileSink.getSequence(file, segment));
+		assertEquals(-1,
+				MappedFileSink.getSequence(file, new File(dir, "out.log")));
+		assertEquals(-1,
+				MappedFileSink.getSequence(file, new File(dir, "out.log.1a")));
+		assertFalse(MappedFileSink.getSegments(file).contains(segment));
+	}
+}
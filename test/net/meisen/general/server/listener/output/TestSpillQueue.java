@@ -0,0 +1,164 @@
+package net.meisen.general.server.listener.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>SpillQueue</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestSpillQueue {
+	private File dir;
+	private File file;
+
+	/**
+	 * Creates a temporary directory for the segments.
+	 *
+	 * @throws IOException
+	 *             if the directory cannot be created
+	 */
+	@Before
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory("spillQueue").toFile();
+		file = new File(dir, "ingest.spill");
+	}
+
+	/**
+	 * Deletes the temporary directory.
+	 */
+	@After
+	public void deleteDir() {
+		final File[] files = dir.listFiles();
+		if (files != null) {
+			for (final File f : files) {
+				assertTrue(f.delete());
+			}
+		}
+		assertTrue(dir.delete());
+	}
+
+	/**
+	 * Tests the order of the lines spilled over several segments, while
+	 * lines are removed in between.
+	 *
+	 * @throws IOException
+	 *             if the segments cannot be written or read
+	 */
+	@Test
+	public void testOrder() throws IOException {
+		final SpillQueue queue = new SpillQueue(file, 4096);
+		assertNull(queue.poll());
+
+		int next = 0;
+		for (int i = 0; i < 5000; i++) {
+			queue.offer("line " + i + " \u00e4\u20ac");
+			if (i % 3 == 0) {
+				assertEquals("line " + next++ + " \u00e4\u20ac", queue.poll());
+			}
+		}
+		assertEquals(5000 - next, queue.size());
+		assertTrue(queue.getSegments() > 1);
+		assertTrue(queue.getBytes() > 0);
+		assertTrue(queue.getSpilledBytes() > queue.getBytes());
+
+		final String[] lines = new String[100];
+		int count;
+		while ((count = queue.drain(lines, lines.length)) > 0) {
+			for (int i = 0; i < count; i++) {
+				assertEquals("line " + next++ + " \u00e4\u20ac", lines[i]);
+			}
+		}
+		assertEquals(5000, next);
+		assertTrue(queue.isEmpty());
+		assertEquals(0, queue.getBytes());
+
+		// the empty queue keeps a single truncated segment
+		assertEquals(1, queue.getSegments());
+		assertEquals(1, SpillQueue.getSegments(file).size());
+		assertEquals(0, SpillQueue.getSegments(file).get(0).length());
+
+		queue.close();
+		assertEquals(0, SpillQueue.getSegments(file).size());
+		try {
+			queue.offer("closed");
+			fail("Exception expected");
+		} catch (final IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests a line exceeding the buffers and the segment size.
+	 *
+	 * @throws IOException
+	 *             if the segments cannot be written or read
+	 */
+	@Test
+	public void testLargeLine() throws IOException {
+		final SpillQueue queue = new SpillQueue(file, 4096);
+
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 2 * SpillQueue.BUFFER_SIZE; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		queue.offer("first");
+		queue.offer(sb.toString());
+		queue.offer("");
+		queue.offer("last");
+
+		assertEquals("first", queue.poll());
+		assertEquals(sb.toString(), queue.poll());
+		assertEquals("", queue.poll());
+		assertEquals("last", queue.poll());
+		assertNull(queue.poll());
+		queue.close();
+	}
+
+	/**
+	 * Tests the removal of stale segments, which doesn't affect the segments
+	 * of a <code>MappedFileSink</code>, and the temporary directory.
+	 *
+	 * @throws IOException
+	 *             if the segments cannot be written or read
+	 */
+	@Test
+	public void testFiles() throws IOException {
+		assertTrue(SpillQueue.getSegmentFile(file, 3).createNewFile());
+		assertEquals("ingest.spill.spill.000003", SpillQueue.getSegmentFile(
+				file, 3).getName());
+
+		// the segments of a sink using the same file are kept
+		final File sinkSegment = MappedFileSink.getSegmentFile(file, 1);
+		assertTrue(sinkSegment.createNewFile());
+		final SpillQueue queue = new SpillQueue(file, 4096);
+		assertEquals(0, SpillQueue.getSegments(file).size());
+		assertTrue(sinkSegment.exists());
+		queue.offer("spilled");
+		assertEquals(1, MappedFileSink.getSegments(file).size());
+		queue.close();
+		assertTrue(sinkSegment.exists());
+
+		final SpillQueue temp = new SpillQueue();
+		assertNull(temp.getFile());
+		temp.offer("temp");
+		final File tempFile = temp.getFile();
+		assertTrue(SpillQueue.getSegments(tempFile).size() > 0);
+		assertEquals(1, temp.clear());
+		assertTrue(temp.isEmpty());
+		temp.close();
+		assertFalse(tempFile.getParentFile().exists());
+	}
+}
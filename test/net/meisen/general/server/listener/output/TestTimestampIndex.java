@@ -0,0 +1,317 @@
+package net.meisen.general.server.listener.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.meisen.general.server.api.ILineSink;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>TimestampIndex</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestTimestampIndex {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private File dir;
+	private File file;
+
+	/**
+	 * A sink collecting the streamed lines.
+	 */
+	protected static class ListSink implements ILineSink {
+		private final List<String> lines = new ArrayList<String>();
+
+		@Override
+		public void write(final String line) throws IOException {
+			lines.add(line);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			// nothing to do
+		}
+
+		@Override
+		public void close() throws IOException {
+			// nothing to do
+		}
+	}
+
+	/**
+	 * Creates a temporary directory for the segments.
+	 *
+	 * @throws IOException
+	 *             if the directory cannot be created
+	 */
+	@Before
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory("timestampIndex").toFile();
+		file = new File(dir, "ingest.log");
+	}
+
+	/**
+	 * Deletes the temporary directory.
+	 */
+	@After
+	public void deleteDir() {
+		final File[] files = dir.listFiles();
+		if (files != null) {
+			for (final File f : files) {
+				assertTrue(f.delete());
+			}
+		}
+		assertTrue(dir.delete());
+	}
+
+	/**
+	 * Writes the specified amount of lines to the sink.
+	 *
+	 * @param sink
+	 *            the sink to write to
+	 * @param prefix
+	 *            the prefix of the lines
+	 * @param amount
+	 *            the amount of lines
+	 *
+	 * @return the written lines
+	 *
+	 * @throws IOException
+	 *             if a line cannot be written
+	 */
+	protected List<String> write(final MappedFileSink sink,
+			final String prefix, final int amount) throws IOException {
+		final List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < amount; i++) {
+			final String line = prefix + " line " + i + " \u00e4\u20ac";
+			sink.write(line);
+			lines.add(line);
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Tests the streaming of the lines written within a time window over
+	 * several segments.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testStream() throws Exception {
+		final MappedFileSink sink = new MappedFileSink(file, 4096, 0, UTF8);
+		sink.setIndex(new TimestampIndex(TimestampIndex.getIndexFile(file),
+				20, 1024));
+
+		final List<String> all = new ArrayList<String>();
+		all.addAll(write(sink, "A", 300));
+		Thread.sleep(100);
+		final long from = System.currentTimeMillis();
+		final List<String> window = write(sink, "B", 300);
+		all.addAll(window);
+		final long to = System.currentTimeMillis();
+		Thread.sleep(100);
+		all.addAll(write(sink, "C", 300));
+		assertTrue(sink.getRollovers() > 2);
+
+		// the window, all lines and no line (the segment is still written)
+		ListSink target = new ListSink();
+		assertEquals(300, sink.stream(from, to, target));
+		assertEquals(window, target.lines);
+
+		target = new ListSink();
+		assertEquals(900, sink.stream(0, Long.MAX_VALUE, target));
+		assertEquals(all, target.lines);
+
+		target = new ListSink();
+		assertEquals(0, sink.stream(0, from - 10000, target));
+		assertEquals(0, sink.stream(to, from, target));
+		assertEquals(0, sink.stream(to + 10000, Long.MAX_VALUE, target));
+		assertEquals(0, target.lines.size());
+		sink.close();
+
+		// stream the closed segments using the index file (and resolution)
+		final TimestampIndex index = new TimestampIndex(
+				TimestampIndex.getIndexFile(file), 20, 1024);
+		target = new ListSink();
+		assertEquals(300, index.stream(file, from, to, UTF8, target));
+		assertEquals(window, target.lines);
+		index.close();
+	}
+
+	/**
+	 * Tests the adding and the lookup of entries and the reopening of an
+	 * index with an incomplete entry.
+	 *
+	 * @throws IOException
+	 *             if the index cannot be written or read
+	 */
+	@Test
+	public void testLookup() throws IOException {
+		final File indexFile = TimestampIndex.getIndexFile(file);
+		TimestampIndex index = new TimestampIndex(indexFile, 100, 1000);
+
+		// the first line of a segment, the resolution and the interval
+		assertTrue(index.update(1000, 1, 0));
+		assertFalse(index.update(1050, 1, 500));
+		assertTrue(index.update(1100, 1, 600));
+		assertTrue(index.update(1150, 1, 1600));
+		assertTrue(index.update(1160, 2, 0));
+		assertEquals(4, index.size());
+
+		// the clock is set back
+		index.add(900, 2, 100);
+		assertEquals(5, index.size());
+
+		assertEquals(0, index.start(500).getOffset());
+		assertEquals(1000, index.start(1099).getTimestamp());
+		assertEquals(1100, index.start(1100).getTimestamp());
+		assertEquals(1160, index.start(1200).getTimestamp());
+		assertNull(index.start(1300));
+		assertEquals(1100, index.higher(1099).getTimestamp());
+		assertEquals(1, index.higher(1100).getSegment());
+		assertNull(index.higher(1160));
+		index.close();
+
+		// cut off an incomplete entry
+		final RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+		try {
+			raf.setLength(raf.length() + 10);
+		} finally {
+			raf.close();
+		}
+		index = new TimestampIndex(indexFile, 100, 1000);
+		assertEquals(5, index.size());
+		assertEquals(5 * TimestampIndex.ENTRY_SIZE, indexFile.length());
+		assertFalse(index.update(1200, 2, 200));
+		index.close();
+	}
+
+	/**
+	 * Tests the validation of the index within the
+	 * <code>OutputSettings</code>.
+	 *
+	 * @throws IOException
+	 *             if the sink cannot be created
+	 */
+	@Test
+	public void testSettings() throws IOException {
+		final OutputSettings settings = new OutputSettings();
+		settings.setIndex(true);
+		assertFalse(settings.isValid());
+		settings.setFile(file);
+		settings.setSegmentSize(4096);
+		assertTrue(settings.isValid());
+		settings.setIndexResolution(0);
+		assertFalse(settings.isValid());
+		settings.setIndexResolution(1000);
+		settings.setCharset(Charset.forName("UTF-16LE"));
+		assertFalse(settings.isValid());
+		settings.setCharset(UTF8);
+		assertTrue(settings.isValid());
+
+		final MappedFileSink sink = (MappedFileSink) settings
+				.createTarget(null);
+		assertEquals(TimestampIndex.getIndexFile(file), sink.getIndex()
+				.getIndexFile());
+		sink.write("indexed");
+		sink.close();
+		assertEquals(TimestampIndex.ENTRY_SIZE, TimestampIndex
+				.getIndexFile(file).length());
+	}
+
+	/**
+	 * Tests the skipping of lines exceeding the <code>maxLineLength</code>,
+	 * including a partial line at the end of a segment.
+	 *
+	 * @throws IOException
+	 *             if the segments cannot be written or read
+	 */
+	@Test
+	public void testLongLine() throws IOException {
+		final MappedFileSink sink = new MappedFileSink(file, 4096, 0, UTF8);
+		final TimestampIndex index = new TimestampIndex(
+				TimestampIndex.getIndexFile(file), 1000, 1024 * 1024);
+		sink.setIndex(index);
+		index.setMaxLineLength(100);
+		assertEquals(100, index.getMaxLineLength());
+
+		final char[] chars = new char[1000];
+		Arrays.fill(chars, 'x');
+		final String longLine = new String(chars);
+		sink.write("first");
+		sink.write(longLine);
+		sink.write(longLine.substring(0, 100));
+		sink.write("last");
+
+		ListSink target = new ListSink();
+		assertEquals(3, sink.stream(0, Long.MAX_VALUE, target));
+		assertEquals(Arrays.asList("first", longLine.substring(0, 100),
+				"last"), target.lines);
+		sink.close();
+
+		// a partial line at the end isn't buffered completely
+		final File segment = MappedFileSink.getSegments(file).get(0);
+		assertEquals(6 + 1001 + 101 + 5, segment.length());
+		final RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+		try {
+			raf.seek(raf.length());
+			raf.write(longLine.getBytes(UTF8));
+		} finally {
+			raf.close();
+		}
+		target = new ListSink();
+		assertEquals(3, index.streamSegment(segment, 0, Long.MAX_VALUE, UTF8,
+				target));
+		assertEquals("last", target.lines.get(2));
+		index.close();
+	}
+
+	/**
+	 * Tests the rejection of a <code>Charset</code>, which isn't
+	 * ASCII-compatible.
+	 *
+	 * @throws IOException
+	 *             if the sink cannot be created
+	 */
+	@Test
+	public void testCharset() throws IOException {
+		final Charset utf16 = Charset.forName("UTF-16");
+		final MappedFileSink sink = new MappedFileSink(file, 4096, 0, utf16);
+		final TimestampIndex index = new TimestampIndex(
+				TimestampIndex.getIndexFile(file), 1000, 1024 * 1024);
+		try {
+			sink.setIndex(index);
+			fail("Exception expected");
+		} catch (final IllegalArgumentException e) {
+			assertNull(sink.getIndex());
+		}
+
+		try {
+			index.stream(file, 0, Long.MAX_VALUE, utf16, new ListSink());
+			fail("Exception expected");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+		index.close();
+		sink.close();
+	}
+}
@@ -0,0 +1,163 @@
+package net.meisen.general.server.listener.utility;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the bookkeeping done by the
+ * <code>AcceptListenerThread</code> for each accepted connection, while
+ * <code>liveConnections</code> other connections are open. The
+ * <code>ConnectionRegistry</code> is compared to the former implementation,
+ * which scanned all the running workers on each accept.
+ *
+ * @author pmeisen
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionRegistryBenchmark {
+
+	/**
+	 * The amount of connections open while accepting.
+	 */
+	@Param({ "10000" })
+	public int liveConnections;
+
+	private final Map<Thread, Boolean> running = new ConcurrentHashMap<Thread, Boolean>();
+
+	private ConnectionRegistry registry;
+	private LegacyRegistry legacy;
+	private Thread[] accepted;
+	private int next = 0;
+
+	/**
+	 * Registers the live connections.
+	 */
+	@Setup
+	public void setup() {
+		registry = new ConnectionRegistry();
+		legacy = new LegacyRegistry();
+
+		for (int i = 0; i < liveConnections; i++) {
+			final Thread worker = new Thread();
+			running.put(worker, Boolean.TRUE);
+
+			registry.register(worker);
+			legacy.cleanUpAndAdd(worker);
+		}
+
+		// the workers of the accepted (short living) connections
+		accepted = new Thread[1024];
+		for (int i = 0; i < accepted.length; i++) {
+			accepted[i] = new Thread();
+		}
+	}
+
+	private Thread nextAccepted() {
+		next = (next + 1) & (accepted.length - 1);
+		return accepted[next];
+	}
+
+	/**
+	 * Accepts a connection and finishes it using the
+	 * <code>ConnectionRegistry</code>.
+	 *
+	 * @return the amount of registered workers
+	 */
+	@Benchmark
+	public int registry() {
+		final Thread worker = nextAccepted();
+
+		registry.register(worker);
+		registry.deregister(worker);
+
+		return registry.size();
+	}
+
+	/**
+	 * Accepts a connection and finishes it using the former implementation.
+	 *
+	 * @return the amount of registered workers
+	 */
+	@Benchmark
+	public int legacy() {
+		final Thread worker = nextAccepted();
+
+		running.put(worker, Boolean.TRUE);
+		legacy.cleanUpAndAdd(worker);
+		running.remove(worker);
+
+		return legacy.workers.size();
+	}
+
+	/**
+	 * The former implementation of the bookkeeping.
+	 */
+	private class LegacyRegistry {
+		private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		private final Set<Thread> workers = new HashSet<Thread>();
+
+		private void cleanUpAndAdd(final Thread newThread) {
+			lock.readLock().lock();
+			final List<Thread> toBeRemoved;
+			try {
+				toBeRemoved = new ArrayList<Thread>();
+				for (final Thread t : workers) {
+					if (!running.containsKey(t) || t.isInterrupted()) {
+						toBeRemoved.add(t);
+					}
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+
+			lock.writeLock().lock();
+			try {
+				workers.removeAll(toBeRemoved);
+				workers.add(newThread);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args
+	 *            not used
+	 *
+	 * @throws RunnerException
+	 *             if the benchmark fails
+	 */
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(
+				ConnectionRegistryBenchmark.class.getSimpleName()).build())
+				.run();
+	}
+}
@@ -0,0 +1,87 @@
+package net.meisen.general.server.listener.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>AcceptListenerThread</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestAcceptListenerThread {
+	private final String host = "localhost";
+	private final int port = 10011;
+
+	/**
+	 * Tests that the closing of the listener waits for all the workers using
+	 * one deadline, i.e. workers ignoring the interruption do not delay the
+	 * closing one after another and are reported as abandoned.
+	 *
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testCloseWithDeadline() throws Exception {
+		final int amount = 5;
+		final CountDownLatch started = new CountDownLatch(amount);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final AcceptListenerThread listener = new AcceptListenerThread(port) {
+
+			@Override
+			protected Thread createWorkerThread(final Socket socket)
+					throws IOException {
+				return new Thread() {
+
+					@Override
+					public void run() {
+						started.countDown();
+
+						// ignore any interruption until released
+						while (release.getCount() > 0) {
+							try {
+								release.await();
+							} catch (final InterruptedException e) {
+								// ignore it
+							}
+						}
+					}
+				};
+			}
+		};
+		listener.start();
+
+		final List<Socket> sockets = new ArrayList<Socket>();
+		try {
+			for (int i = 0; i < amount; i++) {
+				sockets.add(new Socket(host, port));
+			}
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+
+			// close the listener, all workers have to be abandoned
+			final long start = System.currentTimeMillis();
+			final List<Thread> abandoned = listener.close(300);
+			final long duration = System.currentTimeMillis() - start;
+
+			assertEquals(amount, abandoned.size());
+			assertTrue("Closing took " + duration + "ms", duration < 1000);
+			assertEquals(0, listener.getConnectionRegistry().size());
+		} finally {
+			release.countDown();
+
+			for (final Socket socket : sockets) {
+				socket.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package net.meisen.general.server.listener.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.meisen.general.server.listener.utility.AdmissionControl.AdmissionPolicy;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>AdmissionControl</code> and its usage
+ * by the <code>AcceptListenerThread</code> and the
+ * <code>SelectorListenerThread</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestAdmissionControl {
+	private final static Charset UTF16 = Charset.forName("UTF-16BE");
+
+	private final String host = "localhost";
+	private final int port = 10012;
+
+	/**
+	 * Tests the parsing of the <code>AdmissionPolicy</code>.
+	 */
+	@Test
+	public void testAdmissionPolicy() {
+		assertEquals(AdmissionPolicy.PAUSE, AdmissionPolicy.find("pause"));
+		assertEquals(AdmissionPolicy.REJECT, AdmissionPolicy.find(" REJECT "));
+		assertNull(AdmissionPolicy.find("unknown"));
+	}
+
+	/**
+	 * Tests the checking of the limits.
+	 */
+	@Test
+	public void testLimits() {
+		final AdmissionControl control = new AdmissionControl();
+		assertFalse(control.isLimited());
+		assertFalse(control.isExceeded(Integer.MAX_VALUE, Integer.MAX_VALUE));
+
+		control.setMaxConnections(2);
+		control.setMaxPending(5);
+		assertTrue(control.isLimited());
+		assertFalse(control.isExceeded(1, 4));
+		assertTrue(control.isExceeded(2, 0));
+		assertTrue(control.isExceeded(0, 5));
+	}
+
+	/**
+	 * Tests the rejecting of connections exceeding the limits, the message is
+	 * encoded using the <code>Charset</code> of the listener.
+	 *
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testReject() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final AcceptListenerThread listener = new AcceptListenerThread(port) {
+
+			@Override
+			protected Thread createWorkerThread(final Socket socket) {
+				return new Thread() {
+
+					@Override
+					public void run() {
+						started.countDown();
+						try {
+							release.await();
+						} catch (final InterruptedException e) {
+							// finish
+						}
+					}
+				};
+			}
+		};
+
+		final AdmissionControl control = new AdmissionControl();
+		control.setMaxConnections(1);
+		control.setPolicy(AdmissionPolicy.REJECT);
+		control.setMessage("SERVER BUSY \u00e4");
+		listener.setAdmissionControl(control);
+		listener.setCharset(UTF16);
+		listener.start();
+
+		final Socket first = new Socket(host, port);
+		final Socket second;
+		try {
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+
+			second = new Socket(host, port);
+			final BufferedReader reader = new BufferedReader(
+					new InputStreamReader(second.getInputStream(), UTF16));
+			assertEquals("SERVER BUSY \u00e4", reader.readLine());
+			assertNull(reader.readLine());
+			second.close();
+
+			assertEquals(1, control.getAcceptedCount());
+			assertEquals(1, control.getRejectedCount());
+			assertEquals(0, control.getPausedCount());
+		} finally {
+			release.countDown();
+			first.close();
+			listener.close();
+		}
+	}
+
+	/**
+	 * Tests the pausing of the accepting of the
+	 * <code>SelectorListenerThread</code>.
+	 *
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testPause() throws Exception {
+		final SelectorListenerThread listener = new SelectorListenerThread(
+				port) {
+
+			@Override
+			protected String handleInput(final String input) {
+				return input == null ? null : "ECHO " + input;
+			}
+		};
+
+		final AdmissionControl control = new AdmissionControl();
+		control.setMaxConnections(1);
+		control.setPolicy(AdmissionPolicy.PAUSE);
+		listener.setAdmissionControl(control);
+		listener.start();
+
+		final Socket first = new Socket(host, port);
+		final Socket second = new Socket(host, port);
+		try {
+			final PrintWriter firstOut = new PrintWriter(
+					first.getOutputStream(), true);
+			final BufferedReader firstIn = new BufferedReader(
+					new InputStreamReader(first.getInputStream()));
+			firstOut.println("FIRST");
+			assertEquals("ECHO FIRST", firstIn.readLine());
+
+			// the second one is kept within the backlog
+			final PrintWriter secondOut = new PrintWriter(
+					second.getOutputStream(), true);
+			final BufferedReader secondIn = new BufferedReader(
+					new InputStreamReader(second.getInputStream()));
+			secondOut.println("SECOND");
+			second.setSoTimeout(200);
+			try {
+				secondIn.readLine();
+				assertTrue("The second connection was answered", false);
+			} catch (final IOException e) {
+				// expected timeout
+			}
+			assertEquals(1, control.getAcceptedCount());
+			assertTrue(control.getPausedCount() > 0);
+
+			// closing the first one resumes the accepting
+			first.close();
+			second.setSoTimeout(5000);
+			assertEquals("ECHO SECOND", secondIn.readLine());
+			assertEquals(2, control.getAcceptedCount());
+			assertEquals(0, control.getRejectedCount());
+		} finally {
+			first.close();
+			second.close();
+			listener.close();
+		}
+	}
+}
@@ -0,0 +1,290 @@
+package net.meisen.general.server.listener.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>BufferPool</code> and the readers
+ * and writers borrowing their buffers from it.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestBufferPool {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Tests the rounding of the requested capacities to the size-classes and
+	 * the reuse of released buffers.
+	 */
+	@Test
+	public void testSizeClasses() {
+		final BufferPool pool = new BufferPool(false, 100, 1000, 1 << 20);
+		assertEquals(128, pool.getMinSize());
+		assertEquals(1024, pool.getMaxSize());
+
+		final ByteBuffer small = pool.acquire(1);
+		assertEquals(128, small.capacity());
+		assertEquals(0, small.position());
+		assertEquals(128, small.limit());
+		final ByteBuffer medium = pool.acquire(129);
+		assertEquals(256, medium.capacity());
+		assertEquals(2, pool.getBorrowed());
+		assertEquals(384, pool.getUsedMemory());
+		assertEquals(384, pool.getAllocatedMemory());
+		assertEquals(2, pool.getMisses());
+
+		// a released buffer is reused and cleared
+		small.put((byte) 1).flip();
+		pool.release(small);
+		assertEquals(128, pool.getFreeMemory());
+		final ByteBuffer reused = pool.acquire(100);
+		assertEquals(2, pool.getMisses());
+		assertEquals(3, pool.getAcquires());
+		assertEquals(128, reused.limit());
+		assertEquals(1, reused.get(0));
+
+		// releasing twice or foreign buffers is ignored
+		pool.release(small);
+		pool.release(ByteBuffer.allocate(128));
+		pool.release(null);
+		assertEquals(0, pool.getFreeMemory());
+		assertEquals(2, pool.getBorrowed());
+
+		pool.release(reused);
+		pool.release(medium);
+		assertEquals(0, pool.getBorrowed());
+		assertEquals(0, pool.getUsedMemory());
+		assertEquals(384, pool.getFreeMemory());
+
+		pool.trim();
+		assertEquals(0, pool.getFreeMemory());
+		assertEquals(0, pool.getAllocatedMemory());
+	}
+
+	/**
+	 * Tests the buffers exceeding the largest size-class or the memory
+	 * limit, which are not pooled.
+	 */
+	@Test
+	public void testOverflows() {
+		final BufferPool pool = new BufferPool(true, 512, 1024, 2048);
+		assertTrue(pool.isDirect());
+
+		final ByteBuffer large = pool.acquire(5000);
+		assertTrue(large.isDirect());
+		assertEquals(5000, large.capacity());
+		assertEquals(1, pool.getOverflows());
+		assertEquals(0, pool.getAllocatedMemory());
+
+		final ByteBuffer first = pool.acquire(1024);
+		final ByteBuffer second = pool.acquire(1024);
+		assertEquals(2048, pool.getAllocatedMemory());
+		assertEquals(1, pool.getOverflows());
+
+		// the limit is reached
+		final ByteBuffer third = pool.acquire(512);
+		assertEquals(2, pool.getOverflows());
+		assertEquals(2048, pool.getAllocatedMemory());
+		assertEquals(4, pool.getBorrowed());
+
+		pool.release(large);
+		pool.release(third);
+		assertEquals(0, pool.getFreeMemory());
+		pool.release(first);
+		pool.release(second);
+		assertEquals(2048, pool.getFreeMemory());
+		assertEquals(0, pool.getUsedMemory());
+	}
+
+	/**
+	 * Tests the validation of the settings.
+	 */
+	@Test
+	public void testInvalidSettings() {
+		try {
+			new BufferPool(false, 0, 1024, 1024);
+			fail("Exception expected");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new BufferPool(false, 1024, 512, 1024);
+			fail("Exception expected");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new BufferPool(false, 512, 1024, -1);
+			fail("Exception expected");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new LineFramer(new PipedInputStream(), UTF8, 1024, 0,
+					new BufferPool(true));
+			fail("Exception expected");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests the detection of buffers never released.
+	 *
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testLeaks() throws InterruptedException {
+		final BufferPool pool = new BufferPool(false);
+		ByteBuffer buffer = pool.acquire(1024);
+		assertNotNull(buffer);
+		assertEquals(1, pool.getBorrowed());
+		buffer = null;
+
+		for (int i = 0; i < 100 && pool.getLeaks() == 0; i++) {
+			System.gc();
+			Thread.sleep(10);
+			pool.expunge();
+		}
+		assertEquals(1, pool.getLeaks());
+		assertEquals(0, pool.getBorrowed());
+		assertEquals(0, pool.getUsedMemory());
+		assertEquals(1024, pool.getFreeMemory());
+	}
+
+	/**
+	 * Tests that a <code>LineFramer</code> holds a buffer only while data is
+	 * buffered.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testLineFramer() throws IOException {
+		final BufferPool pool = new BufferPool(false);
+		final PipedOutputStream out = new PipedOutputStream();
+		final InputStream in = new PipedInputStream(out, 1 << 16);
+		final LineFramer framer = new LineFramer(in, UTF8, 1024, 0, pool);
+		assertEquals(0, pool.getBorrowed());
+
+		out.write("first\nsec".getBytes(UTF8));
+		assertEquals("first", framer.readLine());
+		assertEquals(1, pool.getBorrowed());
+		out.write("ond\n".getBytes(UTF8));
+		assertEquals("second", framer.readLine());
+
+		// a line larger than the buffer
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 3000; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		out.write((sb.toString() + "\n\u00e4\n").getBytes(UTF8));
+		assertEquals(sb.toString(), framer.readLine());
+		assertEquals("\u00e4", framer.readLine());
+
+		// the buffer is released when the framer waits for data
+		out.close();
+		assertNull(framer.readLine());
+		assertEquals(0, pool.getBorrowed());
+		assertEquals(0, pool.getLeaks());
+		framer.close();
+	}
+
+	/**
+	 * Tests that a <code>FrameReader</code> holds a buffer only while data is
+	 * buffered.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testFrameReader() throws IOException {
+		final BufferPool pool = new BufferPool(false);
+		final PipedOutputStream out = new PipedOutputStream();
+		final InputStream in = new PipedInputStream(out, 1 << 16);
+		final FrameReader reader = new FrameReader(in, 1 << 20, false, pool);
+
+		final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		FrameReader.writeFrame(frames, ByteBuffer.wrap(new byte[] { 1, 2 }));
+		FrameReader.writeFrame(frames, ByteBuffer.wrap(new byte[20000]));
+		out.write(frames.toByteArray());
+		out.close();
+
+		ByteBuffer frame = reader.readFrame();
+		assertEquals(2, frame.remaining());
+		assertEquals(2, frame.get(1));
+		frame = reader.readFrame();
+		assertEquals(20000, frame.remaining());
+		assertNull(reader.readFrame());
+		assertEquals(0, pool.getBorrowed());
+		reader.close();
+	}
+
+	/**
+	 * Tests the <code>PooledWriter</code> and the
+	 * <code>PooledOutputStream</code>.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be written
+	 */
+	@Test
+	public void testWriters() throws IOException {
+		final BufferPool pool = new BufferPool(false, 16, 1024, 1024);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		// split a surrogate pair and exceed the buffer
+		final PooledWriter writer = new PooledWriter(bytes, UTF8, pool, 16);
+		final String text = "0123456789abcdef\u00e4\ud83d\ude00!";
+		writer.write(text, 0, 18);
+		assertEquals(1, pool.getBorrowed());
+		writer.write(text.substring(18).toCharArray());
+		writer.flush();
+		assertEquals(0, pool.getBorrowed());
+		assertEquals(text, new String(bytes.toByteArray(), UTF8));
+
+		// write single bytes and large arrays
+		bytes.reset();
+		final PooledOutputStream stream = new PooledOutputStream(bytes, pool,
+				16);
+		stream.write(1);
+		stream.write(new byte[] { 2, 3 });
+		assertEquals(0, bytes.size());
+		stream.write(new byte[100]);
+		assertEquals(103, bytes.size());
+		assertEquals(1, bytes.toByteArray()[0]);
+		stream.write(4);
+		stream.flush();
+		assertEquals(104, bytes.size());
+		assertEquals(0, pool.getBorrowed());
+		stream.close();
+		assertEquals(0, pool.getLeaks());
+	}
+
+	/**
+	 * Tests the shared pool.
+	 */
+	@Test
+	public void testShared() {
+		final BufferPool pool = BufferPool.getShared();
+		assertSame(pool, BufferPool.getShared());
+		assertFalse(pool.isDirect());
+		assertEquals(BufferPool.DEFAULT_MAX_MEMORY, pool.getMaxMemory());
+	}
+}
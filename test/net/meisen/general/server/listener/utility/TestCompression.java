@@ -0,0 +1,329 @@
+package net.meisen.general.server.listener.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintWriter;
+import java.io.PushbackInputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.meisen.general.server.control.ServerController;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>Compression</code>, the
+ * <code>InflatingInputStream</code> and the compression of the
+ * <code>StringWorkerThread</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestCompression {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private final String host = "localhost";
+	private final int port = 10020;
+
+	/**
+	 * Checks if the specified data requests the compression.
+	 *
+	 * @param data
+	 *            the data sent by the client
+	 * @param remaining
+	 *            the data expected to remain after the negotiation
+	 *
+	 * @return <code>true</code> if the compression was requested, otherwise
+	 *         <code>false</code>
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	protected boolean accept(final String data, final String remaining)
+			throws IOException {
+		final PushbackInputStream in = new PushbackInputStream(
+				new ByteArrayInputStream(data.getBytes(UTF8)),
+				Compression.getPushbackSize());
+		final boolean accepted = Compression.accept(in);
+
+		final ByteArrayOutputStream rest = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) >= 0) {
+			rest.write(b);
+		}
+		assertEquals(remaining, new String(rest.toByteArray(), UTF8));
+
+		return accepted;
+	}
+
+	/**
+	 * Tests the negotiation of the compression.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testAccept() throws IOException {
+		assertTrue(accept("%DEFLATE\nabc", "abc"));
+		assertTrue(accept("%DEFLATE\r\nabc", "abc"));
+		assertTrue(accept("%DEFLATE\rabc", "abc"));
+		assertTrue(accept("%DEFLATE\n", ""));
+
+		assertFalse(accept("ECHO a\n", "ECHO a\n"));
+		assertFalse(accept("%DEF\n", "%DEF\n"));
+		assertFalse(accept("%DEFLATEX\n", "%DEFLATEX\n"));
+		assertFalse(accept("%DEFLATE", "%DEFLATE"));
+		assertFalse(accept("", ""));
+	}
+
+	/**
+	 * Tests that flushed data can be read without closing the stream, i.e.
+	 * that the data is sync-flushed and the available bytes are known.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be written or read
+	 */
+	@Test
+	public void testSyncFlush() throws IOException {
+		final PipedOutputStream pipe = new PipedOutputStream();
+		final InputStream in = Compression.inflate(new PipedInputStream(pipe,
+				1 << 16));
+		final OutputStream out = Compression.deflate(pipe, 9);
+
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append("2026-10-17 12:00:00 INFO the same log-line\n");
+		}
+		final byte[] data = sb.toString().getBytes(UTF8);
+		out.write(data);
+		assertEquals(0, in.available());
+		out.flush();
+
+		final byte[] read = new byte[data.length];
+		int pos = 0;
+		while (in.available() > 0) {
+			pos += in.read(read, pos, read.length - pos);
+		}
+		assertEquals(data.length, pos);
+		assertTrue(Arrays.equals(data, read));
+
+		out.close();
+		assertEquals(-1, in.read());
+		in.close();
+	}
+
+	/**
+	 * Tests a compressed connection handled by a
+	 * <code>StringWorkerThread</code>, as well as an uncompressed connection
+	 * to the same worker-implementation.
+	 *
+	 * @throws IOException
+	 *             if the connection cannot be opened
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testWorker() throws IOException, InterruptedException {
+		final ServerSocket serverSocket = new ServerSocket(port);
+		try {
+			for (final boolean compressed : new boolean[] { true, false }) {
+				final ServerController controller = new ServerController(host,
+						port);
+				controller.setCompressed(compressed);
+
+				final AtomicBoolean negotiated = new AtomicBoolean();
+				final AtomicReference<List<String>> answers = new AtomicReference<List<String>>();
+				final Thread client = new Thread() {
+
+					@Override
+					public void run() {
+						answers.set(controller.sendMessages("a", "b"));
+					}
+				};
+				client.start();
+
+				final StringWorkerThread worker = new StringWorkerThread(
+						serverSocket.accept()) {
+
+					@Override
+					public void run() {
+						try {
+							final LineFramer in = createSocketFramer();
+							final PrintWriter out = createSocketWriter();
+							negotiated.set(isCompressed());
+
+							String line;
+							while ((line = in.readLine()) != null) {
+								out.println("ECHO " + line);
+							}
+						} catch (final IOException e) {
+							// ignore
+						} finally {
+							close();
+						}
+					}
+				};
+				worker.setCharset(Charset.defaultCharset());
+				worker.setCompression(true);
+				worker.setBufferPool(new BufferPool(false));
+				worker.start();
+
+				client.join();
+				worker.join();
+				assertEquals(compressed, negotiated.get());
+				assertEquals(Arrays.asList("ECHO a", "ECHO b"),
+						answers.get());
+			}
+		} finally {
+			serverSocket.close();
+		}
+	}
+
+	/**
+	 * Tests the closing of a compressed connection by another thread than the
+	 * worker, e.g. by the <code>AcceptListenerThread</code>. The worker
+	 * fails reading from the closed <code>Socket</code> instead of using an
+	 * ended <code>Inflater</code>.
+	 *
+	 * @throws IOException
+	 *             if the connection cannot be opened
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testForeignClose() throws IOException, InterruptedException {
+		final ServerSocket serverSocket = new ServerSocket(port);
+		final Socket client = new Socket(host, port);
+		try {
+			final CountDownLatch read = new CountDownLatch(1);
+			final CountDownLatch closed = new CountDownLatch(1);
+			final AtomicReference<Throwable> failure;
+			failure = new AtomicReference<Throwable>();
+			final StringWorkerThread worker = new StringWorkerThread(
+					serverSocket.accept()) {
+
+				@Override
+				public void run() {
+					try {
+						final LineFramer in = createSocketFramer();
+						assertEquals("a", in.readLine());
+						read.countDown();
+						closed.await();
+						in.readLine();
+					} catch (final Throwable t) {
+						failure.set(t);
+					} finally {
+						close();
+					}
+				}
+			};
+			worker.setCompression(true);
+			worker.start();
+
+			assertTrue(Compression.request(client.getInputStream(),
+					client.getOutputStream()));
+			final OutputStream out = Compression.deflate(
+					client.getOutputStream(), -1);
+			out.write("a\n".getBytes(UTF8));
+			out.flush();
+
+			read.await();
+			worker.close();
+			closed.countDown();
+			worker.join();
+
+			assertTrue("" + failure.get(),
+					failure.get() instanceof SocketException);
+		} finally {
+			client.close();
+			serverSocket.close();
+		}
+	}
+
+	/**
+	 * Tests a client requesting the compression from a worker with disabled
+	 * compression, i.e. the request is declined and never read as line.
+	 *
+	 * @throws IOException
+	 *             if the connection cannot be opened
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testDeclined() throws IOException, InterruptedException {
+		final ServerSocket serverSocket = new ServerSocket(port);
+		final Socket client = new Socket(host, port);
+		try {
+			final List<String> lines = new ArrayList<String>();
+			final StringWorkerThread worker = new StringWorkerThread(
+					serverSocket.accept()) {
+
+				@Override
+				public void run() {
+					try {
+						final LineFramer in = createSocketFramer();
+						String line;
+						while ((line = in.readLine()) != null) {
+							lines.add(line);
+						}
+					} catch (final IOException e) {
+						// ignore
+					} finally {
+						close();
+					}
+				}
+			};
+			worker.setCompression(false);
+			worker.start();
+
+			final InputStream in = client.getInputStream();
+			final OutputStream out = client.getOutputStream();
+			assertFalse(Compression.request(in, out));
+			out.write((Compression.HELLO + "\na\n").getBytes(UTF8));
+			client.shutdownOutput();
+			worker.join();
+
+			// only the first line is a request
+			assertEquals(Arrays.asList(Compression.HELLO, "a"), lines);
+			assertFalse(worker.isCompressed());
+		} finally {
+			client.close();
+			serverSocket.close();
+		}
+	}
+
+	/**
+	 * Tests a client requesting the compression from a server not supporting
+	 * it, i.e. the connection is used uncompressed.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be written or read
+	 */
+	@Test
+	public void testRequestRejected() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final InputStream in = new ByteArrayInputStream(
+				"UNKNOWN\r\nECHO a\n".getBytes(UTF8));
+
+		assertFalse(Compression.request(in, out));
+		assertEquals("%DEFLATE\n", new String(out.toByteArray(), UTF8));
+		assertEquals('E', in.read());
+	}
+}
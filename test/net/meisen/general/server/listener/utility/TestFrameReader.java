@@ -0,0 +1,265 @@
+package net.meisen.general.server.listener.utility;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>FrameReader</code> and the
+ * length-prefixed framing of the <code>SelectorListenerThread</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestFrameReader {
+	private final String host = "localhost";
+	private final int port = 10017;
+
+	/**
+	 * Creates the frames of the specified payloads.
+	 *
+	 * @param payloads
+	 *            the payloads to create the frames for
+	 *
+	 * @return the bytes of the frames
+	 *
+	 * @throws IOException
+	 *             if a frame cannot be written
+	 */
+	protected byte[] frames(final byte[]... payloads) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (final byte[] payload : payloads) {
+			FrameReader.writeFrame(out, payload == null ? null : ByteBuffer
+					.wrap(payload));
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Creates a stream which returns at most <code>chunk</code> bytes per
+	 * read, i.e. simulates partial reads.
+	 *
+	 * @param data
+	 *            the data of the stream
+	 * @param chunk
+	 *            the maximal amount of bytes per read
+	 *
+	 * @return the created stream
+	 */
+	protected InputStream chunked(final byte[] data, final int chunk) {
+		return new ByteArrayInputStream(data) {
+
+			@Override
+			public synchronized int read(final byte[] b, final int off,
+					final int len) {
+				return super.read(b, off, Math.min(len, chunk));
+			}
+		};
+	}
+
+	/**
+	 * Creates a random payload.
+	 *
+	 * @param size
+	 *            the size of the payload
+	 *
+	 * @return the created payload
+	 */
+	protected byte[] payload(final int size) {
+		final byte[] payload = new byte[size];
+		new Random(size).nextBytes(payload);
+
+		return payload;
+	}
+
+	/**
+	 * Converts the remaining bytes of the buffer into an array.
+	 *
+	 * @param buffer
+	 *            the buffer to be converted
+	 *
+	 * @return the array of the remaining bytes
+	 */
+	protected byte[] toArray(final ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+
+		return bytes;
+	}
+
+	/**
+	 * Tests the reading of small and large frames using partial reads.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testReadFrames() throws IOException {
+		final byte[] small = payload(10);
+		final byte[] large = payload(100000);
+		final byte[] data = frames(small, null, large, small);
+
+		final FrameReader reader = new FrameReader(chunked(data, 3000),
+				FrameReader.DEFAULT_MAX_FRAME_SIZE, false);
+		assertArrayEquals(small, toArray(reader.readFrame()));
+		assertEquals(0, reader.readFrame().remaining());
+		assertArrayEquals(large, toArray(reader.readFrame()));
+		assertArrayEquals(small, toArray(reader.readFrame()));
+		assertNull(reader.readFrame());
+	}
+
+	/**
+	 * Tests the reuse of the buffer if the frames are pooled.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testPooled() throws IOException {
+		final byte[] first = payload(20);
+		final byte[] second = payload(10);
+
+		FrameReader reader = new FrameReader(new ByteArrayInputStream(frames(
+				first, second)), 100, true);
+		final ByteBuffer firstFrame = reader.readFrame();
+		assertArrayEquals(first, toArray(firstFrame));
+		final ByteBuffer secondFrame = reader.readFrame();
+		assertArrayEquals(second, toArray(secondFrame));
+		assertSame(firstFrame.array(), secondFrame.array());
+
+		reader = new FrameReader(new ByteArrayInputStream(frames(first,
+				second)), 100, false);
+		assertNotSame(reader.readFrame().array(), reader.readFrame().array());
+	}
+
+	/**
+	 * Tests the exceptions thrown for invalid frames.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testInvalidFrames() throws IOException {
+		FrameReader reader = new FrameReader(new ByteArrayInputStream(frames(
+				payload(10), payload(11))), 10, false);
+		assertEquals(10, reader.readFrame().remaining());
+		try {
+			reader.readFrame();
+			fail("Exception expected");
+		} catch (final FrameTooLargeException e) {
+			assertEquals(11, e.getSize());
+			assertEquals(10, e.getMaxFrameSize());
+		}
+
+		final byte[] data = frames(payload(10));
+		reader = new FrameReader(new ByteArrayInputStream(Arrays.copyOf(data,
+				data.length - 1)), 10, false);
+		try {
+			reader.readFrame();
+			fail("Exception expected");
+		} catch (final EOFException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests the <code>hasFrame</code> method.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testHasFrame() throws IOException {
+		final byte[] data = frames(payload(5), payload(20000));
+		final FrameReader reader = new FrameReader(new ByteArrayInputStream(
+				Arrays.copyOf(data, data.length - 1)),
+				FrameReader.DEFAULT_MAX_FRAME_SIZE, false);
+
+		assertTrue(reader.hasFrame());
+		assertEquals(5, reader.readFrame().remaining());
+		assertFalse(reader.hasFrame());
+	}
+
+	/**
+	 * Tests the length-prefixed framing within the selector-loop.
+	 *
+	 * @throws IOException
+	 *             if the listener cannot be opened
+	 */
+	@Test
+	public void testSelectorFraming() throws IOException {
+		final SelectorListenerThread listener = new SelectorListenerThread(
+				port) {
+
+			@Override
+			protected String handleInput(final String input) {
+				return input == null ? null : "ECHO " + input;
+			}
+
+			@Override
+			protected ByteBuffer handleFrame(final ByteBuffer frame) {
+				if (frame != null && frame.remaining() > 5) {
+					return frame;
+				} else {
+					return super.handleFrame(frame);
+				}
+			}
+		};
+		listener.setFraming(Framing.LENGTH);
+		listener.setMaxFrameSize(1024 * 1024);
+		listener.setPooled(true);
+		listener.start();
+
+		final byte[] large = payload(500000);
+		Socket socket = new Socket(host, port);
+		try {
+			socket.getOutputStream().write(
+					frames("Hi".getBytes("UTF-8"), large, large));
+			final DataInputStream in = new DataInputStream(
+					socket.getInputStream());
+
+			final byte[] answer = new byte[in.readInt()];
+			in.readFully(answer);
+			assertEquals("ECHO Hi", new String(answer, "UTF-8"));
+
+			for (int i = 0; i < 2; i++) {
+				final byte[] echo = new byte[in.readInt()];
+				in.readFully(echo);
+				assertArrayEquals(large, echo);
+			}
+		} finally {
+			socket.close();
+		}
+
+		// a too large frame closes the connection
+		socket = new Socket(host, port);
+		try {
+			socket.getOutputStream().write(frames(payload(1024 * 1024 + 1)));
+			assertEquals(-1, socket.getInputStream().read());
+		} catch (final IOException e) {
+			// the connection might be reset
+		} finally {
+			socket.close();
+			listener.close();
+		}
+	}
+}
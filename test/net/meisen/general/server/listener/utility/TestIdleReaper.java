@@ -0,0 +1,252 @@
+package net.meisen.general.server.listener.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.net.SocketException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>IdleReaper</code> used by the
+ * <code>AcceptListenerThread</code> and the <code>SelectorListenerThread</code>
+ * .
+ *
+ * @author pmeisen
+ *
+ */
+public class TestIdleReaper {
+	private final String host = "localhost";
+	private final int port = 10014;
+
+	private TimerWheel timerWheel;
+	private AcceptListenerThread listener;
+
+	/**
+	 * Creates the <code>TimerWheel</code> used by the tests.
+	 */
+	@Before
+	public void create() {
+		timerWheel = new TimerWheel("TestTimerWheel", 10, 64);
+	}
+
+	/**
+	 * Creates a listener answering each line using
+	 * <code>StringWorkerThread</code> instances.
+	 *
+	 * @return the created listener
+	 *
+	 * @throws IOException
+	 *             if the listener cannot be opened
+	 */
+	protected AcceptListenerThread createThreadListener() throws IOException {
+		return new AcceptListenerThread(port) {
+
+			@Override
+			protected Thread createWorkerThread(final Socket socket) {
+				return new StringWorkerThread(socket) {
+
+					@Override
+					public void run() {
+						try {
+							final BufferedReader in = createSocketReader();
+							final PrintWriter out = createSocketWriter();
+							final IdleReaper.Watch watch = getWatch();
+
+							String input;
+							while ((input = in.readLine()) != null) {
+								watch.processing();
+								out.println("ECHO " + input);
+								watch.handled(in.ready());
+							}
+						} catch (final IOException e) {
+							// closed
+						} finally {
+							close();
+						}
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Creates a listener answering each line within a selector-loop.
+	 *
+	 * @return the created listener
+	 *
+	 * @throws IOException
+	 *             if the listener cannot be opened
+	 */
+	protected AcceptListenerThread createSelectorListener()
+			throws IOException {
+		return new SelectorListenerThread(port) {
+
+			@Override
+			protected String handleInput(final String input) {
+				return input == null ? null : "ECHO " + input;
+			}
+		};
+	}
+
+	/**
+	 * Starts the listener using the specified timeouts.
+	 *
+	 * @param listener
+	 *            the listener to be started
+	 * @param idleTimeout
+	 *            the idle-timeout
+	 * @param readTimeout
+	 *            the read-timeout
+	 *
+	 * @return the used <code>IdleReaper</code>
+	 */
+	protected IdleReaper start(final AcceptListenerThread listener,
+			final long idleTimeout, final long readTimeout) {
+		final IdleReaper reaper = new IdleReaper(idleTimeout, readTimeout,
+				timerWheel);
+
+		this.listener = listener;
+		this.listener.setIdleReaper(reaper);
+		this.listener.start();
+
+		return reaper;
+	}
+
+	/**
+	 * Checks that the connection is answered and closed after being idle.
+	 *
+	 * @param reaper
+	 *            the used reaper
+	 *
+	 * @throws IOException
+	 *             if the communication fails
+	 */
+	protected void assertIdleClosed(final IdleReaper reaper)
+			throws IOException {
+		final Socket socket = new Socket(host, port);
+		try {
+			socket.setSoTimeout(5000);
+			final PrintWriter out = new PrintWriter(socket.getOutputStream(),
+					true);
+			final BufferedReader in = new BufferedReader(
+					new InputStreamReader(socket.getInputStream()));
+
+			out.println("HELLO");
+			assertEquals("ECHO HELLO", in.readLine());
+
+			// wait for the connection to be closed
+			assertEndOfStream(in);
+			assertEquals(1, reaper.getIdleClosedCount());
+			assertEquals(0, reaper.getReadTimedOutCount());
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Checks that the connection is closed after sending an incomplete line.
+	 *
+	 * @param reaper
+	 *            the used reaper
+	 *
+	 * @throws IOException
+	 *             if the communication fails
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	protected void assertReadTimedOut(final IdleReaper reaper)
+			throws IOException, InterruptedException {
+		final Socket socket = new Socket(host, port);
+		try {
+			socket.setSoTimeout(5000);
+			final OutputStream out = socket.getOutputStream();
+			final BufferedReader in = new BufferedReader(
+					new InputStreamReader(socket.getInputStream()));
+
+			// send the line very slowly
+			for (int i = 0; i < 5; i++) {
+				out.write('A');
+				out.flush();
+				Thread.sleep(50);
+			}
+
+			assertEndOfStream(in);
+			assertEquals(0, reaper.getIdleClosedCount());
+			assertEquals(1, reaper.getReadTimedOutCount());
+		} finally {
+			socket.close();
+		}
+	}
+
+	private void assertEndOfStream(final BufferedReader in) throws IOException {
+		try {
+			assertNull(in.readLine());
+		} catch (final SocketException e) {
+			// connection reset, i.e. closed as well
+		}
+	}
+
+	/**
+	 * Tests the idle-timeout of a <code>StringWorkerThread</code>.
+	 *
+	 * @throws IOException
+	 *             if the communication fails
+	 */
+	@Test
+	public void testIdleWorkerThread() throws IOException {
+		assertIdleClosed(start(createThreadListener(), 200, 0));
+	}
+
+	/**
+	 * Tests the read-timeout of a <code>StringWorkerThread</code>.
+	 *
+	 * @throws Exception
+	 *             if the communication fails
+	 */
+	@Test
+	public void testReadTimeoutWorkerThread() throws Exception {
+		assertReadTimedOut(start(createThreadListener(), 0, 150));
+	}
+
+	/**
+	 * Tests the idle-timeout of the <code>SelectorListenerThread</code>.
+	 *
+	 * @throws IOException
+	 *             if the communication fails
+	 */
+	@Test
+	public void testIdleSelector() throws IOException {
+		assertIdleClosed(start(createSelectorListener(), 200, 0));
+	}
+
+	/**
+	 * Tests the read-timeout of the <code>SelectorListenerThread</code>.
+	 *
+	 * @throws Exception
+	 *             if the communication fails
+	 */
+	@Test
+	public void testReadTimeoutSelector() throws Exception {
+		assertReadTimedOut(start(createSelectorListener(), 0, 150));
+	}
+
+	/**
+	 * Closes the listener and stops the timer.
+	 */
+	@After
+	public void close() {
+		if (listener != null) {
+			listener.close();
+		}
+		timerWheel.stop();
+	}
+}
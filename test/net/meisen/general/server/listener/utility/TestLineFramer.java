@@ -0,0 +1,353 @@
+package net.meisen.general.server.listener.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>LineFramer</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestLineFramer {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+	private final static Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+	/**
+	 * Creates a stream which returns at most <code>chunk</code> bytes per
+	 * read, i.e. simulates partial reads.
+	 *
+	 * @param data
+	 *            the data of the stream
+	 * @param chunk
+	 *            the maximal amount of bytes per read
+	 *
+	 * @return the created stream
+	 */
+	protected InputStream chunked(final byte[] data, final int chunk) {
+		return new ByteArrayInputStream(data) {
+
+			@Override
+			public synchronized int read(final byte[] b, final int off,
+					final int len) {
+				return super.read(b, off, Math.min(len, chunk));
+			}
+		};
+	}
+
+	/**
+	 * Tests the different terminators.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testTerminators() throws IOException {
+		final LineFramer framer = new LineFramer(new ByteArrayInputStream(
+				"A\nB\rC\r\n\nD".getBytes(UTF8)), UTF8);
+
+		assertEquals("A", framer.readLine());
+		assertEquals("B", framer.readLine());
+		assertEquals("C", framer.readLine());
+		assertEquals("", framer.readLine());
+		assertEquals("D", framer.readLine());
+		assertNull(framer.readLine());
+		assertNull(framer.readLine());
+	}
+
+	/**
+	 * Tests lines split over several reads and exceeding the buffer.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testPartialReads() throws IOException {
+		final String text = "first line\r\nsecond line which is longer\r\r\n\u00c4\u00d6\u00dc \u00e4\u00f6\u00fc \u20ac\n";
+		final LineFramer framer = new LineFramer(chunked(text.getBytes(UTF8),
+				1), UTF8, 4);
+
+		assertEquals("first line", framer.readLine());
+		assertEquals("second line which is longer", framer.readLine());
+		assertEquals("", framer.readLine());
+		assertEquals("\u00c4\u00d6\u00dc \u00e4\u00f6\u00fc \u20ac", framer.readLine());
+		assertNull(framer.readLine());
+	}
+
+	/**
+	 * Tests the decoding using <code>ISO-8859-1</code>.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testLatin1() throws IOException {
+		final LineFramer framer = new LineFramer(new ByteArrayInputStream(
+				"Gr\u00fc\u00dfe\nplain\n".getBytes(LATIN1)), LATIN1);
+
+		assertEquals("Gr\u00fc\u00dfe", framer.readLine());
+		assertEquals("plain", framer.readLine());
+		assertNull(framer.readLine());
+	}
+
+	/**
+	 * Tests the detection of charsets which encode ASCII as single bytes and
+	 * the rejection of other charsets.
+	 */
+	@Test
+	public void testAsciiCompatible() {
+		assertTrue(LineFramer.isAsciiCompatible(UTF8));
+		assertTrue(LineFramer.isAsciiCompatible(LATIN1));
+		assertFalse(LineFramer.isAsciiCompatible(Charset.forName("UTF-16")));
+
+		try {
+			new LineFramer(new ByteArrayInputStream(new byte[0]),
+					Charset.forName("UTF-16LE"));
+			fail("Exception expected");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests the <code>ready</code> method.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testReady() throws IOException {
+		final LineFramer framer = new LineFramer(chunked(
+				"A\r\nB\r\n".getBytes(UTF8), 3), UTF8);
+
+		assertEquals("A", framer.readLine());
+		assertTrue(framer.ready());
+		assertEquals("B", framer.readLine());
+		assertFalse(framer.ready());
+		assertNull(framer.readLine());
+	}
+
+	/**
+	 * Tests the <code>hasLine</code> method, which is used to drain pipelined
+	 * lines without blocking.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testHasLine() throws IOException {
+		final LineFramer framer = new LineFramer(chunked(
+				"A\rB\r\nC".getBytes(UTF8), 2), UTF8, 2);
+
+		assertTrue(framer.hasLine());
+		assertEquals("A", framer.readLine());
+		assertTrue(framer.hasLine());
+		assertEquals("B", framer.readLine());
+
+		// the last line has no terminator
+		assertFalse(framer.hasLine());
+		assertEquals("C", framer.readLine());
+		assertFalse(framer.hasLine());
+		assertNull(framer.readLine());
+	}
+
+	/**
+	 * Compares the result with the one of a <code>BufferedReader</code> using
+	 * random data and random partial reads.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testCompareWithBufferedReader() throws IOException {
+		final Random rnd = new Random(4711);
+		final char[] chars = { 'a', 'b', '\u00fc', '\u20ac', ' ', '\r', '\n' };
+
+		for (int run = 0; run < 100; run++) {
+			final StringBuilder sb = new StringBuilder();
+			final int length = rnd.nextInt(500);
+			for (int i = 0; i < length; i++) {
+				sb.append(chars[rnd.nextInt(chars.length)]);
+			}
+			final byte[] data = sb.toString().getBytes(UTF8);
+
+			final BufferedReader reader = new BufferedReader(
+					new InputStreamReader(new ByteArrayInputStream(data), UTF8));
+			final LineFramer framer = new LineFramer(chunked(data,
+					1 + rnd.nextInt(10)), UTF8, 1 + rnd.nextInt(16));
+
+			String expected;
+			do {
+				expected = reader.readLine();
+				assertEquals(expected, framer.readLine());
+			} while (expected != null);
+		}
+	}
+
+	/**
+	 * Tests the splitting of lines exceeding the maximal line-length.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testMaxLineLength() throws IOException {
+		LineFramer framer = new LineFramer(chunked(
+				"123456789\nabc\r\n12345\n1234567".getBytes(UTF8), 1), UTF8, 2,
+				5);
+
+		assertEquals("12345", framer.readLine());
+		assertTrue(framer.isPartial());
+		assertEquals("6789", framer.readLine());
+		assertFalse(framer.isPartial());
+		assertEquals("abc", framer.readLine());
+		assertEquals("12345", framer.readLine());
+		assertFalse(framer.isPartial());
+		assertTrue(framer.hasLine());
+		assertEquals("12345", framer.readLine());
+		assertTrue(framer.isPartial());
+		assertEquals("67", framer.readLine());
+		assertFalse(framer.isPartial());
+		assertNull(framer.readLine());
+
+		// the end of the stream terminates the last part
+		framer = new LineFramer(new ByteArrayInputStream("123456"
+				.getBytes(UTF8)), UTF8, 16, 3);
+		assertEquals("123", framer.readLine());
+		assertTrue(framer.isPartial());
+		assertEquals("456", framer.readLine());
+		assertFalse(framer.isPartial());
+		assertNull(framer.readLine());
+	}
+
+	/**
+	 * Tests that the parts of a line don't split a multi-byte character.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testMaxLineLengthMultiByte() throws IOException {
+		final String line = "\u00e4\u00e4\u20ac\u00e4a\u20ac";
+		final LineFramer framer = new LineFramer(new ByteArrayInputStream(
+				(line + "\n").getBytes(UTF8)), UTF8, 4, 3);
+
+		final StringBuilder sb = new StringBuilder();
+		String part;
+		do {
+			part = framer.readLine();
+			assertTrue(part.getBytes(UTF8).length <= 3);
+			assertEquals(-1, part.indexOf('\ufffd'));
+			sb.append(part);
+		} while (framer.isPartial());
+		assertEquals(line, sb.toString());
+		assertNull(framer.readLine());
+
+		assertEquals(2, LineFramer.chunkLength(new byte[] { 'a', 'b',
+				(byte) 0xE2, (byte) 0x82 }, 0, 4, UTF8));
+		assertEquals(4, LineFramer.chunkLength(new byte[] { 'a', 'b',
+				(byte) 0xE2, (byte) 0x82 }, 0, 4, LATIN1));
+	}
+
+	/**
+	 * Tests the skipping of a huge line, which is never buffered.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testSkipLine() throws IOException {
+		final long size = 64L * 1024 * 1024;
+		final byte[] tail = "\r\nnext\n".getBytes(UTF8);
+		final InputStream in = new InputStream() {
+			private long pos = 0;
+
+			@Override
+			public int read() {
+				if (pos < size) {
+					pos++;
+					return 'x';
+				} else if (pos < size + tail.length) {
+					return tail[(int) (pos++ - size)];
+				} else {
+					return -1;
+				}
+			}
+
+			@Override
+			public int read(final byte[] b, final int off, final int len) {
+				if (pos >= size + tail.length) {
+					return -1;
+				}
+
+				int i = 0;
+				for (; i < len && pos < size + tail.length; i++) {
+					b[off + i] = (byte) read();
+				}
+				return i;
+			}
+		};
+
+		final LineFramer framer = new LineFramer(in, UTF8, 16, 1024);
+		assertEquals(1024, framer.readLine().length());
+		assertTrue(framer.isPartial());
+		assertEquals(size - 1024, framer.skipLine());
+		assertFalse(framer.isPartial());
+		assertEquals(0, framer.skipLine());
+		assertEquals("next", framer.readLine());
+		assertNull(framer.readLine());
+	}
+
+	/**
+	 * Tests the reading of lines as read-only views of the buffer.
+	 *
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	@Test
+	public void testReadLineBytes() throws IOException {
+		final LineFramer framer = new LineFramer(new ByteArrayInputStream(
+				"abc\r\n\u00e4\u00f6\u00fc\n\nlast".getBytes(UTF8)), UTF8, 4);
+
+		final ByteBuffer first = framer.readLineBytes();
+		assertTrue(first.isReadOnly());
+		assertEquals(3, first.remaining());
+		assertEquals('a', first.get(first.position()));
+		assertEquals("abc", LineFramer.decode(first, UTF8));
+		assertEquals(3, first.remaining());
+
+		// the buffer grows, i.e. a new view is created
+		final ByteBuffer second = framer.readLineBytes();
+		assertEquals(6, second.remaining());
+		assertEquals("\u00e4\u00f6\u00fc", LineFramer.decode(second, UTF8));
+
+		// the view is reused
+		assertSame(second, framer.readLineBytes());
+		assertEquals(0, second.remaining());
+		assertEquals("last", LineFramer.decode(framer.readLineBytes(), UTF8));
+		assertNull(framer.readLineBytes());
+
+		// decode read-only buffers of other charsets
+		final ByteBuffer latin1 = ByteBuffer.wrap(
+				"Gr\u00fc\u00dfe".getBytes(LATIN1)).asReadOnlyBuffer();
+		assertEquals("Gr\u00fc\u00dfe", LineFramer.decode(latin1, LATIN1));
+		final Charset utf16 = Charset.forName("UTF-16BE");
+		assertEquals("\u20ac", LineFramer.decode(ByteBuffer.wrap(
+				"\u20ac".getBytes(utf16)).asReadOnlyBuffer(), utf16));
+	}
+}
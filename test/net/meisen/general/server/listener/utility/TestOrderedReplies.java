@@ -0,0 +1,302 @@
+package net.meisen.general.server.listener.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.meisen.general.server.control.ServerController;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>OrderedReplies</code> and the
+ * asynchronous (ordered and tagged) handling of the
+ * <code>SelectorListenerThread</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestOrderedReplies {
+	private final String host = "localhost";
+	private final int port = 10016;
+
+	/**
+	 * Tests that the answers are polled in the order of the requests.
+	 */
+	@Test
+	public void testOrder() {
+		final OrderedReplies replies = new OrderedReplies(3);
+		final CompletableFuture<String> first = new CompletableFuture<String>();
+		final CompletableFuture<String> second = new CompletableFuture<String>();
+
+		replies.add(first);
+		replies.add(second);
+		replies.add(null);
+		assertTrue(replies.isFull());
+
+		second.complete("2");
+		assertEquals(Collections.emptyList(), replies.poll());
+
+		first.complete("1");
+		assertEquals(Arrays.asList("1", "2", null), replies.poll());
+		assertEquals(0, replies.getInFlight());
+		assertFalse(replies.isFull());
+	}
+
+	/**
+	 * Tests that a failed request is answered with <code>null</code>.
+	 */
+	@Test
+	public void testFailure() {
+		final AtomicInteger completed = new AtomicInteger(0);
+		final OrderedReplies replies = new OrderedReplies(2) {
+
+			@Override
+			protected void completed() {
+				completed.incrementAndGet();
+			}
+		};
+
+		final CompletableFuture<String> failing = new CompletableFuture<String>();
+		replies.add(failing);
+		replies.add(CompletableFuture.completedFuture("OK"));
+		assertEquals(1, completed.get());
+
+		failing.completeExceptionally(new IllegalStateException("expected"));
+		assertEquals(2, completed.get());
+		assertEquals(Arrays.asList(null, "OK"), replies.poll());
+	}
+
+	/**
+	 * Tests that tagged answers are polled as soon as completed.
+	 */
+	@Test
+	public void testTagged() {
+		final OrderedReplies replies = new OrderedReplies(3, true);
+		assertTrue(replies.isTagged());
+		final CompletableFuture<String> slow = new CompletableFuture<String>();
+		final CompletableFuture<String> fast = new CompletableFuture<String>();
+
+		replies.add("a", slow);
+		replies.add("b", fast);
+		replies.add("c", null);
+		assertEquals(Arrays.asList("c "), replies.poll());
+		assertEquals(2, replies.getInFlight());
+
+		fast.complete("2");
+		assertEquals(Arrays.asList("b 2"), replies.poll());
+		assertEquals(Collections.emptyList(), replies.poll());
+
+		slow.complete("1");
+		assertEquals(Arrays.asList("a 1"), replies.poll());
+		assertEquals(0, replies.getInFlight());
+	}
+
+	/**
+	 * Tests the parsing and creation of tagged lines.
+	 */
+	@Test
+	public void testRequestTags() {
+		assertEquals("17", RequestTags.getTag("17 GET a b"));
+		assertEquals("GET a b", RequestTags.getPayload("17 GET a b"));
+		assertEquals("17", RequestTags.getTag("17"));
+		assertEquals("", RequestTags.getPayload("17"));
+		assertNull(RequestTags.getTag(null));
+		assertNull(RequestTags.getPayload(null));
+
+		assertEquals("17 ", RequestTags.tag("17", null));
+		assertEquals(" OK", RequestTags.tag(null, "OK"));
+	}
+
+	/**
+	 * Tests the tagged handling within the selector-loop, i.e. a slow request
+	 * doesn't block the answers of the following ones. The answers are
+	 * received using a multiplexed <code>ServerController</code>.
+	 *
+	 * @throws IOException
+	 *             if the listener cannot be opened
+	 */
+	@Test
+	public void testSelectorTagged() throws IOException {
+		final ScheduledExecutorService executor = Executors
+				.newSingleThreadScheduledExecutor();
+
+		final SelectorListenerThread listener = new SelectorListenerThread(
+				port) {
+
+			@Override
+			protected String handleInput(final String input) {
+				return input == null ? null : "ECHO " + input;
+			}
+
+			@Override
+			protected CompletionStage<String> handleInputAsync(
+					final String input) {
+				final CompletableFuture<String> future = new CompletableFuture<String>();
+				if (!"SLOW".equals(input)) {
+					future.complete(handleInput(input));
+					return future;
+				}
+
+				executor.schedule(new Runnable() {
+
+					@Override
+					public void run() {
+						future.complete(handleInput(input));
+					}
+				}, 500, TimeUnit.MILLISECONDS);
+
+				return future;
+			}
+		};
+		listener.setFraming(Framing.TAGGED);
+		listener.setMaxInFlight(4);
+		listener.setMaxLineLength(100);
+		listener.start();
+
+		final Socket socket = new Socket(host, port);
+		try {
+			final PrintWriter out = new PrintWriter(socket.getOutputStream(),
+					false);
+			final BufferedReader in = new BufferedReader(new InputStreamReader(
+					socket.getInputStream()));
+
+			final char[] huge = new char[1000];
+			Arrays.fill(huge, 'x');
+			out.println("a SLOW");
+			out.println("b FAST");
+			out.println("c");
+			out.println("d " + new String(huge));
+			out.flush();
+
+			// the slow request is answered last
+			final Set<String> fast = new HashSet<String>();
+			for (int i = 0; i < 3; i++) {
+				fast.add(in.readLine());
+			}
+			assertEquals(new HashSet<String>(Arrays.asList("b ECHO FAST",
+					"c ECHO ", "d LINE TOO LONG")), fast);
+			assertEquals("a ECHO SLOW", in.readLine());
+		} finally {
+			socket.close();
+		}
+
+		// the client matches the answers by the request-id
+		try {
+			final ServerController controller = new ServerController(host,
+					port);
+			controller.setMultiplexed(true);
+
+			final long start = System.currentTimeMillis();
+			final List<String> answers = controller.sendMessages("SLOW",
+					"SLOW", "SLOW", "FAST");
+			final long duration = System.currentTimeMillis() - start;
+
+			assertEquals(Arrays.asList("ECHO SLOW", "ECHO SLOW", "ECHO SLOW",
+					"ECHO FAST"), answers);
+			assertTrue("" + duration, duration < 1500);
+		} finally {
+			listener.close();
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Tests the asynchronous handling within the selector-loop, the answers
+	 * are completed in the reversed order, but must be written in the order
+	 * of the requests.
+	 *
+	 * @throws IOException
+	 *             if the listener cannot be opened
+	 */
+	@Test
+	public void testSelectorAsync() throws IOException {
+		final ScheduledExecutorService executor = Executors
+				.newSingleThreadScheduledExecutor();
+		final AtomicInteger inFlight = new AtomicInteger(0);
+		final AtomicInteger maxInFlight = new AtomicInteger(0);
+
+		final SelectorListenerThread listener = new SelectorListenerThread(
+				port) {
+
+			@Override
+			protected String handleInput(final String input) {
+				return input == null ? null : "ECHO " + input;
+			}
+
+			@Override
+			protected CompletionStage<String> handleInputAsync(
+					final String input) {
+				final CompletableFuture<String> future = new CompletableFuture<String>();
+				if (input == null) {
+					future.complete(null);
+					return future;
+				}
+
+				final int current = inFlight.incrementAndGet();
+				if (current > maxInFlight.get()) {
+					maxInFlight.set(current);
+				}
+
+				// the later the request, the earlier the answer
+				final long delay = 50 - 10 * (Integer.parseInt(input) % 5);
+				executor.schedule(new Runnable() {
+
+					@Override
+					public void run() {
+						inFlight.decrementAndGet();
+						future.complete(handleInput(input));
+					}
+				}, delay, TimeUnit.MILLISECONDS);
+
+				return future;
+			}
+		};
+		listener.setMaxInFlight(4);
+		listener.start();
+
+		final Socket socket = new Socket(host, port);
+		try {
+			final PrintWriter out = new PrintWriter(socket.getOutputStream(),
+					false);
+			final BufferedReader in = new BufferedReader(new InputStreamReader(
+					socket.getInputStream()));
+
+			for (int i = 0; i < 20; i++) {
+				out.println(i);
+			}
+			out.flush();
+
+			for (int i = 0; i < 20; i++) {
+				assertEquals("ECHO " + i, in.readLine());
+			}
+			assertTrue(maxInFlight.get() <= 4);
+			assertTrue(maxInFlight.get() > 1);
+
+			socket.shutdownOutput();
+			assertNull(in.readLine());
+		} finally {
+			socket.close();
+			listener.close();
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package net.meisen.general.server.listener.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>ParallelTasks</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestParallelTasks {
+
+	/**
+	 * Tests the parallel execution and the names of the threads.
+	 */
+	@Test
+	public void testRunAll() {
+		final CountDownLatch latch = new CountDownLatch(3);
+		final Set<String> names = new HashSet<String>();
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		for (int i = 0; i < 3; i++) {
+			tasks.add(new Runnable() {
+
+				@Override
+				public void run() {
+					synchronized (names) {
+						names.add(Thread.currentThread().getName());
+					}
+
+					// all tasks must run at the same time
+					latch.countDown();
+					try {
+						assertTrue(latch.await(1, TimeUnit.SECONDS));
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+
+		assertTrue(ParallelTasks.runAll("TestTask", tasks));
+		assertEquals(0, latch.getCount());
+		assertEquals(3, names.size());
+		for (final String name : names) {
+			assertTrue(name, name.startsWith("TestTask-"));
+		}
+	}
+
+	/**
+	 * Tests the restoring of the interrupted flag, if the waiting is
+	 * interrupted.
+	 */
+	@Test
+	public void testInterrupted() {
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		tasks.add(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					release.await(1, TimeUnit.SECONDS);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+
+		Thread.currentThread().interrupt();
+		try {
+			assertFalse(ParallelTasks.runAll("TestTask", tasks));
+			assertTrue(Thread.currentThread().isInterrupted());
+		} finally {
+			Thread.interrupted();
+			release.countDown();
+		}
+	}
+}
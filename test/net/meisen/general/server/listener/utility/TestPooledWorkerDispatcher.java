@@ -0,0 +1,188 @@
+package net.meisen.general.server.listener.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.meisen.general.server.listener.utility.PooledWorkerDispatcher.RejectionPolicy;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>PooledWorkerDispatcher</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestPooledWorkerDispatcher {
+
+	/**
+	 * Creates a worker which waits for the specified <code>latch</code>.
+	 *
+	 * @param started
+	 *            the latch counted down when the worker is started
+	 * @param latch
+	 *            the latch to wait for
+	 *
+	 * @return the created worker
+	 */
+	protected Thread createWorker(final CountDownLatch started,
+			final CountDownLatch latch) {
+		return new Thread() {
+
+			@Override
+			public void run() {
+				started.countDown();
+
+				try {
+					latch.await();
+				} catch (final InterruptedException e) {
+					// finish
+				}
+			}
+		};
+	}
+
+	/**
+	 * Tests the parsing of the <code>RejectionPolicy</code>.
+	 */
+	@Test
+	public void testRejectionPolicy() {
+		assertEquals(RejectionPolicy.CLOSE, RejectionPolicy.find("close"));
+		assertEquals(RejectionPolicy.CALLERRUNS,
+				RejectionPolicy.find("callerRuns"));
+		assertEquals(RejectionPolicy.DISCARDOLDEST,
+				RejectionPolicy.find("DISCARD_OLDEST"));
+		assertNull(RejectionPolicy.find("unknown"));
+	}
+
+	/**
+	 * Tests the bounding of the pool, i.e. that workers exceeding the pool and
+	 * the queue are rejected.
+	 *
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testBounded() throws InterruptedException {
+		final PooledWorkerDispatcher dispatcher = new PooledWorkerDispatcher(
+				"TestPool", 1, 1, 1, 1000, RejectionPolicy.CLOSE);
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Thread running = createWorker(started, latch);
+		final Thread queued = createWorker(new CountDownLatch(1), latch);
+		final Thread rejected = createWorker(new CountDownLatch(1), latch);
+
+		dispatcher.dispatch(running);
+		assertTrue(started.await(1, TimeUnit.SECONDS));
+		dispatcher.dispatch(queued);
+		dispatcher.dispatch(rejected);
+
+		assertTrue(dispatcher.isRunning(running));
+		assertTrue(dispatcher.isRunning(queued));
+		assertFalse(dispatcher.isRunning(rejected));
+		assertEquals(1, dispatcher.getPendingCount());
+		assertEquals(1, dispatcher.getRejectedCount());
+
+		// let all of them finish
+		latch.countDown();
+		dispatcher.join(running, 1000);
+		dispatcher.join(queued, 1000);
+		assertFalse(dispatcher.isRunning(running));
+		assertFalse(dispatcher.isRunning(queued));
+
+		dispatcher.shutdown();
+	}
+
+	/**
+	 * Tests that finished workers remove themselves from the
+	 * <code>ConnectionRegistry</code>.
+	 *
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testDeregistration() throws InterruptedException {
+		final PooledWorkerDispatcher dispatcher = new PooledWorkerDispatcher(
+				"TestPool", 1, 1, 1, 1000, RejectionPolicy.CLOSE);
+		final ConnectionRegistry registry = new ConnectionRegistry();
+		dispatcher.setConnectionRegistry(registry);
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Thread worker = createWorker(new CountDownLatch(1), latch);
+		registry.register(worker);
+		dispatcher.dispatch(worker);
+		assertTrue(registry.isRegistered(worker));
+
+		latch.countDown();
+		dispatcher.join(worker, 1000);
+		assertFalse(registry.isRegistered(worker));
+		assertEquals(0, registry.size());
+
+		dispatcher.shutdown();
+	}
+
+	/**
+	 * Tests the interruption of a worker executed by the pool.
+	 *
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testInterrupt() throws InterruptedException {
+		final PooledWorkerDispatcher dispatcher = new PooledWorkerDispatcher(
+				"TestPool", 1, 1, 1, 1000, RejectionPolicy.CLOSE);
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final Thread worker = createWorker(started, new CountDownLatch(1));
+
+		dispatcher.dispatch(worker);
+		assertTrue(started.await(1, TimeUnit.SECONDS));
+		assertTrue(dispatcher.isRunning(worker));
+
+		dispatcher.interrupt(worker);
+		dispatcher.join(worker, 1000);
+		assertFalse(dispatcher.isRunning(worker));
+
+		dispatcher.shutdown();
+	}
+
+	/**
+	 * Tests the names of the threads of the dispatchers created by the
+	 * <code>WorkerSettings</code>.
+	 *
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testDispatcherNames() throws InterruptedException {
+		for (final WorkerMode mode : new WorkerMode[] { WorkerMode.THREAD,
+				WorkerMode.POOL }) {
+			final WorkerSettings settings = new WorkerSettings();
+			settings.setMode(mode);
+			final WorkerDispatcher dispatcher = settings
+					.createDispatcher("TestListener");
+
+			final CountDownLatch finished = new CountDownLatch(1);
+			final AtomicReference<String> name = new AtomicReference<String>();
+			dispatcher.dispatch(new Thread() {
+
+				@Override
+				public void run() {
+					name.set(Thread.currentThread().getName());
+					finished.countDown();
+				}
+			});
+			assertTrue(finished.await(1, TimeUnit.SECONDS));
+			assertTrue(mode + " " + name.get(),
+					name.get().startsWith("TestListener"));
+			dispatcher.shutdown();
+		}
+	}
+}
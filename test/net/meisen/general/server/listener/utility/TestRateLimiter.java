@@ -0,0 +1,168 @@
+package net.meisen.general.server.listener.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import net.meisen.general.server.testutilities.TestHelper;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>RateLimiter</code> and the
+ * <code>TokenBucket</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestRateLimiter {
+	private final String host = "localhost";
+	private final int port = 10015;
+
+	/**
+	 * Tests the burst and the refill of a <code>TokenBucket</code>.
+	 *
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testTokenBucket() throws InterruptedException {
+		final TokenBucket bucket = new TokenBucket(20, 2);
+
+		assertTrue(bucket.tryAcquire());
+		assertTrue(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire());
+
+		// 20 per second, i.e. one every 50ms
+		Thread.sleep(100);
+		assertTrue(bucket.tryAcquire());
+	}
+
+	/**
+	 * Tests the eviction of the buckets of the addresses.
+	 *
+	 * @throws IOException
+	 *             if an address cannot be created
+	 */
+	@Test
+	public void testEviction() throws IOException {
+		final RateLimiter limiter = new RateLimiter();
+		limiter.setConnectionRate(1);
+		limiter.setMaxAddresses(2);
+
+		final InetAddress first = InetAddress.getByAddress(new byte[] { 10,
+				0, 0, 1 });
+		final InetAddress second = InetAddress.getByAddress(new byte[] { 10,
+				0, 0, 2 });
+		final InetAddress third = InetAddress.getByAddress(new byte[] { 10,
+				0, 0, 3 });
+
+		assertTrue(limiter.acquireConnection(first));
+		assertFalse(limiter.acquireConnection(first));
+		assertTrue(limiter.acquireConnection(second));
+		assertTrue(limiter.acquireConnection(third));
+
+		// the first one was evicted, i.e. gets a new bucket
+		assertEquals(2, limiter.getAddressCount());
+		assertEquals(1, limiter.getEvictedAddressCount());
+		assertTrue(limiter.acquireConnection(first));
+		assertEquals(1, limiter.getRejectedConnectionCount());
+	}
+
+	/**
+	 * Tests the limiting of the connections of an address.
+	 *
+	 * @throws IOException
+	 *             if the listener cannot be opened
+	 */
+	@Test
+	public void testConnectionRate() throws IOException {
+		final SelectorListenerThread listener = new SelectorListenerThread(
+				port) {
+
+			@Override
+			protected String handleInput(final String input) {
+				return input == null ? null : "ECHO " + input;
+			}
+		};
+
+		final RateLimiter limiter = new RateLimiter();
+		limiter.setConnectionRate(1);
+		limiter.setConnectionBurst(2);
+		limiter.setMessage("SLOW DOWN");
+		listener.setRateLimiter(limiter);
+		listener.start();
+
+		try {
+			assertEquals("ECHO 1", TestHelper.sendMessage("1", host, port));
+			assertEquals("ECHO 2", TestHelper.sendMessage("2", host, port));
+
+			final Socket socket = new Socket(host, port);
+			try {
+				final BufferedReader in = new BufferedReader(
+						new InputStreamReader(socket.getInputStream()));
+				assertEquals("SLOW DOWN", in.readLine());
+				assertNull(in.readLine());
+			} finally {
+				socket.close();
+			}
+
+			assertEquals(1, limiter.getRejectedConnectionCount());
+		} finally {
+			listener.close();
+		}
+	}
+
+	/**
+	 * Tests the limiting of the lines of a connection.
+	 *
+	 * @throws IOException
+	 *             if the listener cannot be opened
+	 */
+	@Test
+	public void testLineRate() throws IOException {
+		final SelectorListenerThread listener = new SelectorListenerThread(
+				port) {
+
+			@Override
+			protected String handleInput(final String input) {
+				return input == null ? null : "ECHO " + input;
+			}
+		};
+
+		final RateLimiter limiter = new RateLimiter();
+		limiter.setLineRate(1);
+		limiter.setLineBurst(2);
+		limiter.setMessage("SLOW DOWN");
+		listener.setRateLimiter(limiter);
+		listener.start();
+
+		final Socket socket = new Socket(host, port);
+		try {
+			final PrintWriter out = new PrintWriter(socket.getOutputStream(),
+					true);
+			final BufferedReader in = new BufferedReader(
+					new InputStreamReader(socket.getInputStream()));
+
+			out.println("1");
+			assertEquals("ECHO 1", in.readLine());
+			out.println("2");
+			assertEquals("ECHO 2", in.readLine());
+			out.println("3");
+			assertEquals("SLOW DOWN", in.readLine());
+
+			assertEquals(1, limiter.getRejectedLineCount());
+		} finally {
+			socket.close();
+			listener.close();
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package net.meisen.general.server.listener.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import net.meisen.general.server.testutilities.TestHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>SelectorListenerThread</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestSelectorListenerThread {
+	private final String host = "localhost";
+	private final int port = 10010;
+	private final int oversizePort = 10019;
+
+	private SelectorListenerThread listener;
+
+	/**
+	 * Starts a <code>SelectorListenerThread</code> which answers each line
+	 * with the prefixed line.
+	 *
+	 * @throws IOException
+	 *             if the listener cannot be opened
+	 */
+	@Before
+	public void open() throws IOException {
+		listener = new SelectorListenerThread(port) {
+
+			@Override
+			protected String handleInput(final String input) {
+				return input == null ? null : "ECHO " + input;
+			}
+		};
+		listener.start();
+	}
+
+	/**
+	 * Tests the answering of single messages.
+	 */
+	@Test
+	public void testMessages() {
+		assertEquals("ECHO HELLO WORLD",
+				TestHelper.sendMessage("HELLO WORLD", host, port));
+		assertEquals("ECHO ANOTHER WORLD SAYS HI",
+				TestHelper.sendMessage("ANOTHER WORLD SAYS HI", host, port));
+	}
+
+	/**
+	 * Tests the handling of lines split over several reads and the different
+	 * line terminators.
+	 *
+	 * @throws Exception
+	 *             if the connection fails
+	 */
+	@Test
+	public void testPartialLines() throws Exception {
+		final Socket socket = new Socket(host, port);
+		final OutputStream out = socket.getOutputStream();
+		final BufferedReader in = new BufferedReader(new InputStreamReader(
+				socket.getInputStream()));
+
+		out.write("first\r\nsec".getBytes());
+		out.flush();
+		Thread.sleep(50);
+		out.write("ond\rthird\n".getBytes());
+		out.flush();
+
+		assertEquals("ECHO first", in.readLine());
+		assertEquals("ECHO second", in.readLine());
+		assertEquals("ECHO third", in.readLine());
+
+		socket.close();
+	}
+
+	/**
+	 * Tests the declining of the compression requested with the first line,
+	 * which isn't passed to the handler.
+	 *
+	 * @throws Exception
+	 *             if the connection fails
+	 */
+	@Test
+	public void testCompressionDeclined() throws Exception {
+		final Socket socket = new Socket(host, port);
+		final OutputStream out = socket.getOutputStream();
+		final BufferedReader in = new BufferedReader(new InputStreamReader(
+				socket.getInputStream()));
+
+		out.write((Compression.HELLO + "\r\n" + Compression.HELLO + "\n")
+				.getBytes());
+		out.flush();
+
+		// only the first line is a request
+		assertEquals(Compression.DECLINE, in.readLine());
+		assertEquals("ECHO " + Compression.HELLO, in.readLine());
+
+		socket.close();
+	}
+
+	/**
+	 * Tests that closing the listener closes the open connections.
+	 *
+	 * @throws Exception
+	 *             if the connection fails
+	 */
+	@Test
+	public void testClose() throws Exception {
+		final Socket socket = new Socket(host, port);
+		assertEquals("ECHO OPEN", TestHelper.sendMessage("OPEN", socket));
+
+		listener.close();
+		listener.join(1000);
+		assertFalse(listener.isAlive());
+
+		final BufferedReader in = new BufferedReader(new InputStreamReader(
+				socket.getInputStream()));
+		assertNull(in.readLine());
+
+		socket.close();
+	}
+
+	/**
+	 * Tests the rejecting and the streaming of lines exceeding the maximal
+	 * line-length.
+	 *
+	 * @throws Exception
+	 *             if the connection fails
+	 */
+	@Test
+	public void testOversizedLines() throws Exception {
+		final StringBuilder huge = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			huge.append('x');
+		}
+
+		final SelectorListenerThread rejecting = new SelectorListenerThread(
+				oversizePort) {
+
+			@Override
+			protected String handleInput(final String input) {
+				return input == null ? null : "ECHO " + input;
+			}
+		};
+		rejecting.setMaxLineLength(8);
+		rejecting.start();
+		Socket socket = new Socket(host, oversizePort);
+		try {
+			final BufferedReader in = new BufferedReader(new InputStreamReader(
+					socket.getInputStream()));
+			socket.getOutputStream().write(
+					("12345678\n" + huge + "\r\nafter\n").getBytes());
+
+			assertEquals("ECHO 12345678", in.readLine());
+			assertEquals("LINE TOO LONG", in.readLine());
+			assertEquals("ECHO after", in.readLine());
+		} finally {
+			socket.close();
+			rejecting.close();
+			rejecting.join(1000);
+		}
+
+		final StringBuilder chunks = new StringBuilder();
+		final SelectorListenerThread streaming = new SelectorListenerThread(
+				oversizePort) {
+
+			@Override
+			protected String handleInput(final String input) {
+				return input == null ? null : "ECHO " + input;
+			}
+
+			@Override
+			protected String handleChunk(final String chunk,
+					final boolean last) {
+				assertTrue(chunk.length() <= 8);
+				chunks.append(chunk);
+				return last ? "STREAMED " + chunks.length() : null;
+			}
+		};
+		streaming.setMaxLineLength(8);
+		streaming.setOversizePolicy(OversizePolicy.STREAM);
+		streaming.start();
+		socket = new Socket(host, oversizePort);
+		try {
+			final BufferedReader in = new BufferedReader(new InputStreamReader(
+					socket.getInputStream()));
+			socket.getOutputStream().write(
+					(huge + "\nafter\n").getBytes());
+
+			assertEquals("STREAMED " + huge.length(), in.readLine());
+			assertEquals("ECHO after", in.readLine());
+			assertEquals(huge.toString(), chunks.toString());
+		} finally {
+			socket.close();
+			streaming.close();
+		}
+	}
+
+	/**
+	 * Closes the listener.
+	 */
+	@After
+	public void close() {
+		listener.close();
+	}
+}
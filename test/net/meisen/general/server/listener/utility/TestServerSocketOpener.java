@@ -0,0 +1,110 @@
+package net.meisen.general.server.listener.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ServerSocket;
+
+import net.meisen.general.server.testutilities.TestHelper;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>ServerSocketOpener</code> and the
+ * usage of several acceptors for one port.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestServerSocketOpener {
+	private final String host = "localhost";
+	private final int port = 10013;
+
+	/**
+	 * Tests that a port cannot be bound twice without
+	 * <code>SO_REUSEPORT</code>.
+	 *
+	 * @throws IOException
+	 *             if the socket cannot be opened
+	 */
+	@Test(expected = BindException.class)
+	public void testBindTwice() throws IOException {
+		final ServerSocket first = ServerSocketOpener.open(port, true, false);
+		try {
+			ServerSocketOpener.open(port, true, false).close();
+		} finally {
+			first.close();
+		}
+	}
+
+	/**
+	 * Tests the binding of several sockets to the same port using
+	 * <code>SO_REUSEPORT</code>.
+	 *
+	 * @throws IOException
+	 *             if the socket cannot be opened
+	 */
+	@Test
+	public void testReusePort() throws IOException {
+		assumeTrue(ServerSocketOpener.isReusePortSupported());
+
+		final ServerSocket first = ServerSocketOpener.open(port, false, true);
+		final ServerSocket second = ServerSocketOpener.open(port, false, true);
+		try {
+			assertEquals(port, first.getLocalPort());
+			assertEquals(port, second.getLocalPort());
+		} finally {
+			first.close();
+			second.close();
+		}
+	}
+
+	/**
+	 * Tests several <code>SelectorListenerThread</code> instances sharing one
+	 * socket, i.e. the fallback if <code>SO_REUSEPORT</code> is not
+	 * supported.
+	 *
+	 * @throws IOException
+	 *             if the socket cannot be opened
+	 */
+	@Test
+	public void testSharedSocket() throws IOException {
+		final ServerSocket serverSocket = ServerSocketOpener.open(port, false,
+				false);
+
+		final SelectorListenerThread[] loops = new SelectorListenerThread[3];
+		for (int i = 0; i < loops.length; i++) {
+			loops[i] = new SelectorListenerThread(serverSocket) {
+
+				@Override
+				protected String handleInput(final String input) {
+					return input == null ? null : "ECHO " + input;
+				}
+			};
+			loops[i].start();
+		}
+
+		try {
+			final int amount = 30;
+			for (int i = 0; i < amount; i++) {
+				assertEquals("ECHO " + i,
+						TestHelper.sendMessage("" + i, host, port));
+			}
+
+			long accepted = 0;
+			for (final SelectorListenerThread loop : loops) {
+				accepted += loop.getAcceptRate().getCount();
+			}
+			assertEquals(amount, accepted);
+		} finally {
+			for (final SelectorListenerThread loop : loops) {
+				loop.close();
+			}
+		}
+
+		assertTrue(serverSocket.isClosed());
+	}
+}
@@ -0,0 +1,134 @@
+package net.meisen.general.server.listener.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.meisen.general.server.listener.utility.TimerWheel.Timeout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>TimerWheel</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestTimerWheel {
+	private TimerWheel timerWheel;
+
+	/**
+	 * Creates a small wheel with a short tick.
+	 */
+	@Before
+	public void create() {
+		timerWheel = new TimerWheel("TestTimerWheel", 10, 8);
+	}
+
+	/**
+	 * Tests the execution of scheduled tasks, also ones exceeding one round
+	 * of the wheel.
+	 *
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testExecution() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(3);
+		final Runnable task = new Runnable() {
+
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		};
+
+		final long start = System.currentTimeMillis();
+		timerWheel.schedule(task, 0);
+		timerWheel.schedule(task, 50);
+		timerWheel.schedule(task, 250);
+
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertTrue(System.currentTimeMillis() - start >= 250);
+	}
+
+	/**
+	 * Tests that cancelled tasks are not executed.
+	 *
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testCancel() throws InterruptedException {
+		final AtomicInteger counter = new AtomicInteger(0);
+		final Runnable task = new Runnable() {
+
+			@Override
+			public void run() {
+				counter.incrementAndGet();
+			}
+		};
+
+		final Timeout cancelled = timerWheel.schedule(task, 50);
+		timerWheel.schedule(task, 50);
+		cancelled.cancel();
+		assertTrue(cancelled.isCancelled());
+
+		Thread.sleep(200);
+		assertEquals(1, counter.get());
+	}
+
+	/**
+	 * Tests the stopping of the wheel.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testStop() {
+		timerWheel.stop();
+		assertFalse(timerWheel.isRunning());
+
+		timerWheel.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				// nothing to do
+			}
+		}, 0);
+	}
+
+	/**
+	 * Tests the references to the shared wheel, i.e. that the wheel is
+	 * stopped when the last reference is released.
+	 */
+	@Test
+	public void testDefaultReferences() {
+		final TimerWheel shared = TimerWheel.acquireDefault();
+		assertTrue(shared == TimerWheel.acquireDefault());
+
+		TimerWheel.releaseDefault();
+		assertTrue(shared.isRunning());
+		TimerWheel.releaseDefault();
+		assertFalse(shared.isRunning());
+
+		// a further release is ignored
+		TimerWheel.releaseDefault();
+		final TimerWheel next = TimerWheel.acquireDefault();
+		assertTrue(next != shared);
+		assertTrue(next.isRunning());
+		TimerWheel.releaseDefault();
+		assertFalse(next.isRunning());
+	}
+
+	/**
+	 * Stops the wheel.
+	 */
+	@After
+	public void stop() {
+		timerWheel.stop();
+	}
+}
@@ -0,0 +1,59 @@
+package net.meisen.general.server.listener.utility;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>VirtualWorkerDispatcher</code>. The
+ * tests are only executed if the used JVM supports virtual threads.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestVirtualWorkerDispatcher {
+
+	/**
+	 * Tests the execution and interruption of a worker.
+	 *
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testExecution() throws InterruptedException {
+		assumeTrue(VirtualWorkerDispatcher.isSupported());
+
+		final VirtualWorkerDispatcher dispatcher = new VirtualWorkerDispatcher(
+				"TestVirtual");
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final Thread worker = new Thread() {
+
+			@Override
+			public void run() {
+				started.countDown();
+
+				try {
+					new CountDownLatch(1).await();
+				} catch (final InterruptedException e) {
+					// finish
+				}
+			}
+		};
+
+		dispatcher.dispatch(worker);
+		assertTrue(started.await(1, TimeUnit.SECONDS));
+		assertTrue(dispatcher.isRunning(worker));
+
+		dispatcher.interrupt(worker);
+		dispatcher.join(worker, 1000);
+		assertFalse(dispatcher.isRunning(worker));
+
+		dispatcher.shutdown();
+	}
+}
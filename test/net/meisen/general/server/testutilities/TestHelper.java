@@ -1,13 +1,21 @@
 package net.meisen.general.server.testutilities;
 
+import net.meisen.general.genmisc.exceptions.registry.IExceptionRegistry;
 import net.meisen.general.server.Server;
 import net.meisen.general.server.api.IServerSettings;
+import net.meisen.general.server.api.impl.exceptions.BaseListenerException;
+import net.meisen.general.server.settings.pojos.Connector;
+import net.meisen.general.server.settings.pojos.Extension;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.Socket;
+import java.util.Arrays;
 
 import static org.junit.Assert.fail;
 
@@ -92,4 +100,61 @@ public class TestHelper {
         // get the answer - right now we don't care
         return in.readLine();
     }
+
+    /**
+     * Creates an <code>IExceptionRegistry</code> which throws a
+     * <code>BaseListenerException</code> with a message containing the number
+     * and the parameters of the exception, e.g.
+     * <code>1019 [ignore, [CLOSE, ...]]</code>.
+     *
+     * @return the created registry
+     */
+    public static IExceptionRegistry createExceptionRegistry() {
+        return (IExceptionRegistry) Proxy.newProxyInstance(
+                TestHelper.class.getClassLoader(),
+                new Class<?>[]{IExceptionRegistry.class},
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(final Object proxy,
+                                         final Method method,
+                                         final Object[] args)
+                            throws Throwable {
+                        if (!"throwException".equals(method.getName())) {
+                            throw new UnsupportedOperationException(
+                                    method.getName());
+                        }
+
+                        final Object[] params =
+                                (Object[]) args[args.length - 1];
+                        throw new BaseListenerException(args[1] + " "
+                                + Arrays.deepToString(params));
+                    }
+                });
+    }
+
+    /**
+     * Creates a <code>Connector</code> with a <code>worker</code> extension.
+     *
+     * @param id         the identifier of the connector
+     * @param port       the port of the connector
+     * @param properties the properties of the <code>worker</code> extension,
+     *                   i.e. pairs of names and values
+     * @return the created <code>Connector</code>
+     */
+    public static Connector createConnector(final String id, final int port,
+                                            final String... properties) {
+        final Extension worker = new Extension();
+        worker.setId("worker");
+        for (int i = 0; i < properties.length; i += 2) {
+            worker.setProperty(properties[i], properties[i + 1]);
+        }
+
+        final Connector c = new Connector();
+        c.setId(id);
+        c.setPort(port);
+        c.setExtensions(Arrays.asList(worker));
+
+        return c;
+    }
 }